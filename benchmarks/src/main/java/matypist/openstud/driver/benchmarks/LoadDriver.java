@@ -0,0 +1,152 @@
+package matypist.openstud.driver.benchmarks;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.OpenstudTransport;
+import matypist.openstud.driver.core.cache.PublicDataCache;
+import matypist.openstud.driver.core.metrics.InMemoryOpenstudMetrics;
+import matypist.openstud.driver.core.metrics.LatencyHistogram;
+import matypist.openstud.driver.core.models.Student;
+import org.threeten.bp.LocalDate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives many students against a {@link MockSapienzaServer} from concurrent threads, then reports the throughput and the
+ * latency percentiles of every operation, followed by the per-endpoint figures of the driver metrics.
+ * Options are given as {@code key=value}:
+ * <ul>
+ * <li>{@code students} (default 20), {@code threads} (default 8), {@code duration} in seconds (default 30)</li>
+ * <li>{@code latency} as {@code min:max} milliseconds (default 20:80)</li>
+ * <li>{@code errors} and {@code ratelimit}, the fraction of requests failing that way (default 0)</li>
+ * <li>{@code publiccache}, whether the students share a {@link PublicDataCache} (default false)</li>
+ * </ul>
+ */
+public class LoadDriver {
+
+    @FunctionalInterface
+    private interface Operation {
+        void run(Openstud os, Student student) throws Exception;
+    }
+
+    private static class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int students = Integer.parseInt(options.getOrDefault("students", "20"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+        String[] latency = options.getOrDefault("latency", "20:80").split(":");
+        PublicDataCache publicCache = Boolean.parseBoolean(options.getOrDefault("publiccache", "false")) ? new PublicDataCache() : null;
+
+        Map<String, Operation> operations = new LinkedHashMap<>();
+        operations.put("getInfoStudent", (os, student) -> os.getInfoStudent());
+        operations.put("getExamsDone", (os, student) -> os.getExamsDone());
+        operations.put("getExamsDoable", (os, student) -> os.getExamsDoable());
+        operations.put("getActiveReservations", (os, student) -> os.getActiveReservations());
+        operations.put("getPaidTaxes", (os, student) -> os.getPaidTaxes());
+        operations.put("getUnpaidTaxes", (os, student) -> os.getUnpaidTaxes());
+        operations.put("getCurrentIsee", (os, student) -> os.getCurrentIsee());
+        operations.put("getCalendarEvents", (os, student) -> os.getCalendarEvents(student));
+        operations.put("getClassroomTimetable", (os, student) -> os.getClassroomTimetable(1000, LocalDate.now()));
+        operations.put("getNews", (os, student) -> os.getNews("it", true, 5, null, null, null));
+        operations.put("getNewsletterEvents", (os, student) -> os.getNewsletterEvents());
+        List<String> names = new ArrayList<>(operations.keySet());
+
+        InMemoryOpenstudMetrics metrics = new InMemoryOpenstudMetrics();
+        OpenstudTransport transport = new OpenstudTransport();
+        // the server is local, don't let the per-host pacing hide its behaviour
+        transport.getHostRateLimiter().setDefaultLimit(100_000, 100_000, 1, 100_000);
+        try (MockSapienzaServer server = new MockSapienzaServer().start()) {
+            server.setLatency(Long.parseLong(latency[0]), Long.parseLong(latency[latency.length - 1]))
+                    .setErrorRate(Double.parseDouble(options.getOrDefault("errors", "0")))
+                    .setRateLimitRate(Double.parseDouble(options.getOrDefault("ratelimit", "0")));
+            List<Openstud> instances = new ArrayList<>();
+            List<Student> profiles = new ArrayList<>();
+            for (int i = 0; i < students; i++) {
+                OpenstudBuilder builder = server.configure(new OpenstudBuilder())
+                        .setStudentID(String.valueOf(1_000_000 + i))
+                        .setPassword("password")
+                        .setTransport(transport)
+                        .setMetrics(metrics)
+                        .setPublicCache(publicCache);
+                builder.setClassroomWaitRequest(0);
+                Openstud os = builder.build();
+                os.login();
+                instances.add(os);
+                profiles.add(os.getInfoStudent());
+            }
+            metrics.reset();
+
+            Map<String, Stats> stats = new ConcurrentHashMap<>();
+            for (String name : names) stats.put(name, new Stats());
+            long start = System.nanoTime();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() - start < duration) {
+                        int student = random.nextInt(students);
+                        String name = names.get(random.nextInt(names.size()));
+                        Stats operationStats = stats.get(name);
+                        long begin = System.nanoTime();
+                        try {
+                            operations.get(name).run(instances.get(student), profiles.get(student));
+                        } catch (Exception e) {
+                            operationStats.errors.increment();
+                        }
+                        operationStats.latency.record(System.nanoTime() - begin);
+                    }
+                }, "load-driver-" + t);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) worker.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long total = 0;
+            StringBuilder report = new StringBuilder("operation\tcount\terrors\tops/s\tp50 ms\tp90 ms\tp99 ms\tmax ms\n");
+            for (String name : names) {
+                Stats operationStats = stats.get(name);
+                LatencyHistogram histogram = operationStats.latency;
+                total += histogram.getCount();
+                report.append(name).append('\t')
+                        .append(histogram.getCount()).append('\t')
+                        .append(operationStats.errors.sum()).append('\t')
+                        .append(String.format("%.1f", histogram.getCount() / seconds)).append('\t')
+                        .append(millis(histogram.getPercentileNanos(50))).append('\t')
+                        .append(millis(histogram.getPercentileNanos(90))).append('\t')
+                        .append(millis(histogram.getPercentileNanos(99))).append('\t')
+                        .append(millis(histogram.getMaxNanos())).append('\n');
+            }
+            System.out.printf("%d students, %d threads, %.1f s: %d operations, %.1f ops/s, %d requests served%n%n",
+                    students, threads, seconds, total, total / seconds, server.getRequestCount());
+            System.out.println(report);
+            System.out.println(metrics.report());
+            if (publicCache != null)
+                System.out.printf("public cache: %s, %d coalesced loads, %d refreshes%n", publicCache.getStats(),
+                        publicCache.getCoalescedCount(), publicCache.getRefreshCount());
+            for (Openstud os : instances) os.shutdown();
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
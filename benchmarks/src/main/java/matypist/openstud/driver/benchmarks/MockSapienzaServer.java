@@ -0,0 +1,282 @@
+package matypist.openstud.driver.benchmarks;
+
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.providers.sapienza.SapienzaFixtures;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ServerSocketFactory;
+
+/**
+ * Local stand-in for Infostud, the IDM login, GOMP and the uniroma1.it website, serving the recorded fixtures over
+ * plain http. Latency, server errors, rate limit answers and the maintenance page can be injected at any time.
+ * Only the tokens issued by the server are accepted, {@link #expireTokens()} invalidates them to exercise the refresh.
+ * <pre>
+ * MockSapienzaServer server = new MockSapienzaServer().start();
+ * Openstud os = server.configure(new OpenstudBuilder()).setStudentID("1234567").setPassword("password").build();
+ * </pre>
+ */
+public class MockSapienzaServer implements Closeable {
+    private static final String API = "/phoenixws";
+    private static final String LOGIN = "/authws/login/idm_ldap/iws";
+    private static final String TIMETABLE = "/gomp";
+    private static final String MAINTENANCE = "<html><body>Sorry, the page you are looking for is currently unavailable.</body></html>";
+    private static final String INVALID_TOKEN = "{\"esito\":{\"flagEsito\":-1,\"nota\":\"Token non valido\"}}";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, String> fixtures = new ConcurrentHashMap<>();
+    private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+    private final AtomicLong issuedTokens = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile String base;
+    private volatile long minLatency;
+    private volatile long maxLatency;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile boolean maintenance;
+
+    public MockSapienzaServer start() throws IOException {
+        server.setDispatcher(new Router());
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.start(InetAddress.getByName("127.0.0.1"), 0);
+        base = "http://127.0.0.1:" + server.getPort();
+        return this;
+    }
+
+    /**
+     * Points the builder to this server.
+     */
+    public OpenstudBuilder configure(OpenstudBuilder builder) {
+        return builder.setEndpoints(getEndpointAPI(), getEndpointLogin(), getEndpointTimetable(), getEndpointWebsite());
+    }
+
+    public String getEndpointAPI() {
+        return base + API;
+    }
+
+    public String getEndpointLogin() {
+        return base + LOGIN;
+    }
+
+    public String getEndpointTimetable() {
+        return base + TIMETABLE;
+    }
+
+    public String getEndpointWebsite() {
+        return base;
+    }
+
+    /**
+     * Delays every answer by a random time between the bounds, in milliseconds.
+     */
+    public MockSapienzaServer setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) throw new IllegalArgumentException("Latency is not valid");
+        this.minLatency = minMillis;
+        this.maxLatency = maxMillis;
+        return this;
+    }
+
+    /**
+     * Fraction of the requests answered with a server error.
+     */
+    public MockSapienzaServer setErrorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Fraction of the requests answered as rate limited: the GOMP text for the timetable, HTTP 429 for the others.
+     */
+    public MockSapienzaServer setRateLimitRate(double rate) {
+        this.rateLimitRate = rate;
+        return this;
+    }
+
+    /**
+     * Answers every Infostud request with the maintenance page.
+     */
+    public MockSapienzaServer setMaintenance(boolean maintenance) {
+        this.maintenance = maintenance;
+        return this;
+    }
+
+    public void expireTokens() {
+        tokens.clear();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private String fixture(String name) {
+        return fixtures.computeIfAbsent(name, key ->
+                new String(SapienzaFixtures.load(key), StandardCharsets.UTF_8).replace("{{base}}", base));
+    }
+
+    private class Router extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            requests.incrementAndGet();
+            MockResponse response = route(request);
+            long latency = maxLatency > minLatency ? ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1) : minLatency;
+            if (latency > 0) response.setHeadersDelay(latency, TimeUnit.MILLISECONDS);
+            return response;
+        }
+
+        private MockResponse route(RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            if (url == null) return new MockResponse().setResponseCode(400);
+            String path = url.encodedPath();
+            boolean timetable = path.startsWith(TIMETABLE + "/");
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (rateLimitRate > 0 && random.nextDouble() < rateLimitRate) {
+                return timetable ? text("Error: maximum request limit reached") : new MockResponse().setResponseCode(429);
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) return new MockResponse().setResponseCode(500).setBody("Internal Server Error");
+            if (path.equals(LOGIN)) return json(fixture("login_idm.json").replace("{{token}}", issueToken()));
+            if (path.startsWith(API + "/")) return api(url, path.substring(API.length()));
+            if (timetable) return timetable(path.substring(TIMETABLE.length()));
+            return website(request, path);
+        }
+
+        private MockResponse api(HttpUrl url, String path) {
+            if (maintenance) return new MockResponse().setBody(MAINTENANCE);
+            if (path.equals("/autenticazione")) return json(fixture("login_legacy.json").replace("{{token}}", issueToken()));
+            if (!tokens.contains(String.valueOf(url.queryParameter("ingresso")))) return json(INVALID_TOKEN);
+            List<String> segments = url.pathSegments();
+            String last = segments.get(segments.size() - 1);
+            if (path.startsWith("/studente/")) {
+                switch (last) {
+                    case "esamiall":
+                        return json(fixture(SapienzaFixtures.EXAMS_DONE));
+                    case "insegnamentisostenibili":
+                        return json(fixture("exams_doable.json"));
+                    case "prenotazioni":
+                        return json(fixture(SapienzaFixtures.RESERVATIONS));
+                    default:
+                        return json(fixture(SapienzaFixtures.STUDENT));
+                }
+            }
+            if (path.startsWith("/appello/ricerca")) return json(fixture(SapienzaFixtures.RESERVATIONS));
+            if (path.startsWith("/contabilita/")) {
+                switch (last) {
+                    case "bollettinipagati":
+                        return json(fixture(SapienzaFixtures.TAXES_PAID));
+                    case "bollettininonpagati":
+                        return json(fixture("taxes_unpaid.json"));
+                    case "isee":
+                        return json(fixture("isee.json"));
+                    case "listaIsee":
+                        return json(fixture("isee_history.json"));
+                    case "ristampa":
+                        return pdf();
+                    default:
+                        return new MockResponse().setResponseCode(404);
+                }
+            }
+            if (path.startsWith("/prenotazione/") && last.equals("pdf")) return pdf();
+            return new MockResponse().setResponseCode(404);
+        }
+
+        private MockResponse timetable(String path) {
+            if (path.startsWith("/classroom/search")) return json(fixture("classrooms.json"));
+            if (path.startsWith("/events/")) return json(fixture("classroom_events.json"));
+            if (path.startsWith("/lectures/")) return json(fixture(SapienzaFixtures.TIMETABLE));
+            return new MockResponse().setResponseCode(404);
+        }
+
+        /**
+         * Website pages carry an ETag, a matching If-None-Match is answered with 304 Not Modified.
+         */
+        private MockResponse website(RecordedRequest request, String path) {
+            String body;
+            if (path.endsWith("/tutte-le-notizie")) body = fixture("news_list.html");
+            else if (path.startsWith("/it/notizie/")) body = fixture("news_detail.html");
+            else if (path.equals("/it/newsletter")) body = fixture("newsletter.html");
+            else if (path.startsWith("/it/evento/")) body = fixture("newsletter_event.html");
+            else return new MockResponse().setResponseCode(404);
+            String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+            if (etag.equals(request.getHeader("If-None-Match"))) return new MockResponse().setResponseCode(304).setHeader("ETag", etag);
+            return html(body).setHeader("ETag", etag);
+        }
+
+        private String issueToken() {
+            String token = "mock-token-" + issuedTokens.incrementAndGet();
+            tokens.add(token);
+            return token;
+        }
+
+        private MockResponse pdf() {
+            return json(fixtures.computeIfAbsent("pdf", key -> new String(SapienzaFixtures.pdf(32 * 1024), StandardCharsets.UTF_8)));
+        }
+
+        private MockResponse json(String body) {
+            return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+        }
+
+        private MockResponse html(String body) {
+            return new MockResponse().setHeader("Content-Type", "text/html; charset=utf-8").setBody(body);
+        }
+
+        private MockResponse text(String body) {
+            return new MockResponse().setHeader("Content-Type", "text/plain").setBody(body);
+        }
+    }
+
+    /**
+     * The server writes the headers and the body separately: without TCP_NODELAY every answer would wait for the
+     * delayed ACK of the client, adding tens of milliseconds that have nothing to do with the injected latency.
+     */
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package matypist.openstud.driver.benchmarks;
+
+import matypist.openstud.driver.core.OpenstudHelper;
+import matypist.openstud.driver.core.models.*;
+import matypist.openstud.driver.core.providers.sapienza.SapienzaFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event generation and sorting helpers, fed with the models parsed from the recorded answers.
+ * The sort helpers work in place, so every invocation sorts a fresh copy of the list.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenstudHelperBenchmark {
+    private List<ExamDone> examsDone;
+    private List<ExamReservation> active;
+    private List<ExamReservation> available;
+    private Map<String, List<Lesson>> timetable;
+    private List<Lesson> lessons;
+
+    @Setup
+    public void setup() throws Exception {
+        SapienzaFixtures fixtures = new SapienzaFixtures();
+        examsDone = fixtures.readExamsDone(SapienzaFixtures.load(SapienzaFixtures.EXAMS_DONE));
+        available = fixtures.readReservations(SapienzaFixtures.load(SapienzaFixtures.RESERVATIONS));
+        // half of the available sessions are already reserved
+        active = new ArrayList<>(available.subList(0, available.size() / 2));
+        timetable = fixtures.readTimetable(SapienzaFixtures.load(SapienzaFixtures.TIMETABLE));
+        lessons = new ArrayList<>();
+        for (List<Lesson> list : timetable.values()) lessons.addAll(list);
+    }
+
+    @Benchmark
+    public List<Event> generateEvents() {
+        return OpenstudHelper.generateEvents(active, available);
+    }
+
+    @Benchmark
+    public List<Event> generateEventsFromTimetable() {
+        return OpenstudHelper.generateEventsFromTimetable(timetable);
+    }
+
+    @Benchmark
+    public List<ExamDone> sortExamByDate() {
+        return OpenstudHelper.sortExamByDate(new ArrayList<>(examsDone), true);
+    }
+
+    @Benchmark
+    public List<ExamDone> sortExamByGrade() {
+        return OpenstudHelper.sortExamByGrade(new ArrayList<>(examsDone), false);
+    }
+
+    @Benchmark
+    public List<ExamReservation> sortReservationByDate() {
+        return OpenstudHelper.sortReservationByDate(new ArrayList<>(available), true);
+    }
+
+    @Benchmark
+    public List<Lesson> sortLessonsByStartDate() {
+        return OpenstudHelper.sortLessonsByStartDate(new ArrayList<>(lessons), true);
+    }
+
+    @Benchmark
+    public double computeWeightedAverage() {
+        return OpenstudHelper.computeWeightedAverage(examsDone, 30);
+    }
+}
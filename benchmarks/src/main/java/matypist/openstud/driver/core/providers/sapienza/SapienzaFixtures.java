@@ -0,0 +1,148 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.models.*;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Recorded Infostud and GOMP answers (anonymized) and the parsers of the driver applied to them.
+ * The benchmarks live in the provider package to reach the package-private parsers.
+ */
+public class SapienzaFixtures {
+    public static final String EXAMS_DONE = "exams_done.json";
+    public static final String RESERVATIONS = "reservations.json";
+    public static final String TAXES_PAID = "taxes_paid.json";
+    public static final String STUDENT = "student.json";
+    public static final String TIMETABLE = "timetable.json";
+    public static final String ISEE_HISTORY = "isee_history.json";
+    public static final String NEWS_DETAIL = "news_detail.html";
+    public static final String NEWS_URL = "https://www.uniroma1.it/it/notizie/notizia";
+    public static final String TIMETABLE_CODES = "1015880 1015887 1015894 1015901 1015908 1015915 1015922 1015929";
+
+    private final Openstud os;
+
+    public SapienzaFixtures() {
+        os = new OpenstudBuilder().setStudentID("1234567").build();
+    }
+
+    public static byte[] load(String name) {
+        try (InputStream in = SapienzaFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IllegalArgumentException("Missing fixture " + name);
+            return Okio.buffer(Okio.source(in)).readByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * An Infostud PDF answer, whose bytes are sent as a JSON array of signed integers.
+     */
+    public static byte[] pdf(int size) {
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder(size * 4 + 64).append("{\"esito\":{\"flagEsito\":0},\"risultato\":{\"byte\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(random.nextInt(256) - 128);
+        }
+        return builder.append("]}}").toString().getBytes();
+    }
+
+    private static BufferedSource source(byte[] body) {
+        return new Buffer().write(body);
+    }
+
+    public List<ExamDone> readExamsDone(byte[] body) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.read(source(body), SapienzaStreamHelper::readExamsDone);
+    }
+
+    public List<ExamReservation> readReservations(byte[] body) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.read(source(body), reader -> SapienzaStreamHelper.readReservations(os, reader, true));
+    }
+
+    public List<Tax> readPaidTaxes(byte[] body) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.read(source(body), reader -> SapienzaStreamHelper.readTaxes(os, reader, true));
+    }
+
+    public Map<String, List<Lesson>> readTimetable(byte[] body) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.read(source(body), reader -> SapienzaStreamHelper.readTimetable(reader, TIMETABLE_CODES, SapienzaParsingContext.TIMETABLE_DATE_TIME, -1));
+    }
+
+    public Student extractStudent(String body) {
+        return SapienzaHelper.extractStudent(os, new JSONObject(body).getJSONObject("ritorno"));
+    }
+
+    /**
+     * The recorded ISEE history, its declarations repeated until the list holds the given number of records.
+     */
+    public static String iseeHistory(int size) {
+        JSONObject response = new JSONObject(new String(load(ISEE_HISTORY), StandardCharsets.UTF_8));
+        JSONArray recorded = response.getJSONObject("risultatoLista").getJSONArray("risultati");
+        JSONArray repeated = new JSONArray();
+        for (int i = 0; i < size; i++) repeated.put(recorded.get(i % recorded.length()));
+        response.getJSONObject("risultatoLista").put("risultati", repeated);
+        return response.toString();
+    }
+
+    public List<Isee> extractIseeHistory(String body) {
+        JSONArray array = new JSONObject(body).getJSONObject("risultatoLista").getJSONArray("risultati");
+        List<Isee> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) list.add(SapienzaHelper.extractIsee(os, array.getJSONObject(i)));
+        return list;
+    }
+
+    /**
+     * The recorded news page grown to about the given number of characters, as the website pages are: a quarter of
+     * menus before the content and the rest, article body and footer, after it.
+     */
+    public static byte[] newsPage(int size) {
+        String page = new String(load(NEWS_DETAIL), StandardCharsets.UTF_8).replace("{{base}}", "https://www.uniroma1.it");
+        StringBuilder menu = new StringBuilder("<nav class=\"menu\"><ul>");
+        for (int i = 0; menu.length() < size / 4; i++)
+            menu.append("<li class=\"leaf\"><a href=\"/it/pagina/").append(i).append("\" title=\"Pagina ").append(i).append("\">Pagina ").append(i).append("</a></li>");
+        menu.append("</ul></nav>");
+        StringBuilder footer = new StringBuilder("<div class=\"article-body\">");
+        for (int i = 0; footer.length() < size * 3 / 4; i++)
+            footer.append("<p>Paragrafo ").append(i).append(" del testo completo della notizia, con un <a href=\"/it/link/").append(i).append("\">collegamento</a>.</p>");
+        footer.append("</div><footer class=\"footer\"><p>Sapienza Universit&agrave; di Roma</p></footer>");
+        page = page.replace("<body>", "<body>" + menu)
+                .replace("<div class=\"article-body\"><p>Testo completo della notizia.</p></div>", footer.toString());
+        return page.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public News parseNewsPage(byte[] body) {
+        return newsDetails(Jsoup.parse(new String(body, StandardCharsets.UTF_8), NEWS_URL));
+    }
+
+    public News extractNewsPage(byte[] body) throws IOException {
+        return newsDetails(SapienzaNewsExtractor.parse(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8), NEWS_URL, true));
+    }
+
+    private static News newsDetails(Document doc) {
+        News news = new News();
+        SapienzaNewsHandler.addNewsDetails(news, doc, true, SapienzaParsingContext.newsDate("it"));
+        return news;
+    }
+
+    public byte[] readPdf(byte[] body) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.read(source(body), reader -> SapienzaStreamHelper.readPdf(os, reader));
+    }
+}
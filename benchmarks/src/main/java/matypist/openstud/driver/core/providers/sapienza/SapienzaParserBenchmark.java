@@ -0,0 +1,90 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.models.*;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the recorded answers, from the raw bytes as they come off the network to the models.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SapienzaParserBenchmark {
+    private SapienzaFixtures fixtures;
+    private byte[] examsDone;
+    private byte[] reservations;
+    private byte[] taxes;
+    private byte[] timetable;
+    private byte[] pdf;
+    private String student;
+    private String iseeHistory;
+    private byte[] newsPage;
+
+    @Setup
+    public void setup() {
+        fixtures = new SapienzaFixtures();
+        examsDone = SapienzaFixtures.load(SapienzaFixtures.EXAMS_DONE);
+        reservations = SapienzaFixtures.load(SapienzaFixtures.RESERVATIONS);
+        taxes = SapienzaFixtures.load(SapienzaFixtures.TAXES_PAID);
+        timetable = SapienzaFixtures.load(SapienzaFixtures.TIMETABLE);
+        student = new String(SapienzaFixtures.load(SapienzaFixtures.STUDENT), StandardCharsets.UTF_8);
+        pdf = SapienzaFixtures.pdf(64 * 1024);
+        iseeHistory = SapienzaFixtures.iseeHistory(500);
+        newsPage = SapienzaFixtures.newsPage(64 * 1024);
+    }
+
+    @Benchmark
+    public List<ExamDone> examsDone() throws IOException, OpenstudInvalidResponseException {
+        return fixtures.readExamsDone(examsDone);
+    }
+
+    @Benchmark
+    public List<ExamReservation> reservations() throws IOException, OpenstudInvalidResponseException {
+        return fixtures.readReservations(reservations);
+    }
+
+    @Benchmark
+    public List<Tax> paidTaxes() throws IOException, OpenstudInvalidResponseException {
+        return fixtures.readPaidTaxes(taxes);
+    }
+
+    @Benchmark
+    public Map<String, List<Lesson>> timetable() throws IOException, OpenstudInvalidResponseException {
+        return fixtures.readTimetable(timetable);
+    }
+
+    @Benchmark
+    public Student student() {
+        return fixtures.extractStudent(student);
+    }
+
+    @Benchmark
+    public List<Isee> iseeHistory() {
+        return fixtures.extractIseeHistory(iseeHistory);
+    }
+
+    @Benchmark
+    public News newsPageDom() {
+        return fixtures.parseNewsPage(newsPage);
+    }
+
+    @Benchmark
+    public News newsPageExtract() throws IOException {
+        return fixtures.extractNewsPage(newsPage);
+    }
+
+    @Benchmark
+    public byte[] pdf() throws IOException, OpenstudInvalidResponseException {
+        return fixtures.readPdf(pdf);
+    }
+}
@@ -1,48 +1,88 @@
 package matypist.openstud.driver.core;
 
+import matypist.openstud.driver.core.cache.CacheKey;
+import matypist.openstud.driver.core.cache.CacheOperation;
+import matypist.openstud.driver.core.cache.NewsSyncState;
+import matypist.openstud.driver.core.cache.OpenstudCache;
+import matypist.openstud.driver.core.cache.PublicDataCache;
 import matypist.openstud.driver.core.internals.*;
+import matypist.openstud.driver.core.metrics.MetricsInterceptor;
+import matypist.openstud.driver.core.metrics.OpenstudMetrics;
+import matypist.openstud.driver.core.metrics.TimedHandler;
 import matypist.openstud.driver.core.models.*;
 import matypist.openstud.driver.core.providers.sapienza.*;
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import matypist.openstud.driver.core.ratelimit.TokenBucket;
+import matypist.openstud.driver.core.resilience.CircuitBreaker;
+import matypist.openstud.driver.core.resilience.RetryPolicy;
 import matypist.openstud.driver.exceptions.*;
 import okhttp3.ConnectionSpec;
 import okhttp3.OkHttpClient;
 import org.apache.commons.lang3.tuple.Pair;
 import org.threeten.bp.LocalDate;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.X509TrustManager;
-import java.io.File;
-import java.io.InputStream;
-import java.net.JarURLConnection;
-import java.net.URL;
-import java.security.KeyStore;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
-import java.util.Collections;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler, TaxHandler, ClassroomHandler, ExamHandler {
+    private static final String SENSITIVE_KEYS = "ingresso|output|password|passwd|stringaAutenticazione|oldPwd|newPwd|confermaPwd|risposta";
+    private static final Pattern SENSITIVE_JSON = Pattern.compile("(\"(?:" + SENSITIVE_KEYS + ")\"\\s*:\\s*\")[^\"]*\"");
+    private static final Pattern SENSITIVE_PARAMETER = Pattern.compile("((?:" + SENSITIVE_KEYS + ")=)[^&\\s\"]+");
     private int maxTries;
+    private RetryPolicy retryPolicy = new RetryPolicy();
     private String endpointAPI;
     private String endpointLogin;
     private String endpointTimetable;
+    private String endpointWebsite;
+    private String endpointPhoto;
     private volatile String token;
-    private String studentPassword;
+    private final AtomicLong tokenGeneration = new AtomicLong();
+    private final Object refreshLock = new Object();
+    private CompletableFuture<Void> refreshInFlight;
+    private volatile long tokenIssuedAt;
+    private long tokenLifetime;
+    private long tokenRefreshAhead;
+    private ScheduledFuture<?> renewal;
+    private boolean shutdown;
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong failedRenewals = new AtomicLong();
+    private final AtomicLong expiredTokenHits = new AtomicLong();
+    private volatile String studentPassword;
+    private Supplier<String> passwordSupplier;
+    private final Object passwordLock = new Object();
     private String studentID;
     private boolean isReady;
     private Logger logger;
+    private Level bodyLogLevel = Level.FINE;
+    private int bodyLogLength = 1024;
     private OkHttpClient client;
     private String key;
     private int waitTimeClassroomRequest;
     private int limitSearch;
+    private int parallelism;
+    private int detailPageTimeout;
+    private TokenBucket timetableRateLimiter;
+    private HostRateLimiter hostRateLimiter;
+    private CircuitBreaker apiCircuitBreaker;
+    private CircuitBreaker timetableCircuitBreaker;
     private OpenstudHelper.Provider provider;
     private AuthenticationHandler authenticator;
     private BioHandler personal;
@@ -52,6 +92,10 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     private ExamHandler examHandler;
     private ProviderConfig config;
     private OpenstudHelper.Mode mode;
+    private OpenstudCache cache;
+    private Map<CacheOperation, Long> cacheTtl;
+    private OpenstudMetrics metrics = OpenstudMetrics.NOOP;
+    private PublicDataCache publicCache;
 
     public Openstud() {
         super();
@@ -60,240 +104,208 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     Openstud(OpenstudBuilder builder) {
         this.provider = builder.provider;
         this.maxTries = builder.retryCounter;
+        this.retryPolicy = builder.retryPolicy;
         this.studentID = builder.studentID;
         this.studentPassword = builder.password;
+        this.passwordSupplier = builder.passwordSupplier;
         this.logger = builder.logger;
+        this.bodyLogLevel = builder.bodyLogLevel;
+        this.bodyLogLength = builder.bodyLogLength;
         this.isReady = builder.readyState;
         this.waitTimeClassroomRequest = builder.waitTimeClassroomRequest;
         this.limitSearch = builder.limitSearchResults;
+        this.parallelism = builder.parallelism;
+        this.detailPageTimeout = builder.detailPageTimeout;
+        this.tokenLifetime = builder.tokenLifetime;
+        this.tokenRefreshAhead = builder.tokenRefreshAhead;
         this.mode = builder.mode;
+        this.cache = builder.cache;
+        this.cacheTtl = new EnumMap<>(builder.cacheTtl);
+        this.metrics = builder.metrics;
+        this.publicCache = builder.publicCache;
 
-        Pair<SSLSocketFactory, X509TrustManager> sslComponents = setupCustomSSL();
-        SSLSocketFactory sslSocketFactory = sslComponents.getLeft();
-        X509TrustManager trustManager = sslComponents.getRight();
-
-        // Build the OkHttpClient
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
-                .connectTimeout(builder.connectTimeout, TimeUnit.SECONDS)
-                .writeTimeout(builder.writeTimeout, TimeUnit.SECONDS)
-                .readTimeout(builder.readTimeout, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .connectionSpecs(Collections.singletonList(ConnectionSpec.COMPATIBLE_TLS));
-
-        // Apply custom SSLSocketFactory only if successfully created
-        if (sslSocketFactory != null && trustManager != null) {
-            clientBuilder.sslSocketFactory(sslSocketFactory, trustManager);
-        }
-
-        client = clientBuilder.build();
+        // Per-student clients share the connection pool, dispatcher and TLS setup of the transport
+        OpenstudTransport transport = builder.transport != null ? builder.transport : OpenstudTransport.getDefault();
+        client = transport.newClient(provider, builder.connectTimeout, builder.writeTimeout, builder.readTimeout, logger);
+        hostRateLimiter = transport.getHostRateLimiter();
+        if (metrics.isEnabled()) client = client.newBuilder().addInterceptor(new MetricsInterceptor(metrics)).build();
 
         init();
         config.addKeys(builder.keyMap);
+        if (builder.endpointAPI != null) endpointAPI = endpointPhoto = builder.endpointAPI;
+        if (builder.endpointLogin != null) endpointLogin = builder.endpointLogin;
+        if (builder.endpointTimetable != null) endpointTimetable = builder.endpointTimetable;
+        if (builder.endpointWebsite != null) endpointWebsite = builder.endpointWebsite;
+        // the providers are reached over TLS only, plain http is left to the overridden endpoints
+        if (isCleartext(endpointAPI) || isCleartext(endpointLogin) || isCleartext(endpointTimetable) || isCleartext(endpointWebsite))
+            client = client.newBuilder().connectionSpecs(Arrays.asList(ConnectionSpec.COMPATIBLE_TLS, ConnectionSpec.CLEARTEXT)).build();
+
+        // Every instance querying the same timetable endpoint draws from the same bucket
+        double permitsPerSecond = waitTimeClassroomRequest > 0 ? 1000.0 / waitTimeClassroomRequest : Double.POSITIVE_INFINITY;
+        if (endpointTimetable != null)
+            timetableRateLimiter = transport.getRateLimiter(endpointTimetable, permitsPerSecond, builder.classroomRequestBurst);
+        else timetableRateLimiter = new TokenBucket(permitsPerSecond, builder.classroomRequestBurst);
+
+        // Every instance querying the same endpoint shares its health
+        apiCircuitBreaker = endpointAPI != null ? transport.getCircuitBreaker(endpointAPI, builder.circuitFailureThreshold, builder.circuitOpenTime)
+                : new CircuitBreaker(builder.circuitFailureThreshold, builder.circuitOpenTime);
+        timetableCircuitBreaker = endpointTimetable != null ? transport.getCircuitBreaker(endpointTimetable, builder.circuitFailureThreshold, builder.circuitOpenTime)
+                : new CircuitBreaker(builder.circuitFailureThreshold, builder.circuitOpenTime);
     }
 
-    /**
-     * Loads a single PEM certificate from resources into the provided KeyStore.
-     * @param keyStore The KeyStore to add the certificate to.
-     * @param pemResourcePath The resource path of the PEM file (e.g., "certs/sapienza/uniroma1.pem").
-     * @param alias The alias to assign to the certificate entry.
-     * @return true if the certificate was found and loaded, false otherwise.
-     * @throws Exception If certificate parsing or KeyStore operations fail.
-     */
-    private boolean loadCertificate(KeyStore keyStore, String pemResourcePath, String alias) throws Exception {
-        InputStream pemInputStream = getClass().getClassLoader().getResourceAsStream(pemResourcePath);
-        if (pemInputStream == null) {
-            log(Level.WARNING, "Custom certificate '" + pemResourcePath + "' not found in resources. Skipping.");
-            return false; // Certificate not found
+    private void init() {
+        if (provider == null) throw new IllegalArgumentException("Provider can't be left null");
+        else if (provider == OpenstudHelper.Provider.SAPIENZA) {
+            authenticator = new SapienzaAuthenticationHandler(this);
+            personal = new SapienzaBioHandler(this);
+            newsHandler = new SapienzaNewsHandler(this);
+            taxHandler = new SapienzaTaxHandler(this);
+            classroomHandler = new SapienzaClassroomHandler(this);
+            examHandler = new SapienzaExamHandler(this);
+            config = new SapienzaConfig();
         }
-
-        try {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509Certificate cert = (X509Certificate) cf.generateCertificate(pemInputStream);
-            keyStore.setCertificateEntry(alias, cert);
-            log(Level.FINE, "Loaded custom certificate '" + pemResourcePath + "' with alias '" + alias + "'.");
-            return true; // Certificate loaded
-        } finally {
-            if (pemInputStream != null) {
-                pemInputStream.close();
-            }
+        if (metrics.isEnabled()) {
+            authenticator = TimedHandler.wrap(AuthenticationHandler.class, authenticator, metrics);
+            personal = TimedHandler.wrap(BioHandler.class, personal, metrics);
+            newsHandler = TimedHandler.wrap(NewsHandler.class, newsHandler, metrics);
+            taxHandler = TimedHandler.wrap(TaxHandler.class, taxHandler, metrics);
+            classroomHandler = TimedHandler.wrap(ClassroomHandler.class, classroomHandler, metrics);
+            examHandler = TimedHandler.wrap(ExamHandler.class, examHandler, metrics);
         }
+        endpointAPI = config.getEndpointAPI(mode);
+        endpointLogin = config.getEndpointLogin(mode);
+        endpointTimetable = config.getEndpointTimetable(mode);
+        endpointWebsite = config.getEndpointWebsite();
+        // the student photo is served by the web services only
+        endpointPhoto = config.getEndpointAPI(OpenstudHelper.Mode.WEB);
+        key = config.getKey(mode);
     }
 
-    /**
-     * Loads all certificates from a given resource directory into the KeyStore.
-     * This method is designed to work both from a filesystem (IDE) and a JAR file.
-     * @param keyStore The KeyStore to add the certificates to.
-     * @param path The resource path of the directory (e.g., "certs/sapienza").
-     * @return true if at least one certificate was loaded, false otherwise.
-     */
-    private boolean loadCertificatesFromResourceDirectory(KeyStore keyStore, String path) {
-        boolean loadedAny = false;
-        log(Level.FINE, "Loading custom certificates from resource directory: " + path);
-
-        try {
-            URL dirURL = getClass().getClassLoader().getResource(path);
-
-            if (dirURL == null) {
-                log(Level.WARNING, "Resource directory '" + path + "' not found. Skipping custom certificate loading.");
-                return false;
-            }
-
-            if (dirURL.getProtocol().equals("file")) {
-                // Running from filesystem (e.g., IDE)
-                File certDir = new File(dirURL.toURI());
-                File[] files = certDir.listFiles();
-                if (files == null) {
-                    log(Level.WARNING, "Could not list files in directory: " + certDir.getAbsolutePath());
-                    return false;
-                }
-                int aliasCounter = 0;
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String resourcePath = path + "/" + file.getName();
-                        String alias = "custom-cert-" + (aliasCounter++);
-                        if (loadCertificate(keyStore, resourcePath, alias)) {
-                            loadedAny = true;
-                        }
-                    }
-                }
-            } else if (dirURL.getProtocol().equals("jar")) {
-                // Running from JAR
-                JarURLConnection jarURLConnection = (JarURLConnection) dirURL.openConnection();
-                JarFile jarFile = jarURLConnection.getJarFile();
-                java.util.Enumeration<JarEntry> entries = jarFile.entries();
-
-                String dirPath = path + "/";
-                int aliasCounter = 0;
-
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-                    String entryName = entry.getName();
-                    if (entryName.startsWith(dirPath) && !entry.isDirectory()) {
-                        String alias = "custom-cert-" + (aliasCounter++);
-                        if (loadCertificate(keyStore, entryName, alias)) {
-                            loadedAny = true;
-                        }
-                    }
-                }
-            } else {
-                log(Level.WARNING, "Unsupported protocol '" + dirURL.getProtocol() + "' for resource directory. Skipping custom certificates.");
-                return false;
-            }
-        } catch (Exception e) {
-            // Catch all exceptions related to cert loading (IO, Security, URI, etc.)
-            log(Level.SEVERE, "Failed to load certificates from directory '" + path + "'. Error: " + e.getMessage());
-            return false;
-        }
+    private static boolean isCleartext(String endpoint) {
+        return endpoint != null && endpoint.startsWith("http://");
+    }
 
-        return loadedAny;
+    @FunctionalInterface
+    private interface CacheLoader<T> {
+        T load() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
     }
 
+    @FunctionalInterface
+    private interface Download {
+        long writeTo(OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
+    }
 
     /**
-     * Sets up a custom SSLContext and TrustManager.
-     * If the provider is SAPIENZA, this attempts to load all certificates
-     * from the 'certs/sapienza' resource directory and adds them to the default system trust store.
-     * If the provider is not SAPIENZA, or if the custom certs are not found,
-     * it returns nulls, forcing OkHttp to use the default system TrustManager.
-     * @return A Pair containing the SSLSocketFactory (Left) and X509TrustManager (Right),
-     * or Pair.of(null, null) if setup fails or is not required.
+     * Streams a download into the file, which is removed if the download fails or there is nothing to write.
      */
-    private Pair<SSLSocketFactory, X509TrustManager> setupCustomSSL() {
-        // Only apply custom certificates for the SAPIENZA provider
-        if (this.provider != OpenstudHelper.Provider.SAPIENZA) {
-            log(Level.FINE, "Provider is not Sapienza. Using default system TrustManager.");
-            return Pair.of(null, null);
-        }
-
-        log(Level.FINE, "Provider is Sapienza. Attempting to add custom certificates to default TrustManager.");
-
-        SSLSocketFactory sslSocketFactory = null;
-        X509TrustManager trustManager = null;
-
-        try {
-            // Create a KeyStore
-            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            keyStore.load(null, null); // Init empty
-
-            // Get the default system TrustManager
-            TrustManagerFactory tmfDefault = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmfDefault.init((KeyStore) null); // Initialize with default system KeyStore
-
-            X509TrustManager defaultTrustManager = null;
-            for (TrustManager tm : tmfDefault.getTrustManagers()) {
-                if (tm instanceof X509TrustManager) {
-                    defaultTrustManager = (X509TrustManager) tm;
-                    break;
+    private long download(Path path, Download download) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        boolean completed = false;
+        try (OutputStream out = Files.newOutputStream(path)) {
+            long written = download.writeTo(out);
+            completed = written > 0;
+            return written;
+        } catch (IOException e) {
+            OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
+            log(Level.SEVERE, connectionException);
+            throw connectionException;
+        } finally {
+            if (!completed) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log(Level.WARNING, "Unable to delete " + path + ": " + e.getMessage());
                 }
             }
-            if (defaultTrustManager == null) {
-                throw new IllegalStateException("No default X509TrustManager found");
-            }
+        }
+    }
 
-            // Add all default CAs to our new KeyStore
-            int defaultCaCount = 0;
-            for (X509Certificate cert : defaultTrustManager.getAcceptedIssuers()) {
-                // Use a unique alias for each default CA
-                keyStore.setCertificateEntry("default-ca-" + defaultCaCount++, cert);
-            }
-            log(Level.FINE, "Loaded " + defaultCaCount + " default system CAs.");
+    private boolean isCached(CacheOperation operation) {
+        return cache != null && getCacheTtl(operation) > 0;
+    }
 
-            // Add custom SAPIENZA certificates from the resource directory
-            boolean customCertLoaded = loadCertificatesFromResourceDirectory(keyStore, "certs/sapienza");
+    @SuppressWarnings("unchecked")
+    private <T> T cached(CacheOperation operation, CacheLoader<T> loader, Object... arguments) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!isCached(operation)) return loader.load();
+        CacheKey key = new CacheKey(studentID, operation, arguments);
+        T value = (T) cache.get(key);
+        metrics.recordCacheLookup(operation, value != null);
+        if (value != null) return value;
+        try {
+            value = loader.load();
+        } catch (OpenstudConnectionException | OpenstudInvalidResponseException e) {
+            T stale = getStale(key, e);
+            if (stale == null) throw e;
+            return stale;
+        }
+        cache.put(key, value, getCacheTtl(operation));
+        return value;
+    }
 
-            // If no custom certificates were loaded, just use the default TrustManager
-            if (!customCertLoaded) {
-                log(Level.WARNING, "Sapienza provider selected, but no custom certificates found in resource directory 'certs/sapienza'. Using default TrustManager only.");
-                return Pair.of(null, null);
-            }
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> cachedAsync(CacheOperation operation, Supplier<CompletableFuture<T>> loader, Object... arguments) {
+        if (!isCached(operation)) return loader.get();
+        CacheKey key = new CacheKey(studentID, operation, arguments);
+        T value = (T) cache.get(key);
+        metrics.recordCacheLookup(operation, value != null);
+        if (value != null) return CompletableFuture.completedFuture(value);
+        return loader.get().thenApply(result -> {
+            cache.put(key, result, getCacheTtl(operation));
+            return result;
+        }).exceptionally(throwable -> {
+            Throwable cause = OpenstudAsyncHelper.unwrap(throwable);
+            T stale = cause instanceof Exception ? getStale(key, (Exception) cause) : null;
+            if (stale == null) throw new CompletionException(cause);
+            return stale;
+        });
+    }
 
-            // Create a new TrustManagerFactory that trusts both default and custom CAs
-            TrustManagerFactory tmfCombined = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmfCombined.init(keyStore);
+    private boolean isPublicCached(CacheOperation operation) {
+        return publicCache != null && getCacheTtl(operation) > 0;
+    }
 
-            // Find the X509TrustManager
-            for (TrustManager tm : tmfCombined.getTrustManagers()) {
-                if (tm instanceof X509TrustManager) {
-                    trustManager = (X509TrustManager) tm;
-                    break;
-                }
-            }
-            if (trustManager == null) {
-                throw new IllegalStateException("No X509TrustManager found in combined KeyStore");
-            }
+    /**
+     * Serves data that is the same for every student from the shared {@link PublicDataCache}.
+     */
+    private <T> CompletableFuture<T> publicCachedAsync(CacheOperation operation, Supplier<CompletableFuture<T>> loader, Object... arguments) {
+        if (!isPublicCached(operation)) return loader.get();
+        return publicCache.get(operation, getCacheTtl(operation), metrics, loader, arguments);
+    }
 
-            // Create an SSLContext that uses our combined TrustManager
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, new TrustManager[]{trustManager}, null);
+    /**
+     * Falls back to the expired cached value while Infostud is unavailable, that is when it answered with its
+     * maintenance page or its circuit is open.
+     *
+     * @return the stale value, null if the failure has to be reported
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getStale(CacheKey key, Exception e) {
+        boolean unavailable = e instanceof OpenstudInvalidResponseException && ((OpenstudInvalidResponseException) e).isMaintenance()
+                || apiCircuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+        if (!unavailable) return null;
+        T value = (T) cache.getStale(key);
+        if (value != null) log(Level.WARNING, "Infostud is unavailable, serving the cached " + key.getOperation());
+        return value;
+    }
 
-            sslSocketFactory = sslContext.getSocketFactory();
-            log(Level.FINE, "Custom SSLContext initialized successfully, combining default CAs with custom certificates.");
+    private void invalidateCache(CacheOperation operation) {
+        if (cache != null) cache.invalidate(studentID, operation);
+    }
 
-        } catch (Exception e) {
-            log(Level.SEVERE, "Failed to initialize custom SSLContext, falling back to default. Error: " + e.getMessage());
-            // Reset to null on failure to ensure default is used
-            return Pair.of(null, null);
-        }
+    public OpenstudCache getCache() {
+        return cache;
+    }
 
-        return Pair.of(sslSocketFactory, trustManager);
+    public PublicDataCache getPublicCache() {
+        return publicCache;
     }
 
+    public OpenstudMetrics getMetrics() {
+        return metrics;
+    }
 
-    private void init() {
-        if (provider == null) throw new IllegalArgumentException("Provider can't be left null");
-        else if (provider == OpenstudHelper.Provider.SAPIENZA) {
-            authenticator = new SapienzaAuthenticationHandler(this);
-            personal = new SapienzaBioHandler(this);
-            newsHandler = new SapienzaNewsHandler(this);
-            taxHandler = new SapienzaTaxHandler(this);
-            classroomHandler = new SapienzaClassroomHandler(this);
-            examHandler = new SapienzaExamHandler(this);
-            config = new SapienzaConfig();
-        }
-        endpointAPI = config.getEndpointAPI(mode);
-        endpointLogin = config.getEndpointLogin(mode);
-        endpointTimetable = config.getEndpointTimetable(mode);
-        key = config.getKey(mode);
+    public long getCacheTtl(CacheOperation operation) {
+        Long ttl = cacheTtl == null ? null : cacheTtl.get(operation);
+        return ttl != null ? ttl : operation.getDefaultTtl();
     }
 
     public ProviderConfig getConfig() {
@@ -320,8 +332,22 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return endpointTimetable;
     }
 
+    public String getEndpointWebsite() {
+        return endpointWebsite;
+    }
+
+    public String getEndpointPhoto() {
+        return endpointPhoto;
+    }
+
     public String getStudentPassword() {
-        return studentPassword;
+        // the password of a session manager instance is only asked for when a login needs it, once whatever the threads
+        String password = studentPassword;
+        if (password != null || passwordSupplier == null) return password;
+        synchronized (passwordLock) {
+            if (studentPassword == null) studentPassword = passwordSupplier.get();
+            return studentPassword;
+        }
     }
 
     public Logger getLogger() {
@@ -348,6 +374,36 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return limitSearch;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getDetailPageTimeout() {
+        return detailPageTimeout;
+    }
+
+    public TokenBucket getTimetableRateLimiter() {
+        return timetableRateLimiter;
+    }
+
+    public HostRateLimiter getHostRateLimiter() {
+        return hostRateLimiter;
+    }
+
+    /**
+     * Health of the Infostud endpoint, its state tells if the calls are currently failing fast.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return apiCircuitBreaker;
+    }
+
+    /**
+     * Health of the timetable (GOMP) endpoint.
+     */
+    public CircuitBreaker getTimetableCircuitBreaker() {
+        return timetableCircuitBreaker;
+    }
+
     public void setStudentPassword(String password) {
         studentPassword = password;
     }
@@ -360,20 +416,149 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return maxTries;
     }
 
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
     public void setToken(String token) {
+        setToken(token, System.nanoTime());
+    }
+
+    /**
+     * Restores a token obtained earlier, {@code issuedAt} being the {@link System#nanoTime()} it was issued at.
+     */
+    void setToken(String token, long issuedAt) {
         this.token = token;
+        tokenIssuedAt = issuedAt;
+        scheduleRenewal(tokenGeneration.incrementAndGet());
     }
 
-    public synchronized String getToken() {
+    public String getToken() {
         return this.token;
     }
 
+    /**
+     * Counter increased every time the token is replaced, see {@link #refreshToken(long)}.
+     */
+    public long getTokenGeneration() {
+        return tokenGeneration.get();
+    }
+
+    long getTokenIssuedAt() {
+        return tokenIssuedAt;
+    }
+
+    /**
+     * Milliseconds since the current token was issued, -1 if there is none.
+     */
+    public long getTokenAge() {
+        long issuedAt = tokenIssuedAt;
+        if (token == null || issuedAt == 0) return -1;
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - issuedAt);
+    }
+
+    /**
+     * Tells if the current token outlived the lifetime set with {@link OpenstudBuilder#setTokenLifetime(long)}.
+     */
+    public boolean isTokenExpired() {
+        long age = getTokenAge();
+        return age < 0 || age >= tokenLifetime;
+    }
+
+    public TokenStats getTokenStats() {
+        return new TokenStats(renewals.get(), failedRenewals.get(), expiredTokenHits.get(), getTokenAge());
+    }
+
+    /**
+     * Schedules the renewal of the token of the given generation {@code tokenRefreshAhead} milliseconds before it expires.
+     * A newer token replaces the pending renewal with its own.
+     */
+    private void scheduleRenewal(long generation) {
+        long delay = tokenLifetime - tokenRefreshAhead;
+        if (tokenRefreshAhead <= 0 || delay <= 0) return;
+        synchronized (refreshLock) {
+            if (shutdown) return;
+            if (renewal != null) renewal.cancel(false);
+            renewal = OpenstudAsyncHelper.getScheduler().schedule(() -> renewToken(generation), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void renewToken(long generation) {
+        // the login is blocking, keep it off the scheduler thread
+        try {
+            client.dispatcher().executorService().execute(() -> {
+                try {
+                    refreshToken(generation, true, false);
+                    if (getTokenGeneration() == generation) failedRenewals.incrementAndGet();
+                } catch (OpenstudRefreshException | OpenstudInvalidResponseException | RuntimeException e) {
+                    failedRenewals.incrementAndGet();
+                    log(Level.WARNING, "Background token renewal failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failedRenewals.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the background token renewal, the instance keeps working and refreshes expired tokens on demand.
+     * The transport is shared with other instances and is left running, see {@link OpenstudTransport#shutdown()}.
+     */
+    public void shutdown() {
+        synchronized (refreshLock) {
+            shutdown = true;
+            if (renewal != null) renewal.cancel(false);
+            renewal = null;
+        }
+    }
+
+    private boolean isLoggable(Level lvl) {
+        return logger != null && logger.isLoggable(lvl);
+    }
+
     void log(Level lvl, String str) {
-        if (logger != null) logger.log(lvl, str);
+        if (isLoggable(lvl)) logger.log(lvl, redact(str));
     }
 
     public void log(Level lvl, Object obj) {
-        if (logger != null) logger.log(lvl, obj.toString());
+        if (isLoggable(lvl)) logger.log(lvl, redact(String.valueOf(obj)));
+    }
+
+    /**
+     * The message is built only if the level is enabled on the logger.
+     */
+    public void log(Level lvl, Supplier<String> message) {
+        if (isLoggable(lvl)) logger.log(lvl, redact(message.get()));
+    }
+
+    /**
+     * Logs a sample of a response body at the level set with {@link OpenstudBuilder#setBodyLogging(Level, int)},
+     * nothing is done unless that level is enabled.
+     */
+    public void logBody(String body) {
+        if (body == null || bodyLogLength == 0 || !isLoggable(bodyLogLevel)) return;
+        if (bodyLogLength < 0 || body.length() <= bodyLogLength) {
+            logger.log(bodyLogLevel, redact("Response body (" + body.length() + " chars): " + body));
+            return;
+        }
+        // redact a bit more than the sample, so that a secret across the cut is still recognised
+        String sample = redact(body.substring(0, Math.min(body.length(), bodyLogLength + 256)));
+        logger.log(bodyLogLevel, "Response body (" + body.length() + " chars, truncated): " + sample.substring(0, Math.min(sample.length(), bodyLogLength)) + "...");
+    }
+
+    /**
+     * Hides the token and the credentials: the values of the sensitive JSON keys and query parameters, and any
+     * occurrence of the current token or password.
+     */
+    private String redact(String message) {
+        if (message == null) return null;
+        String redacted = SENSITIVE_JSON.matcher(message).replaceAll("$1***\"");
+        redacted = SENSITIVE_PARAMETER.matcher(redacted).replaceAll("$1***");
+        String currentToken = token;
+        if (currentToken != null && currentToken.length() >= 4) redacted = redacted.replace(currentToken, "***");
+        String password = studentPassword;
+        if (password != null && password.length() >= 4) redacted = redacted.replace(password, "***");
+        return redacted;
     }
 
     public boolean isReady() {
@@ -381,9 +566,65 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     }
 
     @Override
-    public synchronized void refreshToken() throws OpenstudRefreshException, OpenstudInvalidResponseException {
+    public void refreshToken() throws OpenstudRefreshException, OpenstudInvalidResponseException {
+        refreshToken(getTokenGeneration());
+    }
+
+    /**
+     * Refreshes the token the caller used, identified by its {@link #getTokenGeneration()}.
+     * Nothing is done if the token was already replaced since then, and callers arriving while a refresh is in progress
+     * wait for it and share its outcome, so that one expired token leads to a single login however many requests noticed it.
+     */
+    public void refreshToken(long generation) throws OpenstudRefreshException, OpenstudInvalidResponseException {
+        refreshToken(generation, false, true);
+    }
+
+    /**
+     * Same as {@link #refreshToken(long)} for the retry loops, which refresh the token after any retryable failure:
+     * only the failures telling that the token {@code expired} are counted in {@link TokenStats#getExpiredTokenHits()}.
+     */
+    void refreshToken(long generation, boolean expired) throws OpenstudRefreshException, OpenstudInvalidResponseException {
+        refreshToken(generation, false, expired);
+    }
+
+    private void refreshToken(long generation, boolean proactive, boolean expired) throws OpenstudRefreshException, OpenstudInvalidResponseException {
         if (!config.isRefreshEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        authenticator.refreshToken();
+        CompletableFuture<Void> refresh;
+        boolean owner = false;
+        synchronized (refreshLock) {
+            if (tokenGeneration.get() != generation) return;
+            if (refreshInFlight == null) {
+                refreshInFlight = new CompletableFuture<>();
+                owner = true;
+            }
+            refresh = refreshInFlight;
+        }
+        if (!owner) {
+            try {
+                refresh.join();
+                return;
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof OpenstudRefreshException) throw (OpenstudRefreshException) cause;
+                if (cause instanceof OpenstudInvalidResponseException) throw (OpenstudInvalidResponseException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw e;
+            }
+        }
+        if (expired) expiredTokenHits.incrementAndGet();
+        try {
+            authenticator.refreshToken();
+            if (proactive) renewals.incrementAndGet();
+            refresh.complete(null);
+        } catch (OpenstudRefreshException | OpenstudInvalidResponseException | RuntimeException | Error e) {
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (refreshLock) {
+                refreshInFlight = null;
+            }
+        }
     }
 
     @Override
@@ -419,14 +660,14 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     @Override
     public Student getInfoStudent() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isBioEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return personal.getInfoStudent();
+        return cached(CacheOperation.INFO_STUDENT, personal::getInfoStudent);
     }
 
     @Override
     public List<Career> getCareersChoicesForCertificate(Student student, CertificateType certificate) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isCareerForCertificateEnabled() || !config.isCertSupported(certificate))
             throw new IllegalStateException("Provider doesn't support this feature");
-        return personal.getCareersChoicesForCertificate(student, certificate);
+        return cached(CacheOperation.CAREERS_FOR_CERTIFICATE, () -> personal.getCareersChoicesForCertificate(student, certificate), certificate);
     }
 
     @Override
@@ -436,29 +677,66 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return personal.getCertificatePDF(student, career, certificate);
     }
 
+    @Override
+    public long getCertificatePDF(Student student, Career career, CertificateType certificate, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!config.isCertEnabled() || !config.isCertSupported(certificate))
+            throw new IllegalStateException("Provider doesn't support this feature");
+        return personal.getCertificatePDF(student, career, certificate, out);
+    }
+
+    public long getCertificatePDF(Student student, Career career, CertificateType certificate, WritableByteChannel channel) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return getCertificatePDF(student, career, certificate, Channels.newOutputStream(channel));
+    }
+
+    public long getCertificatePDF(Student student, Career career, CertificateType certificate, Path path) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return download(path, out -> getCertificatePDF(student, career, certificate, out));
+    }
+
     @Override
     public List<News> getNews(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage,
                               String query) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (isPublicCached(CacheOperation.NEWS))
+            return OpenstudAsyncHelper.awaitPublic(getNewsAsync(locale, withDescription, limit, page, maxPage, query));
         return newsHandler.getNews(locale, withDescription, limit, page, maxPage, query);
     }
 
     @Override
     public List<Event> getNewsletterEvents() throws OpenstudInvalidResponseException, OpenstudConnectionException {
         if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (isPublicCached(CacheOperation.NEWSLETTER_EVENTS)) return OpenstudAsyncHelper.awaitPublic(getNewsletterEventsAsync());
         return newsHandler.getNewsletterEvents();
     }
 
+    @Override
+    public NewsletterResult getNewsletter() throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return newsHandler.getNewsletter();
+    }
+
+    @Override
+    public List<News> getNewsUpdates(String locale, boolean withDescription, int maxPage, String query,
+                                     NewsSyncState state) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return newsHandler.getNewsUpdates(locale, withDescription, maxPage, query, state);
+    }
+
+    @Override
+    public List<Event> getNewsletterEventUpdates(NewsSyncState state) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return newsHandler.getNewsletterEventUpdates(state);
+    }
+
     @Override
     public List<Tax> getUnpaidTaxes() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return taxHandler.getUnpaidTaxes();
+        return cached(CacheOperation.UNPAID_TAXES, taxHandler::getUnpaidTaxes);
     }
 
     @Override
     public List<Tax> getPaidTaxes() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return taxHandler.getPaidTaxes();
+        return cached(CacheOperation.PAID_TAXES, taxHandler::getPaidTaxes);
     }
 
     @Override
@@ -468,33 +746,52 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return taxHandler.getPaymentSlipPDF(unpaidTax);
     }
 
+    @Override
+    public long getPaymentSlipPDF(Tax unpaidTax, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (unpaidTax.getStatus() == Tax.TaxStatus.PAID) throw new IllegalStateException("Provider doesn't support printing of paid slips");
+        return taxHandler.getPaymentSlipPDF(unpaidTax, out);
+    }
+
+    public long getPaymentSlipPDF(Tax unpaidTax, WritableByteChannel channel) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return getPaymentSlipPDF(unpaidTax, Channels.newOutputStream(channel));
+    }
+
+    public long getPaymentSlipPDF(Tax unpaidTax, Path path) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return download(path, out -> getPaymentSlipPDF(unpaidTax, out));
+    }
+
     @Override
     public Isee getCurrentIsee() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return taxHandler.getCurrentIsee();
+        return cached(CacheOperation.CURRENT_ISEE, taxHandler::getCurrentIsee);
     }
 
     @Override
     public List<Isee> getIseeHistory() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return taxHandler.getIseeHistory();
+        return cached(CacheOperation.ISEE_HISTORY, taxHandler::getIseeHistory);
     }
 
     @Override
     public List<Classroom> getClassRoom(String query, boolean withTimetable) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (isPublicCached(CacheOperation.CLASSROOMS)) return OpenstudAsyncHelper.awaitPublic(getClassRoomAsync(query, withTimetable));
         return classroomHandler.getClassRoom(query, withTimetable);
     }
 
     @Override
     public List<Lesson> getClassroomTimetable(Classroom room, LocalDate date) throws OpenstudConnectionException, OpenstudInvalidResponseException {
         if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (room == null) return new LinkedList<>();
+        if (isPublicCached(CacheOperation.CLASSROOM_TIMETABLE)) return getClassroomTimetable(room.getInternalId(), date);
         return classroomHandler.getClassroomTimetable(room, date);
     }
 
     @Override
     public List<Lesson> getClassroomTimetable(int id, LocalDate date) throws OpenstudConnectionException, OpenstudInvalidResponseException {
         if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (isPublicCached(CacheOperation.CLASSROOM_TIMETABLE)) return OpenstudAsyncHelper.awaitPublic(getClassroomTimetableAsync(id, date));
         return classroomHandler.getClassroomTimetable(id, date);
     }
 
@@ -507,13 +804,13 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     @Override
     public List<ExamDoable> getExamsDoable() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return examHandler.getExamsDoable();
+        return cached(CacheOperation.EXAMS_DOABLE, examHandler::getExamsDoable);
     }
 
     @Override
     public List<ExamDone> getExamsDone() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return examHandler.getExamsDone();
+        return cached(CacheOperation.EXAMS_DONE, examHandler::getExamsDone);
     }
 
     @Override
@@ -525,7 +822,7 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     @Override
     public List<ExamReservation> getActiveReservations() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return examHandler.getActiveReservations();
+        return cached(CacheOperation.ACTIVE_RESERVATIONS, examHandler::getActiveReservations);
     }
 
     @Override
@@ -537,13 +834,21 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
     @Override
     public Pair<Integer, String> insertReservation(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException, OpenstudInvalidCredentialsException {
         if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return examHandler.insertReservation(res);
+        try {
+            return examHandler.insertReservation(res);
+        } finally {
+            invalidateCache(CacheOperation.ACTIVE_RESERVATIONS);
+        }
     }
 
     @Override
     public int deleteReservation(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException, OpenstudInvalidCredentialsException {
         if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
-        return examHandler.deleteReservation(res);
+        try {
+            return examHandler.deleteReservation(res);
+        } finally {
+            invalidateCache(CacheOperation.ACTIVE_RESERVATIONS);
+        }
     }
 
     @Override
@@ -552,6 +857,20 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return examHandler.getExamReservationPDF(reservation);
     }
 
+    @Override
+    public long getExamReservationPDF(ExamReservation reservation, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.getExamReservationPDF(reservation, out);
+    }
+
+    public long getExamReservationPDF(ExamReservation reservation, WritableByteChannel channel) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return getExamReservationPDF(reservation, Channels.newOutputStream(channel));
+    }
+
+    public long getExamReservationPDF(ExamReservation reservation, Path path) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return download(path, out -> getExamReservationPDF(reservation, out));
+    }
+
     @Override
     public List<Event> getCalendarEvents(Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
@@ -564,9 +883,201 @@ public class Openstud implements AuthenticationHandler, BioHandler, NewsHandler,
         return personal.getStudentPhoto(student);
     }
 
+    @Override
+    public long getStudentPhoto(Student student, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!config.isStudentPhotoEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return personal.getStudentPhoto(student, out);
+    }
+
+    public long getStudentPhoto(Student student, WritableByteChannel channel) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return getStudentPhoto(student, Channels.newOutputStream(channel));
+    }
+
+    public long getStudentPhoto(Student student, Path path) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return download(path, out -> getStudentPhoto(student, out));
+    }
+
     @Override
     public StudentCard getStudentCard(Student student, boolean withPhoto) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!config.isStudentCardEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
         return personal.getStudentCard(student, withPhoto);
     }
+
+    @Override
+    public CompletableFuture<Student> getInfoStudentAsync() {
+        if (!config.isBioEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.INFO_STUDENT, personal::getInfoStudentAsync);
+    }
+
+    @Override
+    public CompletableFuture<List<Career>> getCareersChoicesForCertificateAsync(Student student, CertificateType certificate) {
+        if (!config.isCareerForCertificateEnabled() || !config.isCertSupported(certificate))
+            throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.CAREERS_FOR_CERTIFICATE, () -> personal.getCareersChoicesForCertificateAsync(student, certificate), certificate);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getCertificatePDFAsync(Student student, Career career, CertificateType certificate) {
+        if (!config.isCertEnabled() || !config.isCertSupported(certificate))
+            throw new IllegalStateException("Provider doesn't support this feature");
+        return personal.getCertificatePDFAsync(student, career, certificate);
+    }
+
+    @Override
+    public CompletableFuture<List<News>> getNewsAsync(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage,
+                                                     String query) {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return publicCachedAsync(CacheOperation.NEWS, () -> newsHandler.getNewsAsync(locale, withDescription, limit, page, maxPage, query),
+                endpointWebsite, locale, withDescription, limit, page, maxPage, query);
+    }
+
+    @Override
+    public CompletableFuture<List<Event>> getNewsletterEventsAsync() {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return publicCachedAsync(CacheOperation.NEWSLETTER_EVENTS, newsHandler::getNewsletterEventsAsync, endpointWebsite);
+    }
+
+    @Override
+    public CompletableFuture<NewsletterResult> getNewsletterAsync() {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return newsHandler.getNewsletterAsync();
+    }
+
+    @Override
+    public CompletableFuture<List<News>> getNewsUpdatesAsync(String locale, boolean withDescription, int maxPage, String query,
+                                                             NewsSyncState state) {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return newsHandler.getNewsUpdatesAsync(locale, withDescription, maxPage, query, state);
+    }
+
+    @Override
+    public CompletableFuture<List<Event>> getNewsletterEventUpdatesAsync(NewsSyncState state) {
+        if (!config.isNewsEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return newsHandler.getNewsletterEventUpdatesAsync(state);
+    }
+
+    @Override
+    public CompletableFuture<List<Tax>> getUnpaidTaxesAsync() {
+        if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.UNPAID_TAXES, taxHandler::getUnpaidTaxesAsync);
+    }
+
+    @Override
+    public CompletableFuture<List<Tax>> getPaidTaxesAsync() {
+        if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.PAID_TAXES, taxHandler::getPaidTaxesAsync);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getPaymentSlipPDFAsync(Tax unpaidTax) {
+        if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (unpaidTax.getStatus() == Tax.TaxStatus.PAID) throw new IllegalStateException("Provider doesn't support printing of paid slips");
+        return taxHandler.getPaymentSlipPDFAsync(unpaidTax);
+    }
+
+    @Override
+    public CompletableFuture<Isee> getCurrentIseeAsync() {
+        if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.CURRENT_ISEE, taxHandler::getCurrentIseeAsync);
+    }
+
+    @Override
+    public CompletableFuture<List<Isee>> getIseeHistoryAsync() {
+        if (!config.isTaxEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.ISEE_HISTORY, taxHandler::getIseeHistoryAsync);
+    }
+
+    @Override
+    public CompletableFuture<List<Classroom>> getClassRoomAsync(String query, boolean withTimetable) {
+        if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return publicCachedAsync(CacheOperation.CLASSROOMS, () -> classroomHandler.getClassRoomAsync(query, withTimetable),
+                endpointTimetable, query, withTimetable);
+    }
+
+    @Override
+    public CompletableFuture<List<Lesson>> getClassroomTimetableAsync(Classroom room, LocalDate date) {
+        if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        if (room == null) return CompletableFuture.completedFuture(new LinkedList<>());
+        if (isPublicCached(CacheOperation.CLASSROOM_TIMETABLE)) return getClassroomTimetableAsync(room.getInternalId(), date);
+        return classroomHandler.getClassroomTimetableAsync(room, date);
+    }
+
+    @Override
+    public CompletableFuture<List<Lesson>> getClassroomTimetableAsync(int id, LocalDate date) {
+        if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return publicCachedAsync(CacheOperation.CLASSROOM_TIMETABLE, () -> classroomHandler.getClassroomTimetableAsync(id, date),
+                endpointTimetable, id, date);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<Lesson>>> getTimetableAsync(List<ExamDoable> exams) {
+        if (!config.isClassroomEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return classroomHandler.getTimetableAsync(exams);
+    }
+
+    @Override
+    public CompletableFuture<List<ExamDoable>> getExamsDoableAsync() {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.EXAMS_DOABLE, examHandler::getExamsDoableAsync);
+    }
+
+    @Override
+    public CompletableFuture<List<ExamDone>> getExamsDoneAsync() {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.EXAMS_DONE, examHandler::getExamsDoneAsync);
+    }
+
+    @Override
+    public CompletableFuture<String> getCourseSurveyAsync(String surveyCode) {
+        if (!config.isSurveyEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.getCourseSurveyAsync(surveyCode);
+    }
+
+    @Override
+    public CompletableFuture<List<ExamReservation>> getActiveReservationsAsync() {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return cachedAsync(CacheOperation.ACTIVE_RESERVATIONS, examHandler::getActiveReservationsAsync);
+    }
+
+    @Override
+    public CompletableFuture<List<ExamReservation>> getAvailableReservationsAsync(ExamDoable exam, Student student) {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.getAvailableReservationsAsync(exam, student);
+    }
+
+    @Override
+    public CompletableFuture<Pair<Integer, String>> insertReservationAsync(ExamReservation res) {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.insertReservationAsync(res).whenComplete((result, throwable) -> invalidateCache(CacheOperation.ACTIVE_RESERVATIONS));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteReservationAsync(ExamReservation res) {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.deleteReservationAsync(res).whenComplete((result, throwable) -> invalidateCache(CacheOperation.ACTIVE_RESERVATIONS));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getExamReservationPDFAsync(ExamReservation reservation) {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.getExamReservationPDFAsync(reservation);
+    }
+
+    @Override
+    public CompletableFuture<List<Event>> getCalendarEventsAsync(Student student) {
+        if (!config.isExamEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return examHandler.getCalendarEventsAsync(student);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getStudentPhotoAsync(Student student) {
+        if (!config.isStudentPhotoEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return personal.getStudentPhotoAsync(student);
+    }
+
+    @Override
+    public CompletableFuture<StudentCard> getStudentCardAsync(Student student, boolean withPhoto) {
+        if (!config.isStudentCardEnabled()) throw new IllegalStateException("Provider doesn't support this feature");
+        return personal.getStudentCardAsync(student, withPhoto);
+    }
 }
\ No newline at end of file
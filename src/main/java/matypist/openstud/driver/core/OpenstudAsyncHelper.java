@@ -0,0 +1,371 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import matypist.openstud.driver.core.resilience.CircuitBreaker;
+import matypist.openstud.driver.core.resilience.RetryPolicy;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import matypist.openstud.driver.exceptions.OpenstudRefreshException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Non-blocking counterparts of the request/retry loops used by the provider handlers.
+ * Requests are dispatched through OkHttp's {@code enqueue}, so no thread is parked while a call is in flight.
+ */
+public class OpenstudAsyncHelper {
+    private static volatile ScheduledExecutorService scheduler;
+
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        T parse(Response response) throws IOException, OpenstudInvalidResponseException;
+    }
+
+    /**
+     * Enqueues the request and parses the response on the OkHttp dispatcher thread.
+     * Failures are mapped the same way the blocking handlers do: I/O errors become
+     * {@link OpenstudConnectionException}, malformed JSON becomes a JSON typed {@link OpenstudInvalidResponseException}.
+     * The permit of the host rate limiter is taken beforehand and the call is enqueued once it is due, so no dispatcher
+     * thread waits for it. Cancelling the returned future cancels the underlying call.
+     */
+    public static <T> CompletableFuture<T> enqueue(Openstud os, Request request, ResponseParser<T> parser) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long wait = 0;
+        HostRateLimiter limiter = os.getHostRateLimiter();
+        if (limiter != null && !HostRateLimiter.isPaced(request)) {
+            try {
+                wait = limiter.reserve(request.url().host());
+            } catch (HostRateLimiter.RateLimitTimeoutException e) {
+                OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
+                os.log(Level.SEVERE, connectionException);
+                future.completeExceptionally(connectionException);
+                return future;
+            }
+            request = HostRateLimiter.paced(request);
+        }
+        Call call = os.getClient().newCall(request);
+        Callback callback = new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
+                os.log(Level.SEVERE, connectionException);
+                future.completeExceptionally(connectionException);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response resp = response) {
+                    future.complete(parser.parse(resp));
+                } catch (IOException e) {
+                    OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
+                    os.log(Level.SEVERE, connectionException);
+                    future.completeExceptionally(connectionException);
+                } catch (JSONException e) {
+                    OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException(e).setJSONType();
+                    os.log(Level.SEVERE, invalidResponse);
+                    future.completeExceptionally(invalidResponse);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        if (wait > 0) {
+            getScheduler().schedule(() -> {
+                if (!future.isDone()) call.enqueue(callback);
+            }, wait, TimeUnit.MILLISECONDS);
+        } else call.enqueue(callback);
+        future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) call.cancel();
+        });
+        return future;
+    }
+
+    public static <T> CompletableFuture<T> retry(Openstud os, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                 Supplier<CompletableFuture<T>> attempt) {
+        return retry(os, refresh, failFast, attempt, result -> false);
+    }
+
+    /**
+     * Asynchronous version of {@link OpenstudRetryHelper#retry}, the backoff between attempts holds no thread.
+     * Every failed attempt with a retryable {@link OpenstudInvalidResponseException} is retried (refreshing the token first
+     * when {@code refresh} is set) until {@link Openstud#getMaxTries()} is reached or the {@link RetryPolicy} gives up,
+     * unless {@code failFast} matches. A failed refresh completes the future with an {@link OpenstudInvalidCredentialsException}.
+     * Calls toward an endpoint whose circuit is open fail right away, as in the blocking version.
+     *
+     * @param retryIf results that should be retried as if the attempt had failed, the last one is returned anyway
+     */
+    public static <T> CompletableFuture<T> retry(Openstud os, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                 Supplier<CompletableFuture<T>> attempt, Predicate<T> retryIf) {
+        return retry(os, os.getCircuitBreaker(), refresh, failFast, attempt, retryIf);
+    }
+
+    /**
+     * Same as {@link #retry(Openstud, boolean, Predicate, Supplier)} for the timetable (GOMP) endpoint, the token is never refreshed.
+     */
+    public static <T> CompletableFuture<T> retryPublic(Openstud os, Predicate<OpenstudInvalidResponseException> failFast,
+                                                       Supplier<CompletableFuture<T>> attempt) {
+        return retry(os, os.getTimetableCircuitBreaker(), false, failFast, attempt, result -> false);
+    }
+
+    private static <T> CompletableFuture<T> retry(Openstud os, CircuitBreaker breaker, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                  Supplier<CompletableFuture<T>> attempt, Predicate<T> retryIf) {
+        if (!breaker.isCallPermitted() && !breaker.tryStartProbe()) return failed(OpenstudRetryHelper.circuitOpen());
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, throwable) -> {
+            if (throwable == null) breaker.recordSuccess();
+            else OpenstudRetryHelper.record(breaker, unwrap(throwable));
+        });
+        attempt(os, refresh, failFast, attempt, retryIf, System.nanoTime(), 0, 0, 0, false, false, result);
+        return result;
+    }
+
+    private static <T> void attempt(Openstud os, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                    Supplier<CompletableFuture<T>> attempt, Predicate<T> retryIf, long start, int count,
+                                    long generation, long backoff, boolean renewed, boolean expired, CompletableFuture<T> result) {
+        if (result.isDone()) return;
+        // the generation of the token this attempt sends, the next one refreshes only that token
+        long[] used = new long[1];
+        Supplier<CompletableFuture<T>> begin = () -> {
+            used[0] = os.getTokenGeneration();
+            return attempt.get();
+        };
+        CompletableFuture<Void> ready = delay(backoff);
+        if (count > 0 && refresh) ready = ready.thenCompose(ignored -> refreshToken(os, generation, expired));
+        CompletableFuture<T> future = ready.thenCompose(ignored -> begin.get());
+        future.whenComplete((value, throwable) -> {
+            RetryPolicy policy = os.getRetryPolicy();
+            if (throwable == null) {
+                long delay = retryIf.test(value) && count + 1 < os.getMaxTries() ? policy.nextDelay(count + 1, start) : -1;
+                if (delay >= 0) {
+                    os.getMetrics().recordRetry(OpenstudRetryHelper.RETRY_RESULT);
+                    attempt(os, refresh, failFast, attempt, retryIf, start, count + 1, used[0], delay, renewed, false, result);
+                } else result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(throwable);
+            if (cause instanceof OpenstudRefreshException) {
+                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException((OpenstudRefreshException) cause);
+                os.log(Level.SEVERE, invalidCredentials);
+                result.completeExceptionally(invalidCredentials);
+            } else if (cause instanceof OpenstudInvalidResponseException) {
+                OpenstudInvalidResponseException e = (OpenstudInvalidResponseException) cause;
+                if (failFast.test(e) || !policy.isRetryable(e)) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                // the first attempt after an expired token only needs the refresh, it is not paced by the policy
+                boolean renew = refresh && e.isInvalidToken() && !renewed;
+                long delay = count + 1 == os.getMaxTries() ? -1 : renew ? 0 : policy.nextDelay(count + 1, start);
+                if (delay < 0) {
+                    os.log(Level.SEVERE, e);
+                    result.completeExceptionally(e);
+                } else {
+                    os.getMetrics().recordRetry(e.getType().name());
+                    attempt(os, refresh, failFast, attempt, retryIf, start, count + 1, used[0], delay, renewed || renew, e.isInvalidToken(), result);
+                }
+            } else result.completeExceptionally(cause);
+        });
+    }
+
+    /**
+     * Runs {@link Openstud#refreshToken()} off the caller thread, on the dispatcher's executor.
+     */
+    public static CompletableFuture<Void> refreshToken(Openstud os) {
+        return refreshToken(os, os.getTokenGeneration());
+    }
+
+    /**
+     * Runs {@link Openstud#refreshToken(long)} off the caller thread, on the dispatcher's executor.
+     */
+    public static CompletableFuture<Void> refreshToken(Openstud os, long generation) {
+        return refreshToken(os, generation, true);
+    }
+
+    /**
+     * @param expired whether the failure that triggered the refresh told that the token expired, see {@link Openstud#refreshToken(long, boolean)}
+     */
+    static CompletableFuture<Void> refreshToken(Openstud os, long generation, boolean expired) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                os.refreshToken(generation, expired);
+            } catch (OpenstudRefreshException | OpenstudInvalidResponseException e) {
+                throw new CompletionException(e);
+            }
+        }, os.getClient().dispatcher().executorService());
+    }
+
+    /**
+     * Completes once all the futures completed, preserving their order. Fails as soon as one of them fails.
+     */
+    public static <T> CompletableFuture<List<T>> allAsList(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> result = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> list = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) list.add(future.join());
+            return list;
+        });
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((value, throwable) -> {
+                if (throwable != null) result.completeExceptionally(unwrap(throwable));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Starts the tasks keeping at most {@code parallelism} of them in flight, the results preserve the order of the tasks.
+     * Fails as soon as one of them fails, the tasks not started yet are dropped.
+     */
+    public static <T> CompletableFuture<List<T>> boundedAllAsList(List<Supplier<CompletableFuture<T>>> tasks, int parallelism) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        if (tasks.isEmpty()) {
+            result.complete(new ArrayList<>());
+            return result;
+        }
+        List<Supplier<CompletableFuture<T>>> pending = new ArrayList<>(tasks);
+        AtomicReferenceArray<T> values = new AtomicReferenceArray<>(pending.size());
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(pending.size());
+        int window = Math.min(Math.max(1, parallelism), pending.size());
+        for (int i = 0; i < window; i++) startNext(pending, values, next, remaining, result);
+        return result;
+    }
+
+    private static <T> void startNext(List<Supplier<CompletableFuture<T>>> tasks, AtomicReferenceArray<T> values,
+                                      AtomicInteger next, AtomicInteger remaining, CompletableFuture<List<T>> result) {
+        int index = next.getAndIncrement();
+        if (index >= tasks.size() || result.isDone()) return;
+        CompletableFuture<T> future;
+        try {
+            future = tasks.get(index).get();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+                return;
+            }
+            values.set(index, value);
+            if (remaining.decrementAndGet() == 0) {
+                List<T> list = new ArrayList<>(values.length());
+                for (int i = 0; i < values.length(); i++) list.add(values.get(i));
+                result.complete(list);
+            } else startNext(tasks, values, next, remaining, result);
+        });
+    }
+
+    /**
+     * Blocks until the future completes, rethrowing the checked exceptions of the blocking API.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OpenstudConnectionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof OpenstudConnectionException) throw (OpenstudConnectionException) cause;
+            if (cause instanceof OpenstudInvalidResponseException) throw (OpenstudInvalidResponseException) cause;
+            if (cause instanceof OpenstudInvalidCredentialsException) throw (OpenstudInvalidCredentialsException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Same as {@link #await(CompletableFuture)} for the operations that don't involve the student credentials (e.g. GOMP).
+     */
+    public static <T> T awaitPublic(CompletableFuture<T> future) throws OpenstudConnectionException, OpenstudInvalidResponseException {
+        try {
+            return await(future);
+        } catch (OpenstudInvalidCredentialsException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a future completing after the given delay, without blocking any thread.
+     */
+    public static CompletableFuture<Void> delay(long millis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (millis <= 0) {
+            future.complete(null);
+            return future;
+        }
+        getScheduler().schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * Returns a future failing with the given exception if the source doesn't complete within the timeout, in which
+     * case the source is cancelled. A timeout of 0 or less returns the source itself.
+     */
+    public static <T> CompletableFuture<T> timeout(CompletableFuture<T> source, long millis, Supplier<? extends Throwable> onTimeout) {
+        if (millis <= 0) return source;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = getScheduler().schedule(() -> {
+            if (result.completeExceptionally(onTimeout.get())) source.cancel(true);
+        }, millis, TimeUnit.MILLISECONDS);
+        source.whenComplete((value, throwable) -> {
+            timer.cancel(false);
+            if (throwable != null) result.completeExceptionally(unwrap(throwable));
+            else result.complete(value);
+        });
+        result.whenComplete((value, throwable) -> {
+            if (throwable instanceof CancellationException) source.cancel(true);
+        });
+        return result;
+    }
+
+    public static <T> CompletableFuture<T> failed(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    public static Throwable unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null)
+            throwable = throwable.getCause();
+        return throwable;
+    }
+
+    static ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (OpenstudAsyncHelper.class) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "openstud-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,42 @@
+package matypist.openstud.driver.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of an operation run by {@link OpenstudSessionManager#executeAll} for many students.
+ * Every student ends up either in {@link #getValues()} or in {@link #getFailures()}, in the order they were submitted.
+ */
+public final class OpenstudBatchResult<T> {
+    private final Map<String, T> values = new LinkedHashMap<>();
+    private final Map<String, Throwable> failures = new LinkedHashMap<>();
+
+    void addValue(String studentID, T value) {
+        values.put(studentID, value);
+    }
+
+    void addFailure(String studentID, Throwable failure) {
+        failures.put(studentID, failure);
+    }
+
+    public Map<String, T> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "OpenstudBatchResult{" +
+                "values=" + values.size() +
+                ", failures=" + failures.size() +
+                '}';
+    }
+}
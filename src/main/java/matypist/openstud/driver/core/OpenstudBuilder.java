@@ -1,38 +1,143 @@
 package matypist.openstud.driver.core;
 
+import matypist.openstud.driver.core.cache.CacheOperation;
+import matypist.openstud.driver.core.cache.OpenstudCache;
+import matypist.openstud.driver.core.cache.PublicDataCache;
+import matypist.openstud.driver.core.metrics.OpenstudMetrics;
+import matypist.openstud.driver.core.resilience.RetryPolicy;
+
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class OpenstudBuilder {
     OpenstudHelper.Mode mode = OpenstudHelper.Mode.MOBILE;
     OpenstudHelper.Provider provider = OpenstudHelper.Provider.SAPIENZA;
     int retryCounter = 3;
+    RetryPolicy retryPolicy = new RetryPolicy();
+    int circuitFailureThreshold = 5;
+    long circuitOpenTime = TimeUnit.MINUTES.toMillis(1);
     int connectTimeout = 10;
     int writeTimeout = 10;
     int readTimeout = 30;
     String studentID;
     String password;
+    Supplier<String> passwordSupplier;
     Logger logger;
+    Level bodyLogLevel = Level.FINE;
+    int bodyLogLength = 1024;
     boolean readyState = false;
     int limitSearchResults = 13;
     int waitTimeClassroomRequest = 200;
+    int classroomRequestBurst = 4;
+    int parallelism = 4;
+    int detailPageTimeout = 15;
+    long tokenLifetime = TimeUnit.MINUTES.toMillis(30);
+    long tokenRefreshAhead = 0;
     Map<String, String> keyMap = new HashMap<>();
+    OpenstudTransport transport;
+    String endpointAPI;
+    String endpointLogin;
+    String endpointTimetable;
+    String endpointWebsite;
+    OpenstudCache cache;
+    PublicDataCache publicCache;
+    Map<CacheOperation, Long> cacheTtl = new EnumMap<>(CacheOperation.class);
+    OpenstudMetrics metrics = OpenstudMetrics.NOOP;
 
     public void setLimitSearchResults(int limitSearchResults) {
         this.limitSearchResults = limitSearchResults;
     }
 
+    /**
+     * Average spacing between the requests sent to the timetable endpoint, 0 disables the pacing.
+     */
     public void setClassroomWaitRequest(int millis) {
         if (millis < 0) return;
         this.waitTimeClassroomRequest = millis;
     }
 
+    /**
+     * Number of timetable requests that may be sent at once before {@link #setClassroomWaitRequest(int)} spacing applies.
+     */
+    public OpenstudBuilder setClassroomRequestBurst(int burst) {
+        if (burst < 1) return this;
+        this.classroomRequestBurst = burst;
+        return this;
+    }
+
+    /**
+     * Maximum number of requests a single operation keeps in flight when it fans out (e.g. calendar events).
+     * The dispatcher of the transport queues the calls over its own per-host limit, see {@link OpenstudTransport#OpenstudTransport(int)}.
+     */
+    public OpenstudBuilder setParallelism(int parallelism) {
+        if (parallelism < 1) return this;
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Maximum time, in seconds, given to a single detail page of the newsletter, a slower page is reported as failed
+     * without holding back the others. 0 disables the limit, leaving only the read timeout.
+     */
+    public OpenstudBuilder setDetailPageTimeout(int detailPageTimeout) {
+        if (detailPageTimeout < 0) return this;
+        this.detailPageTimeout = detailPageTimeout;
+        return this;
+    }
+
+    /**
+     * Expected validity of an Infostud token, counted from the login that issued it.
+     */
+    public OpenstudBuilder setTokenLifetime(long millis) {
+        if (millis <= 0) return this;
+        this.tokenLifetime = millis;
+        return this;
+    }
+
+    /**
+     * Renews the token in background this long before its lifetime ends, so that requests don't find it expired.
+     * The default 0 disables the renewal, a window as long as the lifetime or longer is ignored as well.
+     * An instance renewing its token keeps doing so until {@link Openstud#shutdown()} is called.
+     */
+    public OpenstudBuilder setTokenRefreshAhead(long millis) {
+        if (millis < 0) return this;
+        this.tokenRefreshAhead = millis;
+        return this;
+    }
+
     public OpenstudBuilder setRetryCounter(int retryCounter) {
         this.retryCounter = retryCounter;
         return this;
     }
 
+    /**
+     * Backoff, deadline, budget and retryable failures of the retries, {@link #setRetryCounter(int)} caps their number.
+     * The budget is shared by the instances built with the same policy, the per-student instances of an
+     * {@link OpenstudSessionManager} get a budget per student instead.
+     */
+    public OpenstudBuilder setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) return this;
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * The circuit of an endpoint opens after this many consecutive failed calls, or at once on a maintenance page, and
+     * stays open for the given time before a probe is let through. Circuits are shared per endpoint by the transport,
+     * the first instance contacting an endpoint sets its values.
+     */
+    public OpenstudBuilder setCircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1 || openMillis < 0) return this;
+        this.circuitFailureThreshold = failureThreshold;
+        this.circuitOpenTime = openMillis;
+        return this;
+    }
+
     public OpenstudBuilder setConnectTimeout(int connectTimeout) {
         this.connectTimeout = connectTimeout;
         return this;
@@ -63,6 +168,17 @@ public class OpenstudBuilder {
         return this;
     }
 
+    /**
+     * Level at which the response bodies are logged and how many characters of them are kept, 0 disables the body
+     * logging and a negative length logs them whole. Tokens and credentials are always redacted.
+     */
+    public OpenstudBuilder setBodyLogging(Level level, int maxLength) {
+        if (level == null) return this;
+        this.bodyLogLevel = level;
+        this.bodyLogLength = maxLength;
+        return this;
+    }
+
     public OpenstudBuilder forceReadyState() {
         this.readyState = true;
         return this;
@@ -83,6 +199,109 @@ public class OpenstudBuilder {
         return this;
     }
 
+    /**
+     * Replaces the endpoints of the provider, e.g. to point the driver to a local stand-in server.
+     * A null value keeps the endpoint of the provider, plain http endpoints are allowed.
+     *
+     * @param api       Infostud web services, the student photo included
+     * @param login     IDM login
+     * @param timetable timetable and classrooms (GOMP)
+     * @param website   news and newsletter
+     */
+    public OpenstudBuilder setEndpoints(String api, String login, String timetable, String website) {
+        this.endpointAPI = api;
+        this.endpointLogin = login;
+        this.endpointTimetable = timetable;
+        this.endpointWebsite = website;
+        return this;
+    }
+
+    /**
+     * Shares the connection pool, dispatcher and TLS setup of the given transport, {@link OpenstudTransport#getDefault()} is used when not set.
+     */
+    public OpenstudBuilder setTransport(OpenstudTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Caches the results of the read operations listed in {@link CacheOperation}, no caching is done when not set.
+     */
+    public OpenstudBuilder setCache(OpenstudCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Serves news, newsletter events, classrooms and timetables, which are the same for every student, from the given
+     * cache, e.g. {@link PublicDataCache#getDefault()} to share them with every instance of the process.
+     * No caching is done when not set.
+     */
+    public OpenstudBuilder setPublicCache(PublicDataCache publicCache) {
+        this.publicCache = publicCache;
+        return this;
+    }
+
+    /**
+     * Overrides the default time to live of an operation, a non positive value disables caching for it.
+     */
+    public OpenstudBuilder setCacheTtl(CacheOperation operation, long millis) {
+        this.cacheTtl.put(operation, millis);
+        return this;
+    }
+
+    /**
+     * Reports the latency of the operations, the HTTP exchanges, the retries and the cache lookups to the given
+     * metrics, e.g. an {@link matypist.openstud.driver.core.metrics.InMemoryOpenstudMetrics}. Nothing is measured when not set.
+     */
+    public OpenstudBuilder setMetrics(OpenstudMetrics metrics) {
+        this.metrics = metrics != null ? metrics : OpenstudMetrics.NOOP;
+        return this;
+    }
+
+    /**
+     * Copies every setting, used to derive the per-student builders from a shared template.
+     * The retry policy is copied too, so the copies don't draw from the retry budget of the template.
+     */
+    OpenstudBuilder copy() {
+        OpenstudBuilder builder = new OpenstudBuilder();
+        builder.mode = mode;
+        builder.provider = provider;
+        builder.retryCounter = retryCounter;
+        builder.retryPolicy = retryPolicy.copy();
+        builder.circuitFailureThreshold = circuitFailureThreshold;
+        builder.circuitOpenTime = circuitOpenTime;
+        builder.connectTimeout = connectTimeout;
+        builder.writeTimeout = writeTimeout;
+        builder.readTimeout = readTimeout;
+        builder.studentID = studentID;
+        builder.password = password;
+        builder.passwordSupplier = passwordSupplier;
+        builder.logger = logger;
+        builder.bodyLogLevel = bodyLogLevel;
+        builder.bodyLogLength = bodyLogLength;
+        builder.readyState = readyState;
+        builder.limitSearchResults = limitSearchResults;
+        builder.waitTimeClassroomRequest = waitTimeClassroomRequest;
+        builder.classroomRequestBurst = classroomRequestBurst;
+        builder.parallelism = parallelism;
+        builder.detailPageTimeout = detailPageTimeout;
+        builder.tokenLifetime = tokenLifetime;
+        builder.tokenRefreshAhead = tokenRefreshAhead;
+        builder.keyMap = keyMap != null ? new HashMap<>(keyMap) : null;
+        builder.transport = transport;
+        builder.endpointAPI = endpointAPI;
+        builder.endpointLogin = endpointLogin;
+        builder.endpointTimetable = endpointTimetable;
+        builder.endpointWebsite = endpointWebsite;
+        builder.cache = cache;
+        builder.publicCache = publicCache;
+        builder.cacheTtl = new EnumMap<>(CacheOperation.class);
+        builder.cacheTtl.putAll(cacheTtl);
+        builder.metrics = metrics;
+        return builder;
+    }
+
     public Openstud build() {
 
         return new Openstud(this);
@@ -0,0 +1,175 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import matypist.openstud.driver.core.resilience.CircuitBreaker;
+import matypist.openstud.driver.core.resilience.RetryPolicy;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import matypist.openstud.driver.exceptions.OpenstudRefreshException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Blocking retry loop shared by the provider handlers, driven by the {@link RetryPolicy} of the instance.
+ * Failed attempts with a retryable {@link OpenstudInvalidResponseException} are repeated (refreshing the token first
+ * when {@code refresh} is set) after the policy backoff, until {@link Openstud#getMaxTries()} is reached or the policy
+ * gives up. A failed refresh is reported as an {@link OpenstudInvalidCredentialsException}.
+ * Each call goes through the {@link CircuitBreaker} of its endpoint: while the circuit is open the call fails right away
+ * with a maintenance typed {@link OpenstudInvalidResponseException}, and the outcome of every call is reported to it.
+ */
+public class OpenstudRetryHelper {
+    /**
+     * Reason reported to the metrics when an attempt is repeated because of its result, see {@code retryIf}.
+     */
+    static final String RETRY_RESULT = "RESULT";
+
+    /**
+     * @param <E> a further exception of the attempt, inferred from the lambda (e.g. {@code OpenstudInvalidAnswerException})
+     */
+    @FunctionalInterface
+    public interface Attempt<T, E extends Exception> {
+        T run() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, OpenstudRefreshException, E;
+    }
+
+    public static <T, E extends Exception> T retry(Openstud os, boolean refresh, Attempt<T, E> attempt)
+            throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, E {
+        return retry(os, refresh, e -> false, attempt, result -> false);
+    }
+
+    public static <T, E extends Exception> T retry(Openstud os, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                   Attempt<T, E> attempt)
+            throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, E {
+        return retry(os, refresh, failFast, attempt, result -> false);
+    }
+
+    /**
+     * Same as {@link #retry(Openstud, boolean, Predicate, Attempt)} for the operations that don't involve the student
+     * credentials (e.g. GOMP), the token is never refreshed.
+     */
+    public static <T> T retryPublic(Openstud os, Predicate<OpenstudInvalidResponseException> failFast, Attempt<T, RuntimeException> attempt)
+            throws OpenstudConnectionException, OpenstudInvalidResponseException {
+        try {
+            return execute(os, os.getTimetableCircuitBreaker(), false, failFast, attempt, result -> false);
+        } catch (OpenstudInvalidCredentialsException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param failFast failures that are not retried whatever the policy says
+     * @param retryIf  results that should be retried as if the attempt had failed, the last one is returned anyway
+     */
+    public static <T, E extends Exception> T retry(Openstud os, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                   Attempt<T, E> attempt, Predicate<T> retryIf)
+            throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, E {
+        return execute(os, os.getCircuitBreaker(), refresh, failFast, attempt, retryIf);
+    }
+
+    private static <T, E extends Exception> T execute(Openstud os, CircuitBreaker breaker, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                      Attempt<T, E> attempt, Predicate<T> retryIf)
+            throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, E {
+        if (!breaker.isCallPermitted() && !breaker.tryStartProbe()) throw circuitOpen();
+        try {
+            T result = loop(os, refresh, failFast, attempt, retryIf);
+            breaker.recordSuccess();
+            return result;
+        } catch (Exception e) {
+            record(breaker, e);
+            throw e;
+        } catch (Error e) {
+            breaker.recordFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Reports the failure of a call: a maintenance page opens the circuit at once, answers telling that the server is
+     * up (rate limit, expired token, wrong credentials...) count as successes, anything else as a failure.
+     * Calls that ended on the client side, cancelled, interrupted or held back by the rate limiter, are not counted.
+     */
+    static void record(CircuitBreaker breaker, Throwable throwable) {
+        if (isLocal(throwable)) {
+            // a probe ended this way must not leave the circuit half-open
+            breaker.abortProbe();
+        } else if (throwable instanceof OpenstudInvalidResponseException) {
+            OpenstudInvalidResponseException e = (OpenstudInvalidResponseException) throwable;
+            if (e.isMaintenance()) breaker.trip();
+            else if (e.isRateLimit() || e.isInvalidToken()) breaker.recordSuccess();
+            else breaker.recordFailure();
+        } else if (throwable instanceof OpenstudConnectionException || throwable instanceof RuntimeException || throwable instanceof Error)
+            breaker.recordFailure();
+        else breaker.recordSuccess();
+    }
+
+    private static boolean isLocal(Throwable throwable) {
+        if (throwable instanceof CancellationException) return true;
+        for (Throwable cause = throwable; cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+            if (cause instanceof HostRateLimiter.RateLimitTimeoutException || cause instanceof InterruptedException) return true;
+            // a read or connect timeout is the server's, an interrupted or cancelled exchange is not
+            if (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException)) return true;
+        }
+        return false;
+    }
+
+    static OpenstudInvalidResponseException circuitOpen() {
+        return new OpenstudInvalidResponseException("Server is unavailable, circuit breaker is open").setMaintenanceType();
+    }
+
+    private static <T, E extends Exception> T loop(Openstud os, boolean refresh, Predicate<OpenstudInvalidResponseException> failFast,
+                                                   Attempt<T, E> attempt, Predicate<T> retryIf)
+            throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, E {
+        RetryPolicy policy = os.getRetryPolicy();
+        long start = System.nanoTime();
+        int count = 0;
+        long generation = 0;
+        boolean renewed = false;
+        boolean expired = false;
+        while (true) {
+            T result;
+            try {
+                if (count > 0 && refresh) os.refreshToken(generation, expired);
+                generation = os.getTokenGeneration();
+                result = attempt.run();
+            } catch (OpenstudInvalidResponseException e) {
+                if (failFast.test(e) || !policy.isRetryable(e)) throw e;
+                // the first attempt after an expired token only needs the refresh, it is not paced by the policy
+                expired = e.isInvalidToken();
+                boolean renew = refresh && expired && !renewed;
+                long delay = ++count == os.getMaxTries() ? -1 : renew ? 0 : policy.nextDelay(count, start);
+                renewed |= renew;
+                if (delay < 0) {
+                    os.log(Level.SEVERE, e);
+                    throw e;
+                }
+                os.getMetrics().recordRetry(e.getType().name());
+                sleep(delay);
+                continue;
+            } catch (OpenstudRefreshException e) {
+                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
+                os.log(Level.SEVERE, invalidCredentials);
+                throw invalidCredentials;
+            }
+            if (!retryIf.test(result)) return result;
+            expired = false;
+            long delay = ++count == os.getMaxTries() ? -1 : policy.nextDelay(count, start);
+            if (delay < 0) return result;
+            os.getMetrics().recordRetry(RETRY_RESULT);
+            sleep(delay);
+        }
+    }
+
+    private static void sleep(long millis) throws OpenstudConnectionException {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenstudConnectionException(e);
+        }
+    }
+}
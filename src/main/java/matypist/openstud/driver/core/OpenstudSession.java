@@ -0,0 +1,120 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.resilience.RetryPolicy;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact state the {@link OpenstudSessionManager} keeps for a student between operations: the token and its timestamps.
+ * The {@link Openstud} instance running an operation is derived from it and discarded afterwards.
+ * The operations of the student wait in a queue of their own until one of its slots is free, so a busy student
+ * holds no thread of the manager.
+ */
+public final class OpenstudSession {
+    private final String studentID;
+    private final int concurrency;
+    private final RetryPolicy retryPolicy;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+    private volatile String token;
+    private volatile long tokenIssuedAt;
+    private volatile long lastRefresh;
+    private volatile long lastUsed;
+
+    OpenstudSession(String studentID, int concurrency, RetryPolicy retryPolicy) {
+        this.studentID = studentID;
+        this.concurrency = concurrency;
+        this.retryPolicy = retryPolicy;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    public String getStudentID() {
+        return studentID;
+    }
+
+    public boolean hasToken() {
+        return token != null;
+    }
+
+    /**
+     * Epoch millis of the last time a token was obtained, 0 if never.
+     */
+    public long getLastRefresh() {
+        return lastRefresh;
+    }
+
+    /**
+     * Epoch millis of the last operation started with this session.
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the token was issued.
+     */
+    long getTokenIssuedAt() {
+        return tokenIssuedAt;
+    }
+
+    void updateToken(String token, long issuedAt) {
+        if (token == null || token.equals(this.token)) return;
+        this.tokenIssuedAt = issuedAt;
+        this.token = token;
+        this.lastRefresh = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - issuedAt);
+    }
+
+    /**
+     * The retries of every operation of the student draw from the budget of this policy.
+     */
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Queues an operation, it is started by {@link #poll()} once a slot is free.
+     */
+    synchronized void offer(Runnable start) {
+        waiting.add(start);
+    }
+
+    /**
+     * @return the next operation to start taking a slot for it, null if there is none or no slot is free
+     */
+    synchronized Runnable poll() {
+        if (running >= concurrency || waiting.isEmpty()) return null;
+        running++;
+        return waiting.poll();
+    }
+
+    /**
+     * Frees the slot of an operation that completed.
+     */
+    synchronized void release() {
+        running--;
+    }
+
+    synchronized boolean isIdle() {
+        return running == 0 && waiting.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "OpenstudSession{" +
+                "studentID='" + studentID + '\'' +
+                ", hasToken=" + hasToken() +
+                ", lastRefresh=" + lastRefresh +
+                ", lastUsed=" + lastUsed +
+                '}';
+    }
+}
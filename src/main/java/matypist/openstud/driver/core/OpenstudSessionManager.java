@@ -0,0 +1,240 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.ratelimit.TokenBucket;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import matypist.openstud.driver.exceptions.OpenstudUserNotEnabledException;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs operations on behalf of many students over one shared {@link OpenstudTransport}.
+ * Only a compact {@link OpenstudSession} is kept per student: every operation derives a short-lived {@link Openstud}
+ * from it, reusing the token of the previous operations, and stores back the token it ends up with.
+ * Operations are started at a global rate and with bounded concurrency, both overall and per student: the operations
+ * of a student beyond its concurrency wait in the queue of its session, without holding a thread of the manager.
+ * The rate counts operations, not HTTP requests: the requests of an operation (a login, the retries...) are paced per
+ * host by the {@link matypist.openstud.driver.core.ratelimit.HostRateLimiter} of the transport.
+ */
+public class OpenstudSessionManager {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Asked for the password of a student only when a login is needed: on its first operation and whenever its token
+     * has to be refreshed.
+     */
+    @FunctionalInterface
+    public interface PasswordProvider {
+        String getPassword(String studentID);
+    }
+
+    @FunctionalInterface
+    public interface SessionOperation<T> {
+        T apply(Openstud os) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
+    }
+
+    private final OpenstudBuilder template;
+    private final OpenstudTransport transport;
+    private final PasswordProvider passwordProvider;
+    private final int studentConcurrency;
+    private final long idleTimeout;
+    private final TokenBucket rateLimiter;
+    private final ExecutorService executor;
+    private final ScheduledFuture<?> evictionTask;
+    private final Map<String, OpenstudSession> sessions = new ConcurrentHashMap<>();
+
+    OpenstudSessionManager(OpenstudSessionManagerBuilder builder) {
+        this.template = builder.template.copy();
+        this.transport = template.transport != null ? template.transport : OpenstudTransport.getDefault();
+        this.passwordProvider = builder.passwordProvider;
+        this.studentConcurrency = builder.studentConcurrency;
+        this.idleTimeout = builder.idleTimeout;
+        this.rateLimiter = new TokenBucket(builder.requestsPerSecond, builder.burst);
+        this.executor = Executors.newFixedThreadPool(builder.maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "openstud-session-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeout / 2, TimeUnit.SECONDS.toMillis(1));
+        this.evictionTask = OpenstudAsyncHelper.getScheduler().scheduleWithFixedDelay(this::evictIdleSessions, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the operation for the student on the calling thread, logging in first if the session has no token yet.
+     */
+    public <T> T execute(String studentID, SessionOperation<T> operation) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        OpenstudSession session = getOrCreateSession(studentID);
+        CompletableFuture<Void> turn = new CompletableFuture<>();
+        schedule(session, () -> {
+            // the caller stopped waiting, the slot goes to the next operation
+            if (!turn.complete(null)) finish(session);
+        });
+        try {
+            OpenstudAsyncHelper.await(turn);
+        } catch (OpenstudConnectionException e) {
+            if (!turn.isCancelled()) finish(session);
+            throw e;
+        }
+        try {
+            rateLimiter.acquire();
+            return run(session, operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenstudConnectionException(e);
+        } finally {
+            finish(session);
+        }
+    }
+
+    /**
+     * Runs the operation for the student on the manager threads.
+     */
+    public <T> CompletableFuture<T> submit(String studentID, SessionOperation<T> operation) {
+        OpenstudSession session = getOrCreateSession(studentID);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        schedule(session, () -> OpenstudAsyncHelper.delay(rateLimiter.reserve()).thenRun(() -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (!future.isDone()) future.complete(run(session, operation));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        finish(session);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+                finish(session);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Runs the operation for every student, e.g. {@code executeAll(ids, Openstud::getActiveReservations)}.
+     * A failing student doesn't stop the others, its exception is reported in the result.
+     */
+    public <T> CompletableFuture<OpenstudBatchResult<T>> executeAll(Collection<String> studentIDs, SessionOperation<T> operation) {
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (String studentID : studentIDs) futures.computeIfAbsent(studentID, id -> submit(id, operation));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).handle((ignored, throwable) -> {
+            OpenstudBatchResult<T> result = new OpenstudBatchResult<>();
+            for (Map.Entry<String, CompletableFuture<T>> entry : futures.entrySet()) {
+                try {
+                    result.addValue(entry.getKey(), entry.getValue().join());
+                } catch (CompletionException | CancellationException e) {
+                    result.addFailure(entry.getKey(), OpenstudAsyncHelper.unwrap(e));
+                }
+            }
+            return result;
+        });
+    }
+
+    private OpenstudSession getOrCreateSession(String studentID) {
+        return sessions.computeIfAbsent(studentID, id -> new OpenstudSession(id, studentConcurrency, template.retryPolicy.copy()));
+    }
+
+    private void schedule(OpenstudSession session, Runnable start) {
+        session.offer(start);
+        drain(session);
+    }
+
+    private void finish(OpenstudSession session) {
+        session.release();
+        drain(session);
+    }
+
+    private void drain(OpenstudSession session) {
+        Runnable start;
+        while ((start = session.poll()) != null) start.run();
+    }
+
+    private <T> T run(OpenstudSession session, SessionOperation<T> operation) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        session.touch();
+        Openstud os = open(session);
+        try {
+            return operation.apply(os);
+        } finally {
+            session.updateToken(os.getToken(), os.getTokenIssuedAt());
+        }
+    }
+
+    private Openstud open(OpenstudSession session) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        OpenstudBuilder builder = template.copy()
+                .setStudentID(session.getStudentID())
+                .setPassword(null)
+                .setTransport(transport);
+        builder.passwordSupplier = () -> passwordProvider.getPassword(session.getStudentID());
+        // the instance lives for one operation, a background renewal would keep it alive for nothing
+        builder.tokenRefreshAhead = 0;
+        builder.retryPolicy = session.getRetryPolicy();
+        String token = session.getToken();
+        if (token == null) {
+            Openstud os = builder.build();
+            try {
+                os.login();
+            } catch (OpenstudUserNotEnabledException e) {
+                throw new OpenstudInvalidCredentialsException(e);
+            }
+            return os;
+        }
+        Openstud os = builder.forceReadyState().build();
+        os.setToken(token, session.getTokenIssuedAt());
+        return os;
+    }
+
+    public OpenstudSession getSession(String studentID) {
+        return sessions.get(studentID);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Drops the session of the student, its next operation logs in again.
+     */
+    public void invalidate(String studentID) {
+        sessions.remove(studentID);
+    }
+
+    /**
+     * Drops the sessions with no operation running that weren't used for the idle timeout.
+     * It runs periodically on its own, it is exposed to trigger it on demand.
+     *
+     * @return the number of sessions dropped
+     */
+    public int evictIdleSessions() {
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        int evicted = 0;
+        for (OpenstudSession session : sessions.values()) {
+            if (session.getLastUsed() < deadline && session.isIdle() && sessions.remove(session.getStudentID(), session))
+                evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Stops the manager threads once the operations already submitted complete and forgets every session.
+     * The transport is shared and is left running, see {@link OpenstudTransport#shutdown()}.
+     */
+    public void shutdown() {
+        evictionTask.cancel(false);
+        executor.shutdown();
+        sessions.clear();
+    }
+}
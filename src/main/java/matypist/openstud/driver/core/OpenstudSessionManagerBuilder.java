@@ -0,0 +1,74 @@
+package matypist.openstud.driver.core;
+
+import java.util.concurrent.TimeUnit;
+
+public class OpenstudSessionManagerBuilder {
+    OpenstudBuilder template = new OpenstudBuilder();
+    OpenstudSessionManager.PasswordProvider passwordProvider;
+    int maxConcurrency = 16;
+    int studentConcurrency = 1;
+    double requestsPerSecond = 20;
+    int burst = 20;
+    long idleTimeout = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Settings shared by every session (mode, provider, timeouts, retries, cache...), student ID and password are ignored.
+     * Its transport is shared by all the sessions, {@link OpenstudTransport#getDefault()} is used when it has none.
+     */
+    public OpenstudSessionManagerBuilder setTemplate(OpenstudBuilder template) {
+        if (template == null) return this;
+        this.template = template;
+        return this;
+    }
+
+    /**
+     * Source of the passwords, queried whenever a session has to log in. The manager never stores them.
+     */
+    public OpenstudSessionManagerBuilder setPasswordProvider(OpenstudSessionManager.PasswordProvider passwordProvider) {
+        this.passwordProvider = passwordProvider;
+        return this;
+    }
+
+    /**
+     * Maximum number of operations running at the same time, across all the students.
+     */
+    public OpenstudSessionManagerBuilder setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) return this;
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Maximum number of operations running at the same time for a single student, the others wait in its queue.
+     */
+    public OpenstudSessionManagerBuilder setStudentConcurrency(int studentConcurrency) {
+        if (studentConcurrency < 1) return this;
+        this.studentConcurrency = studentConcurrency;
+        return this;
+    }
+
+    /**
+     * Rate at which operations are started, across all the students. It counts operations and not HTTP requests, an
+     * operation may send several of them (e.g. a login first).
+     */
+    public OpenstudSessionManagerBuilder setRateLimit(double requestsPerSecond, int burst) {
+        if (!(requestsPerSecond > 0) || burst < 1) return this;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        return this;
+    }
+
+    /**
+     * Sessions not used for this long are dropped, the next operation of the student logs in again.
+     */
+    public OpenstudSessionManagerBuilder setIdleTimeout(long millis) {
+        if (millis <= 0) return this;
+        this.idleTimeout = millis;
+        return this;
+    }
+
+    public OpenstudSessionManager build() {
+        if (passwordProvider == null) throw new IllegalArgumentException("Password provider can't be left null");
+        return new OpenstudSessionManager(this);
+    }
+}
@@ -0,0 +1,355 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import matypist.openstud.driver.core.ratelimit.TokenBucket;
+import matypist.openstud.driver.core.resilience.CircuitBreaker;
+import okhttp3.ConnectionPool;
+import okhttp3.ConnectionSpec;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide HTTP transport shared by {@link Openstud} instances.
+ * It owns the {@link ConnectionPool}, the {@link Dispatcher} and the TLS setup of every provider, so that
+ * per-student instances only derive a lightweight client from it and reuse its warm keep-alive connections.
+ * The TLS setup is computed once per provider, the first time an instance of that provider is built.
+ */
+public class OpenstudTransport {
+    /**
+     * Calls a default transport runs concurrently toward a single host, enough for a few instances fanning out at the
+     * default parallelism at the same time.
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+    private static volatile OpenstudTransport defaultTransport;
+    private final OkHttpClient client;
+    private final Map<OpenstudHelper.Provider, Pair<SSLSocketFactory, X509TrustManager>> sslComponents = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final HostRateLimiter hostRateLimiter = new HostRateLimiter();
+
+    public OpenstudTransport() {
+        this(DEFAULT_MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * @param maxRequestsPerHost calls running concurrently toward a single host, the fan-out of every instance using
+     *                           this transport is bounded by it as well as by its parallelism
+     */
+    public OpenstudTransport(int maxRequestsPerHost) {
+        this(new ConnectionPool(), newDispatcher(maxRequestsPerHost));
+    }
+
+    /**
+     * The settings of the given dispatcher are left as they are, instances built on this transport never change them.
+     */
+    public OpenstudTransport(ConnectionPool connectionPool, Dispatcher dispatcher) {
+        client = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .retryOnConnectionFailure(true)
+                .addInterceptor(hostRateLimiter)
+                .connectionSpecs(Collections.singletonList(ConnectionSpec.COMPATIBLE_TLS))
+                .build();
+    }
+
+    private static Dispatcher newDispatcher(int maxRequestsPerHost) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
+    /**
+     * Returns the transport used by every {@link Openstud} built without an explicit one.
+     */
+    public static OpenstudTransport getDefault() {
+        if (defaultTransport == null) {
+            synchronized (OpenstudTransport.class) {
+                if (defaultTransport == null) defaultTransport = new OpenstudTransport();
+            }
+        }
+        return defaultTransport;
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return client.connectionPool();
+    }
+
+    public Dispatcher getDispatcher() {
+        return client.dispatcher();
+    }
+
+    /**
+     * Derives a client sharing the pool and the dispatcher of this transport, with the given timeouts (in seconds)
+     * and the TLS setup of the provider.
+     */
+    OkHttpClient newClient(OpenstudHelper.Provider provider, int connectTimeout, int writeTimeout, int readTimeout, Logger logger) {
+        OkHttpClient.Builder clientBuilder = client.newBuilder()
+                .connectTimeout(connectTimeout, TimeUnit.SECONDS)
+                .writeTimeout(writeTimeout, TimeUnit.SECONDS)
+                .readTimeout(readTimeout, TimeUnit.SECONDS);
+
+        Pair<SSLSocketFactory, X509TrustManager> ssl = sslComponents.computeIfAbsent(provider, key -> setupCustomSSL(key, logger));
+        SSLSocketFactory sslSocketFactory = ssl.getLeft();
+        X509TrustManager trustManager = ssl.getRight();
+
+        // Apply custom SSLSocketFactory only if successfully created
+        if (sslSocketFactory != null && trustManager != null) {
+            clientBuilder.sslSocketFactory(sslSocketFactory, trustManager);
+        }
+        return clientBuilder.build();
+    }
+
+    /**
+     * Returns the adaptive per-host limiter every request sent through this transport goes through.
+     * The aggregate traffic of all the instances toward each host is paced by it.
+     */
+    public HostRateLimiter getHostRateLimiter() {
+        return hostRateLimiter;
+    }
+
+    /**
+     * Returns the rate limiter shared by every instance sending requests to the given endpoint.
+     * It is created with the given rate and burst by the first caller, later callers share it as it is.
+     */
+    public TokenBucket getRateLimiter(String endpoint, double permitsPerSecond, int burst) {
+        return rateLimiters.computeIfAbsent(endpoint, key -> new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * Returns the circuit breaker shared by every instance sending requests to the given endpoint.
+     * It is created with the given settings by the first caller, later callers share it as it is.
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint, int failureThreshold, long openMillis) {
+        return circuitBreakers.computeIfAbsent(endpoint, key -> new CircuitBreaker(failureThreshold, openMillis));
+    }
+
+    /**
+     * Closes the idle connections and stops the dispatcher threads once the calls in flight complete.
+     * Clients derived from this transport can't be used anymore afterwards.
+     */
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * Loads a single PEM certificate from resources into the provided KeyStore.
+     * @param keyStore The KeyStore to add the certificate to.
+     * @param pemResourcePath The resource path of the PEM file (e.g., "certs/sapienza/uniroma1.pem").
+     * @param alias The alias to assign to the certificate entry.
+     * @param logger The logger receiving the outcome, may be null.
+     * @return true if the certificate was found and loaded, false otherwise.
+     * @throws Exception If certificate parsing or KeyStore operations fail.
+     */
+    private boolean loadCertificate(KeyStore keyStore, String pemResourcePath, String alias, Logger logger) throws Exception {
+        InputStream pemInputStream = getClass().getClassLoader().getResourceAsStream(pemResourcePath);
+        if (pemInputStream == null) {
+            log(logger, Level.WARNING, "Custom certificate '" + pemResourcePath + "' not found in resources. Skipping.");
+            return false; // Certificate not found
+        }
+
+        try {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            X509Certificate cert = (X509Certificate) cf.generateCertificate(pemInputStream);
+            keyStore.setCertificateEntry(alias, cert);
+            log(logger, Level.FINE, "Loaded custom certificate '" + pemResourcePath + "' with alias '" + alias + "'.");
+            return true; // Certificate loaded
+        } finally {
+            if (pemInputStream != null) {
+                pemInputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Loads all certificates from a given resource directory into the KeyStore.
+     * This method is designed to work both from a filesystem (IDE) and a JAR file.
+     * @param keyStore The KeyStore to add the certificates to.
+     * @param path The resource path of the directory (e.g., "certs/sapienza").
+     * @param logger The logger receiving the outcome, may be null.
+     * @return true if at least one certificate was loaded, false otherwise.
+     */
+    private boolean loadCertificatesFromResourceDirectory(KeyStore keyStore, String path, Logger logger) {
+        boolean loadedAny = false;
+        log(logger, Level.FINE, "Loading custom certificates from resource directory: " + path);
+
+        try {
+            URL dirURL = getClass().getClassLoader().getResource(path);
+
+            if (dirURL == null) {
+                log(logger, Level.WARNING, "Resource directory '" + path + "' not found. Skipping custom certificate loading.");
+                return false;
+            }
+
+            if (dirURL.getProtocol().equals("file")) {
+                // Running from filesystem (e.g., IDE)
+                File certDir = new File(dirURL.toURI());
+                File[] files = certDir.listFiles();
+                if (files == null) {
+                    log(logger, Level.WARNING, "Could not list files in directory: " + certDir.getAbsolutePath());
+                    return false;
+                }
+                int aliasCounter = 0;
+                for (File file : files) {
+                    if (file.isFile()) {
+                        String resourcePath = path + "/" + file.getName();
+                        String alias = "custom-cert-" + (aliasCounter++);
+                        if (loadCertificate(keyStore, resourcePath, alias, logger)) {
+                            loadedAny = true;
+                        }
+                    }
+                }
+            } else if (dirURL.getProtocol().equals("jar")) {
+                // Running from JAR
+                JarURLConnection jarURLConnection = (JarURLConnection) dirURL.openConnection();
+                JarFile jarFile = jarURLConnection.getJarFile();
+                java.util.Enumeration<JarEntry> entries = jarFile.entries();
+
+                String dirPath = path + "/";
+                int aliasCounter = 0;
+
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String entryName = entry.getName();
+                    if (entryName.startsWith(dirPath) && !entry.isDirectory()) {
+                        String alias = "custom-cert-" + (aliasCounter++);
+                        if (loadCertificate(keyStore, entryName, alias, logger)) {
+                            loadedAny = true;
+                        }
+                    }
+                }
+            } else {
+                log(logger, Level.WARNING, "Unsupported protocol '" + dirURL.getProtocol() + "' for resource directory. Skipping custom certificates.");
+                return false;
+            }
+        } catch (Exception e) {
+            // Catch all exceptions related to cert loading (IO, Security, URI, etc.)
+            log(logger, Level.SEVERE, "Failed to load certificates from directory '" + path + "'. Error: " + e.getMessage());
+            return false;
+        }
+
+        return loadedAny;
+    }
+
+
+    /**
+     * Sets up a custom SSLContext and TrustManager.
+     * If the provider is SAPIENZA, this attempts to load all certificates
+     * from the 'certs/sapienza' resource directory and adds them to the default system trust store.
+     * If the provider is not SAPIENZA, or if the custom certs are not found,
+     * it returns nulls, forcing OkHttp to use the default system TrustManager.
+     * @param provider The provider the TLS setup is computed for.
+     * @param logger The logger receiving the outcome, may be null.
+     * @return A Pair containing the SSLSocketFactory (Left) and X509TrustManager (Right),
+     * or Pair.of(null, null) if setup fails or is not required.
+     */
+    private Pair<SSLSocketFactory, X509TrustManager> setupCustomSSL(OpenstudHelper.Provider provider, Logger logger) {
+        // Only apply custom certificates for the SAPIENZA provider
+        if (provider != OpenstudHelper.Provider.SAPIENZA) {
+            log(logger, Level.FINE, "Provider is not Sapienza. Using default system TrustManager.");
+            return Pair.of(null, null);
+        }
+
+        log(logger, Level.FINE, "Provider is Sapienza. Attempting to add custom certificates to default TrustManager.");
+
+        SSLSocketFactory sslSocketFactory = null;
+        X509TrustManager trustManager = null;
+
+        try {
+            // Create a KeyStore
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null); // Init empty
+
+            // Get the default system TrustManager
+            TrustManagerFactory tmfDefault = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmfDefault.init((KeyStore) null); // Initialize with default system KeyStore
+
+            X509TrustManager defaultTrustManager = null;
+            for (TrustManager tm : tmfDefault.getTrustManagers()) {
+                if (tm instanceof X509TrustManager) {
+                    defaultTrustManager = (X509TrustManager) tm;
+                    break;
+                }
+            }
+            if (defaultTrustManager == null) {
+                throw new IllegalStateException("No default X509TrustManager found");
+            }
+
+            // Add all default CAs to our new KeyStore
+            int defaultCaCount = 0;
+            for (X509Certificate cert : defaultTrustManager.getAcceptedIssuers()) {
+                // Use a unique alias for each default CA
+                keyStore.setCertificateEntry("default-ca-" + defaultCaCount++, cert);
+            }
+            log(logger, Level.FINE, "Loaded " + defaultCaCount + " default system CAs.");
+
+            // Add custom SAPIENZA certificates from the resource directory
+            boolean customCertLoaded = loadCertificatesFromResourceDirectory(keyStore, "certs/sapienza", logger);
+
+            // If no custom certificates were loaded, just use the default TrustManager
+            if (!customCertLoaded) {
+                log(logger, Level.WARNING, "Sapienza provider selected, but no custom certificates found in resource directory 'certs/sapienza'. Using default TrustManager only.");
+                return Pair.of(null, null);
+            }
+
+            // Create a new TrustManagerFactory that trusts both default and custom CAs
+            TrustManagerFactory tmfCombined = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmfCombined.init(keyStore);
+
+            // Find the X509TrustManager
+            for (TrustManager tm : tmfCombined.getTrustManagers()) {
+                if (tm instanceof X509TrustManager) {
+                    trustManager = (X509TrustManager) tm;
+                    break;
+                }
+            }
+            if (trustManager == null) {
+                throw new IllegalStateException("No X509TrustManager found in combined KeyStore");
+            }
+
+            // Create an SSLContext that uses our combined TrustManager
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{trustManager}, null);
+
+            sslSocketFactory = sslContext.getSocketFactory();
+            log(logger, Level.FINE, "Custom SSLContext initialized successfully, combining default CAs with custom certificates.");
+
+        } catch (Exception e) {
+            log(logger, Level.SEVERE, "Failed to initialize custom SSLContext, falling back to default. Error: " + e.getMessage());
+            // Reset to null on failure to ensure default is used
+            return Pair.of(null, null);
+        }
+
+        return Pair.of(sslSocketFactory, trustManager);
+    }
+
+    private void log(Logger logger, Level lvl, String str) {
+        if (logger != null) logger.log(lvl, str);
+    }
+}
@@ -0,0 +1,56 @@
+package matypist.openstud.driver.core;
+
+/**
+ * Snapshot of the token renewal counters of an {@link Openstud} instance.
+ */
+public final class TokenStats {
+    private final long renewals;
+    private final long failedRenewals;
+    private final long expiredTokenHits;
+    private final long tokenAge;
+
+    public TokenStats(long renewals, long failedRenewals, long expiredTokenHits, long tokenAge) {
+        this.renewals = renewals;
+        this.failedRenewals = failedRenewals;
+        this.expiredTokenHits = expiredTokenHits;
+        this.tokenAge = tokenAge;
+    }
+
+    /**
+     * Tokens renewed in background before they expired.
+     */
+    public long getRenewals() {
+        return renewals;
+    }
+
+    /**
+     * Background renewals that did not produce a new token.
+     */
+    public long getFailedRenewals() {
+        return failedRenewals;
+    }
+
+    /**
+     * Refreshes triggered by a request that found the token expired, i.e. the ones the renewal did not prevent.
+     */
+    public long getExpiredTokenHits() {
+        return expiredTokenHits;
+    }
+
+    /**
+     * Milliseconds since the current token was issued, -1 if there is none.
+     */
+    public long getTokenAge() {
+        return tokenAge;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenStats{" +
+                "renewals=" + renewals +
+                ", failedRenewals=" + failedRenewals +
+                ", expiredTokenHits=" + expiredTokenHits +
+                ", tokenAge=" + tokenAge +
+                '}';
+    }
+}
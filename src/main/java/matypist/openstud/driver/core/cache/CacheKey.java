@@ -0,0 +1,57 @@
+package matypist.openstud.driver.core.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identifies a cached result by student, operation and arguments of the call.
+ */
+public final class CacheKey {
+    private final String studentID;
+    private final CacheOperation operation;
+    private final List<Object> arguments;
+
+    public CacheKey(String studentID, CacheOperation operation, Object... arguments) {
+        this.studentID = studentID;
+        this.operation = operation;
+        this.arguments = Collections.unmodifiableList(Arrays.asList(arguments));
+    }
+
+    public String getStudentID() {
+        return studentID;
+    }
+
+    public CacheOperation getOperation() {
+        return operation;
+    }
+
+    public List<Object> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CacheKey cacheKey = (CacheKey) o;
+        return Objects.equals(studentID, cacheKey.studentID) &&
+                operation == cacheKey.operation &&
+                Objects.equals(arguments, cacheKey.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(studentID, operation, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheKey{" +
+                "studentID='" + studentID + '\'' +
+                ", operation=" + operation +
+                ", arguments=" + arguments +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package matypist.openstud.driver.core.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read operations whose results can be cached, with their default time to live.
+ */
+public enum CacheOperation {
+    INFO_STUDENT(TimeUnit.HOURS.toMillis(6)),
+    CAREERS_FOR_CERTIFICATE(TimeUnit.HOURS.toMillis(6)),
+    EXAMS_DOABLE(TimeUnit.MINUTES.toMillis(30)),
+    EXAMS_DONE(TimeUnit.HOURS.toMillis(1)),
+    ACTIVE_RESERVATIONS(TimeUnit.MINUTES.toMillis(5)),
+    PAID_TAXES(TimeUnit.HOURS.toMillis(1)),
+    UNPAID_TAXES(TimeUnit.MINUTES.toMillis(15)),
+    CURRENT_ISEE(TimeUnit.HOURS.toMillis(1)),
+    ISEE_HISTORY(TimeUnit.HOURS.toMillis(6)),
+    // public data, cached by the PublicDataCache
+    NEWS(TimeUnit.MINUTES.toMillis(15)),
+    NEWSLETTER_EVENTS(TimeUnit.HOURS.toMillis(1)),
+    CLASSROOMS(TimeUnit.MINUTES.toMillis(5)),
+    CLASSROOM_TIMETABLE(TimeUnit.MINUTES.toMillis(30));
+
+    private final long defaultTtl;
+
+    CacheOperation(long defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * @return default time to live in milliseconds
+     */
+    public long getDefaultTtl() {
+        return defaultTtl;
+    }
+}
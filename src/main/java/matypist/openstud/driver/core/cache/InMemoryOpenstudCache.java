@@ -0,0 +1,95 @@
+package matypist.openstud.driver.core.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded in-memory cache, evicting the least recently used entry once {@code maxEntries} is reached.
+ * Expired entries are kept until evicted or replaced, so that they can still be served by {@link #getStale(CacheKey)}.
+ */
+public class InMemoryOpenstudCache implements OpenstudCache {
+    private final int maxEntries;
+    private final LinkedHashMap<CacheKey, CachedValue> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public InMemoryOpenstudCache() {
+        this(1000);
+    }
+
+    public InMemoryOpenstudCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<CacheKey, CachedValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedValue> eldest) {
+                if (size() <= InMemoryOpenstudCache.this.maxEntries) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Object get(CacheKey key) {
+        CachedValue entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    @Override
+    public synchronized Object getStale(CacheKey key) {
+        CachedValue entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    @Override
+    public synchronized void put(CacheKey key, Object value, long ttlMillis) {
+        if (value == null || ttlMillis <= 0) return;
+        entries.put(key, new CachedValue(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    @Override
+    public synchronized void invalidate(String studentID, CacheOperation operation) {
+        entries.keySet().removeIf(key -> key.getOperation() == operation && Objects.equals(key.getStudentID(), studentID));
+    }
+
+    @Override
+    public synchronized void invalidateAll(String studentID) {
+        entries.keySet().removeIf(key -> Objects.equals(key.getStudentID(), studentID));
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, entries.size());
+    }
+
+    private static class CachedValue {
+        private final Object value;
+        private final long expiresAt;
+
+        CachedValue(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package matypist.openstud.driver.core.cache;
+
+import matypist.openstud.driver.core.models.Event;
+import matypist.openstud.driver.core.models.News;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory of the incremental news and newsletter sync: the validators ({@code ETag} and {@code Last-Modified}) of the
+ * pages already downloaded, the news and events already returned, by URL, and the news whose details couldn't be read
+ * yet, which the next syncs keep looking for.
+ * The website is the same for every student, so one state can be shared by all of them; it is thread-safe and each
+ * map is bounded, evicting the least recently used URL once {@code maxEntries} is reached.
+ */
+public class NewsSyncState {
+    private final int maxEntries;
+    private final Map<String, String[]> validators;
+    private final Map<String, News> news;
+    private final Map<String, Boolean> pendingNews;
+    private final Map<String, List<Event>> events;
+    private long notModified;
+
+    public NewsSyncState() {
+        this(10_000);
+    }
+
+    public NewsSyncState(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.validators = boundedMap();
+        this.news = boundedMap();
+        this.pendingNews = boundedMap();
+        this.events = boundedMap();
+    }
+
+    private <V> Map<String, V> boundedMap() {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the {@code ETag} of the last answer for the URL, or null
+     */
+    public synchronized String getETag(String url) {
+        String[] pair = validators.get(url);
+        return pair != null ? pair[0] : null;
+    }
+
+    /**
+     * @return the {@code Last-Modified} of the last answer for the URL, or null
+     */
+    public synchronized String getLastModified(String url) {
+        String[] pair = validators.get(url);
+        return pair != null ? pair[1] : null;
+    }
+
+    public synchronized void setValidators(String url, String etag, String lastModified) {
+        if (etag == null && lastModified == null) validators.remove(url);
+        else validators.put(url, new String[]{etag, lastModified});
+    }
+
+    /**
+     * Counts a page the server answered with 304 Not Modified.
+     */
+    public synchronized void recordNotModified() {
+        notModified++;
+    }
+
+    /**
+     * @return number of pages that were not downloaded again since the state was created
+     */
+    public synchronized long getNotModifiedCount() {
+        return notModified;
+    }
+
+    public synchronized boolean isKnownNews(String url) {
+        return news.get(url) != null;
+    }
+
+    public synchronized void addNews(News item) {
+        news.put(item.getUrl(), item);
+    }
+
+    /**
+     * Records a listed news whose details couldn't be read, the next sync looks for it past the news already known.
+     */
+    public synchronized void addPendingNews(String url) {
+        pendingNews.put(url, Boolean.TRUE);
+    }
+
+    public synchronized void removePendingNews(String url) {
+        pendingNews.remove(url);
+    }
+
+    /**
+     * @return the URLs of the news still to be returned, from the least to the most recently failed
+     */
+    public synchronized Set<String> getPendingNews() {
+        return new LinkedHashSet<>(pendingNews.keySet());
+    }
+
+    /**
+     * @return the news returned so far, from the least to the most recently seen
+     */
+    public synchronized List<News> getKnownNews() {
+        return new ArrayList<>(news.values());
+    }
+
+    public synchronized boolean isKnownEvent(String url) {
+        return events.get(url) != null;
+    }
+
+    /**
+     * Records the events parsed from the detail page at the given URL.
+     */
+    public synchronized void addEvents(String url, List<Event> parsed) {
+        events.put(url, new ArrayList<>(parsed));
+    }
+
+    /**
+     * @return the newsletter events returned so far, from the least to the most recently seen page
+     */
+    public synchronized List<Event> getKnownEvents() {
+        List<Event> ret = new ArrayList<>();
+        for (List<Event> list : events.values()) ret.addAll(list);
+        return ret;
+    }
+
+    public synchronized void clear() {
+        validators.clear();
+        news.clear();
+        pendingNews.clear();
+        events.clear();
+        notModified = 0;
+    }
+}
@@ -0,0 +1,38 @@
+package matypist.openstud.driver.core.cache;
+
+/**
+ * Store backing the response cache of {@link matypist.openstud.driver.core.Openstud}.
+ * Implementations must be thread-safe, {@link InMemoryOpenstudCache} is the default one.
+ */
+public interface OpenstudCache {
+    /**
+     * @return the cached value, or null if missing or expired
+     */
+    Object get(CacheKey key);
+
+    /**
+     * Returns the cached value even if it expired, served when the server is unavailable.
+     * Stores that drop the expired entries may just return {@link #get(CacheKey)}.
+     *
+     * @return the cached value, or null if missing
+     */
+    default Object getStale(CacheKey key) {
+        return get(key);
+    }
+
+    void put(CacheKey key, Object value, long ttlMillis);
+
+    /**
+     * Removes every entry of the operation for the given student, whatever the arguments.
+     */
+    void invalidate(String studentID, CacheOperation operation);
+
+    /**
+     * Removes every entry of the given student.
+     */
+    void invalidateAll(String studentID);
+
+    void clear();
+
+    CacheStats getStats();
+}
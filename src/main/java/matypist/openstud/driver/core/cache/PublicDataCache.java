@@ -0,0 +1,142 @@
+package matypist.openstud.driver.core.cache;
+
+import matypist.openstud.driver.core.metrics.OpenstudMetrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the data that is the same for every student (news, newsletter, classrooms and their timetables), meant to be
+ * shared by all the {@link matypist.openstud.driver.core.Openstud} instances of the process.
+ * Concurrent requests for the same key share a single load, and a key that is read at least {@code hotThreshold} times
+ * is reloaded in the background once {@code refreshAhead} of its time to live has elapsed, so that it never expires
+ * while in use. A failed background reload keeps serving the current value until it expires.
+ * The cached objects are shared among all the callers and must not be modified.
+ */
+public class PublicDataCache {
+    private static volatile PublicDataCache defaultCache;
+    private final OpenstudCache store;
+    private final double refreshAhead;
+    private final int hotThreshold;
+    private final Map<CacheKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    public PublicDataCache() {
+        this(new InMemoryOpenstudCache(5000), 0.8, 2);
+    }
+
+    /**
+     * @param refreshAhead fraction of the time to live after which a hot key is reloaded, 1 or more disables the refresh
+     * @param hotThreshold number of reads after which a key is considered hot
+     */
+    public PublicDataCache(OpenstudCache store, double refreshAhead, int hotThreshold) {
+        if (store == null) throw new IllegalArgumentException("store can't be null");
+        if (refreshAhead <= 0) throw new IllegalArgumentException("refreshAhead must be positive");
+        this.store = store;
+        this.refreshAhead = refreshAhead;
+        this.hotThreshold = Math.max(1, hotThreshold);
+    }
+
+    /**
+     * Returns the cache shared by the whole process.
+     */
+    public static PublicDataCache getDefault() {
+        if (defaultCache == null) {
+            synchronized (PublicDataCache.class) {
+                if (defaultCache == null) defaultCache = new PublicDataCache();
+            }
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Returns the cached value of the key, loading it if missing or expired. Cancelling the returned future doesn't stop
+     * a load, other callers may be waiting for it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> get(CacheOperation operation, long ttlMillis, OpenstudMetrics metrics,
+                                        Supplier<CompletableFuture<T>> loader, Object... arguments) {
+        CacheKey key = new CacheKey(null, operation, arguments);
+        Entry entry = (Entry) store.get(key);
+        metrics.recordCacheLookup(operation, entry != null);
+        if (entry != null) {
+            if (entry.reads.incrementAndGet() >= hotThreshold && System.currentTimeMillis() >= entry.refreshAt
+                    && entry.refreshing.compareAndSet(false, true)) {
+                refreshes.incrementAndGet();
+                load(key, ttlMillis, (Supplier<CompletableFuture<Object>>) (Supplier<?>) loader);
+            }
+            return CompletableFuture.completedFuture((T) entry.value);
+        }
+        return load(key, ttlMillis, (Supplier<CompletableFuture<Object>>) (Supplier<?>) loader).thenApply(value -> (T) value);
+    }
+
+    private CompletableFuture<Object> load(CacheKey key, long ttlMillis, Supplier<CompletableFuture<Object>> loader) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        CompletableFuture<Object> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException e) {
+            loading = new CompletableFuture<>();
+            loading.completeExceptionally(e);
+        }
+        loading.whenComplete((value, throwable) -> {
+            if (throwable == null && value != null) {
+                long now = System.currentTimeMillis();
+                store.put(key, new Entry(value, now + (long) (ttlMillis * refreshAhead)), ttlMillis);
+            }
+            inFlight.remove(key, result);
+            if (throwable != null) result.completeExceptionally(throwable);
+            else result.complete(value);
+        });
+        return result;
+    }
+
+    public void invalidate(CacheOperation operation) {
+        store.invalidate(null, operation);
+    }
+
+    public void clear() {
+        store.clear();
+    }
+
+    public CacheStats getStats() {
+        return store.getStats();
+    }
+
+    /**
+     * @return number of requests that joined a load already in flight instead of starting their own
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of background reloads of hot keys
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long refreshAt;
+        private final AtomicInteger reads = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Object value, long refreshAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
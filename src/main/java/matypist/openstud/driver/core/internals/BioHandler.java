@@ -8,7 +8,9 @@ import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
 
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 public interface BioHandler {
@@ -19,8 +21,22 @@ public interface BioHandler {
 
     byte[] getCertificatePDF(Student student, Career career, CertificateType certificate) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
 
+    long getCertificatePDF(Student student, Career career, CertificateType certificate, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
+
 
     byte[] getStudentPhoto(Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
 
+    long getStudentPhoto(Student student, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
+
     StudentCard getStudentCard(Student student, boolean withPhoto) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException;
-}
\ No newline at end of file
+
+    CompletableFuture<Student> getInfoStudentAsync();
+
+    CompletableFuture<List<Career>> getCareersChoicesForCertificateAsync(Student student, CertificateType certificate);
+
+    CompletableFuture<byte[]> getCertificatePDFAsync(Student student, Career career, CertificateType certificate);
+
+    CompletableFuture<byte[]> getStudentPhotoAsync(Student student);
+
+    CompletableFuture<StudentCard> getStudentCardAsync(Student student, boolean withPhoto);
+}
@@ -9,6 +9,7 @@ import org.threeten.bp.LocalDate;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface ClassroomHandler {
     List<Classroom> getClassRoom(String query, boolean withTimetable) throws OpenstudInvalidResponseException,
@@ -22,5 +23,11 @@ public interface ClassroomHandler {
     Map<String, List<Lesson>> getTimetable(List<ExamDoable> exams) throws OpenstudInvalidResponseException,
             OpenstudConnectionException;
 
+    CompletableFuture<List<Classroom>> getClassRoomAsync(String query, boolean withTimetable);
 
+    CompletableFuture<List<Lesson>> getClassroomTimetableAsync(Classroom room, LocalDate date);
+
+    CompletableFuture<List<Lesson>> getClassroomTimetableAsync(int id, LocalDate date);
+
+    CompletableFuture<Map<String, List<Lesson>>> getTimetableAsync(List<ExamDoable> exams);
 }
@@ -6,7 +6,9 @@ import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface ExamHandler {
     List<ExamDoable> getExamsDoable() throws OpenstudConnectionException, OpenstudInvalidResponseException,
@@ -30,9 +32,30 @@ public interface ExamHandler {
     byte[] getExamReservationPDF(ExamReservation reservation) throws OpenstudConnectionException, OpenstudInvalidResponseException,
             OpenstudInvalidCredentialsException;
 
+    long getExamReservationPDF(ExamReservation reservation, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException,
+            OpenstudInvalidCredentialsException;
+
     List<Event> getCalendarEvents(Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException,
             OpenstudInvalidCredentialsException;
 
     String getCourseSurvey(String surveyCode) throws OpenstudConnectionException, OpenstudInvalidResponseException,
             OpenstudInvalidCredentialsException;
+
+    CompletableFuture<List<ExamDoable>> getExamsDoableAsync();
+
+    CompletableFuture<List<ExamDone>> getExamsDoneAsync();
+
+    CompletableFuture<List<ExamReservation>> getActiveReservationsAsync();
+
+    CompletableFuture<List<ExamReservation>> getAvailableReservationsAsync(ExamDoable exam, Student student);
+
+    CompletableFuture<Pair<Integer, String>> insertReservationAsync(ExamReservation res);
+
+    CompletableFuture<Integer> deleteReservationAsync(ExamReservation res);
+
+    CompletableFuture<byte[]> getExamReservationPDFAsync(ExamReservation reservation);
+
+    CompletableFuture<List<Event>> getCalendarEventsAsync(Student student);
+
+    CompletableFuture<String> getCourseSurveyAsync(String surveyCode);
 }
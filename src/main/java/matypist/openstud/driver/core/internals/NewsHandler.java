@@ -1,16 +1,49 @@
 package matypist.openstud.driver.core.internals;
 
+import matypist.openstud.driver.core.cache.NewsSyncState;
 import matypist.openstud.driver.core.models.Event;
 import matypist.openstud.driver.core.models.News;
+import matypist.openstud.driver.core.models.NewsletterResult;
 import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface NewsHandler {
     List<News> getNews(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage,
                        String query) throws OpenstudInvalidResponseException, OpenstudConnectionException;
 
     List<Event> getNewsletterEvents() throws OpenstudInvalidResponseException, OpenstudConnectionException;
-}
 
+    CompletableFuture<List<News>> getNewsAsync(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage,
+                                               String query);
+
+    CompletableFuture<List<Event>> getNewsletterEventsAsync();
+
+    /**
+     * Same events as {@link #getNewsletterEvents()}, together with the report of the ones that could not be fetched or
+     * parsed. It doesn't throw when all the events fail.
+     */
+    NewsletterResult getNewsletter() throws OpenstudInvalidResponseException, OpenstudConnectionException;
+
+    CompletableFuture<NewsletterResult> getNewsletterAsync();
+
+    /**
+     * Incremental version of {@link #getNews}: returns only the news not returned yet for the given state, stopping at
+     * the first listing page not modified or at the first news already known, within {@code maxPage} pages.
+     */
+    List<News> getNewsUpdates(String locale, boolean withDescription, int maxPage, String query,
+                              NewsSyncState state) throws OpenstudInvalidResponseException, OpenstudConnectionException;
+
+    CompletableFuture<List<News>> getNewsUpdatesAsync(String locale, boolean withDescription, int maxPage, String query,
+                                                      NewsSyncState state);
+
+    /**
+     * Incremental version of {@link #getNewsletterEvents()}: returns only the events of the pages not returned yet for
+     * the given state, nothing if the newsletter was not modified.
+     */
+    List<Event> getNewsletterEventUpdates(NewsSyncState state) throws OpenstudInvalidResponseException, OpenstudConnectionException;
+
+    CompletableFuture<List<Event>> getNewsletterEventUpdatesAsync(NewsSyncState state);
+}
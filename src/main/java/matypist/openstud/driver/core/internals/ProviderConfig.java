@@ -12,6 +12,8 @@ public interface ProviderConfig {
 
     String getEndpointTimetable(OpenstudHelper.Mode mode);
 
+    String getEndpointWebsite();
+
     String getEmailURL();
 
     boolean isAuthEnabled();
@@ -6,7 +6,9 @@ import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
 
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface TaxHandler {
     List<Tax> getUnpaidTaxes() throws OpenstudConnectionException, OpenstudInvalidResponseException,
@@ -18,11 +20,22 @@ public interface TaxHandler {
     byte[] getPaymentSlipPDF(Tax unpaidTax) throws OpenstudConnectionException, OpenstudInvalidResponseException,
             OpenstudInvalidCredentialsException;
 
+    long getPaymentSlipPDF(Tax unpaidTax, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException,
+            OpenstudInvalidCredentialsException;
+
     Isee getCurrentIsee() throws OpenstudConnectionException, OpenstudInvalidResponseException,
             OpenstudInvalidCredentialsException;
 
     List<Isee> getIseeHistory() throws OpenstudConnectionException, OpenstudInvalidResponseException,
             OpenstudInvalidCredentialsException;
 
+    CompletableFuture<List<Tax>> getUnpaidTaxesAsync();
+
+    CompletableFuture<List<Tax>> getPaidTaxesAsync();
+
+    CompletableFuture<byte[]> getPaymentSlipPDFAsync(Tax unpaidTax);
+
+    CompletableFuture<Isee> getCurrentIseeAsync();
 
+    CompletableFuture<List<Isee>> getIseeHistoryAsync();
 }
@@ -0,0 +1,188 @@
+package matypist.openstud.driver.core.metrics;
+
+import matypist.openstud.driver.core.cache.CacheOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every measurement in memory, aggregated per operation and per endpoint.
+ * A single registry can be shared by many instances (e.g. through the template of an
+ * {@link matypist.openstud.driver.core.OpenstudSessionManager}) to get the figures of the whole process.
+ */
+public class InMemoryOpenstudMetrics implements OpenstudMetrics {
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+    private final Map<CacheOperation, LongAdder> cacheHits = new ConcurrentHashMap<>();
+    private final Map<CacheOperation, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+
+    public static class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+    }
+
+    public static class EndpointStats {
+        private final LatencyHistogram network = new LatencyHistogram();
+        private final LongAdder processingNanos = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rateLimits = new LongAdder();
+
+        /**
+         * Time spent waiting for the server, one sample per exchange.
+         */
+        public LatencyHistogram getNetwork() {
+            return network;
+        }
+
+        public long getProcessingNanos() {
+            return processingNanos.sum();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        /**
+         * Exchanges that failed or got an HTTP error status.
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRateLimits() {
+            return rateLimits.sum();
+        }
+    }
+
+    @Override
+    public void recordOperation(String operation, long nanos, boolean success) {
+        OperationStats stats = operations.computeIfAbsent(operation, key -> new OperationStats());
+        stats.latency.record(nanos);
+        if (!success) stats.failures.increment();
+    }
+
+    @Override
+    public void recordExchange(String endpoint, int code, long requestBytes, long responseBytes, long networkNanos, long processingNanos) {
+        EndpointStats stats = getEndpoint(endpoint);
+        stats.network.record(networkNanos);
+        stats.processingNanos.add(processingNanos);
+        stats.requestBytes.add(requestBytes);
+        stats.responseBytes.add(responseBytes);
+        if (code < 0 || code >= 400) stats.errors.increment();
+    }
+
+    @Override
+    public void recordRateLimit(String endpoint) {
+        getEndpoint(endpoint).rateLimits.increment();
+    }
+
+    @Override
+    public void recordRetry(String reason) {
+        retries.computeIfAbsent(reason, key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordCacheLookup(CacheOperation operation, boolean hit) {
+        (hit ? cacheHits : cacheMisses).computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    private EndpointStats getEndpoint(String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+    }
+
+    public Map<String, OperationStats> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    public Map<String, EndpointStats> getEndpoints() {
+        return Collections.unmodifiableMap(endpoints);
+    }
+
+    public long getRetries(String reason) {
+        LongAdder adder = retries.get(reason);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long getRetries() {
+        long total = 0;
+        for (LongAdder adder : retries.values()) total += adder.sum();
+        return total;
+    }
+
+    public double getCacheHitRate(CacheOperation operation) {
+        LongAdder hits = cacheHits.get(operation);
+        LongAdder misses = cacheMisses.get(operation);
+        long h = hits == null ? 0 : hits.sum();
+        long m = misses == null ? 0 : misses.sum();
+        return h + m == 0 ? 0 : (double) h / (h + m);
+    }
+
+    public void reset() {
+        operations.clear();
+        endpoints.clear();
+        retries.clear();
+        cacheHits.clear();
+        cacheMisses.clear();
+    }
+
+    /**
+     * Human readable summary, endpoints sorted by the total time spent waiting for them.
+     */
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        List<Map.Entry<String, EndpointStats>> sorted = new ArrayList<>(endpoints.entrySet());
+        sorted.sort(Comparator.comparingLong((Map.Entry<String, EndpointStats> entry) -> entry.getValue().network.getTotalNanos()).reversed());
+        builder.append("endpoint\tcount\ttotal ms\tp50 ms\tp99 ms\tprocessing ms\tbytes in\tbytes out\terrors\trate limits\n");
+        for (Map.Entry<String, EndpointStats> entry : sorted) {
+            EndpointStats stats = entry.getValue();
+            builder.append(entry.getKey()).append('\t')
+                    .append(stats.network.getCount()).append('\t')
+                    .append(millis(stats.network.getTotalNanos())).append('\t')
+                    .append(millis(stats.network.getPercentileNanos(50))).append('\t')
+                    .append(millis(stats.network.getPercentileNanos(99))).append('\t')
+                    .append(millis(stats.getProcessingNanos())).append('\t')
+                    .append(stats.getResponseBytes()).append('\t')
+                    .append(stats.getRequestBytes()).append('\t')
+                    .append(stats.getErrors()).append('\t')
+                    .append(stats.getRateLimits()).append('\n');
+        }
+        builder.append("operation\tcount\tfailures\tmean ms\tp50 ms\tp99 ms\tmax ms\n");
+        for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            builder.append(entry.getKey()).append('\t')
+                    .append(latency.getCount()).append('\t')
+                    .append(entry.getValue().getFailures()).append('\t')
+                    .append(millis(latency.getMeanNanos())).append('\t')
+                    .append(millis(latency.getPercentileNanos(50))).append('\t')
+                    .append(millis(latency.getPercentileNanos(99))).append('\t')
+                    .append(millis(latency.getMaxNanos())).append('\n');
+        }
+        builder.append("retries\t").append(getRetries()).append('\n');
+        return builder.toString();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
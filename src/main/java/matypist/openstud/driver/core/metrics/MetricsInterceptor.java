@@ -0,0 +1,150 @@
+package matypist.openstud.driver.core.metrics;
+
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * OkHttp interceptor reporting every exchange to an {@link OpenstudMetrics}.
+ * The network time is the wait for the headers plus the time spent reading the body, the processing time is what is
+ * left until the body is closed, that is the time the driver spent parsing the streamed answer.
+ * An exchange is reported when its body is closed, a body that is never closed is never reported.
+ */
+public class MetricsInterceptor implements Interceptor {
+    private final OpenstudMetrics metrics;
+
+    public MetricsInterceptor(OpenstudMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = endpoint(request.url());
+        long requestBytes = request.body() != null ? Math.max(0, request.body().contentLength()) : 0;
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            metrics.recordExchange(endpoint, -1, requestBytes, 0, System.nanoTime() - start, 0);
+            throw e;
+        }
+        // peeking the body waits for the network, keep it out of the processing time
+        if (HostRateLimiter.isRateLimited(response)) metrics.recordRateLimit(endpoint);
+        long headers = System.nanoTime();
+        ResponseBody body = response.body();
+        if (body == null) {
+            metrics.recordExchange(endpoint, response.code(), requestBytes, 0, headers - start, 0);
+            return response;
+        }
+        Exchange exchange = new Exchange(endpoint, response.code(), requestBytes, headers - start, headers);
+        return response.newBuilder().body(new MeteredBody(body, exchange)).build();
+    }
+
+    /**
+     * Host and path of the url, numeric segments (e.g. the classroom ids) are replaced by {@code {}} so that
+     * the requests to the same endpoint are aggregated.
+     */
+    static String endpoint(HttpUrl url) {
+        StringBuilder builder = new StringBuilder(url.host());
+        for (String segment : url.pathSegments()) {
+            builder.append('/');
+            if (!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)) builder.append("{}");
+            else builder.append(segment);
+        }
+        return builder.toString();
+    }
+
+    private class Exchange {
+        private final String endpoint;
+        private final int code;
+        private final long requestBytes;
+        private final long headersNanos;
+        private final long headersAt;
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private long responseBytes;
+        private long readNanos;
+
+        private Exchange(String endpoint, int code, long requestBytes, long headersNanos, long headersAt) {
+            this.endpoint = endpoint;
+            this.code = code;
+            this.requestBytes = requestBytes;
+            this.headersNanos = headersNanos;
+            this.headersAt = headersAt;
+        }
+
+        private void report() {
+            if (!reported.compareAndSet(false, true)) return;
+            long processing = Math.max(0, System.nanoTime() - headersAt - readNanos);
+            metrics.recordExchange(endpoint, code, requestBytes, responseBytes, headersNanos + readNanos, processing);
+        }
+    }
+
+    private static class MeteredBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        private MeteredBody(ResponseBody delegate, Exchange exchange) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new MeteredSource(delegate.source(), exchange));
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    private static class MeteredSource extends ForwardingSource {
+        private final Exchange exchange;
+
+        private MeteredSource(Source delegate, Exchange exchange) {
+            super(delegate);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long start = System.nanoTime();
+            try {
+                long read = super.read(sink, byteCount);
+                if (read > 0) exchange.responseBytes += read;
+                return read;
+            } finally {
+                exchange.readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                exchange.report();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package matypist.openstud.driver.core.metrics;
+
+import matypist.openstud.driver.core.cache.CacheOperation;
+
+/**
+ * Receives the measurements of an {@link matypist.openstud.driver.core.Openstud} instance.
+ * Every method has an empty default, so implementations only override what they collect. {@link #NOOP} is the
+ * default: when it is set the driver doesn't install any instrumentation, so it costs nothing.
+ * Implementations must be thread-safe and fast, they are called on the request threads. {@link InMemoryOpenstudMetrics}
+ * is the bundled one.
+ */
+public interface OpenstudMetrics {
+    OpenstudMetrics NOOP = new OpenstudMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * When false the driver skips the instrumentation altogether.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * A handler operation completed, e.g. {@code ExamHandler.getExamsDone} or {@code AuthenticationHandler.refreshToken}.
+     * The time covers the whole call, retries included.
+     */
+    default void recordOperation(String operation, long nanos, boolean success) {
+    }
+
+    /**
+     * An HTTP exchange completed.
+     *
+     * @param endpoint        host and path of the request, with the numeric segments replaced by {@code {}}
+     * @param code            HTTP status code, -1 if no response was received
+     * @param networkNanos    time spent waiting for the server: until the headers arrived, plus the reads of the body
+     * @param processingNanos time spent by the driver between the headers and the end of the body, i.e. parsing a streamed body
+     */
+    default void recordExchange(String endpoint, int code, long requestBytes, long responseBytes, long networkNanos, long processingNanos) {
+    }
+
+    /**
+     * The server answered that its rate limit was reached.
+     */
+    default void recordRateLimit(String endpoint) {
+    }
+
+    /**
+     * A failed attempt is being retried.
+     *
+     * @param reason type of the failure, see {@link matypist.openstud.driver.exceptions.OpenstudBaseResponseException.Type}
+     */
+    default void recordRetry(String reason) {
+    }
+
+    default void recordCacheLookup(CacheOperation operation, boolean hit) {
+    }
+}
@@ -0,0 +1,63 @@
+package matypist.openstud.driver.core.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Dynamic proxy timing every call of a handler interface, reported as {@code Interface.method}.
+ * The asynchronous methods are timed until their future completes, the caller gets the future of the handler itself so
+ * that cancelling it still cancels the requests.
+ */
+public class TimedHandler implements InvocationHandler {
+    private final Object delegate;
+    private final String prefix;
+    private final OpenstudMetrics metrics;
+
+    private TimedHandler(Object delegate, String prefix, OpenstudMetrics metrics) {
+        this.delegate = delegate;
+        this.prefix = prefix;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the handler itself when the metrics are disabled
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T wrap(Class<T> type, T handler, OpenstudMetrics metrics) {
+        if (handler == null || metrics == null || !metrics.isEnabled()) return handler;
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new TimedHandler(handler, type.getSimpleName() + ".", metrics));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) return invoke(method, args);
+        String operation = prefix + method.getName();
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invoke(method, args);
+        } catch (Throwable t) {
+            metrics.recordOperation(operation, System.nanoTime() - start, false);
+            throw t;
+        }
+        if (result instanceof CompletableFuture) {
+            ((CompletableFuture<?>) result).whenComplete((value, throwable) ->
+                    metrics.recordOperation(operation, System.nanoTime() - start, throwable == null));
+            return result;
+        }
+        metrics.recordOperation(operation, System.nanoTime() - start, true);
+        return result;
+    }
+
+    private Object invoke(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package matypist.openstud.driver.core.models;
+
+/**
+ * An event of the newsletter that could not be returned, with the reason.
+ */
+public class NewsletterError {
+    private final int index;
+    private final String title;
+    private final String url;
+    private final String reason;
+    private final Throwable cause;
+
+    public NewsletterError(int index, String title, String url, String reason, Throwable cause) {
+        this.index = index;
+        this.title = title;
+        this.url = url;
+        this.reason = reason;
+        this.cause = cause;
+    }
+
+    /**
+     * @return position of the event in the newsletter page
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return "NewsletterError{" + "index=" + index + ", title='" + title + '\'' + ", url='" + url + '\'' +
+                ", reason='" + reason + '\'' + ", cause=" + cause + '}';
+    }
+}
@@ -0,0 +1,57 @@
+package matypist.openstud.driver.core.models;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Events of the newsletter together with the report of the ones that failed, in the order of the newsletter page.
+ */
+public class NewsletterResult {
+    private final List<Event> events;
+    private final List<NewsletterError> errors;
+    private final int entryCount;
+
+    public NewsletterResult(List<Event> events, List<NewsletterError> errors, int entryCount) {
+        this.events = events;
+        this.errors = errors;
+        this.entryCount = entryCount;
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    public List<NewsletterError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return number of events listed by the newsletter page, failed ones included
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return number of failed events by reason, in order of first occurrence
+     */
+    public Map<String, Integer> getFailureCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (NewsletterError error : errors) counts.merge(error.getReason(), 1, Integer::sum);
+        return counts;
+    }
+
+    /**
+     * @return true if the page listed some events and all of them failed
+     */
+    public boolean isAllFailed() {
+        return entryCount > 0 && errors.size() == entryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "NewsletterResult{" + "events=" + events.size() + ", errors=" + errors.size() + ", entryCount=" + entryCount +
+                ", failureCounts=" + getFailureCounts() + '}';
+    }
+}
@@ -1,7 +1,10 @@
 package matypist.openstud.driver.core.providers.sapienza;
 
 import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudAsyncHelper;
+import matypist.openstud.driver.core.OpenstudRetryHelper;
 import matypist.openstud.driver.core.internals.AuthenticationHandler;
+import matypist.openstud.driver.core.resilience.CircuitBreaker;
 import matypist.openstud.driver.exceptions.*;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
@@ -10,9 +13,15 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class SapienzaAuthenticationHandler implements AuthenticationHandler {
+    private static final int IDM_FAILURE_THRESHOLD = 2;
+    private static final long IDM_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Map<String, CircuitBreaker> IDM_BREAKERS = new ConcurrentHashMap<>();
     private Openstud os;
 
     public SapienzaAuthenticationHandler(Openstud openstud) {
@@ -139,58 +148,103 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
     }
 
     private String executeLoginRequest() throws IOException, OpenstudInvalidResponseException {
-        Response resp = null;
+        CircuitBreaker idm = getIdmBreaker(os.getEndpointLogin());
+        String body = null;
 
-        try {
-            resp = executeIDMLoginRequest();
-        } catch(IOException ignored) {}
-
-        String body = "";
-
-        if (resp != null && resp.body() != null) {
-            body = resp.body().string();
-
-            if (!body.contains("result") || (!body.contains("tokeniws") && !body.contains("error")) || body.contains("Forbidden")) {
-                resp.close();
-
-                resp = executeLegacyLoginRequest();
-
-                if (resp.body() != null) body = resp.body().string();
-            }
+        if (idm.isCallPermitted()) {
+            body = executeIDMLogin(idm);
         } else {
-            if(resp != null) resp.close();
-
-            resp = executeLegacyLoginRequest();
+            os.log(Level.FINE, "IDM login circuit is open, using the legacy flow");
+            if (idm.tryStartProbe()) probeIDM(idm);
+        }
 
+        if (body == null) {
+            Response resp = executeLegacyLoginRequest();
+            body = "";
             if (resp.body() != null) body = resp.body().string();
+            resp.close();
         }
 
         if(body.isEmpty()) {
             throw new OpenstudInvalidResponseException("Infostud answer is not valid");
         }
 
-        resp.close();
-        if (body.contains("the page you are looking for is currently unavailable"))
+        if (isMaintenancePage(body))
             throw new OpenstudInvalidResponseException("InfoStud is in maintenance").setMaintenanceType();
 
         return body;
     }
 
-    @Override
-    public String getSecurityQuestion() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
-        int count = 0;
-        if (os.getStudentID() == null) throw new OpenstudInvalidResponseException("StudentID can't be left empty");
-        while (true) {
-            try {
-                return _getSecurityQuestion();
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
+    private static boolean isMaintenancePage(String body) {
+        return body.contains("the page you are looking for is currently unavailable");
+    }
+
+    /**
+     * Tries the IDM flow and reports the outcome to the breaker.
+     *
+     * @return the IDM answer, null if the legacy flow has to be used instead
+     */
+    private String executeIDMLogin(CircuitBreaker idm) {
+        try (Response resp = executeIDMLoginRequest()) {
+            if (resp.body() != null) {
+                String body = resp.body().string();
+                if (isIDMAnswer(body)) {
+                    idm.recordSuccess();
+                    return body;
                 }
             }
+        } catch (IOException ignored) {
         }
+        idm.recordFailure();
+        if (!idm.isCallPermitted()) os.log(Level.INFO, "IDM login is failing, using the legacy flow");
+        return null;
+    }
+
+    /**
+     * Sends a login request without credentials in background, so the circuit can be closed again without making a
+     * real login wait for the outcome. IDM is healthy again once it answers the empty credentials the way it answers a
+     * login, see {@link #isIDMProbeHealthy(int, String)}.
+     */
+    private void probeIDM(CircuitBreaker idm) {
+        JSONObject jsonBody = new JSONObject();
+        jsonBody.put("request", new JSONObject());
+        jsonBody.put("id", JSONObject.NULL);
+        RequestBody reqBody = RequestBody.create(jsonBody.toString().getBytes(StandardCharsets.UTF_8), MediaType.get("application/json"));
+        Request req = new Request.Builder().url(os.getEndpointLogin())
+                .header("Content-Type", "application/json")
+                .post(reqBody)
+                .build();
+        OpenstudAsyncHelper.enqueue(os, req, resp -> isIDMProbeHealthy(resp.code(), resp.body() == null ? "" : resp.body().string()))
+                .whenComplete((healthy, throwable) -> {
+                    if (throwable == null && healthy) {
+                        os.log(Level.INFO, "IDM login is back");
+                        idm.recordSuccess();
+                    } else idm.recordFailure();
+                });
+    }
+
+    private static boolean isIDMAnswer(String body) {
+        return body.contains("result") && (body.contains("tokeniws") || body.contains("error")) && !body.contains("Forbidden");
+    }
+
+    /**
+     * The probe passes the checks of a real IDM login: a forbidden, server error or maintenance answer is a failure.
+     */
+    static boolean isIDMProbeHealthy(int code, String body) {
+        return code != 403 && code < 500 && isIDMAnswer(body) && !isMaintenancePage(body);
+    }
+
+    /**
+     * The IDM health is shared by every instance of the process logging in through the same endpoint.
+     */
+    private static CircuitBreaker getIdmBreaker(String endpoint) {
+        return IDM_BREAKERS.computeIfAbsent(endpoint, key -> new CircuitBreaker(IDM_FAILURE_THRESHOLD, IDM_OPEN_MILLIS));
+    }
+
+    @Override
+    public String getSecurityQuestion() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (os.getStudentID() == null) throw new OpenstudInvalidResponseException("StudentID can't be left empty");
+        return OpenstudRetryHelper.retry(os, false, OpenstudBaseResponseException::isMaintenance, () -> _getSecurityQuestion());
     }
 
     private String _getSecurityQuestion() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
@@ -207,7 +261,7 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
                 throw new OpenstudInvalidResponseException("InfoStud is in maintenance").setMaintenanceType();
             if (body.contains("Matricola Errata")) throw new OpenstudInvalidCredentialsException("Invalid studentID");
             if (body.contains("Impossibile recuperare la password per email")) return null;
-            os.log(Level.INFO, body);
+            os.logBody(body);
             JSONObject response = new JSONObject(body);
             if (response.isNull("risultato"))
                 throw new OpenstudInvalidResponseException("Infostud response is not valid.");
@@ -224,19 +278,8 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
 
     @Override
     public boolean recoverPassword(String answer) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, OpenstudInvalidAnswerException {
-        int count = 0;
         if (os.getStudentID() == null) throw new OpenstudInvalidResponseException("StudentID can't be left empty");
-        while (true) {
-            try {
-                return _recoverPassword(answer);
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
-        }
+        return OpenstudRetryHelper.retry(os, false, OpenstudBaseResponseException::isMaintenance, () -> _recoverPassword(answer));
     }
 
     private boolean _recoverPassword(String answer) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, OpenstudInvalidAnswerException {
@@ -248,7 +291,7 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
                 throw new OpenstudInvalidResponseException("InfoStud is in maintenance").setMaintenanceType();
             if (body.contains("Matricola Errata")) throw new OpenstudInvalidCredentialsException("Invalid studentID");
             if (body.contains("Impossibile recuperare la password per email")) return false;
-            os.log(Level.INFO, body);
+            os.logBody(body);
             JSONObject response = new JSONObject(body);
             if (response.isNull("livelloErrore"))
                 throw new OpenstudInvalidResponseException("Infostud response is not valid.");
@@ -281,19 +324,11 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
 
     @Override
     public void resetPassword(String new_password) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
-        int count = 0;
         if (os.getStudentID() == null) throw new OpenstudInvalidResponseException("StudentID can't be left empty");
-        while (true) {
-            try {
-                _resetPassword(new_password);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
-        }
+        OpenstudRetryHelper.retry(os, false, () -> {
+            _resetPassword(new_password);
+            return null;
+        });
     }
 
     private void _resetPassword(String new_password) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
@@ -310,7 +345,7 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
             if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
             String body = resp.body().string();
             resp.close();
-            os.log(Level.INFO, body);
+            os.logBody(body);
             JSONObject response = new JSONObject(body);
             if (response.isNull("codiceErrore") || response.isNull("risultato"))
                 throw new OpenstudInvalidResponseException("Infostud response is not valid.");
@@ -335,18 +370,8 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
     }
 
     public boolean recoverPasswordWithEmail(String email, String answer) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, OpenstudInvalidAnswerException {
-        int count = 0;
         if (os.getStudentID() == null) throw new OpenstudInvalidResponseException("StudentID can't be left empty");
-        while (true) {
-            try {
-                return _recoverPasswordWithEmail(email, answer);
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
-        }
+        return OpenstudRetryHelper.retry(os, false, () -> _recoverPasswordWithEmail(email, answer));
     }
 
     private boolean _recoverPasswordWithEmail(String email, String answer) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException, OpenstudInvalidAnswerException {
@@ -356,7 +381,7 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
             String body = executeRecoveryRequest(formBody);
             if (body.contains("Matricola Errata")) throw new OpenstudInvalidCredentialsException("Invalid studentID");
             if (body.contains("Impossibile recuperare la password per email")) return false;
-            os.log(Level.INFO, body);
+            os.logBody(body);
             JSONObject response = new JSONObject(body);
             if (response.isNull("livelloErrore"))
                 throw new OpenstudInvalidResponseException("Infostud response is not valid.");
@@ -381,21 +406,13 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
 
 
     public void login() throws OpenstudInvalidCredentialsException, OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudUserNotEnabledException {
-        int count = 0;
         if (os.getStudentPassword() == null || os.getStudentPassword().isEmpty())
             throw new OpenstudInvalidCredentialsException("Password can't be left empty");
         if (os.getStudentID() == null) throw new OpenstudInvalidResponseException("StudentID can't be left empty");
-        while (true) {
-            try {
-                _login();
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
-        }
+        OpenstudRetryHelper.retry(os, false, () -> {
+            _login();
+            return null;
+        });
     }
 
     private synchronized void _login() throws OpenstudInvalidCredentialsException, OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudUserNotEnabledException {
@@ -403,7 +420,7 @@ public class SapienzaAuthenticationHandler implements AuthenticationHandler {
             if (!StringUtils.isNumeric(os.getStudentID()))
                 throw new OpenstudInvalidCredentialsException("Student ID is not valid");
             String body = executeLoginRequest();
-            os.log(Level.INFO, body);
+            os.logBody(body);
 
             JSONObject response = new JSONObject(body);
 
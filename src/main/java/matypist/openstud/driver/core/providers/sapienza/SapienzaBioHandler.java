@@ -1,28 +1,33 @@
 package matypist.openstud.driver.core.providers.sapienza;
 
 import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudAsyncHelper;
+import matypist.openstud.driver.core.OpenstudRetryHelper;
 import matypist.openstud.driver.core.internals.BioHandler;
 import matypist.openstud.driver.core.models.Career;
 import matypist.openstud.driver.core.models.CertificateType;
 import matypist.openstud.driver.core.models.Student;
 import matypist.openstud.driver.core.models.StudentCard;
+import matypist.openstud.driver.exceptions.OpenstudBaseResponseException;
 import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
-import matypist.openstud.driver.exceptions.OpenstudRefreshException;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Okio;
+import okio.Sink;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.threeten.bp.LocalDateTime;
-import org.threeten.bp.format.DateTimeFormatter;
 
 import javax.net.ssl.SSLException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 public class SapienzaBioHandler implements BioHandler {
@@ -35,81 +40,52 @@ public class SapienzaBioHandler implements BioHandler {
     @Override
     public Student getInfoStudent() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                return _getInfoStudent();
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
+        return OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _getInfoStudent());
+    }
+
+    @Override
+    public CompletableFuture<Student> getInfoStudentAsync() {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance,
+                () -> OpenstudAsyncHelper.enqueue(os, infoStudentRequest(), resp -> parseInfoStudent(handleResponse(resp))));
     }
 
 
     @Override
     public byte[] getCertificatePDF(Student student, Career career, CertificateType certificate) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        byte[] ret;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                ret = _getCertificatePDF(student, career, certificate);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return ret;
+        return OpenstudRetryHelper.retry(os, true, () -> _getCertificatePDF(student, career, certificate));
     }
 
+    @Override
+    public CompletableFuture<byte[]> getCertificatePDFAsync(Student student, Career career, CertificateType certificate) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, certificateRequest(student, career, certificate), resp -> parseCertificateUrl(handleResponse(resp)))
+                        .thenCompose(url -> {
+                            if (url == null) return CompletableFuture.completedFuture(null);
+                            return OpenstudAsyncHelper.enqueue(os, new Request.Builder().url(url).build(), this::readCertificate);
+                        }));
+    }
+
+
+    @Override
+    public long getCertificatePDF(Student student, Career career, CertificateType certificate, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!os.isReady()) return 0;
+        Long ret = OpenstudRetryHelper.retry(os, true, () -> _getCertificatePDF(student, career, certificate, resp -> writeCertificate(resp, out)));
+        return ret == null ? 0 : ret;
+    }
 
     private byte[] _getCertificatePDF(Student student, Career career, CertificateType certificate) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        return _getCertificatePDF(student, career, certificate, this::readCertificate);
+    }
+
+    private <T> T _getCertificatePDF(Student student, Career career, CertificateType certificate, OpenstudAsyncHelper.ResponseParser<T> fileReader) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         try {
-            String lang = "it";
-            String teachingCode = "";
-            if (certificate == CertificateType.DEGREE_WITH_EXAMS_ENG || certificate == CertificateType.DEGREE_WITH_EVALUATION_ENG || certificate == CertificateType.DEGREE_WITH_THESIS_ENG)
-                lang = "en";
-            if (career.getTeachingCode() != null) teachingCode = career.getTeachingCode();
-            Request req = new Request.Builder().url(String.format("%s/certificati/corsodilaurea/%s/%s/%s?ingresso=%s&codiceDidattica=%s&indiceCarriera=%s", os.getEndpointAPI(), student.getStudentID(), SapienzaHelper.getCertificateValue(certificate), lang, os.getToken(), teachingCode, career.getIndex())).build();
-            Response resp = os.getClient().newCall(req).execute();
-            if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            String body = resp.body().string();
-            resp.close();
-            os.log(Level.INFO, body);
-            JSONObject response = new JSONObject(body);
-            if (!response.has("risultato"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("risultato");
-            if (!response.has("result") || response.isNull("result")) return null;
-            response = response.getJSONObject("result");
-            if (!response.has("documentServerResultDTO") || response.isNull("documentServerResultDTO")) return null;
-            response = response.getJSONObject("documentServerResultDTO");
-            if (response.has("pdf_file_http_path") && !response.isNull("pdf_file_http_path")) {
-                Request request = new Request.Builder().url(response.getString("pdf_file_http_path")).build();
-                Response fileResponse = os.getClient().newCall(request).execute();
-                if (!fileResponse.isSuccessful()) {
-                    throw new IOException("Failed to download file: " + response);
-                }
-                if (fileResponse.body() == null) throw new IOException("Error when downloading pdf");
-                return fileResponse.body().bytes();
-            } else return null;
+            String url = parseCertificateUrl(handleRequest(certificateRequest(student, career, certificate)));
+            if (url == null) return null;
+            Request request = new Request.Builder().url(url).build();
+            return fileReader.parse(os.getClient().newCall(request).execute());
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -121,80 +97,73 @@ public class SapienzaBioHandler implements BioHandler {
         }
     }
 
+    private Request certificateRequest(Student student, Career career, CertificateType certificate) {
+        String lang = "it";
+        String teachingCode = "";
+        if (certificate == CertificateType.DEGREE_WITH_EXAMS_ENG || certificate == CertificateType.DEGREE_WITH_EVALUATION_ENG || certificate == CertificateType.DEGREE_WITH_THESIS_ENG)
+            lang = "en";
+        if (career.getTeachingCode() != null) teachingCode = career.getTeachingCode();
+        return new Request.Builder().url(String.format("%s/certificati/corsodilaurea/%s/%s/%s?ingresso=%s&codiceDidattica=%s&indiceCarriera=%s", os.getEndpointAPI(), student.getStudentID(), SapienzaHelper.getCertificateValue(certificate), lang, os.getToken(), teachingCode, career.getIndex())).build();
+    }
+
+    private String parseCertificateUrl(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("risultato"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        response = response.getJSONObject("risultato");
+        if (!response.has("result") || response.isNull("result")) return null;
+        response = response.getJSONObject("result");
+        if (!response.has("documentServerResultDTO") || response.isNull("documentServerResultDTO")) return null;
+        response = response.getJSONObject("documentServerResultDTO");
+        if (response.has("pdf_file_http_path") && !response.isNull("pdf_file_http_path")) return response.getString("pdf_file_http_path");
+        else return null;
+    }
+
+    private byte[] readCertificate(Response fileResponse) throws IOException {
+        try (Response response = fileResponse) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to download file: " + response);
+            }
+            if (response.body() == null) throw new IOException("Error when downloading pdf");
+            return response.body().bytes();
+        }
+    }
+
+    /**
+     * Moves the certificate segments from the response source to the caller sink, the file is never held in memory.
+     */
+    private long writeCertificate(Response fileResponse, OutputStream out) throws IOException {
+        try (Response response = fileResponse) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to download file: " + response);
+            }
+            if (response.body() == null) throw new IOException("Error when downloading pdf");
+            return writeBody(response.body(), out);
+        }
+    }
+
+    private long writeBody(ResponseBody body, OutputStream out) throws IOException {
+        Sink sink = Okio.sink(out);
+        long written = body.source().readAll(sink);
+        sink.flush();
+        return written;
+    }
+
     @Override
     public List<Career> getCareersChoicesForCertificate(Student student, CertificateType certificate) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        List<Career> ret;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                ret = _getCareersChoicesForCertificate(student, certificate);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return ret;
+        return OpenstudRetryHelper.retry(os, true, () -> _getCareersChoicesForCertificate(student, certificate));
+    }
+
+    @Override
+    public CompletableFuture<List<Career>> getCareersChoicesForCertificateAsync(Student student, CertificateType certificate) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, careersRequest(student, certificate), resp -> parseCareers(handleResponse(resp))));
     }
 
     private List<Career> _getCareersChoicesForCertificate(Student student, CertificateType certificate) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/certificati/corsodilaurea/%s/listaCarriere?ingresso=%s&codiceTipoCertificato=%s", os.getEndpointAPI(), student.getStudentID(), os.getToken(), SapienzaHelper.getCertificateValue(certificate))).build();
-            Response resp = os.getClient().newCall(req).execute();
-            if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            String body = resp.body().string();
-            resp.close();
-            os.log(Level.INFO, body);
-            JSONObject response = new JSONObject(body);
-            if (response.has("descrizioneErrore") && !response.isNull("descrizioneErrore") && response.getString("descrizioneErrore").toLowerCase().contains("non risultano"))
-                return new LinkedList<>();
-            if (!response.has("risultatoLista"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("risultatoLista");
-            if (response == null) return new LinkedList<>();
-            JSONArray array = response.getJSONArray("risultati");
-            if (array == null) return new LinkedList<>();
-            List<Career> ret = new LinkedList<>();
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                Career car = new Career();
-                car.setIndex(i);
-                for (String element : obj.keySet()) {
-                    switch (element) {
-                        case "codiIscr":
-                            car.setRegistrationCode(obj.getString(element));
-                            break;
-                        case "codiCorsStud":
-                            car.setCodeCourse(obj.getString(element));
-                            break;
-                        case "descCorsStud":
-                            car.setDescriptionComplete(obj.getString(element));
-                            break;
-                        case "descDenoCost":
-                            car.setDescription(obj.getString(element));
-                            break;
-                        case "descStruOrga":
-                            car.setOrganization(obj.getString(element));
-                            break;
-                        case "descTipoTito":
-                            car.setType(obj.getString(element));
-                            break;
-                        case "codiDida":
-                            car.setTeachingCode(obj.getString(element));
-                            break;
-                    }
-                }
-                ret.add(car);
-            }
-            return ret;
+            return parseCareers(handleRequest(careersRequest(student, certificate)));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -206,20 +175,58 @@ public class SapienzaBioHandler implements BioHandler {
         }
     }
 
+    private Request careersRequest(Student student, CertificateType certificate) {
+        return new Request.Builder().url(String.format("%s/certificati/corsodilaurea/%s/listaCarriere?ingresso=%s&codiceTipoCertificato=%s", os.getEndpointAPI(), student.getStudentID(), os.getToken(), SapienzaHelper.getCertificateValue(certificate))).build();
+    }
+
+    private List<Career> parseCareers(JSONObject response) throws OpenstudInvalidResponseException {
+        if (response.has("descrizioneErrore") && !response.isNull("descrizioneErrore") && response.getString("descrizioneErrore").toLowerCase().contains("non risultano"))
+            return new LinkedList<>();
+        if (!response.has("risultatoLista"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        response = response.getJSONObject("risultatoLista");
+        if (response == null) return new LinkedList<>();
+        JSONArray array = response.getJSONArray("risultati");
+        if (array == null) return new LinkedList<>();
+        List<Career> ret = new LinkedList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            Career car = new Career();
+            car.setIndex(i);
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "codiIscr":
+                        car.setRegistrationCode(obj.getString(element));
+                        break;
+                    case "codiCorsStud":
+                        car.setCodeCourse(obj.getString(element));
+                        break;
+                    case "descCorsStud":
+                        car.setDescriptionComplete(obj.getString(element));
+                        break;
+                    case "descDenoCost":
+                        car.setDescription(obj.getString(element));
+                        break;
+                    case "descStruOrga":
+                        car.setOrganization(obj.getString(element));
+                        break;
+                    case "descTipoTito":
+                        car.setType(obj.getString(element));
+                        break;
+                    case "codiDida":
+                        car.setTeachingCode(obj.getString(element));
+                        break;
+                }
+            }
+            ret.add(car);
+        }
+        return ret;
+    }
+
 
     private Student _getInfoStudent() throws OpenstudConnectionException, OpenstudInvalidResponseException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/studente/%s?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
-            Response resp = os.getClient().newCall(req).execute();
-            if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            String body = resp.body().string();
-            resp.close();
-            os.log(Level.INFO, body);
-            JSONObject response = new JSONObject(body);
-            if (!response.has("ritorno"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("ritorno");
-            return SapienzaHelper.extractStudent(os, response);
+            return parseInfoStudent(handleRequest(infoStudentRequest()));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -231,34 +238,73 @@ public class SapienzaBioHandler implements BioHandler {
         }
     }
 
+    private Request infoStudentRequest() {
+        return new Request.Builder().url(String.format("%s/studente/%s?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
+    }
+
+    private Student parseInfoStudent(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        response = response.getJSONObject("ritorno");
+        return SapienzaHelper.extractStudent(os, response);
+    }
+
 
     public byte[] getStudentPhoto(Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady() || student == null) return null;
-        int count = 0;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                byte[] ret = _getStudentPhoto(student);
-                if (ret != null && ret.length == 0) return null;
-                return ret;
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
+        byte[] ret = OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _getStudentPhoto(student));
+        if (ret != null && ret.length == 0) return null;
+        return ret;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getStudentPhotoAsync(Student student) {
+        if (!os.isReady() || student == null) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> studentPhotoAsync(student))
+                .thenApply(ret -> ret != null && ret.length == 0 ? null : ret);
+    }
+
+    private CompletableFuture<byte[]> studentPhotoAsync(Student student) {
+        return OpenstudAsyncHelper.enqueue(os, studentPhotoRequest(student), resp -> resp.body().bytes())
+                .handle((ret, throwable) -> {
+                    if (throwable == null) return CompletableFuture.completedFuture(ret);
+                    Throwable cause = OpenstudAsyncHelper.unwrap(throwable);
+                    if (cause instanceof OpenstudConnectionException && cause.getCause() instanceof SSLException) {
+                        OpenstudInvalidResponseException invalidResponseException = new OpenstudInvalidResponseException((SSLException) cause.getCause());
+                        invalidResponseException.setSSLType();
+                        return OpenstudAsyncHelper.<byte[]>failed(invalidResponseException);
+                    }
+                    return OpenstudAsyncHelper.<byte[]>failed(cause);
+                }).thenCompose(future -> future);
+    }
+
+    @Override
+    public long getStudentPhoto(Student student, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!os.isReady() || student == null) return 0;
+        SapienzaStreamHelper.CountingOutputStream counter = new SapienzaStreamHelper.CountingOutputStream(out);
+        return OpenstudRetryHelper.retry(os, true, e -> e.isMaintenance() || counter.getCount() > 0, () -> _getStudentPhoto(student, counter));
+    }
+
+    private long _getStudentPhoto(Student student, OutputStream out) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        try (Response resp = os.getClient().newCall(studentPhotoRequest(student)).execute()) {
+            if (resp.body() == null) return 0;
+            return writeBody(resp.body(), out);
+        } catch (IOException e) {
+            if (e instanceof SSLException) {
+                OpenstudInvalidResponseException invalidResponseException = new OpenstudInvalidResponseException(e);
+                invalidResponseException.setSSLType();
+                os.log(Level.SEVERE, invalidResponseException);
+                throw invalidResponseException;
             }
+            OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
+            os.log(Level.SEVERE, connectionException);
+            throw connectionException;
         }
     }
 
     private byte[] _getStudentPhoto(Student student) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/cartastudente/%s/foto?ingresso=%s", "https://www.studenti.uniroma1.it/phoenixws", student.getStudentID(), os.getToken())).build();
-            Response resp = os.getClient().newCall(req).execute();
+            Response resp = os.getClient().newCall(studentPhotoRequest(student)).execute();
             byte[] ret = resp.body().bytes();
             resp.close();
             return ret;
@@ -275,28 +321,14 @@ public class SapienzaBioHandler implements BioHandler {
         }
     }
 
+    private Request studentPhotoRequest(Student student) {
+        return new Request.Builder().url(String.format("%s/cartastudente/%s/foto?ingresso=%s", os.getEndpointPhoto(), student.getStudentID(), os.getToken())).build();
+    }
+
 
     public StudentCard getStudentCard(Student student, boolean withPhoto) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady() || student == null) return null;
-        int count = 0;
-        StudentCard card;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                card = _getStudentCard(student);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
+        StudentCard card = OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _getStudentCard(student));
         if (card != null && withPhoto) {
             byte[] image = _getStudentPhoto(student);
             if (image != null && image.length != 0) card.setImage(image);
@@ -304,61 +336,92 @@ public class SapienzaBioHandler implements BioHandler {
         return card;
     }
 
+    @Override
+    public CompletableFuture<StudentCard> getStudentCardAsync(Student student, boolean withPhoto) {
+        if (!os.isReady() || student == null) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance,
+                () -> OpenstudAsyncHelper.enqueue(os, studentCardRequest(student), resp -> parseStudentCard(handleResponse(resp))))
+                .thenCompose(card -> {
+                    if (card == null || !withPhoto) return CompletableFuture.completedFuture(card);
+                    return studentPhotoAsync(student).thenApply(image -> {
+                        if (image != null && image.length != 0) card.setImage(image);
+                        return card;
+                    });
+                });
+    }
+
     private StudentCard _getStudentCard(Student student) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/cartastudente/%s/info?ingresso=%s", os.getEndpointAPI(), student.getStudentID(), os.getToken())).build();
-            Response resp = os.getClient().newCall(req).execute();
+            Response resp = os.getClient().newCall(studentCardRequest(student)).execute();
             if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
             ResponseBody body = resp.body();
             if (body == null) return null;
             String stringBody = body.string();
-            os.log(Level.INFO, stringBody);
-            JSONObject response = new JSONObject(stringBody);
-            if (!response.has("ritorno"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("ritorno");
-            if (!response.has("carte"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            JSONArray array = response.getJSONArray("carte");
-            List<StudentCard> cards = new LinkedList<>();
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                StudentCard card = new StudentCard();
-                for (String element : obj.keySet()) {
-                    switch (element) {
-                        case "codice":
-                            card.setCode(obj.getString(element));
-                            break;
-                        case "matricola":
-                            card.setStudentId(String.valueOf(obj.getInt(element)));
-                            break;
-                        case "stato":
-                            if (obj.getString(element).toLowerCase().equals("attiva")) card.setEnabled(true);
-                            break;
-                        case "dataRichiesta":
-                            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-                            card.setIssueDate(LocalDateTime.parse(obj.getString(element), formatter));
-                            break;
-                    }
+            os.logBody(stringBody);
+            return parseStudentCard(new JSONObject(stringBody));
+        } catch (IOException e) {
+            OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
+            os.log(Level.SEVERE, connectionException);
+            throw connectionException;
+        }
+    }
+
+    private Request studentCardRequest(Student student) {
+        return new Request.Builder().url(String.format("%s/cartastudente/%s/info?ingresso=%s", os.getEndpointAPI(), student.getStudentID(), os.getToken())).build();
+    }
+
+    private StudentCard parseStudentCard(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        response = response.getJSONObject("ritorno");
+        if (!response.has("carte"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
+        JSONArray array = response.getJSONArray("carte");
+        List<StudentCard> cards = new LinkedList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            StudentCard card = new StudentCard();
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "codice":
+                        card.setCode(obj.getString(element));
+                        break;
+                    case "matricola":
+                        card.setStudentId(String.valueOf(obj.getInt(element)));
+                        break;
+                    case "stato":
+                        if (obj.getString(element).toLowerCase().equals("attiva")) card.setEnabled(true);
+                        break;
+                    case "dataRichiesta":
+                        card.setIssueDate(LocalDateTime.parse(obj.getString(element), SapienzaParsingContext.DATE_TIME));
+                        break;
                 }
-                cards.add(card);
             }
-            StudentCard ret = null;
-            for (StudentCard card: cards){
-                if (card.getCode()!=null && card.isEnabled()) {
-                    if (ret == null) ret = card;
-                    else {
-                        if (ret.getIssueDate()!= null && card.getIssueDate() != null && ret.getIssueDate().isBefore(card.getIssueDate())) {
-                            ret = card;
-                        }
+            cards.add(card);
+        }
+        StudentCard ret = null;
+        for (StudentCard card: cards){
+            if (card.getCode()!=null && card.isEnabled()) {
+                if (ret == null) ret = card;
+                else {
+                    if (ret.getIssueDate()!= null && card.getIssueDate() != null && ret.getIssueDate().isBefore(card.getIssueDate())) {
+                        ret = card;
                     }
                 }
             }
-            return ret;
-        } catch (IOException e) {
-            OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
-            os.log(Level.SEVERE, connectionException);
-            throw connectionException;
         }
+        return ret;
+    }
+
+    private JSONObject handleRequest(Request req) throws IOException, OpenstudInvalidResponseException {
+        return handleResponse(os.getClient().newCall(req).execute());
+    }
+
+    private JSONObject handleResponse(Response resp) throws IOException, OpenstudInvalidResponseException {
+        if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+        String body = resp.body().string();
+        resp.close();
+        os.logBody(body);
+        return new JSONObject(body);
     }
 }
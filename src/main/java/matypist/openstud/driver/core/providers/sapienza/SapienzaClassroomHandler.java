@@ -1,28 +1,36 @@
 package matypist.openstud.driver.core.providers.sapienza;
 
+import com.squareup.moshi.JsonReader;
 import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudAsyncHelper;
 import matypist.openstud.driver.core.OpenstudHelper;
+import matypist.openstud.driver.core.OpenstudRetryHelper;
 import matypist.openstud.driver.core.internals.ClassroomHandler;
 import matypist.openstud.driver.core.models.Classroom;
 import matypist.openstud.driver.core.models.ExamDoable;
 import matypist.openstud.driver.core.models.Lesson;
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import matypist.openstud.driver.exceptions.OpenstudBaseResponseException;
 import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
 import okhttp3.Request;
 import okhttp3.Response;
+import okio.BufferedSource;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.threeten.bp.LocalDate;
 import org.threeten.bp.LocalDateTime;
 import org.threeten.bp.ZoneOffset;
-import org.threeten.bp.format.DateTimeFormatter;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class SapienzaClassroomHandler implements ClassroomHandler {
@@ -35,49 +43,43 @@ public class SapienzaClassroomHandler implements ClassroomHandler {
     @Override
     public List<Classroom> getClassRoom(String query, boolean withTimetable) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         if (!os.isReady()) return null;
-        int count = 0;
-        while (true) {
-            try {
-                return _getClassroom(query, withTimetable);
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isRateLimit()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
+        return OpenstudRetryHelper.retryPublic(os, OpenstudBaseResponseException::isRateLimit, () -> _getClassroom(query, withTimetable));
+    }
+
+    @Override
+    public CompletableFuture<List<Classroom>> getClassRoomAsync(String query, boolean withTimetable) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retryPublic(os, OpenstudBaseResponseException::isRateLimit, () -> classroomAsync(query, withTimetable));
+    }
+
+    private CompletableFuture<List<Classroom>> classroomAsync(String query, boolean withTimetable) {
+        return enqueue(classroomRequest(query), resp -> parseClassrooms(new JSONArray(handleResponse(resp))))
+                .thenCompose(classrooms -> {
+                    if (!withTimetable) return CompletableFuture.completedFuture(classrooms);
+                    return timetablesAsync(classrooms).thenApply(ignored -> classrooms);
+                });
+    }
+
+    /**
+     * Fetches the timetable of every room concurrently, the shared rate limiter spaces the requests.
+     */
+    private CompletableFuture<List<Void>> timetablesAsync(List<Classroom> classrooms) {
+        LocalDateTime zonedTime = currentTime();
+        LocalDate today = LocalDate.now();
+        List<Supplier<CompletableFuture<Void>>> tasks = new LinkedList<>();
+        for (Classroom classroom : classrooms) {
+            tasks.add(() -> getClassroomTimetableAsync(classroom.getInternalId(), today)
+                    .thenAccept(classLessons -> applyTimetable(classroom, classLessons, zonedTime)));
         }
+        return OpenstudAsyncHelper.boundedAllAsList(tasks, os.getParallelism());
     }
 
     private List<Classroom> _getClassroom(String query, boolean withTimetable) throws OpenstudInvalidResponseException, OpenstudConnectionException {
-        List<Classroom> ret = new LinkedList<>();
+        List<Classroom> ret;
         try {
-            Request req = new Request.Builder().url(String.format("%s/classroom/search?q=%s", os.getEndpointTimetable(), query.replace(" ", "%20"))).build();
-            String body = handleRequest(req);
-            JSONArray array = new JSONArray(body);
-            LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
-            LocalDateTime zonedTime = now.atOffset(ZoneOffset.UTC).withOffsetSameInstant(ZoneOffset.of("+1")).toLocalDateTime();
-            for (int i = 0; i < array.length(); i++) {
-                if (i == os.getLimitSearch()) break;
-                JSONObject object = array.getJSONObject(i);
-                Classroom classroom = parseClassroom(object);
-                if (withTimetable) {
-                    List<Lesson> classLessons = getClassroomTimetable(classroom.getInternalId(), LocalDate.now());
-                    for (Lesson lesson : classLessons) {
-                        if (lesson.getStart().isBefore(zonedTime) && lesson.getEnd().isAfter(zonedTime)) {
-                            classroom.setLessonNow(lesson);
-                            classroom.setOccupied(true);
-                        }
-                        else if (lesson.getStart().isAfter(zonedTime)) {
-                            classroom.setNextLesson(lesson);
-                            break;
-                        }
-                    }
-                    classroom.setTodayLessons(classLessons);
-                    Thread.sleep(os.getWaitTimeClassroomRequest());
-                }
-                ret.add(classroom);
-            }
+            String body = handleRequest(classroomRequest(query));
+            ret = parseClassrooms(new JSONArray(body));
+            if (withTimetable) OpenstudAsyncHelper.awaitPublic(timetablesAsync(ret));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -86,23 +88,99 @@ public class SapienzaClassroomHandler implements ClassroomHandler {
             OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException(e).setJSONType();
             os.log(Level.SEVERE, invalidResponse);
             throw invalidResponse;
-        } catch (InterruptedException e) {
-            e.printStackTrace();
         }
         return ret;
     }
 
+    private Request classroomRequest(String query) {
+        return new Request.Builder().url(String.format("%s/classroom/search?q=%s", os.getEndpointTimetable(), query.replace(" ", "%20"))).build();
+    }
+
+    private List<Classroom> parseClassrooms(JSONArray array) {
+        List<Classroom> ret = new LinkedList<>();
+        for (int i = 0; i < array.length(); i++) {
+            if (i == os.getLimitSearch()) break;
+            ret.add(parseClassroom(array.getJSONObject(i)));
+        }
+        return ret;
+    }
+
+    private LocalDateTime currentTime() {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        return now.atOffset(ZoneOffset.UTC).withOffsetSameInstant(ZoneOffset.of("+1")).toLocalDateTime();
+    }
+
+    private void applyTimetable(Classroom classroom, List<Lesson> classLessons, LocalDateTime zonedTime) {
+        for (Lesson lesson : classLessons) {
+            if (lesson.getStart().isBefore(zonedTime) && lesson.getEnd().isAfter(zonedTime)) {
+                classroom.setLessonNow(lesson);
+                classroom.setOccupied(true);
+            }
+            else if (lesson.getStart().isAfter(zonedTime)) {
+                classroom.setNextLesson(lesson);
+                break;
+            }
+        }
+        classroom.setTodayLessons(classLessons);
+    }
+
+    /**
+     * GOMP is paced by the timetable bucket only: the requests are marked as {@link HostRateLimiter#paced(Request)}, so
+     * the host limiter of the transport doesn't make them wait a second time.
+     */
+    private void pace() throws InterruptedIOException {
+        try {
+            os.getTimetableRateLimiter().acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the GOMP rate limiter");
+        }
+    }
+
+    private <T> CompletableFuture<T> enqueue(Request req, OpenstudAsyncHelper.ResponseParser<T> parser) {
+        return OpenstudAsyncHelper.delay(os.getTimetableRateLimiter().reserve())
+                .thenCompose(ignored -> OpenstudAsyncHelper.enqueue(os, HostRateLimiter.paced(req), parser));
+    }
+
+    private OpenstudInvalidResponseException rateLimitReached() {
+        os.getTimetableRateLimiter().backOff();
+        return new OpenstudInvalidResponseException("Request rate limit reached").setRateLimitType();
+    }
+
     private String handleRequest(Request req) throws IOException, OpenstudInvalidResponseException {
-        Response resp = os.getClient().newCall(req).execute();
+        pace();
+        return handleResponse(os.getClient().newCall(HostRateLimiter.paced(req)).execute());
+    }
+
+    private String handleResponse(Response resp) throws IOException, OpenstudInvalidResponseException {
         if (resp.body() == null) throw new OpenstudInvalidResponseException("GOMP answer is not valid");
         String body = resp.body().string();
         resp.close();
-        if (body.contains("maximum request limit"))
-            throw new OpenstudInvalidResponseException("Request rate limit reached").setRateLimitType();
-        os.log(Level.INFO, body);
+        if (body.contains("maximum request limit")) throw rateLimitReached();
+        os.logBody(body);
         return body;
     }
 
+    private <T> T handleStreamRequest(Request req, SapienzaStreamHelper.ValueReader<T> valueReader) throws IOException, OpenstudInvalidResponseException {
+        pace();
+        return handleStreamResponse(os.getClient().newCall(HostRateLimiter.paced(req)).execute(), valueReader);
+    }
+
+    private <T> T handleStreamResponse(Response resp, SapienzaStreamHelper.ValueReader<T> valueReader) throws IOException, OpenstudInvalidResponseException {
+        try (Response response = resp) {
+            if (response.body() == null) throw new OpenstudInvalidResponseException("GOMP answer is not valid");
+            BufferedSource source = response.body().source();
+            // the rate limit answer is plain text, only JSON answers are streamed
+            if (!SapienzaStreamHelper.startsWithJson(source)) {
+                String body = source.readUtf8();
+                if (body.contains("maximum request limit")) throw rateLimitReached();
+                os.logBody(body);
+                throw new JSONException("GOMP answer is not valid JSON");
+            }
+            return SapienzaStreamHelper.read(source, valueReader);
+        }
+    }
+
     private Classroom parseClassroom(JSONObject object) {
         Classroom classroom = new Classroom();
         for (String info : object.keySet()) {
@@ -151,33 +229,25 @@ public class SapienzaClassroomHandler implements ClassroomHandler {
     @Override
     public List<Lesson> getClassroomTimetable(int id, LocalDate date) throws OpenstudConnectionException, OpenstudInvalidResponseException {
         if (!os.isReady()) return null;
-        int count = 0;
-        while (true) {
-            try {
-                return _getClassroomTimetable(id, date);
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isRateLimit()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
-        }
+        return OpenstudRetryHelper.retryPublic(os, OpenstudBaseResponseException::isRateLimit, () -> _getClassroomTimetable(id, date));
+    }
+
+    @Override
+    public CompletableFuture<List<Lesson>> getClassroomTimetableAsync(Classroom room, LocalDate date) {
+        if (room == null) return CompletableFuture.completedFuture(new LinkedList<>());
+        return getClassroomTimetableAsync(room.getInternalId(), date);
+    }
+
+    @Override
+    public CompletableFuture<List<Lesson>> getClassroomTimetableAsync(int id, LocalDate date) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retryPublic(os, OpenstudBaseResponseException::isRateLimit,
+                () -> enqueue(classroomTimetableRequest(id, date), resp -> handleStreamResponse(resp, this::readClassroomTimetable)));
     }
 
     private List<Lesson> _getClassroomTimetable(int id, LocalDate date) throws OpenstudInvalidResponseException, OpenstudConnectionException {
-        List<Lesson> ret = new LinkedList<>();
         try {
-            Request req = new Request.Builder().url(String.format("%s/events/%s/%s/%s/%s", os.getEndpointTimetable(), date.getYear(), date.getMonthValue(), date.getDayOfMonth(), id)).build();
-            String body = handleRequest(req);
-            JSONArray array = new JSONArray(body);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm");
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject object = array.getJSONObject(i);
-                ret.add(SapienzaHelper.extractLesson(object, formatter, 0));
-            }
-            return OpenstudHelper.sortLessonsByStartDate(ret, true);
-
+            return handleStreamRequest(classroomTimetableRequest(id, date), this::readClassroomTimetable);
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -189,55 +259,35 @@ public class SapienzaClassroomHandler implements ClassroomHandler {
         }
     }
 
+    private Request classroomTimetableRequest(int id, LocalDate date) {
+        return new Request.Builder().url(String.format("%s/events/%s/%s/%s/%s", os.getEndpointTimetable(), date.getYear(), date.getMonthValue(), date.getDayOfMonth(), id)).build();
+    }
+
+    private List<Lesson> readClassroomTimetable(JsonReader reader) throws IOException {
+        return OpenstudHelper.sortLessonsByStartDate(SapienzaStreamHelper.readLessons(reader, SapienzaParsingContext.TIMETABLE_DATE_TIME, 0), true);
+    }
+
     @Override
     public Map<String, List<Lesson>> getTimetable(List<ExamDoable> exams) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         if (!os.isReady()) return null;
-        int count = 0;
-        Map<String, List<Lesson>> ret;
-        while (true) {
-            try {
-                ret = _getTimetable(exams);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isRateLimit()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            }
-        }
-        return ret;
+        return OpenstudRetryHelper.retryPublic(os, OpenstudBaseResponseException::isRateLimit, () -> _getTimetable(exams));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<Lesson>>> getTimetableAsync(List<ExamDoable> exams) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        if (exams.isEmpty()) return CompletableFuture.completedFuture(new HashMap<>());
+        String codes = examCodes(exams);
+        return OpenstudAsyncHelper.retryPublic(os, OpenstudBaseResponseException::isRateLimit,
+                () -> enqueue(timetableRequest(codes), resp -> handleStreamResponse(resp, reader -> readTimetable(reader, codes))));
     }
 
     private Map<String, List<Lesson>> _getTimetable(List<ExamDoable> exams) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         Map<String, List<Lesson>> ret = new HashMap<>();
         if (exams.isEmpty()) return ret;
         try {
-            StringBuilder builderExams = new StringBuilder();
-            boolean first = true;
-            for (ExamDoable exam : exams) {
-                if (!first)
-                    builderExams.append(",");
-                first = false;
-                builderExams.append(exam.getExamCode());
-            }
-            String codes = builderExams.toString();
-            Request req = new Request.Builder().url(String.format("%s/lectures/%s", os.getEndpointTimetable(), builderExams.toString())).build();
-            String body = handleRequest(req);
-            JSONObject response = new JSONObject(body);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm");
-            for (String examCode : response.keySet()) {
-                if (!codes.contains(examCode)) continue;
-                JSONArray array = response.getJSONArray(examCode);
-                LinkedList<Lesson> lessons = new LinkedList<>();
-                for (int i = 0; i < array.length(); i++) {
-                    JSONObject object = array.getJSONObject(i);
-                    lessons.add(SapienzaHelper.extractLesson(object, formatter, -1));
-                }
-                ret.put(examCode, lessons);
-            }
-            return ret;
-
+            String codes = examCodes(exams);
+            return handleStreamRequest(timetableRequest(codes), reader -> readTimetable(reader, codes));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -248,4 +298,24 @@ public class SapienzaClassroomHandler implements ClassroomHandler {
             throw invalidResponse;
         }
     }
+
+    private String examCodes(List<ExamDoable> exams) {
+        StringBuilder builderExams = new StringBuilder();
+        boolean first = true;
+        for (ExamDoable exam : exams) {
+            if (!first)
+                builderExams.append(",");
+            first = false;
+            builderExams.append(exam.getExamCode());
+        }
+        return builderExams.toString();
+    }
+
+    private Request timetableRequest(String codes) {
+        return new Request.Builder().url(String.format("%s/lectures/%s", os.getEndpointTimetable(), codes)).build();
+    }
+
+    private Map<String, List<Lesson>> readTimetable(JsonReader reader, String codes) throws IOException {
+        return SapienzaStreamHelper.readTimetable(reader, codes, SapienzaParsingContext.TIMETABLE_DATE_TIME, -1);
+    }
 }
@@ -42,6 +42,11 @@ public class SapienzaConfig implements ProviderConfig {
         return "https://gomp.sapienzaapps.it";
     }
 
+    @Override
+    public String getEndpointWebsite() {
+        return "https://www.uniroma1.it";
+    }
+
     @Override
     public String getEmailURL() {
         return "https://mail.google.com/a/studenti.uniroma1.it";
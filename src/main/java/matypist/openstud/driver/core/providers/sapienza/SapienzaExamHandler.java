@@ -1,13 +1,16 @@
 package matypist.openstud.driver.core.providers.sapienza;
 
+import com.squareup.moshi.JsonReader;
 import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudAsyncHelper;
 import matypist.openstud.driver.core.OpenstudHelper;
+import matypist.openstud.driver.core.OpenstudRetryHelper;
 import matypist.openstud.driver.core.internals.ExamHandler;
 import matypist.openstud.driver.core.models.*;
+import matypist.openstud.driver.exceptions.OpenstudBaseResponseException;
 import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidCredentialsException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
-import matypist.openstud.driver.exceptions.OpenstudRefreshException;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -16,13 +19,13 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.threeten.bp.LocalDate;
-import org.threeten.bp.format.DateTimeFormatter;
-import org.threeten.bp.format.DateTimeParseException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class SapienzaExamHandler implements ExamHandler {
@@ -35,68 +38,19 @@ public class SapienzaExamHandler implements ExamHandler {
     @Override
     public List<ExamDoable> getExamsDoable() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        List<ExamDoable> exams;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                exams = _getExamsDoable();
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    if (e.isMaintenance()) throw e;
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return exams;
+        return OpenstudRetryHelper.retry(os, true, () -> _getExamsDoable());
+    }
+
+    @Override
+    public CompletableFuture<List<ExamDoable>> getExamsDoableAsync() {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, examsDoableRequest(), resp -> parseExamsDoable(handleResponse(resp))));
     }
 
     private List<ExamDoable> _getExamsDoable() throws OpenstudConnectionException, OpenstudInvalidResponseException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/studente/%s/insegnamentisostenibili?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
-            JSONObject response = handleRequest(req);
-            if (!response.has("ritorno"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("ritorno");
-            List<ExamDoable> list = new LinkedList<>();
-            if (!response.has("esami") || response.isNull("esami")) return list;
-            JSONArray array = response.getJSONArray("esami");
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                ExamDoable exam = new ExamDoable();
-                for (String element : obj.keySet()) {
-                    switch (element) {
-                        case "codiceInsegnamento":
-                            exam.setExamCode(obj.getString("codiceInsegnamento"));
-                            break;
-                        case "codiceModuloDidattico":
-                            exam.setModuleCode(obj.getString("codiceModuloDidattico"));
-                            break;
-                        case "codiceCorsoInsegnamento":
-                            exam.setCourseCode(obj.getString("codiceCorsoInsegnamento"));
-                            break;
-                        case "cfu":
-                            exam.setCfu(obj.getInt("cfu"));
-                            break;
-                        case "descrizione":
-                            exam.setDescription(obj.getString("descrizione"));
-                            break;
-                        case "ssd":
-                            exam.setSsd(obj.getString("ssd"));
-                            break;
-                        default:
-                            break;
-                    }
-                }
-                list.add(exam);
-            }
-            return list;
+            return parseExamsDoable(handleRequest(examsDoableRequest()));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -108,91 +62,67 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
-    @Override
-    public List<ExamDone> getExamsDone() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
-        if (!os.isReady()) return null;
-        int count = 0;
-        List<ExamDone> exams;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                exams = _getExamsDone();
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    if (e.isMaintenance()) throw e;
-                    os.log(Level.SEVERE, e);
-                    throw e;
+    private Request examsDoableRequest() {
+        return new Request.Builder().url(String.format("%s/studente/%s/insegnamentisostenibili?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
+    }
+
+    private List<ExamDoable> parseExamsDoable(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        response = response.getJSONObject("ritorno");
+        List<ExamDoable> list = new LinkedList<>();
+        if (!response.has("esami") || response.isNull("esami")) return list;
+        JSONArray array = response.getJSONArray("esami");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            ExamDoable exam = new ExamDoable();
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "codiceInsegnamento":
+                        exam.setExamCode(obj.getString("codiceInsegnamento"));
+                        break;
+                    case "codiceModuloDidattico":
+                        exam.setModuleCode(obj.getString("codiceModuloDidattico"));
+                        break;
+                    case "codiceCorsoInsegnamento":
+                        exam.setCourseCode(obj.getString("codiceCorsoInsegnamento"));
+                        break;
+                    case "cfu":
+                        exam.setCfu(obj.getInt("cfu"));
+                        break;
+                    case "descrizione":
+                        exam.setDescription(obj.getString("descrizione"));
+                        break;
+                    case "ssd":
+                        exam.setSsd(obj.getString("ssd"));
+                        break;
+                    default:
+                        break;
                 }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
             }
+            list.add(exam);
         }
+        return list;
+    }
+
+    @Override
+    public List<ExamDone> getExamsDone() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!os.isReady()) return null;
+        List<ExamDone> exams = OpenstudRetryHelper.retry(os, true, () -> _getExamsDone());
         return OpenstudHelper.sortExamByDate(exams, false);
     }
 
+    @Override
+    public CompletableFuture<List<ExamDone>> getExamsDoneAsync() {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, examsDoneRequest(), resp -> SapienzaStreamHelper.readResponse(resp, reader -> SapienzaStreamHelper.readExamsDone(os, reader))))
+                .thenApply(exams -> OpenstudHelper.sortExamByDate(exams, false));
+    }
+
     private List<ExamDone> _getExamsDone() throws OpenstudConnectionException, OpenstudInvalidResponseException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/studente/%s/esamiall?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
-            JSONObject response = handleRequest(req);
-            if (!response.has("ritorno"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("ritorno");
-            List<ExamDone> list = new LinkedList<>();
-            if (!response.has("esami") || response.isNull("esami")) return list;
-            JSONArray array = response.getJSONArray("esami");
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                ExamDone exam = new ExamDone();
-                for (String element : obj.keySet()) {
-                    switch (element) {
-                        case "codiceInsegnamento":
-                            exam.setExamCode(obj.getString("codiceInsegnamento"));
-                            break;
-                        case "cfu":
-                            exam.setCfu(obj.getInt("cfu"));
-                            break;
-                        case "descrizione":
-                            exam.setDescription(obj.getString("descrizione"));
-                            break;
-                        case "ssd":
-                            exam.setSsd(obj.getString("ssd"));
-                            break;
-                        case "data":
-                            if (obj.isNull("data")) break;
-                            String dateBirth = obj.getString("data");
-                            if (dateBirth.isEmpty()) break;
-                            try {
-                                exam.setDate(LocalDate.parse(dateBirth, formatter));
-                            } catch (DateTimeParseException e) {
-                                e.printStackTrace();
-                            }
-                            break;
-                        case "certificato":
-                            exam.setCertified(obj.getBoolean("certificato"));
-                            break;
-                        case "superamento":
-                            exam.setPassed(obj.getBoolean("superamento"));
-                            break;
-                        case "annoAcca":
-                            exam.setYear(obj.getInt("annoAcca"));
-                            break;
-                        case "esito":
-                            JSONObject esito = obj.getJSONObject("esito");
-                            if (esito.has("valoreNominale")) exam.setNominalResult(esito.getString("valoreNominale"));
-                            if (esito.has("valoreNonNominale") && !esito.isNull("valoreNonNominale"))
-                                exam.setResult(esito.getInt("valoreNonNominale"));
-                            break;
-                        default:
-                            break;
-                    }
-                }
-                list.add(exam);
-            }
-            return list;
+            return handleStreamRequest(examsDoneRequest(), reader -> SapienzaStreamHelper.readExamsDone(os, reader));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -204,42 +134,26 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request examsDoneRequest() {
+        return new Request.Builder().url(String.format("%s/studente/%s/esamiall?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
+    }
+
     @Override
     public List<ExamReservation> getActiveReservations() throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        List<ExamReservation> reservations;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                reservations = _getActiveReservations();
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    if (e.isMaintenance()) throw e;
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return reservations;
+        return OpenstudRetryHelper.retry(os, true, () -> _getActiveReservations());
+    }
+
+    @Override
+    public CompletableFuture<List<ExamReservation>> getActiveReservationsAsync() {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, activeReservationsRequest(), resp -> SapienzaStreamHelper.readResponse(resp, this::readActiveReservations)));
     }
 
     private List<ExamReservation> _getActiveReservations() throws OpenstudConnectionException, OpenstudInvalidResponseException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/studente/%s/prenotazioni?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
-            JSONObject response = handleRequest(req);
-            if (!response.has("ritorno"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("ritorno");
-            if (!response.has("appelli") || response.isNull("appelli"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. Maybe the server is not working");
-            JSONArray array = response.getJSONArray("appelli");
-            return OpenstudHelper.sortReservationByDate(SapienzaHelper.extractReservations(os, array), true);
+            return handleStreamRequest(activeReservationsRequest(), this::readActiveReservations);
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -251,41 +165,30 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request activeReservationsRequest() {
+        return new Request.Builder().url(String.format("%s/studente/%s/prenotazioni?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), os.getToken())).build();
+    }
+
+    private List<ExamReservation> readActiveReservations(JsonReader reader) throws IOException, OpenstudInvalidResponseException {
+        return OpenstudHelper.sortReservationByDate(SapienzaStreamHelper.readReservations(os, reader, true), true);
+    }
+
     @Override
     public List<ExamReservation> getAvailableReservations(ExamDoable exam, Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        List<ExamReservation> reservations;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                reservations = _getAvailableReservations(exam, student);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    if (e.isMaintenance()) throw e;
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return reservations;
+        return OpenstudRetryHelper.retry(os, true, () -> _getAvailableReservations(exam, student));
+    }
+
+    @Override
+    public CompletableFuture<List<ExamReservation>> getAvailableReservationsAsync(ExamDoable exam, Student student) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, availableReservationsRequest(exam, student), resp -> SapienzaStreamHelper.readResponse(resp, this::readAvailableReservations)));
     }
 
     private List<ExamReservation> _getAvailableReservations(ExamDoable exam, Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/appello/ricerca?ingresso=%s&tipoRicerca=%s&criterio=%s&codiceCorso=%s&annoAccaAuto=%s", os.getEndpointAPI(), os.getToken(), 4, exam.getModuleCode(), exam.getCourseCode(), student.getAcademicYearCourse())).build();
-            JSONObject response = handleRequest(req);
-            if (!response.has("ritorno"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            response = response.getJSONObject("ritorno");
-            if (!response.has("appelli") || response.isNull("appelli")) return new LinkedList<>();
-            JSONArray array = response.getJSONArray("appelli");
-            return SapienzaHelper.extractReservations(os, array);
+            return handleStreamRequest(availableReservationsRequest(exam, student), this::readAvailableReservations);
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -297,65 +200,31 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request availableReservationsRequest(ExamDoable exam, Student student) {
+        return new Request.Builder().url(String.format("%s/appello/ricerca?ingresso=%s&tipoRicerca=%s&criterio=%s&codiceCorso=%s&annoAccaAuto=%s", os.getEndpointAPI(), os.getToken(), 4, exam.getModuleCode(), exam.getCourseCode(), student.getAcademicYearCourse())).build();
+    }
+
+    private List<ExamReservation> readAvailableReservations(JsonReader reader) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.readReservations(os, reader, false);
+    }
+
     @Override
     public Pair<Integer, String> insertReservation(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        Pair<Integer, String> pr;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                pr = _insertReservation(res);
-                if (pr == null) {
-                    if (!(++count == os.getMaxTries())) continue;
-                }
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return pr;
+        return OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _insertReservation(res), pr -> pr == null);
+    }
+
+    @Override
+    public CompletableFuture<Pair<Integer, String>> insertReservationAsync(ExamReservation res) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance,
+                () -> OpenstudAsyncHelper.<Pair<Integer, String>>enqueue(os, insertReservationRequest(res), resp -> parseInsertReservation(handleResponse(resp))),
+                pr -> pr == null);
     }
 
     private ImmutablePair<Integer, String> _insertReservation(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            String requrl =
-                    String.format("%s/prenotazione/%s/%s/%s/%s/?ingresso=%s",
-                            os.getEndpointAPI(),
-                            res.getReportID(),
-                            res.getSessionID(),
-                            res.getCourseCode(),
-                            res.getAttendingModeType(),
-                            os.getToken()
-                    );
-            RequestBody reqbody = RequestBody.create(new byte[]{}, null);
-            Request req = new Request.Builder().url(requrl).post(reqbody).build();
-
-            JSONObject response = handleRequest(req);
-            String url = null;
-            int flag = -1;
-            String nota = null;
-            if (response.has("esito")) {
-                if (response.getJSONObject("esito").has("flagEsito")) {
-                    flag = response.getJSONObject("esito").getInt("flagEsito");
-                }
-                if (response.getJSONObject("esito").has("nota")) {
-                    if (!response.getJSONObject("esito").isNull("nota"))
-                        nota = response.getJSONObject("esito").getString("nota");
-                }
-            } else throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            if (response.has("urlOpis") && !response.isNull("urlOpis")) url = response.getString("urlOpis");
-            else if (response.has("url") && !response.isNull("url")) url = response.getString("url");
-            if (url == null && flag != 0 && (nota == null || !nota.contains("già prenotato"))) return null;
-            return new ImmutablePair<>(flag, url);
+            return parseInsertReservation(handleRequest(insertReservationRequest(res)));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -367,52 +236,71 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request insertReservationRequest(ExamReservation res) {
+        String requrl =
+                String.format("%s/prenotazione/%s/%s/%s/%s/?ingresso=%s",
+                        os.getEndpointAPI(),
+                        res.getReportID(),
+                        res.getSessionID(),
+                        res.getCourseCode(),
+                        res.getAttendingModeType(),
+                        os.getToken()
+                );
+        RequestBody reqbody = RequestBody.create(new byte[]{}, null);
+        return new Request.Builder().url(requrl).post(reqbody).build();
+    }
+
+    private ImmutablePair<Integer, String> parseInsertReservation(JSONObject response) throws OpenstudInvalidResponseException {
+        String url = null;
+        int flag = -1;
+        String nota = null;
+        if (response.has("esito")) {
+            if (response.getJSONObject("esito").has("flagEsito")) {
+                flag = response.getJSONObject("esito").getInt("flagEsito");
+            }
+            if (response.getJSONObject("esito").has("nota")) {
+                if (!response.getJSONObject("esito").isNull("nota"))
+                    nota = response.getJSONObject("esito").getString("nota");
+            }
+        } else throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+        if (response.has("urlOpis") && !response.isNull("urlOpis")) url = response.getString("urlOpis");
+        else if (response.has("url") && !response.isNull("url")) url = response.getString("url");
+        if (url == null && flag != 0 && (nota == null || !nota.contains("già prenotato"))) return null;
+        return new ImmutablePair<>(flag, url);
+    }
+
+    private <T> T handleStreamRequest(Request req, SapienzaStreamHelper.ValueReader<T> valueReader) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.readResponse(os.getClient().newCall(req).execute(), valueReader);
+    }
+
     private JSONObject handleRequest(Request req) throws IOException, OpenstudInvalidResponseException {
-        Response resp = os.getClient().newCall(req).execute();
+        return handleResponse(os.getClient().newCall(req).execute());
+    }
+
+    private JSONObject handleResponse(Response resp) throws IOException, OpenstudInvalidResponseException {
         if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
         String body = resp.body().string();
         resp.close();
-        os.log(Level.INFO, body);
+        os.logBody(body);
         return new JSONObject(body);
     }
 
     @Override
     public int deleteReservation(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException, OpenstudInvalidCredentialsException {
         if (!os.isReady() || res.getReservationNumber() == -1) return -1;
-        int count = 0;
-        int ret;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                ret = _deleteReservation(res);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return ret;
+        return OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _deleteReservation(res));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteReservationAsync(ExamReservation res) {
+        if (!os.isReady() || res.getReservationNumber() == -1) return CompletableFuture.completedFuture(-1);
+        return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance,
+                () -> OpenstudAsyncHelper.enqueue(os, deleteReservationRequest(res), resp -> parseDeleteReservation(handleResponse(resp))));
     }
 
     private int _deleteReservation(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/prenotazione/%s/%s/%s/%s?ingresso=%s", os.getEndpointAPI(), res.getReportID(), res.getSessionID(),
-                    os.getStudentID(), res.getReservationNumber(), os.getToken())).delete().build();
-            JSONObject response = handleRequest(req);
-            int flag = -1;
-            if (response.has("esito")) {
-                if (response.getJSONObject("esito").has("flagEsito")) {
-                    flag = response.getJSONObject("esito").getInt("flagEsito");
-                }
-            } else throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            return flag;
+            return parseDeleteReservation(handleRequest(deleteReservationRequest(res)));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -424,45 +312,48 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request deleteReservationRequest(ExamReservation res) {
+        return new Request.Builder().url(String.format("%s/prenotazione/%s/%s/%s/%s?ingresso=%s", os.getEndpointAPI(), res.getReportID(), res.getSessionID(),
+                os.getStudentID(), res.getReservationNumber(), os.getToken())).delete().build();
+    }
+
+    private int parseDeleteReservation(JSONObject response) throws OpenstudInvalidResponseException {
+        int flag = -1;
+        if (response.has("esito")) {
+            if (response.getJSONObject("esito").has("flagEsito")) {
+                flag = response.getJSONObject("esito").getInt("flagEsito");
+            }
+        } else throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+        return flag;
+    }
+
     @Override
     public byte[] getExamReservationPDF(ExamReservation reservation) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady() || reservation == null) return null;
-        int count = 0;
-        byte[] pdf;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                pdf = _getPdf(reservation);
-                break;
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        return pdf;
+        return OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _getPdf(reservation));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getExamReservationPDFAsync(ExamReservation reservation) {
+        if (!os.isReady() || reservation == null) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance,
+                () -> OpenstudAsyncHelper.enqueue(os, pdfRequest(reservation), resp -> SapienzaStreamHelper.readResponse(resp, reader -> SapienzaStreamHelper.readPdf(os, reader))));
+    }
+
+    @Override
+    public long getExamReservationPDF(ExamReservation reservation, OutputStream out) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
+        if (!os.isReady() || reservation == null) return 0;
+        SapienzaStreamHelper.CountingOutputStream counter = new SapienzaStreamHelper.CountingOutputStream(out);
+        return OpenstudRetryHelper.retry(os, true, e -> e.isMaintenance() || counter.getCount() > 0, () -> _getPdf(reservation, reader -> SapienzaStreamHelper.readPdf(os, reader, counter)));
     }
 
     private byte[] _getPdf(ExamReservation res) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        return _getPdf(res, reader -> SapienzaStreamHelper.readPdf(os, reader));
+    }
+
+    private <T> T _getPdf(ExamReservation res, SapienzaStreamHelper.ValueReader<T> valueReader) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/prenotazione/%s/%s/%s/pdf?ingresso=%s", os.getEndpointAPI(), res.getReportID(), res.getSessionID(), os.getStudentID(), os.getToken())).build();
-            JSONObject response = handleRequest(req);
-            if (!response.has("risultato") || response.isNull("risultato"))
-                throw new OpenstudInvalidResponseException("Infostud answer is not valid, maybe the token is no longer valid");
-            response = response.getJSONObject("risultato");
-            if (!response.has("byte") || response.isNull("byte"))
-                throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            JSONArray byteArray = response.getJSONArray("byte");
-            byte[] pdf = new byte[byteArray.length()];
-            for (int i = 0; i < byteArray.length(); i++) pdf[i] = (byte) byteArray.getInt(i);
-            os.log(Level.INFO, "Found PDF made of " + pdf.length + " bytes \n");
-            return pdf;
+            return handleStreamRequest(pdfRequest(res), valueReader);
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -474,80 +365,60 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request pdfRequest(ExamReservation res) {
+        return new Request.Builder().url(String.format("%s/prenotazione/%s/%s/%s/pdf?ingresso=%s", os.getEndpointAPI(), res.getReportID(), res.getSessionID(), os.getStudentID(), os.getToken())).build();
+    }
+
     @Override
     public List<Event> getCalendarEvents(Student student) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                List<ExamDoable> exams = _getExamsDoable();
-                List<ExamReservation> reservations = _getActiveReservations();
-                List<ExamReservation> avaiableReservations = new LinkedList<>();
-                for (ExamDoable exam : exams) {
-                    avaiableReservations.addAll(_getAvailableReservations(exam, student));
-                }
-                return OpenstudHelper.generateEvents(reservations, avaiableReservations);
-            } catch (OpenstudInvalidResponseException e) {
-                if (++count == os.getMaxTries()) {
-                    if (e.isMaintenance()) throw e;
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
+        return OpenstudAsyncHelper.await(getCalendarEventsAsync(student));
+    }
+
+    @Override
+    public CompletableFuture<List<Event>> getCalendarEventsAsync(Student student) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        // every lookup keeps its own retry loop, so a failure only repeats the slice that failed
+        CompletableFuture<List<ExamReservation>> reservations = getActiveReservationsAsync();
+        CompletableFuture<List<ExamReservation>> avaiableReservations = getExamsDoableAsync().thenCompose(exams -> {
+            List<Supplier<CompletableFuture<List<ExamReservation>>>> lookups = new LinkedList<>();
+            for (ExamDoable exam : exams) lookups.add(() -> getAvailableReservationsAsync(exam, student));
+            return OpenstudAsyncHelper.boundedAllAsList(lookups, os.getParallelism());
+        }).thenApply(lists -> {
+            List<ExamReservation> ret = new LinkedList<>();
+            for (List<ExamReservation> list : lists) ret.addAll(list);
+            return ret;
+        });
+        return reservations.thenCombine(avaiableReservations, OpenstudHelper::generateEvents);
     }
 
     @Override
     public String getCourseSurvey(String surveyCode) throws OpenstudConnectionException, OpenstudInvalidResponseException, OpenstudInvalidCredentialsException {
         if (!os.isReady()) return null;
-        int count = 0;
-        while (count<os.getMaxTries()) {
-            try {
-                if (count > 0) os.refreshToken();
-                return _getCourseSurveyDeprecated(surveyCode);
-            } catch (OpenstudInvalidResponseException e) {
-                count++;
-                os.log(Level.SEVERE, e);
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
-        }
-        count = 0;
-        while (true) {
-            try {
-                if (count > 0) os.refreshToken();
-                return _getCourseSurvey(surveyCode);
-            } catch (OpenstudInvalidResponseException e) {
-                if (e.isMaintenance()) throw e;
-                if (++count == os.getMaxTries()) {
-                    os.log(Level.SEVERE, e);
-                    throw e;
-                }
-            } catch (OpenstudRefreshException e) {
-                OpenstudInvalidCredentialsException invalidCredentials = new OpenstudInvalidCredentialsException(e);
-                os.log(Level.SEVERE, invalidCredentials);
-                throw invalidCredentials;
-            }
+        try {
+            return OpenstudRetryHelper.retry(os, true, () -> _getCourseSurveyDeprecated(surveyCode));
+        } catch (OpenstudInvalidResponseException e) {
+            return OpenstudRetryHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance, () -> _getCourseSurvey(surveyCode));
         }
     }
 
+    @Override
+    public CompletableFuture<String> getCourseSurveyAsync(String surveyCode) {
+        if (!os.isReady()) return CompletableFuture.completedFuture(null);
+        return OpenstudAsyncHelper.retry(os, true, e -> false,
+                () -> OpenstudAsyncHelper.enqueue(os, courseSurveyDeprecatedRequest(surveyCode), resp -> parseCourseSurveyDeprecated(handleResponse(resp))))
+                .handle((survey, throwable) -> {
+                    if (throwable == null) return CompletableFuture.completedFuture(survey);
+                    Throwable cause = OpenstudAsyncHelper.unwrap(throwable);
+                    if (!(cause instanceof OpenstudInvalidResponseException)) return OpenstudAsyncHelper.<String>failed(cause);
+                    return OpenstudAsyncHelper.retry(os, true, OpenstudBaseResponseException::isMaintenance,
+                            () -> OpenstudAsyncHelper.enqueue(os, courseSurveyRequest(surveyCode), resp -> parseCourseSurvey(surveyCode, resp)));
+                }).thenCompose(future -> future);
+    }
+
     private String _getCourseSurvey(String surveyCode) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/opis/survey/init/%s/env/opis_free?ingresso=%s", os.getEndpointAPI(), surveyCode.trim().toUpperCase(), os.getToken())).build();
-            Response resp = os.getClient().newCall(req).execute();
-            if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
-            String body = resp.body().string();
-            resp.close();
-            os.log(Level.INFO, body);
-            if (body.toLowerCase().contains("access denied")) throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            return String.format("https://www.studenti.uniroma1.it/opis/app/index.html?token_opis=%s&env=opis_free&ingresso=%s", surveyCode, os.getToken());
+            return parseCourseSurvey(surveyCode, os.getClient().newCall(courseSurveyRequest(surveyCode)).execute());
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -559,13 +430,22 @@ public class SapienzaExamHandler implements ExamHandler {
         }
     }
 
+    private Request courseSurveyRequest(String surveyCode) {
+        return new Request.Builder().url(String.format("%s/opis/survey/init/%s/env/opis_free?ingresso=%s", os.getEndpointAPI(), surveyCode.trim().toUpperCase(), os.getToken())).build();
+    }
+
+    private String parseCourseSurvey(String surveyCode, Response resp) throws IOException, OpenstudInvalidResponseException {
+        if (resp.body() == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+        String body = resp.body().string();
+        resp.close();
+        os.logBody(body);
+        if (body.toLowerCase().contains("access denied")) throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        return String.format("https://www.studenti.uniroma1.it/opis/app/index.html?token_opis=%s&env=opis_free&ingresso=%s", surveyCode, os.getToken());
+    }
+
     private String _getCourseSurveyDeprecated(String surveyCode) throws OpenstudInvalidResponseException, OpenstudConnectionException {
         try {
-            Request req = new Request.Builder().url(String.format("%s/opis/token/info/%s/%s?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), surveyCode.trim().toUpperCase(), os.getToken())).build();
-            JSONObject response = handleRequest(req);
-            if (!response.has("risultato") || response.isNull("risultato"))
-                throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
-            return response.getString("risultato");
+            return parseCourseSurveyDeprecated(handleRequest(courseSurveyDeprecatedRequest(surveyCode)));
         } catch (IOException e) {
             OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
             os.log(Level.SEVERE, connectionException);
@@ -576,4 +456,14 @@ public class SapienzaExamHandler implements ExamHandler {
             throw invalidResponse;
         }
     }
+
+    private Request courseSurveyDeprecatedRequest(String surveyCode) {
+        return new Request.Builder().url(String.format("%s/opis/token/info/%s/%s?ingresso=%s", os.getEndpointAPI(), os.getStudentID(), surveyCode.trim().toUpperCase(), os.getToken())).build();
+    }
+
+    private String parseCourseSurveyDeprecated(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("risultato") || response.isNull("risultato"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        return response.getString("risultato");
+    }
 }
@@ -0,0 +1,228 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads the elements of a news page used by the driver (summary, date and image) without building the DOM of the whole
+ * page: the HTML is scanned while it is read, only the fragments holding those elements are parsed, and reading stops
+ * as soon as all of them are found.
+ * Whenever an element can't be isolated, or the fragments don't look as expected, the whole page is parsed as before,
+ * so a changed layout costs time but not correctness.
+ */
+final class SapienzaNewsExtractor {
+    static final String DESCRIPTION_CLASS = "testosommario";
+    static final String DESCRIPTION_ITEM_CLASS = "field-item even";
+    static final String DATE_CLASS = "date-display-single";
+    static final String IMAGE_CLASS = "img-responsive";
+    private static final String[] VOID_TAGS = {"img", "br", "hr", "input", "meta", "link", "source"};
+    private static final int CHUNK = 8192;
+
+    private SapienzaNewsExtractor() {
+    }
+
+    /**
+     * @return a document holding the needed elements only, or the whole page if they couldn't be isolated
+     */
+    static Document parse(Reader reader, String url, boolean withDescription) throws IOException {
+        List<Target> targets = new ArrayList<>(3);
+        if (withDescription) targets.add(new Target(DESCRIPTION_CLASS, true));
+        targets.add(new Target(DATE_CLASS, false));
+        targets.add(new Target(IMAGE_CLASS, false));
+
+        StringBuilder html = new StringBuilder(CHUNK * 4);
+        char[] buffer = new char[CHUNK];
+        boolean fallback = false;
+        while (true) {
+            int read = reader.read(buffer);
+            boolean eof = read == -1;
+            if (!eof) html.append(buffer, 0, read);
+            boolean done = true;
+            for (Target target : targets) {
+                Status status = target.find(html, eof);
+                if (status == Status.FAILED) fallback = true;
+                else if (status == Status.PENDING) done = false;
+            }
+            if (fallback || done) break;
+        }
+
+        if (!fallback) {
+            String fragments = join(targets);
+            if (fragments != null) {
+                Document doc = Jsoup.parse(fragments, url);
+                if (isComplete(doc, targets)) return doc;
+            }
+        }
+        int read;
+        while ((read = reader.read(buffer)) != -1) html.append(buffer, 0, read);
+        return Jsoup.parse(html.toString(), url);
+    }
+
+    /**
+     * Joins the fragments in page order, so the first match of a class is the same as in the whole page. A fragment
+     * within another one (e.g. an image in the summary) is already part of it and is skipped.
+     *
+     * @return the fragments to parse, null if two of them partially overlap
+     */
+    private static String join(List<Target> targets) {
+        List<Target> found = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            if (target.fragment != null) found.add(target);
+        }
+        found.sort(Comparator.comparingInt(target -> target.fragmentStart));
+        StringBuilder fragments = new StringBuilder();
+        int end = -1;
+        for (Target target : found) {
+            if (target.fragmentStart < end) {
+                if (target.fragmentEnd <= end) continue;
+                return null;
+            }
+            fragments.append(target.fragment);
+            end = target.fragmentEnd;
+        }
+        return fragments.toString();
+    }
+
+    /**
+     * Checks that every element found in the page can be read from the fragments the way the handler reads it.
+     */
+    private static boolean isComplete(Document doc, List<Target> targets) {
+        for (Target target : targets) {
+            if (target.fragment == null) continue;
+            switch (target.marker) {
+                case DESCRIPTION_CLASS:
+                    Element start = doc.getElementsByAttributeValueEnding("class", DESCRIPTION_CLASS).first();
+                    if (start == null || start.getElementsByClass(DESCRIPTION_ITEM_CLASS).first() == null) return false;
+                    break;
+                case DATE_CLASS:
+                    if (doc.getElementsByClass(DATE_CLASS).first() == null) return false;
+                    break;
+                default:
+                    if (doc.getElementsByClass(IMAGE_CLASS).attr("src").isEmpty()) return false;
+            }
+        }
+        return true;
+    }
+
+    private enum Status {
+        FOUND, PENDING, FAILED
+    }
+
+    /**
+     * First element whose class attribute contains the marker as a class name, or ends with it if {@code suffix}.
+     */
+    private static class Target {
+        private final String marker;
+        private final boolean suffix;
+        private String fragment;
+        private int fragmentStart;
+        private int fragmentEnd;
+        private boolean absent;
+        private boolean rejected;
+        private int from;
+
+        Target(String marker, boolean suffix) {
+            this.marker = marker;
+            this.suffix = suffix;
+        }
+
+        Status find(StringBuilder html, boolean eof) {
+            if (fragment != null || absent) return Status.FOUND;
+            while (true) {
+                int at = html.indexOf(marker, from);
+                if (at < 0) {
+                    // a page without the marker has no such element, the full parse wouldn't find it either
+                    if (eof) {
+                        if (rejected) return Status.FAILED;
+                        absent = true;
+                        return Status.FOUND;
+                    }
+                    from = Math.max(from, html.length() - marker.length() + 1);
+                    return Status.PENDING;
+                }
+                int end = at + marker.length();
+                if (end >= html.length()) return eof ? Status.FAILED : Status.PENDING;
+                int open = classAttributeTag(html, at, end);
+                if (open < 0) {
+                    rejected = true;
+                    from = at + 1;
+                    continue;
+                }
+                from = at;
+                int close = elementEnd(html, open, end);
+                if (close < 0) return eof ? Status.FAILED : Status.PENDING;
+                fragment = html.substring(open, close);
+                fragmentStart = open;
+                fragmentEnd = close;
+                return Status.FOUND;
+            }
+        }
+
+        /**
+         * @return the start of the tag if the marker at the given position is one of its class names, -1 otherwise
+         */
+        private int classAttributeTag(StringBuilder html, int at, int end) {
+            int open = html.lastIndexOf("<", at);
+            if (open < 0 || html.lastIndexOf(">", at) > open || !Character.isLetter(html.charAt(open + 1))) return -1;
+            int valueStart = at;
+            while (valueStart > open && "\"'= ".indexOf(html.charAt(valueStart - 1)) < 0) valueStart--;
+            if (!suffix && valueStart != at) return -1;
+            while (valueStart > open && html.charAt(valueStart - 1) != '"' && html.charAt(valueStart - 1) != '\'' && html.charAt(valueStart - 1) != '=')
+                valueStart--;
+            int name = valueStart - 1;
+            while (name > open && "\"'= \t\n\r".indexOf(html.charAt(name)) >= 0) name--;
+            if (name - 4 <= open || !html.substring(name - 4, name + 1).equalsIgnoreCase("class")) return -1;
+            char next = html.charAt(end);
+            if (suffix ? next != '"' && next != '\'' : "\"' \t\n\r".indexOf(next) < 0) return -1;
+            // markers within comments and scripts are not elements
+            if (html.lastIndexOf("<!--", open) > html.lastIndexOf("-->", open)) return -1;
+            if (html.lastIndexOf("<script", open) > html.lastIndexOf("</script", open)) return -1;
+            return open;
+        }
+    }
+
+    /**
+     * @return the index following the end tag matching the tag opened at {@code open}, -1 if not read yet
+     */
+    private static int elementEnd(StringBuilder html, int open, int from) {
+        int gt = html.indexOf(">", from);
+        if (gt < 0) return -1;
+        int nameEnd = open + 1;
+        while (nameEnd < html.length() && Character.isLetterOrDigit(html.charAt(nameEnd))) nameEnd++;
+        String name = html.substring(open + 1, nameEnd);
+        if (html.charAt(gt - 1) == '/') return gt + 1;
+        for (String tag : VOID_TAGS) {
+            if (tag.equalsIgnoreCase(name)) return gt + 1;
+        }
+        int depth = 1;
+        int position = gt + 1;
+        while (true) {
+            int lt = html.indexOf("<", position);
+            if (lt < 0 || lt + name.length() + 2 >= html.length()) return -1;
+            boolean closing = html.charAt(lt + 1) == '/';
+            int nameStart = closing ? lt + 2 : lt + 1;
+            if (isTag(html, nameStart, name)) {
+                if (closing && --depth == 0) {
+                    int end = html.indexOf(">", nameStart);
+                    return end < 0 ? -1 : end + 1;
+                }
+                if (!closing) depth++;
+            }
+            position = lt + 1;
+        }
+    }
+
+    private static boolean isTag(StringBuilder html, int at, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(html.charAt(at + i)) != Character.toLowerCase(name.charAt(i))) return false;
+        }
+        return !Character.isLetterOrDigit(html.charAt(at + name.length()));
+    }
+}
@@ -1,11 +1,15 @@
 package matypist.openstud.driver.core.providers.sapienza;
 
 import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudAsyncHelper;
 import matypist.openstud.driver.core.OpenstudHelper;
+import matypist.openstud.driver.core.cache.NewsSyncState;
 import matypist.openstud.driver.core.internals.NewsHandler;
 import matypist.openstud.driver.core.models.Event;
 import matypist.openstud.driver.core.models.EventType;
 import matypist.openstud.driver.core.models.News;
+import matypist.openstud.driver.core.models.NewsletterError;
+import matypist.openstud.driver.core.models.NewsletterResult;
 import matypist.openstud.driver.exceptions.OpenstudConnectionException;
 import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
 import okhttp3.HttpUrl;
@@ -18,13 +22,24 @@ import org.jsoup.select.Elements;
 import org.threeten.bp.LocalDate;
 import org.threeten.bp.LocalDateTime;
 import org.threeten.bp.format.DateTimeFormatter;
-import org.threeten.bp.format.DateTimeFormatterBuilder;
 import org.threeten.bp.format.DateTimeParseException;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class SapienzaNewsHandler implements NewsHandler {
@@ -36,310 +51,626 @@ public class SapienzaNewsHandler implements NewsHandler {
 
     @Override
     public List<News> getNews(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage, String query) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        return OpenstudAsyncHelper.awaitPublic(getNewsAsync(locale, withDescription, limit, page, maxPage, query));
+    }
+
+    @Override
+    public CompletableFuture<List<News>> getNewsAsync(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage, String query) {
         if (limit == null && page == null && maxPage == null)
             throw new IllegalStateException("limit, page and maxpage can't be all null");
-        return _getNews(locale, withDescription, limit, page, maxPage, query);
+        String newsLocale = locale == null ? "en" : locale;
+        int startPage = page != null ? page : 0;
+        int endPage = page != null ? startPage + 1 : (maxPage == null ? 1 : maxPage);
+        return new NewsPipeline(newsLocale, withDescription, limit, query, startPage, endPage).start();
     }
 
-    private List<News> _getNews(String locale, boolean withDescription, Integer limit, Integer page, Integer maxPage, String query) throws OpenstudConnectionException, OpenstudInvalidResponseException {
-        if (locale == null)
-            locale = "en";
-        Locale localeFormatter;
-        if (locale.toLowerCase().equals("it")) localeFormatter = Locale.ITALIAN;
-        else localeFormatter = Locale.ENGLISH;
+    /**
+     * Fetches the listing pages and the news details concurrently, each stage keeping at most
+     * {@link Openstud#getParallelism()} requests in flight. Listing pages are consumed in order as soon as the previous
+     * ones are, so the details of the first news are fetched while the next pages are still loading. Once the limit is
+     * reached the pages still in flight are cancelled, cancelling the returned future cancels everything.
+     * The news keep the order of the listing, those whose details can't be fetched are left out.
+     */
+    private class NewsPipeline {
+        private final String locale;
+        private final boolean withDescription;
+        private final Integer limit;
+        private final String query;
+        private final int endPage;
+        private final DateTimeFormatter formatter;
+        private final CompletableFuture<List<News>> result = new CompletableFuture<>();
+        private final Map<Integer, CompletableFuture<Document>> pagesInFlight = new HashMap<>();
+        private final Map<Integer, Document> pagesFetched = new HashMap<>();
+        private final Map<Integer, CompletableFuture<Document>> detailsInFlight = new HashMap<>();
+        private final Deque<Integer> detailsQueued = new ArrayDeque<>();
+        private final List<News> news = new ArrayList<>();
+        private final List<Boolean> valid = new ArrayList<>();
+        private int nextPage;
+        private int nextConsumed;
+        private int consumedPages;
+        private int missedPages;
+        private int detailsDone;
+        private Throwable failure;
+
+        NewsPipeline(String locale, boolean withDescription, Integer limit, String query, int startPage, int endPage) {
+            this.locale = locale;
+            this.withDescription = withDescription;
+            this.limit = limit;
+            this.query = query;
+            this.endPage = endPage;
+            this.formatter = SapienzaParsingContext.newsDate(locale);
+            this.nextPage = startPage;
+            this.nextConsumed = startPage;
+        }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy").withLocale(localeFormatter);
-        try {
-            List<News> ret = new LinkedList<>();
-            int startPage = 0;
-            int endPage = maxPage == null ? 1 : maxPage;
-            if (page != null) {
-                startPage = page;
-                endPage = startPage + 1;
+        CompletableFuture<List<News>> start() {
+            result.whenComplete((ret, throwable) -> {
+                if (throwable instanceof CancellationException) cancelAll();
+            });
+            synchronized (this) {
+                for (int i = 0; i < os.getParallelism(); i++) requestPage();
             }
-            String website_url = "https://www.uniroma1.it";
-            String page_key = "page";
-            String query_key = "search_api_views_fulltext";
-            boolean shouldStop = false;
-            int iterations = 0;
-            int miss = 0;
-            for (int i = startPage; i < endPage && !shouldStop; i++) {
-                HttpUrl.Builder urlBuilder = HttpUrl.parse(String.format("%s/%s/tutte-le-notizie", website_url, locale)).newBuilder();
-                urlBuilder.addQueryParameter(page_key, i + "");
-                if (query != null) {
-                    urlBuilder.addQueryParameter(query_key, query);
-                }
+            complete();
+            return result;
+        }
 
-                Request request = new Request.Builder().url(urlBuilder.build()).get().build();
-                Document doc;
-                try (Response response = os.getClient().newCall(request).execute()) {
-                    if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-                    doc = Jsoup.parse(response.body().string(), request.url().toString());
-                }
+        private boolean limitReached() {
+            return limit != null && news.size() >= limit;
+        }
 
-                Elements boxes = doc.getElementsByClass("box-news");
-                for (Element box : boxes) {
-                    News news = new News();
-                    news.setTitle(box.getElementsByTag("img").attr("title"));
-                    // handle empty news
-                    if (news.getTitle().isEmpty())
-                        continue;
-                    news.setLocale(locale);
-                    news.setUrl(website_url + box.getElementsByTag("a").attr("href").trim());
-                    news.setSmallImageUrl(box.getElementsByTag("img").attr("src"));
-                    ret.add(news);
-                    if (limit != null && ret.size() >= limit) {
-                        shouldStop = true;
-                        break;
-                    }
+        private boolean listingDone() {
+            return limitReached() || nextConsumed >= endPage;
+        }
+
+        private void requestPage() {
+            if (nextPage >= endPage || limitReached() || failure != null) return;
+            int currentPage = nextPage++;
+            Request request = newsListRequest(locale, currentPage, query);
+            CompletableFuture<Document> future = OpenstudAsyncHelper.enqueue(os, request, response -> parseDocument(response, request.url().toString()));
+            pagesInFlight.put(currentPage, future);
+            future.whenComplete((doc, throwable) -> onPage(currentPage, doc, throwable));
+        }
+
+        private void onPage(int currentPage, Document doc, Throwable throwable) {
+            synchronized (this) {
+                pagesInFlight.remove(currentPage);
+                if (failure != null || result.isDone() || listingDone()) return;
+                if (throwable != null) failure = OpenstudAsyncHelper.unwrap(throwable);
+                else {
+                    pagesFetched.put(currentPage, doc);
+                    while (!listingDone() && pagesFetched.containsKey(nextConsumed)) consume(pagesFetched.remove(nextConsumed++));
+                    requestPage();
                 }
-                if (boxes.isEmpty()) miss++;
-                iterations++;
             }
-            if (iterations == miss) {
-                OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException("invalid HTML").setHTMLType();
-                os.log(Level.SEVERE, invalidResponse);
-                throw invalidResponse;
+            complete();
+        }
+
+        private void consume(Document doc) {
+            consumedPages++;
+            int first = news.size();
+            if (addNews(doc, locale, limit, news) == 0) missedPages++;
+            for (int i = first; i < news.size(); i++) {
+                valid.add(false);
+                if (OpenstudHelper.isValidUrl(news.get(i).getUrl())) detailsQueued.add(i);
+                else detailsDone++;
             }
-            LinkedList<News> ignored = new LinkedList<>();
-            for (News news : ret) {
-                if (!OpenstudHelper.isValidUrl(news.getUrl())) {
-                    ignored.add(news);
-                    continue;
-                }
+            requestDetails();
+            if (limitReached()) {
+                pagesFetched.clear();
+                for (CompletableFuture<Document> future : new ArrayList<>(pagesInFlight.values())) future.cancel(true);
+            }
+        }
 
-                Request detailsRequest = new Request.Builder().url(news.getUrl()).get().build();
-                Document doc;
-                try (Response detailsResponse = os.getClient().newCall(detailsRequest).execute()) {
-                    if (!detailsResponse.isSuccessful()) {
-                        ignored.add(news); // If fetching details fails, ignore this news item
-                        continue;
-                    }
-                    doc = Jsoup.parse(detailsResponse.body().string(), news.getUrl());
-                } catch (IOException e) {
-                    ignored.add(news); // Also ignore on connection failure
-                    continue;
-                }
+        private void requestDetails() {
+            while (detailsInFlight.size() < os.getParallelism() && !detailsQueued.isEmpty() && failure == null) {
+                int index = detailsQueued.poll();
+                News item = news.get(index);
+                Request detailsRequest = new Request.Builder().url(item.getUrl()).get().build();
+                CompletableFuture<Document> future = OpenstudAsyncHelper.enqueue(os, detailsRequest, response -> response.isSuccessful() ? parseNewsDetails(response, item.getUrl(), withDescription) : null);
+                detailsInFlight.put(index, future);
+                future.whenComplete((doc, throwable) -> onDetails(index, item, doc, throwable));
+            }
+        }
 
-                if (withDescription) {
-                    Element start = doc.getElementsByAttributeValueEnding("class", "testosommario").first();
-                    if (start != null)
-                        news.setDescription(start.getElementsByClass("field-item even").first().text());
-                }
-                Element date = doc.getElementsByClass("date-display-single").first();
-                if (date != null) {
-                    try {
-                        news.setDate(LocalDate.parse(date.text().substring(date.text().indexOf(",") + 1).trim(), formatter));
-                    } catch (DateTimeParseException e) {
-                        e.printStackTrace();
+        private void onDetails(int index, News item, Document doc, Throwable throwable) {
+            // if fetching details fails, ignore this news item
+            boolean ok = throwable == null && doc != null;
+            RuntimeException error = null;
+            try {
+                if (ok) addNewsDetails(os, item, doc, withDescription, formatter);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            synchronized (this) {
+                if (error != null && failure == null) failure = error;
+                detailsInFlight.remove(index);
+                valid.set(index, ok);
+                detailsDone++;
+                requestDetails();
+            }
+            complete();
+        }
+
+        /**
+         * Completes the result outside of the lock, once the listing is over and every news has its details.
+         */
+        private void complete() {
+            Throwable error = null;
+            List<News> filtered = null;
+            synchronized (this) {
+                if (result.isDone()) return;
+                if (failure != null) error = failure;
+                else if (listingDone() && consumedPages == missedPages) {
+                    OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException("invalid HTML").setHTMLType();
+                    os.log(Level.SEVERE, invalidResponse);
+                    error = failure = invalidResponse;
+                } else if (listingDone() && detailsDone == news.size()) {
+                    filtered = new LinkedList<>();
+                    for (int i = 0; i < news.size(); i++) {
+                        if (valid.get(i)) filtered.add(news.get(i));
                     }
-                }
-                news.setImageUrl(doc.getElementsByClass("img-responsive").attr("src"));
+                } else return;
             }
-            ret.removeAll(ignored);
-            return ret;
+            if (error != null) {
+                cancelAll();
+                result.completeExceptionally(error);
+            } else result.complete(filtered);
+        }
 
-        } catch (IOException e) {
-            OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
-            os.log(Level.SEVERE, connectionException);
-            throw connectionException;
+        private void cancelAll() {
+            List<CompletableFuture<Document>> futures;
+            synchronized (this) {
+                futures = new ArrayList<>(pagesInFlight.values());
+                futures.addAll(detailsInFlight.values());
+                detailsQueued.clear();
+            }
+            for (CompletableFuture<Document> future : futures) future.cancel(true);
         }
     }
 
+    private String newsletterUrl() {
+        return os.getEndpointWebsite() + "/it/newsletter";
+    }
+
+    private Request newsListRequest(String locale, int page, String query) {
+        String page_key = "page";
+        String query_key = "search_api_views_fulltext";
+        HttpUrl.Builder urlBuilder = HttpUrl.parse(String.format("%s/%s/tutte-le-notizie", os.getEndpointWebsite(), locale)).newBuilder();
+        urlBuilder.addQueryParameter(page_key, page + "");
+        if (query != null) {
+            urlBuilder.addQueryParameter(query_key, query);
+        }
+        return new Request.Builder().url(urlBuilder.build()).get().build();
+    }
+
+    private Document parseDocument(Response response, String url) throws IOException {
+        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+        return Jsoup.parse(response.body().string(), url);
+    }
+
+    /**
+     * Adds the news boxes of a listing page to the list, stopping once the limit is reached.
+     *
+     * @return the number of news boxes found in the page
+     */
+    private int addNews(Document doc, String locale, Integer limit, List<News> ret) {
+        Elements boxes = doc.getElementsByClass("box-news");
+        for (Element box : boxes) {
+            News news = new News();
+            news.setTitle(box.getElementsByTag("img").attr("title"));
+            // handle empty news
+            if (news.getTitle().isEmpty())
+                continue;
+            news.setLocale(locale);
+            news.setUrl(os.getEndpointWebsite() + box.getElementsByTag("a").attr("href").trim());
+            news.setSmallImageUrl(box.getElementsByTag("img").attr("src"));
+            ret.add(news);
+            if (limit != null && ret.size() >= limit) break;
+        }
+        return boxes.size();
+    }
+
+    /**
+     * Parses only the parts of a news page read by {@link #addNewsDetails}, straight from the response stream.
+     */
+    private Document parseNewsDetails(Response response, String url, boolean withDescription) throws IOException {
+        return SapienzaNewsExtractor.parse(response.body().charStream(), url, withDescription);
+    }
+
+    static void addNewsDetails(Openstud os, News news, Document doc, boolean withDescription, DateTimeFormatter formatter) {
+        if (withDescription) {
+            Element start = doc.getElementsByAttributeValueEnding("class", SapienzaNewsExtractor.DESCRIPTION_CLASS).first();
+            if (start != null)
+                news.setDescription(start.getElementsByClass(SapienzaNewsExtractor.DESCRIPTION_ITEM_CLASS).first().text());
+        }
+        Element date = doc.getElementsByClass(SapienzaNewsExtractor.DATE_CLASS).first();
+        if (date != null) {
+            try {
+                news.setDate(LocalDate.parse(date.text().substring(date.text().indexOf(",") + 1).trim(), formatter));
+            } catch (DateTimeParseException e) {
+                os.log(Level.FINE, e);
+            }
+        }
+        news.setImageUrl(doc.getElementsByClass(SapienzaNewsExtractor.IMAGE_CLASS).attr("src"));
+    }
+
     @Override
     public List<Event> getNewsletterEvents() throws OpenstudInvalidResponseException, OpenstudConnectionException {
-        return _getNewsletterEvents();
+        return OpenstudAsyncHelper.awaitPublic(getNewsletterEventsAsync());
     }
 
-    private List<Event> _getNewsletterEvents() throws OpenstudInvalidResponseException, OpenstudConnectionException {
+    @Override
+    public CompletableFuture<List<Event>> getNewsletterEventsAsync() {
+        return fetchNewsletter().thenCompose(this::collectNewsletterEventsAsync);
+    }
+
+    @Override
+    public NewsletterResult getNewsletter() throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        return OpenstudAsyncHelper.awaitPublic(getNewsletterAsync());
+    }
+
+    @Override
+    public CompletableFuture<NewsletterResult> getNewsletterAsync() {
+        return fetchNewsletter().thenApply(this::newsletterResult);
+    }
+
+    private CompletableFuture<List<NewsletterEntry>> fetchNewsletter() {
+        Request request = new Request.Builder().url(newsletterUrl()).get().build();
+        return OpenstudAsyncHelper.enqueue(os, request, response -> parseDocument(response, newsletterUrl()))
+                .thenCompose(doc -> fetchNewsletterEntries(doc, url -> false));
+    }
+
+    /**
+     * Parses the events listed by the newsletter page and fetches their detail pages, at most
+     * {@link Openstud#getParallelism()} at a time. The events whose URL matches {@code skip} are not fetched, their
+     * entries are returned without events so that they still count among the ones listed by the page.
+     */
+    private CompletableFuture<List<NewsletterEntry>> fetchNewsletterEntries(Document doc, Predicate<String> skip) {
+        Elements events = doc.getElementsByClass("event");
+        os.log(Level.FINE, () -> "SapienzaNewsHandler: Found " + events.size() + " event elements.");
+        List<Supplier<CompletableFuture<NewsletterEntry>>> tasks = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            NewsletterEntry entry = parseNewsletterEntry(events.get(i), i);
+            if (entry.failureReason == null && !skip.test(entry.url)) tasks.add(() -> fetchNewsletterEntry(entry));
+            else tasks.add(() -> CompletableFuture.completedFuture(entry));
+        }
+        return OpenstudAsyncHelper.boundedAllAsList(tasks, os.getParallelism());
+    }
+
+    private CompletableFuture<List<Event>> collectNewsletterEventsAsync(List<NewsletterEntry> entries) {
         try {
-            List<Event> ret = new LinkedList<>();
+            return CompletableFuture.completedFuture(collectNewsletterEvents(entries));
+        } catch (OpenstudInvalidResponseException | RuntimeException e) {
+            return OpenstudAsyncHelper.failed(e);
+        }
+    }
 
-            String website_url = "https://www.uniroma1.it/it/newsletter";
+    /**
+     * Fetches the detail page of the event within {@link Openstud#getDetailPageTimeout()}, a failure is recorded in the entry.
+     * The page is parsed into a copy of the entry, so that a page completing after its timeout can't change it.
+     */
+    private CompletableFuture<NewsletterEntry> fetchNewsletterEntry(NewsletterEntry entry) {
+        entry.detailsRequested = true;
+        Request eventRequest = new Request.Builder().url(entry.url).get().build();
+        CompletableFuture<NewsletterEntry> details = OpenstudAsyncHelper.enqueue(os, eventRequest, eventResponse -> {
+            NewsletterEntry detailed = entry.copy();
+            addNewsletterDetails(detailed, eventResponse, SapienzaParsingContext.NEWSLETTER_DATE_TIME);
+            return detailed;
+        });
+        int timeout = os.getDetailPageTimeout();
+        return OpenstudAsyncHelper.timeout(details, TimeUnit.SECONDS.toMillis(timeout),
+                () -> new OpenstudConnectionException(new SocketTimeoutException("details page not received within " + timeout + " s")))
+                .exceptionally(throwable -> {
+                    Throwable cause = OpenstudAsyncHelper.unwrap(throwable);
+                    if (cause instanceof OpenstudConnectionException && cause.getCause() instanceof IOException) cause = cause.getCause();
+                    String reason;
+                    if (cause instanceof SocketTimeoutException) reason = "timeout fetching details page";
+                    else if (cause instanceof IOException) reason = "IOException fetching details page";
+                    else reason = "failed to parse details page";
+                    os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + entry.index + ". " + reason + " for URL: " + entry.url + " " + cause.getMessage());
+                    entry.fail(reason, cause);
+                    return entry;
+                });
+    }
 
-            Request request = new Request.Builder().url(website_url).get().build();
-            Document doc;
-            try (Response response = os.getClient().newCall(request).execute()) {
-                if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-                doc = Jsoup.parse(response.body().string(), website_url);
+    @Override
+    public List<News> getNewsUpdates(String locale, boolean withDescription, int maxPage, String query, NewsSyncState state) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        return OpenstudAsyncHelper.awaitPublic(getNewsUpdatesAsync(locale, withDescription, maxPage, query, state));
+    }
+
+    @Override
+    public CompletableFuture<List<News>> getNewsUpdatesAsync(String locale, boolean withDescription, int maxPage, String query, NewsSyncState state) {
+        String newsLocale = locale == null ? "en" : locale;
+        DateTimeFormatter formatter = SapienzaParsingContext.newsDate(newsLocale);
+        NewsSync sync = new NewsSync();
+        sync.pending.addAll(state.getPendingNews());
+        return syncNewsPage(sync, newsLocale, 0, maxPage, query, state).thenCompose(ignored -> {
+            if (sync.pages.size() > 0 && sync.pages.size() == sync.missedPages) {
+                OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException("invalid HTML").setHTMLType();
+                os.log(Level.SEVERE, invalidResponse);
+                return OpenstudAsyncHelper.failed(invalidResponse);
+            }
+            List<Supplier<CompletableFuture<Boolean>>> details = new LinkedList<>();
+            for (News news : sync.fresh) {
+                details.add(() -> {
+                    if (!OpenstudHelper.isValidUrl(news.getUrl())) return CompletableFuture.completedFuture(false);
+                    Request detailsRequest = new Request.Builder().url(news.getUrl()).get().build();
+                    return OpenstudAsyncHelper.enqueue(os, detailsRequest, response -> response.isSuccessful() ? parseNewsDetails(response, news.getUrl(), withDescription) : null)
+                            .handle((doc, throwable) -> {
+                                if (throwable != null || doc == null) return false;
+                                addNewsDetails(os, news, doc, withDescription, formatter);
+                                return true;
+                            });
+                });
             }
+            return OpenstudAsyncHelper.boundedAllAsList(details, os.getParallelism()).thenApply(valid -> {
+                List<News> ret = new LinkedList<>();
+                for (int i = 0; i < sync.fresh.size(); i++) {
+                    News news = sync.fresh.get(i);
+                    if (valid.get(i)) {
+                        state.addNews(news);
+                        state.removePendingNews(news.getUrl());
+                        ret.add(news);
+                    } else state.addPendingNews(news.getUrl());
+                }
+                // pending news no longer listed within the pages walked are given up
+                if (sync.complete) for (String url : sync.pending) state.removePendingNews(url);
+                // the news whose details failed must be listed again by the next sync
+                if (ret.size() < sync.fresh.size()) for (String url : sync.pages) state.setValidators(url, null, null);
+                return ret;
+            });
+        });
+    }
 
-            Elements events = doc.getElementsByClass("event");
-            os.log(Level.FINE, "SapienzaNewsHandler: Found " + events.size() + " event elements.");
-
-            String failureReason = null;
-            boolean allFailedForSameReason = true;
-            Throwable firstEncounteredException = null;
-
-            DateTimeFormatter detailFormatter = new DateTimeFormatterBuilder()
-                    .parseCaseInsensitive()
-                    .appendPattern("eeee d MMMM yyyy 'alle' HH:mm")
-                    .toFormatter(Locale.ITALIAN);
-
-            int failed = 0;
-            for (int i = 0; i < events.size(); i++) {
-                Element event = events.get(i);
-                Element titleEl = event.getElementsByClass("views-field-solr-document").first();
-
-                // Only extract title and URL from the list page
-                if (titleEl == null) {
-                    os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ": missing required title element.");
-                    String currentReason = "missing required elements";
-                    if (failureReason == null) {
-                        failureReason = currentReason;
-                        firstEncounteredException = new OpenstudInvalidResponseException("Missing required elements on event " + i);
-                    }
-                    else if (allFailedForSameReason && !failureReason.equals(currentReason)) allFailedForSameReason = false;
-                    failed++;
+    /**
+     * Listing pages are walked in order, stopping at the first page not modified or at the first news already known.
+     * While news of the previous syncs are pending the walk goes on past them, until all of them are listed again.
+     */
+    private CompletableFuture<Void> syncNewsPage(NewsSync sync, String locale, int page, int endPage, String query, NewsSyncState state) {
+        if (page >= endPage) {
+            sync.complete = true;
+            return CompletableFuture.completedFuture(null);
+        }
+        Request request = newsListRequest(locale, page, query);
+        return fetchIfModified(request, state).thenCompose(doc -> {
+            if (doc == null) {
+                if (sync.pending.isEmpty()) return CompletableFuture.completedFuture(null);
+                return syncNewsPage(sync, locale, page + 1, endPage, query, state);
+            }
+            sync.pages.add(request.url().toString());
+            List<News> listed = new LinkedList<>();
+            if (addNews(doc, locale, null, listed) == 0) sync.missedPages++;
+            for (News news : listed) {
+                if (state.isKnownNews(news.getUrl())) {
+                    if (sync.pending.isEmpty()) return CompletableFuture.completedFuture(null);
                     continue;
                 }
+                sync.pending.remove(news.getUrl());
+                // a news may shift to the next page while paging
+                if (sync.urls.add(news.getUrl())) sync.fresh.add(news);
+            }
+            return syncNewsPage(sync, locale, page + 1, endPage, query, state);
+        });
+    }
 
-                Element titleA = titleEl.getElementsByTag("a").first();
+    @Override
+    public List<Event> getNewsletterEventUpdates(NewsSyncState state) throws OpenstudInvalidResponseException, OpenstudConnectionException {
+        return OpenstudAsyncHelper.awaitPublic(getNewsletterEventUpdatesAsync(state));
+    }
 
-                if (titleA == null) {
-                    os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ": missing required <a> tag within title.");
-                    String currentReason = "missing required a tags";
-                    if (failureReason == null) {
-                        failureReason = currentReason;
-                        firstEncounteredException = new OpenstudInvalidResponseException("Missing required <a> tags on event " + i);
-                    }
-                    else if (allFailedForSameReason && !failureReason.equals(currentReason)) allFailedForSameReason = false;
-                    failed++;
-                    continue;
-                }
+    @Override
+    public CompletableFuture<List<Event>> getNewsletterEventUpdatesAsync(NewsSyncState state) {
+        Request request = new Request.Builder().url(newsletterUrl()).get().build();
+        return fetchIfModified(request, state).thenCompose(doc -> {
+            if (doc == null) return CompletableFuture.<List<NewsletterEntry>>completedFuture(new ArrayList<>());
+            return fetchNewsletterEntries(doc, state::isKnownEvent);
+        }).thenCompose(entries -> {
+            boolean failed = false;
+            for (NewsletterEntry entry : entries) {
+                if (!entry.detailsRequested) continue;
+                if (entry.failureReason == null) state.addEvents(entry.url, entry.events);
+                else failed = true;
+            }
+            // the events whose details failed must be listed again by the next sync
+            if (failed) state.setValidators(request.url().toString(), null, null);
+            // the known entries count as listed, so only a page whose entries all fail is invalid
+            return collectNewsletterEventsAsync(entries);
+        });
+    }
 
-                String eventTitle = titleA.text();
-                String eventUrl = titleA.attr("href");
+    /**
+     * Sends the request with the validators stored for its URL, storing the new ones.
+     *
+     * @return the parsed page, or null if the server answered 304 Not Modified
+     */
+    private CompletableFuture<Document> fetchIfModified(Request request, NewsSyncState state) {
+        String url = request.url().toString();
+        Request.Builder builder = request.newBuilder();
+        String etag = state.getETag(url);
+        String lastModified = state.getLastModified(url);
+        if (etag != null) builder.header("If-None-Match", etag);
+        if (lastModified != null) builder.header("If-Modified-Since", lastModified);
+        return OpenstudAsyncHelper.enqueue(os, builder.build(), response -> {
+            if (response.code() == 304) {
+                state.recordNotModified();
+                return null;
+            }
+            Document doc = parseDocument(response, url);
+            state.setValidators(url, response.header("ETag"), response.header("Last-Modified"));
+            return doc;
+        });
+    }
 
-                if (!OpenstudHelper.isValidUrl(eventUrl)) {
-                    os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ": Invalid URL '" + eventUrl + "'");
-                    String currentReason = "invalid URL";
-                    if (failureReason == null) {
-                        failureReason = currentReason;
-                        firstEncounteredException = new OpenstudInvalidResponseException("Invalid URL on event " + i + ": " + eventUrl);
-                    }
-                    else if (allFailedForSameReason && !failureReason.equals(currentReason)) allFailedForSameReason = false;
-                    failed++;
-                    continue;
-                }
+    /**
+     * Extracts title and URL of an event from the list page, recording why the event has to be skipped if they are missing.
+     */
+    private NewsletterEntry parseNewsletterEntry(Element event, int i) {
+        NewsletterEntry entry = new NewsletterEntry(i);
+        Element titleEl = event.getElementsByClass("views-field-solr-document").first();
+
+        // Only extract title and URL from the list page
+        if (titleEl == null) {
+            os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ": missing required title element.");
+            entry.fail("missing required elements", new OpenstudInvalidResponseException("Missing required elements on event " + i));
+            return entry;
+        }
 
-                // Fetch detail page for every event
-                Request eventRequest = new Request.Builder().url(eventUrl).get().build();
-                Document eventDoc;
-                try (Response eventResponse = os.getClient().newCall(eventRequest).execute()) {
-                    if (!eventResponse.isSuccessful()) {
-                        os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ". Failed to fetch details page: " + eventResponse.code() + " for URL: " + eventUrl);
-                        String currentReason = "failed to fetch details page";
-                        if (failureReason == null) {
-                            failureReason = currentReason;
-                            firstEncounteredException = new OpenstudConnectionException("Failed to fetch details page: " + eventResponse.code() + " for URL: " + eventUrl);
-                        }
-                        else if (allFailedForSameReason && !failureReason.equals(currentReason)) allFailedForSameReason = false;
-                        failed++;
-                        continue;
-                    }
-                    eventDoc = Jsoup.parse(eventResponse.body().string(), eventUrl);
-                } catch (IOException e) {
-                    os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ". IOException fetching details page for URL: " + eventUrl + " " + e.getMessage());
-                    String currentReason = "IOException fetching details page";
-                    if (failureReason == null) {
-                        failureReason = currentReason;
-                        firstEncounteredException = e;
-                    }
-                    else if (allFailedForSameReason && !failureReason.equals(currentReason)) allFailedForSameReason = false;
-                    failed++;
-                    continue;
-                }
+        Element titleA = titleEl.getElementsByTag("a").first();
 
-                // Get common info from detail page
-                String imageUrl = null;
-                Element image = eventDoc.getElementsByClass("field-type-image").first();
-                if (image != null) {
-                    Element imgTag = image.getElementsByTag("img").first();
-                    if (imgTag != null)
-                        imageUrl = imgTag.attr("src");
-                }
-                String descriptionText = null;
-                Element description = eventDoc.getElementsByClass("article-body").first();
-                if (description != null) descriptionText = description.text();
+        if (titleA == null) {
+            os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ": missing required <a> tag within title.");
+            entry.fail("missing required a tags", new OpenstudInvalidResponseException("Missing required <a> tags on event " + i));
+            return entry;
+        }
 
-                // Find all individual date/time/place blocks
-                // This selector targets the rows inside .view-date-and-place
-                Elements dateBlocks = eventDoc.select(".view-date-and-place .view-content > .views-row");
+        entry.title = titleA.text();
+        entry.url = titleA.attr("href");
 
-                if (dateBlocks.isEmpty()) {
-                    os.log(Level.WARNING, "SapienzaNewsHandler: No date/time blocks found for event " + eventUrl + ". Skipping.");
-                    continue; // Skip to the next event from the list
-                }
+        if (!OpenstudHelper.isValidUrl(entry.url)) {
+            os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + i + ": Invalid URL '" + entry.url + "'");
+            entry.fail("invalid URL", new OpenstudInvalidResponseException("Invalid URL on event " + i + ": " + entry.url));
+        }
+        return entry;
+    }
 
-                boolean addedAtLeastOne = false;
-                for (Element block : dateBlocks) {
-                    // Create a new Event object for each block
-                    Event multiEvent = new Event(EventType.THEATRE);
-                    multiEvent.setTitle(eventTitle);
-                    multiEvent.setUrl(eventUrl);
-                    multiEvent.setImageUrl(imageUrl);
-                    multiEvent.setDescription(descriptionText);
-
-                    Element multiDateEl = block.select(".views-field-php.field-apm-date .field-content").first();
-                    Element multiRoomEl = block.select(".views-field-field-apm-aula .field-content").first();
-                    Element multiWhereEl = block.select(".views-field-field-apm-edificio .field-content").first();
-
-                    if (multiDateEl == null) {
-                        os.log(Level.WARNING, "SapienzaNewsHandler: Skipping date entry for " + eventUrl + ": missing date element in block.");
-                        continue;
-                    }
+    private void addNewsletterDetails(NewsletterEntry entry, Response eventResponse, DateTimeFormatter detailFormatter) throws IOException {
+        String eventUrl = entry.url;
+        if (!eventResponse.isSuccessful()) {
+            os.log(Level.WARNING, "SapienzaNewsHandler: Skipping event " + entry.index + ". Failed to fetch details page: " + eventResponse.code() + " for URL: " + eventUrl);
+            entry.fail("failed to fetch details page", new OpenstudConnectionException("Failed to fetch details page: " + eventResponse.code() + " for URL: " + eventUrl));
+            return;
+        }
+        Document eventDoc = Jsoup.parse(eventResponse.body().string(), eventUrl);
+
+        // Get common info from detail page
+        String imageUrl = null;
+        Element image = eventDoc.getElementsByClass("field-type-image").first();
+        if (image != null) {
+            Element imgTag = image.getElementsByTag("img").first();
+            if (imgTag != null)
+                imageUrl = imgTag.attr("src");
+        }
+        String descriptionText = null;
+        Element description = eventDoc.getElementsByClass("article-body").first();
+        if (description != null) descriptionText = description.text();
 
-                    String dateString = multiDateEl.text().trim();
+        // Find all individual date/time/place blocks
+        // This selector targets the rows inside .view-date-and-place
+        Elements dateBlocks = eventDoc.select(".view-date-and-place .view-content > .views-row");
 
-                    try {
-                        multiEvent.setStart(LocalDateTime.parse(dateString, detailFormatter));
-                    } catch (DateTimeParseException e) {
-                        os.log(Level.WARNING, "SapienzaNewsHandler: Skipping date entry for " + eventUrl + ". DateTimeParseException for string: '" + dateString + "' " + e.getMessage());
-                        continue;
-                    }
+        if (dateBlocks.isEmpty()) {
+            os.log(Level.WARNING, "SapienzaNewsHandler: No date/time blocks found for event " + eventUrl + ". Skipping.");
+            return; // Skip to the next event from the list
+        }
 
-                    if (multiRoomEl != null) {
-                        multiEvent.setRoom(multiRoomEl.text().trim().replaceAll(" ?- ?", ", "));
-                    }
-                    if (multiWhereEl != null) {
-                        multiEvent.setWhere(multiWhereEl.text().trim());
-                    }
+        for (Element block : dateBlocks) {
+            // Create a new Event object for each block
+            Event multiEvent = new Event(EventType.THEATRE);
+            multiEvent.setTitle(entry.title);
+            multiEvent.setUrl(eventUrl);
+            multiEvent.setImageUrl(imageUrl);
+            multiEvent.setDescription(descriptionText);
+
+            Element multiDateEl = block.select(".views-field-php.field-apm-date .field-content").first();
+            Element multiRoomEl = block.select(".views-field-field-apm-aula .field-content").first();
+            Element multiWhereEl = block.select(".views-field-field-apm-edificio .field-content").first();
+
+            if (multiDateEl == null) {
+                os.log(Level.WARNING, "SapienzaNewsHandler: Skipping date entry for " + eventUrl + ": missing date element in block.");
+                continue;
+            }
 
-                    ret.add(multiEvent);
-                    addedAtLeastOne = true;
-                }
+            String dateString = multiDateEl.text().trim();
 
-                if (!addedAtLeastOne) {
-                    os.log(Level.WARNING, "SapienzaNewsHandler: Found " + dateBlocks.size() + " date blocks for " + eventUrl + " but failed to parse any of them.");
-                }
+            try {
+                multiEvent.setStart(LocalDateTime.parse(dateString, detailFormatter));
+            } catch (DateTimeParseException e) {
+                os.log(Level.WARNING, "SapienzaNewsHandler: Skipping date entry for " + eventUrl + ". DateTimeParseException for string: '" + dateString + "' " + e.getMessage());
+                continue;
             }
 
-            if (failed == events.size() && !events.isEmpty()) {
-                os.log(Level.SEVERE, "SapienzaNewsHandler: All " + failed + " event parsing attempts failed. Throwing InvalidResponseException.");
-                String exceptionReason = failureReason;
-                if (!allFailedForSameReason) {
-                    exceptionReason = "multiple reasons";
-                } else if (exceptionReason == null) {
-                    exceptionReason = "unknown reason";
-                }
-                OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException("invalid HTML: " + exceptionReason).setHTMLType();
+            if (multiRoomEl != null) {
+                multiEvent.setRoom(SapienzaParsingContext.joinRooms(multiRoomEl.text().trim()));
+            }
+            if (multiWhereEl != null) {
+                multiEvent.setWhere(multiWhereEl.text().trim());
+            }
 
-                if (allFailedForSameReason && firstEncounteredException != null) {
-                    invalidResponse.initCause(firstEncounteredException);
-                }
+            entry.events.add(multiEvent);
+        }
 
-                os.log(Level.SEVERE, invalidResponse);
-                throw invalidResponse;
+        if (entry.events.isEmpty()) {
+            os.log(Level.WARNING, "SapienzaNewsHandler: Found " + dateBlocks.size() + " date blocks for " + eventUrl + " but failed to parse any of them.");
+        }
+    }
+
+    private NewsletterResult newsletterResult(List<NewsletterEntry> entries) {
+        List<Event> events = new LinkedList<>();
+        List<NewsletterError> errors = new LinkedList<>();
+        for (NewsletterEntry entry : entries) {
+            if (entry.failureReason == null) events.addAll(entry.events);
+            else errors.add(new NewsletterError(entry.index, entry.title, entry.url, entry.failureReason, entry.failure));
+        }
+        return new NewsletterResult(events, errors, entries.size());
+    }
+
+    /**
+     * Merges the events of every entry, in list order, throwing if every entry failed.
+     */
+    private List<Event> collectNewsletterEvents(List<NewsletterEntry> entries) throws OpenstudInvalidResponseException {
+        NewsletterResult result = newsletterResult(entries);
+        List<NewsletterError> errors = result.getErrors();
+        if (result.isAllFailed()) {
+            os.log(Level.SEVERE, "SapienzaNewsHandler: All " + errors.size() + " event parsing attempts failed. Throwing InvalidResponseException.");
+            boolean allFailedForSameReason = result.getFailureCounts().size() == 1;
+            String exceptionReason = allFailedForSameReason ? errors.get(0).getReason() : "multiple reasons";
+            OpenstudInvalidResponseException invalidResponse = new OpenstudInvalidResponseException("invalid HTML: " + exceptionReason).setHTMLType();
+
+            if (allFailedForSameReason && errors.get(0).getCause() != null) {
+                invalidResponse.initCause(errors.get(0).getCause());
             }
 
-            os.log(Level.FINE, "SapienzaNewsHandler: Successfully parsed " + ret.size() + " events, " + failed + " failed.");
-            return ret;
+            os.log(Level.SEVERE, invalidResponse);
+            throw invalidResponse;
+        }
+
+        os.log(Level.FINE, "SapienzaNewsHandler: Successfully parsed " + result.getEvents().size() + " events, " + errors.size() + " failed.");
+        return result.getEvents();
+    }
+
+    private static class NewsSync {
+        private final List<String> pages = new LinkedList<>();
+        private final List<News> fresh = new LinkedList<>();
+        private final Set<String> urls = new HashSet<>();
+        private final Set<String> pending = new HashSet<>();
+        private int missedPages;
+        private boolean complete;
+    }
+
+    private static class NewsletterEntry {
+        private final int index;
+        private final List<Event> events = new LinkedList<>();
+        private String title;
+        private String url;
+        private String failureReason;
+        private Throwable failure;
+        private boolean detailsRequested;
+
+        NewsletterEntry(int index) {
+            this.index = index;
+        }
+
+        NewsletterEntry copy() {
+            NewsletterEntry copy = new NewsletterEntry(index);
+            copy.title = title;
+            copy.url = url;
+            copy.detailsRequested = detailsRequested;
+            return copy;
+        }
 
-        } catch (IOException e) {
-            OpenstudConnectionException connectionException = new OpenstudConnectionException(e);
-            os.log(Level.SEVERE, connectionException);
-            throw connectionException;
+        void fail(String reason, Throwable cause) {
+            failureReason = reason;
+            failure = cause;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import com.lithium.kapitalize.Kapitalize;
+import com.lithium.kapitalize.languages.EnglishLanguage;
+import com.lithium.kapitalize.languages.SpecialRules;
+import org.threeten.bp.format.DateTimeFormatter;
+import org.threeten.bp.format.DateTimeFormatterBuilder;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Formatters and text helpers shared by all the Sapienza parsers.
+ * Formatters are immutable and thread-safe, so they are built once; Kapitalize makes no such promise and is kept per thread.
+ */
+final class SapienzaParsingContext {
+    /**
+     * Infostud dates, e.g. 31/12/2020.
+     */
+    static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    /**
+     * Infostud timestamps, e.g. 31/12/2020 23:59:59.
+     */
+    static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    /**
+     * GOMP lesson and classroom event times, e.g. 12/31/2020 23:59.
+     */
+    static final DateTimeFormatter TIMETABLE_DATE_TIME = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm");
+    /**
+     * Newsletter event dates, e.g. lunedì 31 dicembre 2020 alle 23:59.
+     */
+    static final DateTimeFormatter NEWSLETTER_DATE_TIME = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern("eeee d MMMM yyyy 'alle' HH:mm")
+            .toFormatter(Locale.ITALIAN);
+    private static final DateTimeFormatter NEWS_DATE_IT = DateTimeFormatter.ofPattern("dd MMMM yyyy").withLocale(Locale.ITALIAN);
+    private static final DateTimeFormatter NEWS_DATE_EN = DateTimeFormatter.ofPattern("dd MMMM yyyy").withLocale(Locale.ENGLISH);
+    private static final Pattern ROOM_SEPARATOR = Pattern.compile(" ?- ?");
+    private static final ThreadLocal<Kapitalize> KAPITALIZE = ThreadLocal.withInitial(() -> {
+        EnglishLanguage lang = new EnglishLanguage(SpecialRules.ITALIAN);
+        lang.setCapitalizePostNominalsInitials(false);
+        return new Kapitalize(lang);
+    });
+
+    private SapienzaParsingContext() {
+    }
+
+    /**
+     * News dates of the website in the given locale, english unless it is italian.
+     */
+    static DateTimeFormatter newsDate(String locale) {
+        return "it".equalsIgnoreCase(locale) ? NEWS_DATE_IT : NEWS_DATE_EN;
+    }
+
+    /**
+     * Capitalizes a first or last name as Infostud sends them in upper case.
+     */
+    static String capitalizeName(String name) {
+        return KAPITALIZE.get().capitalize(name);
+    }
+
+    /**
+     * Joins the rooms of a newsletter event, listed as "A - B", with commas.
+     */
+    static String joinRooms(String rooms) {
+        return ROOM_SEPARATOR.matcher(rooms).replaceAll(", ");
+    }
+}
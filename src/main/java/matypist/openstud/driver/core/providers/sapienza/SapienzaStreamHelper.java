@@ -0,0 +1,576 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonEncodingException;
+import com.squareup.moshi.JsonReader;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.models.*;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.format.DateTimeFormatter;
+import org.threeten.bp.format.DateTimeParseException;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Pull parsers reading the larger Infostud and GOMP payloads straight from the response {@link BufferedSource}
+ * into the models, without materializing the body as a String nor as an org.json tree.
+ */
+class SapienzaStreamHelper {
+
+    @FunctionalInterface
+    interface ValueReader<T> {
+        T read(JsonReader reader) throws IOException, OpenstudInvalidResponseException;
+    }
+
+    /**
+     * Reads the response body with the given reader and closes the response.
+     * Malformed or truncated JSON and unexpected value types are reported as {@link JSONException}, like the org.json
+     * based parsers do.
+     */
+    static <T> T readResponse(Response resp, ValueReader<T> valueReader) throws IOException, OpenstudInvalidResponseException {
+        try (Response response = resp) {
+            ResponseBody body = response.body();
+            if (body == null) throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+            return read(body.source(), valueReader);
+        }
+    }
+
+    static <T> T read(BufferedSource source, ValueReader<T> valueReader) throws IOException, OpenstudInvalidResponseException {
+        try {
+            return valueReader.read(JsonReader.of(source));
+        } catch (JsonDataException | JsonEncodingException | EOFException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Skips leading whitespace and tells if the source starts with a JSON object or array.
+     */
+    static boolean startsWithJson(BufferedSource source) throws IOException {
+        while (source.request(1)) {
+            byte b = source.getBuffer().getByte(0);
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                source.skip(1);
+                continue;
+            }
+            return b == '{' || b == '[';
+        }
+        return false;
+    }
+
+    /**
+     * Moves the reader, positioned inside an object, to the value of the given name.
+     *
+     * @return false if the object ends without such name
+     */
+    static boolean findName(JsonReader reader, String name) throws IOException {
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(name)) return true;
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Enters the {@code ritorno} object of an Infostud answer.
+     */
+    private static void enterReturnObject(JsonReader reader) throws IOException, OpenstudInvalidResponseException {
+        reader.beginObject();
+        if (!findName(reader, "ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        reader.beginObject();
+    }
+
+    /**
+     * Reads any JSON value as the org.json counterpart, keeping integral numbers as org.json would parse them.
+     */
+    static Object readJsonValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) array.put(readJsonValue(reader));
+                reader.endArray();
+                return array;
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) object.put(reader.nextName(), readJsonValue(reader));
+                reader.endObject();
+                return object;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return JSONObject.stringToValue(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JsonDataException("Unexpected " + reader.peek() + " at path " + reader.getPath());
+        }
+    }
+
+    /**
+     * Decodes the {@code risultato.byte} array of an Infostud PDF answer, writing the bytes to the sink while they are read.
+     * No boxed integers nor whole-document copies are created, memory stays bounded by a small chunk.
+     *
+     * @return the number of bytes written
+     */
+    static long readPdf(Openstud os, JsonReader reader, OutputStream out) throws IOException, OpenstudInvalidResponseException {
+        reader.beginObject();
+        if (!findName(reader, "risultato") || reader.peek() == JsonReader.Token.NULL)
+            throw new OpenstudInvalidResponseException("Infostud answer is not valid, maybe the token is no longer valid").setInvalidTokenType();
+        reader.beginObject();
+        if (!findName(reader, "byte") || reader.peek() == JsonReader.Token.NULL)
+            throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+        byte[] chunk = new byte[8192];
+        int size = 0;
+        long total = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            chunk[size++] = (byte) reader.nextInt();
+            if (size == chunk.length) {
+                out.write(chunk, 0, size);
+                total += size;
+                size = 0;
+            }
+        }
+        reader.endArray();
+        out.write(chunk, 0, size);
+        total += size;
+        os.log(Level.FINE, "Found PDF made of " + total + " bytes");
+        return total;
+    }
+
+    static byte[] readPdf(Openstud os, JsonReader reader) throws IOException, OpenstudInvalidResponseException {
+        Buffer pdf = new Buffer();
+        readPdf(os, reader, pdf.outputStream());
+        return pdf.readByteArray();
+    }
+
+    /**
+     * Keeps track of the bytes handed to a caller provided stream, so that a failed download is retried
+     * only if nothing reached the caller yet.
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    static List<ExamDone> readExamsDone(Openstud os, JsonReader reader) throws IOException, OpenstudInvalidResponseException {
+        enterReturnObject(reader);
+        List<ExamDone> list = new LinkedList<>();
+        if (!findName(reader, "esami") || reader.peek() == JsonReader.Token.NULL) return list;
+        DateTimeFormatter formatter = SapienzaParsingContext.DATE;
+        reader.beginArray();
+        while (reader.hasNext()) list.add(readExamDone(os, reader, formatter));
+        reader.endArray();
+        return list;
+    }
+
+    private static ExamDone readExamDone(Openstud os, JsonReader reader, DateTimeFormatter formatter) throws IOException {
+        ExamDone exam = new ExamDone();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String element = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (element) {
+                case "codiceInsegnamento":
+                    exam.setExamCode(reader.nextString());
+                    break;
+                case "cfu":
+                    exam.setCfu(reader.nextInt());
+                    break;
+                case "descrizione":
+                    exam.setDescription(reader.nextString());
+                    break;
+                case "ssd":
+                    exam.setSsd(reader.nextString());
+                    break;
+                case "data":
+                    String date = reader.nextString();
+                    if (date.isEmpty()) break;
+                    try {
+                        exam.setDate(LocalDate.parse(date, formatter));
+                    } catch (DateTimeParseException e) {
+                        os.log(Level.FINE, e);
+                    }
+                    break;
+                case "certificato":
+                    exam.setCertified(reader.nextBoolean());
+                    break;
+                case "superamento":
+                    exam.setPassed(reader.nextBoolean());
+                    break;
+                case "annoAcca":
+                    exam.setYear(reader.nextInt());
+                    break;
+                case "esito":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String result = reader.nextName();
+                        if (reader.peek() == JsonReader.Token.NULL) reader.skipValue();
+                        else if (result.equals("valoreNominale")) exam.setNominalResult(reader.nextString());
+                        else if (result.equals("valoreNonNominale")) exam.setResult(reader.nextInt());
+                        else reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return exam;
+    }
+
+    static List<Tax> readTaxes(Openstud os, JsonReader reader, boolean paid) throws IOException, OpenstudInvalidResponseException {
+        List<Tax> list = new LinkedList<>();
+        reader.beginObject();
+        if (!findName(reader, "risultatoLista"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        if (reader.peek() == JsonReader.Token.NULL) return list;
+        reader.beginObject();
+        if (!findName(reader, "risultati") || reader.peek() == JsonReader.Token.NULL) return list;
+        DateTimeFormatter formatter = SapienzaParsingContext.DATE;
+        reader.beginArray();
+        while (reader.hasNext()) list.add(readTax(os, reader, paid, formatter));
+        reader.endArray();
+        return list;
+    }
+
+    private static Tax readTax(Openstud os, JsonReader reader, boolean paid, DateTimeFormatter formatter) throws IOException {
+        Tax tax = new Tax();
+        List<PaymentDescription> descriptions = new LinkedList<>();
+        Double paidAmount = null;
+        Double billedAmount = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String element = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (element) {
+                case "codiceBollettino":
+                    tax.setCode(reader.nextString());
+                    break;
+                case "corsoDiStudi":
+                    tax.setCodeCourse(reader.nextString());
+                    break;
+                case "descCorsoDiStudi":
+                    tax.setDescriptionCourse(reader.nextString());
+                    break;
+                case "impoVers":
+                    try {
+                        String content = reader.nextString();
+                        if (!content.isEmpty()) paidAmount = Double.parseDouble(content);
+                    } catch (NumberFormatException e) {
+                        os.log(Level.SEVERE, e);
+                    }
+                    break;
+                case "annoAcca":
+                    tax.setAcademicYear(reader.nextInt());
+                    break;
+                case "dataVers":
+                    if (!paid) {
+                        reader.skipValue();
+                        break;
+                    }
+                    tax.setPaymentDate(LocalDate.parse(reader.nextString(), formatter));
+                    break;
+                case "importoBollettino":
+                    try {
+                        billedAmount = Double.parseDouble(reader.nextString().replace(",", "."));
+                    } catch (NumberFormatException e) {
+                        os.log(Level.SEVERE, e);
+                    }
+                    break;
+                case "scadenza":
+                    String expiration = reader.nextString();
+                    if (expiration.isEmpty()) break;
+                    tax.setExpirationDate(LocalDate.parse(expiration, formatter));
+                    break;
+                case "causali":
+                    descriptions = readPaymentDescriptions(os, reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        // the amount paid wins over the billed one whatever their order in the answer, as in the org.json decoder
+        if (paidAmount != null) tax.setAmount(paidAmount);
+        else if (billedAmount != null) tax.setAmount(billedAmount);
+        tax.setPaymentDescriptionList(descriptions);
+        if (paid) tax.setStatus(Tax.TaxStatus.PAID);
+        else tax.setStatus(Tax.TaxStatus.UNPAID);
+        return tax;
+    }
+
+    private static List<PaymentDescription> readPaymentDescriptions(Openstud os, JsonReader reader) throws IOException {
+        List<PaymentDescription> list = new LinkedList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            PaymentDescription pdes = new PaymentDescription();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String element = reader.nextName();
+                if (reader.peek() == JsonReader.Token.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (element) {
+                    case "descrizione":
+                        pdes.setDescription(reader.nextString());
+                        break;
+                    case "importo":
+                        try {
+                            pdes.setAmount(Double.parseDouble(reader.nextString()));
+                        } catch (NumberFormatException e) {
+                            os.log(Level.SEVERE, e);
+                        }
+                        break;
+                    case "annoAccademicoString":
+                        pdes.setAcademicYear(reader.nextString());
+                        break;
+                    case "impoVers":
+                        try {
+                            pdes.setAmountPaid(Double.parseDouble(reader.nextString()));
+                        } catch (NumberFormatException e) {
+                            os.log(Level.SEVERE, e);
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            list.add(pdes);
+        }
+        reader.endArray();
+        return list;
+    }
+
+    /**
+     * @param required if a missing {@code appelli} array means the server is not working, rather than no reservations
+     */
+    static List<ExamReservation> readReservations(Openstud os, JsonReader reader, boolean required) throws IOException, OpenstudInvalidResponseException {
+        enterReturnObject(reader);
+        List<ExamReservation> list = new LinkedList<>();
+        if (!findName(reader, "appelli") || reader.peek() == JsonReader.Token.NULL) {
+            if (required)
+                throw new OpenstudInvalidResponseException("Infostud response is not valid. Maybe the server is not working");
+            return list;
+        }
+        DateTimeFormatter formatter = SapienzaParsingContext.DATE;
+        reader.beginArray();
+        while (reader.hasNext()) list.add(readReservation(os, reader, formatter));
+        reader.endArray();
+        return list;
+    }
+
+    private static ExamReservation readReservation(Openstud os, JsonReader reader, DateTimeFormatter formatter) throws IOException {
+        ExamReservation res = new ExamReservation();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String element = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (element) {
+                case "codIdenVerb":
+                    res.setReportID(reader.nextInt());
+                    break;
+                case "canale":
+                    res.setChannel(reader.nextString());
+                    break;
+                case "codAppe":
+                    res.setSessionID(reader.nextInt());
+                    break;
+                case "codCorsoStud":
+                    res.setCourseCode(Integer.parseInt(reader.nextString()));
+                    break;
+                case "descrizione":
+                    res.setExamSubject(reader.nextString());
+                    break;
+                case "descCorsoStud":
+                    res.setCourseDescription(reader.nextString());
+                    break;
+                case "crediti":
+                    res.setCfu(reader.nextInt());
+                    break;
+                case "docente":
+                    res.setTeacher(reader.nextString());
+                    break;
+                case "annoAcca":
+                    res.setYearCourse(reader.nextString());
+                    break;
+                case "facolta":
+                    res.setDepartment(reader.nextString());
+                    break;
+                case "numeroPrenotazione":
+                    res.setReservationNumber(reader.nextInt());
+                    break;
+                case "ssd":
+                    res.setSsd(reader.nextString());
+                    break;
+                case "dataprenotazione":
+                    res.setReservationDate(parseDate(os, reader.nextString(), formatter));
+                    break;
+                case "note":
+                    res.setNote(reader.nextString());
+                    break;
+                case "dataAppe":
+                    res.setExamDate(parseDate(os, reader.nextString(), formatter));
+                    break;
+                case "dataInizioPrenotazione":
+                    res.setStartDate(parseDate(os, reader.nextString(), formatter));
+                    break;
+                case "dataFinePrenotazione":
+                    res.setEndDate(parseDate(os, reader.nextString(), formatter));
+                    break;
+                case "SiglaModuloDidattico":
+                    res.setModule(reader.nextString());
+                    break;
+                case "modalitaSvolgimentoList":
+                    Object modes = readJsonValue(reader);
+                    if (modes instanceof JSONArray) res.setAttendingModesList((JSONArray) modes);
+                    break;
+                case "modalitaSvolgimento":
+                    res.setAttendingMode(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return res;
+    }
+
+    private static LocalDate parseDate(Openstud os, String date, DateTimeFormatter formatter) {
+        if (date == null || date.isEmpty()) return null;
+        try {
+            return LocalDate.parse(date, formatter);
+        } catch (DateTimeParseException e) {
+            os.log(Level.SEVERE, e);
+            return null;
+        }
+    }
+
+    static List<Lesson> readLessons(JsonReader reader, DateTimeFormatter formatter, int offset) throws IOException {
+        List<Lesson> lessons = new LinkedList<>();
+        reader.beginArray();
+        while (reader.hasNext()) lessons.add(readLesson(reader, formatter, offset));
+        reader.endArray();
+        return lessons;
+    }
+
+    /**
+     * Reads the lessons of every exam code contained in {@code codes}, skipping the others.
+     */
+    static Map<String, List<Lesson>> readTimetable(JsonReader reader, String codes, DateTimeFormatter formatter, int offset) throws IOException {
+        Map<String, List<Lesson>> ret = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String examCode = reader.nextName();
+            if (!codes.contains(examCode)) {
+                reader.skipValue();
+                continue;
+            }
+            ret.put(examCode, readLessons(reader, formatter, offset));
+        }
+        reader.endObject();
+        return ret;
+    }
+
+    private static Lesson readLesson(JsonReader reader, DateTimeFormatter formatter, int offset) throws IOException {
+        Lesson lesson = new Lesson();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String lessonInfo = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (lessonInfo) {
+                case "name":
+                    setLessonName(lesson, reader.nextString());
+                    break;
+                case "where":
+                    lesson.setWhere(reader.nextString());
+                    break;
+                case "start":
+                    lesson.setStart(LocalDateTime.parse(reader.nextString(), formatter).plusHours(offset));
+                    break;
+                case "end":
+                    lesson.setEnd(LocalDateTime.parse(reader.nextString(), formatter).plusHours(offset));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return lesson;
+    }
+
+    private static void setLessonName(Lesson lesson, String name) {
+        int startIdx = name.indexOf(" ");
+        int endIdx = name.indexOf("Docente:");
+        if (startIdx != -1 && endIdx != -1) {
+            if (name.endsWith(" ")) {
+                name = name.substring(0, name.length() - 1);
+            }
+            lesson.setName(name.substring(startIdx, endIdx).trim());
+        } else lesson.setName(name);
+        int indexTeacher = name.indexOf("Docente:");
+        if (indexTeacher != -1) lesson.setTeacher(name.substring(indexTeacher + "Docente: ".length()));
+    }
+}
@@ -0,0 +1,70 @@
+package matypist.openstud.driver.core.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter adapting its rate with AIMD (additive increase, multiplicative decrease):
+ * every answer served normally adds a small step to the rate, every throttled or failed answer halves it.
+ * Halvings are spaced by a cooldown, so a burst of errors caused by the same overload only counts once.
+ */
+public class AdaptiveRateLimiter {
+    private static final double INCREASE = 0.1;
+    private static final double DECREASE = 0.5;
+    private static final long COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBucket bucket;
+    private final double minRate;
+    private final double maxRate;
+    private double rate;
+    private long lastDecrease;
+    private long throttles;
+
+    /**
+     * @param rate    initial rate, in requests per second
+     * @param burst   requests that may be sent at once
+     * @param minRate lowest rate the decreases lead to
+     * @param maxRate highest rate the increases lead to
+     */
+    public AdaptiveRateLimiter(double rate, int burst, double minRate, double maxRate) {
+        if (!(minRate > 0) || minRate > maxRate) throw new IllegalArgumentException("Rate bounds are not valid");
+        this.rate = Math.min(maxRate, Math.max(minRate, rate));
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.bucket = new TokenBucket(this.rate, burst);
+        this.lastDecrease = System.nanoTime() - COOLDOWN_NANOS;
+    }
+
+    /**
+     * @see TokenBucket#tryReserve(long)
+     */
+    public long tryReserve(long maxWaitMillis) {
+        return bucket.tryReserve(maxWaitMillis);
+    }
+
+    public synchronized void onSuccess() {
+        if (rate >= maxRate) return;
+        rate = Math.min(maxRate, rate + INCREASE);
+        bucket.setPermitsPerSecond(rate);
+    }
+
+    public synchronized void onThrottle() {
+        throttles++;
+        long now = System.nanoTime();
+        if (now - lastDecrease < COOLDOWN_NANOS) return;
+        lastDecrease = now;
+        rate = Math.max(minRate, rate * DECREASE);
+        bucket.setPermitsPerSecond(rate);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized long getThrottleCount() {
+        return throttles;
+    }
+
+    public int getBurst() {
+        return bucket.getCapacity();
+    }
+}
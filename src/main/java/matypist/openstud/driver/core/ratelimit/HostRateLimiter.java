@@ -0,0 +1,136 @@
+package matypist.openstud.driver.core.ratelimit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttp interceptor pacing the requests per host (Infostud, GOMP, the uniroma1.it pages) with an
+ * {@link AdaptiveRateLimiter} each. Rate limit answers (HTTP 429, the GOMP "maximum request limit" text) and server
+ * errors slow the host down, regular answers speed it up again.
+ * Requests over the current rate are queued rather than rejected: the calling thread waits for its permit, and only
+ * a request that would wait longer than the queue timeout fails, with a {@link RateLimitTimeoutException}.
+ * Asynchronous callers must not wait on an OkHttp dispatcher thread: they {@link #reserve(String)} the permit
+ * themselves, enqueue the call once it is due and mark it as {@link #paced(Request)}, so it is only used for the feedback.
+ */
+public class HostRateLimiter implements Interceptor {
+    private final Map<String, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+    private volatile double defaultRate = 10;
+    private volatile int defaultBurst = 20;
+    private volatile double minRate = 0.5;
+    private volatile double maxRate = 50;
+    private volatile long queueTimeout = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Sets the limits of the hosts without an explicit {@link #setLimit}, it doesn't affect the hosts already contacted.
+     */
+    public HostRateLimiter setDefaultLimit(double permitsPerSecond, int burst, double minRate, double maxRate) {
+        if (!(permitsPerSecond > 0) || burst < 1 || !(minRate > 0) || minRate > maxRate)
+            throw new IllegalArgumentException("Rate limit is not valid");
+        this.defaultRate = permitsPerSecond;
+        this.defaultBurst = burst;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        return this;
+    }
+
+    /**
+     * Replaces the limiter of the host, e.g. {@code setLimit("www.studenti.uniroma1.it", 5, 10, 0.5, 20)}.
+     */
+    public HostRateLimiter setLimit(String host, double permitsPerSecond, int burst, double minRate, double maxRate) {
+        limiters.put(host, new AdaptiveRateLimiter(permitsPerSecond, burst, minRate, maxRate));
+        return this;
+    }
+
+    /**
+     * Longest time a request waits for its permit before failing.
+     */
+    public HostRateLimiter setQueueTimeout(long millis) {
+        if (millis < 0) return this;
+        this.queueTimeout = millis;
+        return this;
+    }
+
+    public AdaptiveRateLimiter getLimiter(String host) {
+        return limiters.computeIfAbsent(host, key -> new AdaptiveRateLimiter(defaultRate, defaultBurst, minRate, maxRate));
+    }
+
+    /**
+     * Takes the permit of a request toward the host without waiting for it.
+     *
+     * @return the milliseconds after which the request may be sent
+     * @throws RateLimitTimeoutException if the request would wait longer than the queue timeout
+     */
+    public long reserve(String host) throws RateLimitTimeoutException {
+        long wait = getLimiter(host).tryReserve(queueTimeout);
+        if (wait < 0) throw new RateLimitTimeoutException("Rate limit queue of " + host + " is full");
+        return wait;
+    }
+
+    /**
+     * Marks a request that already waited for its permit, or whose endpoint is paced by a limiter of its own (e.g. the
+     * timetable bucket of GOMP): it is sent right away, its answer still adapts the rate of the host.
+     */
+    public static Request paced(Request request) {
+        if (isPaced(request)) return request;
+        return request.newBuilder().tag(Paced.class, Paced.INSTANCE).build();
+    }
+
+    public static boolean isPaced(Request request) {
+        return request.tag(Paced.class) != null;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String host = request.url().host();
+        AdaptiveRateLimiter limiter = getLimiter(host);
+        long wait = isPaced(request) ? 0 : reserve(host);
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter of " + host);
+            }
+        }
+        Response response = chain.proceed(request);
+        if (isThrottled(response)) limiter.onThrottle();
+        else limiter.onSuccess();
+        return response;
+    }
+
+    private boolean isThrottled(Response response) throws IOException {
+        return response.code() >= 500 || isRateLimited(response);
+    }
+
+    /**
+     * Tells if the answer reports that the rate limit of the server was reached.
+     */
+    public static boolean isRateLimited(Response response) throws IOException {
+        if (response.code() == 429) return true;
+        // GOMP answers its rate limit with a plain text 200
+        return response.code() == 200 && response.peekBody(256).string().contains("maximum request limit");
+    }
+
+    private static final class Paced {
+        private static final Paced INSTANCE = new Paced();
+    }
+
+    /**
+     * Raised when a request would have to wait for its permit longer than the queue timeout.
+     */
+    public static class RateLimitTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RateLimitTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
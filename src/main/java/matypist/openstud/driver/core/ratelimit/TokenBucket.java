@@ -0,0 +1,117 @@
+package matypist.openstud.driver.core.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket pacing the requests sent to an endpoint.
+ * The bucket holds up to {@code capacity} permits and refills at {@code permitsPerSecond}, so bursts up to the capacity
+ * are sent at once and the following requests are spaced by the refill interval.
+ * Permits are reserved rather than waited for: {@link #reserve()} tells how long the caller has to wait before
+ * sending, so blocking callers can sleep while asynchronous ones schedule the request without holding a thread.
+ */
+public class TokenBucket {
+    private double intervalNanos;
+    private final int capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond sustained rate, {@link Double#POSITIVE_INFINITY} disables the pacing
+     * @param capacity         maximum burst
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (!(permitsPerSecond > 0)) throw new IllegalArgumentException("permitsPerSecond must be positive");
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.intervalNanos = toInterval(permitsPerSecond);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, possibly in advance.
+     *
+     * @return the milliseconds to wait before sending the request
+     */
+    public synchronized long reserve() {
+        if (intervalNanos == 0) return 0;
+        refill();
+        tokens -= 1;
+        return waitMillis();
+    }
+
+    /**
+     * Takes a permit only if it is available within the given time.
+     *
+     * @return the milliseconds to wait before sending the request, -1 if no permit was taken
+     */
+    public synchronized long tryReserve(long maxWaitMillis) {
+        if (intervalNanos == 0) return 0;
+        refill();
+        tokens -= 1;
+        long wait = waitMillis();
+        if (wait <= maxWaitMillis) return wait;
+        tokens += 1;
+        return -1;
+    }
+
+    /**
+     * Takes a permit, blocking until it is available.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) Thread.sleep(wait);
+    }
+
+    /**
+     * Called when the endpoint reports that the rate limit was reached anyway: the bucket is emptied and the
+     * next permit is granted only after a full refill period, letting the server side window expire.
+     */
+    public synchronized void backOff() {
+        if (intervalNanos == 0) return;
+        refill();
+        tokens = Math.min(tokens, 0) - capacity;
+    }
+
+    public synchronized int getAvailablePermits() {
+        if (intervalNanos == 0) return capacity;
+        refill();
+        return Math.max(0, (int) tokens);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return intervalNanos == 0 ? Double.POSITIVE_INFINITY : TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    /**
+     * Changes the refill rate, the permits already reserved keep the delay they were given.
+     */
+    public synchronized void setPermitsPerSecond(double permitsPerSecond) {
+        if (!(permitsPerSecond > 0)) throw new IllegalArgumentException("permitsPerSecond must be positive");
+        if (intervalNanos != 0) refill();
+        else {
+            tokens = capacity;
+            lastRefill = System.nanoTime();
+        }
+        intervalNanos = toInterval(permitsPerSecond);
+    }
+
+    private static double toInterval(double permitsPerSecond) {
+        return TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    private long waitMillis() {
+        if (tokens >= 0) return 0;
+        return TimeUnit.NANOSECONDS.toMillis((long) Math.ceil(-tokens * intervalNanos)) + 1;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / intervalNanos);
+        lastRefill = now;
+    }
+}
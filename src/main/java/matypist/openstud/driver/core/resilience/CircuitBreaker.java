@@ -0,0 +1,82 @@
+package matypist.openstud.driver.core.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker guarding a remote dependency.
+ * After {@code failureThreshold} consecutive failures the circuit opens and {@link #isCallPermitted()} turns false,
+ * so callers can take their fallback without paying for a doomed round trip. Once {@code openMillis} elapsed a single
+ * probe is let through with {@link #tryStartProbe()}: its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be at least 1");
+        if (openMillis < 0) throw new IllegalArgumentException("openMillis can't be negative");
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Tells if a regular call may go through, that is if the circuit is closed.
+     */
+    public synchronized boolean isCallPermitted() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Moves an open circuit whose open period elapsed to half-open.
+     *
+     * @return true if the caller has to run the probe and report its outcome
+     */
+    public synchronized boolean tryStartProbe() {
+        if (state != State.OPEN || System.nanoTime() - openedAt < openNanos) return false;
+        state = State.HALF_OPEN;
+        return true;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Gives back a probe whose outcome tells nothing about the server (e.g. it was cancelled): the circuit opens
+     * again, keeping its open period, so the next call runs a probe of its own.
+     */
+    public synchronized void abortProbe() {
+        if (state == State.HALF_OPEN) state = State.OPEN;
+    }
+
+    /**
+     * Opens the circuit right away, for failures that are known to last (e.g. a maintenance page).
+     */
+    public synchronized void trip() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailureCount() {
+        return failures;
+    }
+}
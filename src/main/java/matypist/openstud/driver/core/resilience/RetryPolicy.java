@@ -0,0 +1,144 @@
+package matypist.openstud.driver.core.resilience;
+
+import matypist.openstud.driver.exceptions.OpenstudBaseResponseException;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides if and when a failed call is attempted again.
+ * Attempts are spaced by an exponential backoff with jitter, so clients failing together don't retry together, and a
+ * call stops retrying once its deadline would be crossed. Retries also draw from a budget per time window, shared by
+ * every call using the policy: when the server is down (e.g. during an Infostud maintenance window) the calls fail
+ * after their first attempt instead of multiplying the load.
+ * Only the failures whose {@link OpenstudBaseResponseException.Type} is retryable are attempted again, by default
+ * maintenance, rate limit and SSL errors are not since an immediate retry can't fix them. A call failing because its
+ * token expired is attempted once more right after the refresh, without drawing from the budget or waiting a backoff.
+ */
+public class RetryPolicy {
+    private volatile long initialBackoff = 200;
+    private volatile long maxBackoff = TimeUnit.SECONDS.toMillis(5);
+    private volatile double multiplier = 2;
+    private volatile double jitter = 0.5;
+    private volatile long deadline = TimeUnit.SECONDS.toMillis(60);
+    private volatile Set<OpenstudBaseResponseException.Type> retryable = EnumSet.of(OpenstudBaseResponseException.Type.JSON_ERROR,
+            OpenstudBaseResponseException.Type.HTML_ERROR, OpenstudBaseResponseException.Type.INVALID_TOKEN, OpenstudBaseResponseException.Type.GENERIC);
+    private int budget = 30;
+    private long budgetWindow = TimeUnit.SECONDS.toMillis(10);
+    private int spent;
+    private long windowStart = System.nanoTime();
+    private long rejected;
+
+    /**
+     * @return a policy with the same settings and a budget of its own
+     */
+    public synchronized RetryPolicy copy() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.initialBackoff = initialBackoff;
+        policy.maxBackoff = maxBackoff;
+        policy.multiplier = multiplier;
+        policy.jitter = jitter;
+        policy.deadline = deadline;
+        policy.retryable = retryable;
+        policy.budget = budget;
+        policy.budgetWindow = budgetWindow;
+        return policy;
+    }
+
+    /**
+     * The n-th retry waits {@code initial * multiplier^(n-1)} milliseconds, up to {@code max}.
+     */
+    public RetryPolicy setBackoff(long initialMillis, long maxMillis, double multiplier) {
+        if (initialMillis < 0 || maxMillis < initialMillis || multiplier < 1)
+            throw new IllegalArgumentException("Backoff is not valid");
+        this.initialBackoff = initialMillis;
+        this.maxBackoff = maxMillis;
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * Fraction of the backoff that is randomized: 0 waits exactly the backoff, 1 waits anything between 0 and the backoff.
+     */
+    public RetryPolicy setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Overall time a call may spend across its attempts and backoffs, no attempt is started past it.
+     */
+    public RetryPolicy setDeadline(long millis) {
+        if (millis <= 0) throw new IllegalArgumentException("Deadline must be positive");
+        this.deadline = millis;
+        return this;
+    }
+
+    /**
+     * At most {@code retries} retries are granted every {@code windowMillis}, across the calls using this policy.
+     */
+    public synchronized RetryPolicy setRetryBudget(int retries, long windowMillis) {
+        if (retries < 0 || windowMillis <= 0) throw new IllegalArgumentException("Retry budget is not valid");
+        this.budget = retries;
+        this.budgetWindow = windowMillis;
+        return this;
+    }
+
+    public synchronized RetryPolicy setRetryable(OpenstudBaseResponseException.Type type, boolean retryable) {
+        Set<OpenstudBaseResponseException.Type> types = EnumSet.noneOf(OpenstudBaseResponseException.Type.class);
+        types.addAll(this.retryable);
+        if (retryable) types.add(type);
+        else types.remove(type);
+        this.retryable = types;
+        return this;
+    }
+
+    public boolean isRetryable(OpenstudBaseResponseException e) {
+        return retryable.contains(e.getType());
+    }
+
+    /**
+     * Decides whether a call that just failed is attempted again.
+     *
+     * @param failures   failed attempts of the call so far
+     * @param startNanos {@link System#nanoTime()} of the first attempt
+     * @return the milliseconds to wait before the next attempt, -1 to give up
+     */
+    public long nextDelay(int failures, long startNanos) {
+        long backoff = initialBackoff;
+        for (int i = 1; i < failures && backoff < maxBackoff; i++) backoff = (long) (backoff * multiplier);
+        backoff = Math.min(backoff, maxBackoff);
+        long delay = backoff - (long) (backoff * jitter * ThreadLocalRandom.current().nextDouble());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (elapsed + delay >= deadline || !tryAcquireRetry()) return -1;
+        return delay;
+    }
+
+    private synchronized boolean tryAcquireRetry() {
+        long now = System.nanoTime();
+        if (now - windowStart >= TimeUnit.MILLISECONDS.toNanos(budgetWindow)) {
+            windowStart = now;
+            spent = 0;
+        }
+        if (spent < budget) {
+            spent++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Number of retries denied because the budget was exhausted.
+     */
+    public synchronized long getRejectedRetries() {
+        return rejected;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+}
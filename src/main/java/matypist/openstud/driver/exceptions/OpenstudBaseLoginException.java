@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public abstract class OpenstudBaseLoginException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public enum Type {
         INVALID_PASSWORD, EXPIRED_PASSWORD, ACCOUNT_BLOCKED, CAPTCHA_REQUIRED
     }
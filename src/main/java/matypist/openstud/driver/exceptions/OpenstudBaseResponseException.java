@@ -1,8 +1,10 @@
 package matypist.openstud.driver.exceptions;
 
 public abstract class OpenstudBaseResponseException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public enum Type {
-        JSON_ERROR, MAINTENANCE, RATE_LIMIT, HTML_ERROR, SSL_ERROR, GENERIC
+        JSON_ERROR, MAINTENANCE, RATE_LIMIT, HTML_ERROR, SSL_ERROR, INVALID_TOKEN, GENERIC
     }
 
     Type type;
@@ -43,6 +45,14 @@ public abstract class OpenstudBaseResponseException extends Exception {
         return type == Type.SSL_ERROR;
     }
 
+    public boolean isInvalidToken() {
+        return type == Type.INVALID_TOKEN;
+    }
+
+    public Type getType() {
+        return type != null ? type : Type.GENERIC;
+    }
+
 
     Exception setMaintenanceType() {
         type = Type.MAINTENANCE;
@@ -69,5 +79,10 @@ public abstract class OpenstudBaseResponseException extends Exception {
         return this;
     }
 
+    Exception setInvalidTokenType() {
+        type = Type.INVALID_TOKEN;
+        return this;
+    }
+
 
 }
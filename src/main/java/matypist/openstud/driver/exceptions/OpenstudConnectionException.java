@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public class OpenstudConnectionException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public OpenstudConnectionException(String message) {
         super(message);
     }
@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public class OpenstudInvalidAnswerException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public OpenstudInvalidAnswerException(String message) {
         super(message);
     }
@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public class OpenstudInvalidCredentialsException extends OpenstudBaseLoginException {
+    private static final long serialVersionUID = 1L;
+
     public OpenstudInvalidCredentialsException(String message) {
         super(message);
     }
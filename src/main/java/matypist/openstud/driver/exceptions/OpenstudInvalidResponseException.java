@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public class OpenstudInvalidResponseException extends OpenstudBaseResponseException {
+    private static final long serialVersionUID = 1L;
+
     public OpenstudInvalidResponseException(String message) {
         super(message);
     }
@@ -35,4 +37,9 @@ public class OpenstudInvalidResponseException extends OpenstudBaseResponseExcept
         return this;
     }
 
+    public OpenstudInvalidResponseException setInvalidTokenType() {
+        super.setInvalidTokenType();
+        return this;
+    }
+
 }
@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public class OpenstudRefreshException extends OpenstudBaseLoginException {
+    private static final long serialVersionUID = 1L;
+
     public OpenstudRefreshException(String message) {
         super(message);
     }
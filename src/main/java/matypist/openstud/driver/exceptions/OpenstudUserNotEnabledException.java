@@ -1,6 +1,8 @@
 package matypist.openstud.driver.exceptions;
 
 public class OpenstudUserNotEnabledException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public OpenstudUserNotEnabledException(String message) {
         super(message);
     }
@@ -0,0 +1,88 @@
+package matypist.openstud.driver.core;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test rule serving every Infostud endpoint (api, login, timetable, website) from one {@link MockWebServer}.
+ * The server binds 127.0.0.1, since the news URL validator rejects "localhost". Every rule has a transport of its
+ * own, whose host limiter doesn't pace the test server, so the tests don't share dispatcher nor rate limits.
+ */
+public class MockInfostud extends ExternalResource {
+    public static final String EXPIRED_TOKEN = "expired";
+    private static final String HOST = "127.0.0.1";
+    private final MockWebServer server = new MockWebServer();
+    private final OpenstudTransport transport = new OpenstudTransport();
+
+    @Override
+    protected void before() throws IOException {
+        server.start(InetAddress.getByName(HOST), 0);
+        transport.getHostRateLimiter().setLimit(HOST, 1000, 1000, 1, 1000);
+    }
+
+    @Override
+    protected void after() {
+        transport.shutdown();
+        try {
+            server.shutdown();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public MockWebServer getServer() {
+        return server;
+    }
+
+    public OpenstudTransport getTransport() {
+        return transport;
+    }
+
+    public String url(String path) {
+        // the server names itself "localhost" even when bound to an address
+        return server.url(path).newBuilder().host(HOST).build().toString();
+    }
+
+    /**
+     * Returns a builder logged in as a test student, pointing every endpoint to this server.
+     */
+    public OpenstudBuilder builder() {
+        String url = url("/");
+        return new OpenstudBuilder().setTransport(transport).setStudentID("1234567").setPassword("password")
+                .setEndpoints(url + "api", url + "login", url + "timetable", url + "website")
+                .setTokenRefreshAhead(0).forceReadyState();
+    }
+
+    /**
+     * Builds the instance holding an {@link #EXPIRED_TOKEN}, so its first authenticated request has to refresh it.
+     */
+    public Openstud build(OpenstudBuilder builder) {
+        Openstud os = builder.build();
+        os.setToken(EXPIRED_TOKEN);
+        return os;
+    }
+
+    public Openstud build() {
+        return build(builder());
+    }
+
+    /**
+     * Enqueues a successful login answer carrying the given token, delivered after {@code delayMillis}.
+     */
+    public void enqueueLogin(String token, long delayMillis) {
+        server.enqueue(new MockResponse().setBody("{\"result\":{\"tokeniws\":\"" + token + "\"},\"id\":null}")
+                .setBodyDelay(delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public void enqueue(MockResponse response) {
+        server.enqueue(response);
+    }
+
+    public int getRequestCount() {
+        return server.getRequestCount();
+    }
+}
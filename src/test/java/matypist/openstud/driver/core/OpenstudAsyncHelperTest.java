@@ -0,0 +1,122 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.models.ExamDoable;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OpenstudAsyncHelperTest {
+    private static final String EXAMS = "{\"ritorno\":{\"esami\":[" +
+            "{\"codiceInsegnamento\":\"101\",\"codiceModuloDidattico\":\"M1\",\"codiceCorsoInsegnamento\":\"C1\",\"cfu\":6,\"descrizione\":\"ANALISI\",\"ssd\":\"MAT/05\"}," +
+            "{\"codiceInsegnamento\":\"102\",\"codiceModuloDidattico\":\"M2\",\"codiceCorsoInsegnamento\":\"C2\",\"cfu\":9,\"descrizione\":\"FISICA\",\"ssd\":\"FIS/01\"}]}}";
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private Openstud os;
+
+    @Before
+    public void setUp() {
+        os = infostud.build();
+    }
+
+    private Request request() {
+        return new Request.Builder().url(infostud.url("/api")).build();
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("The future should fail");
+    }
+
+    @Test
+    public void testEnqueueParsesResponse() throws Exception {
+        infostud.enqueue(new MockResponse().setBody("{\"risultato\":\"ok\"}"));
+        CompletableFuture<String> future = OpenstudAsyncHelper.enqueue(os, request(), resp -> new JSONObject(resp.body().string()).getString("risultato"));
+        assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEnqueueMapsFailures() throws Exception {
+        infostud.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        infostud.enqueue(new MockResponse().setBody("<html>maintenance</html>"));
+        Throwable connection = failure(OpenstudAsyncHelper.enqueue(os, request(), resp -> resp.body().string()));
+        assertTrue(connection instanceof OpenstudConnectionException);
+        Throwable json = failure(OpenstudAsyncHelper.enqueue(os, request(), resp -> new JSONObject(resp.body().string())));
+        assertTrue(json instanceof OpenstudInvalidResponseException);
+        assertTrue(((OpenstudInvalidResponseException) json).isJSONError());
+    }
+
+    @Test
+    public void testCancelStopsTheCall() throws Exception {
+        infostud.enqueue(new MockResponse().setBody("late").setHeadersDelay(3, TimeUnit.SECONDS));
+        CompletableFuture<String> future = OpenstudAsyncHelper.enqueue(os, request(), resp -> resp.body().string());
+        infostud.getServer().takeRequest(5, TimeUnit.SECONDS);
+        assertTrue(future.cancel(true));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (os.getClient().dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(0, os.getClient().dispatcher().runningCallsCount());
+    }
+
+    @Test
+    public void testAsyncHandlerRefreshesExpiredToken() throws Exception {
+        infostud.enqueue(new MockResponse().setBody("{\"esito\":{\"flagEsito\":-4}}"));
+        infostud.enqueueLogin("renewed", 0);
+        infostud.enqueue(new MockResponse().setBody(EXAMS));
+        List<ExamDoable> exams = os.getExamsDoableAsync().get(5, TimeUnit.SECONDS);
+        assertEquals(2, exams.size());
+        assertEquals("ANALISI", exams.get(0).getDescription());
+        assertEquals(9, exams.get(1).getCfu());
+        assertEquals("renewed", os.getToken());
+        assertEquals(3, infostud.getRequestCount());
+        assertTrue(infostud.getServer().takeRequest().getPath().contains("ingresso=" + MockInfostud.EXPIRED_TOKEN));
+        infostud.getServer().takeRequest();
+        assertTrue(infostud.getServer().takeRequest().getPath().contains("ingresso=renewed"));
+    }
+
+    @Test
+    public void testAsyncAndBlockingHandlersAgree() throws Exception {
+        os.setToken("valid");
+        infostud.enqueue(new MockResponse().setBody(EXAMS));
+        infostud.enqueue(new MockResponse().setBody(EXAMS));
+        assertEquals(os.getExamsDoable(), os.getExamsDoableAsync().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAllAsListKeepsOrder() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<List<String>> all = OpenstudAsyncHelper.allAsList(Arrays.asList(first, second));
+        second.complete("second");
+        assertFalse(all.isDone());
+        first.complete("first");
+        assertEquals(Arrays.asList("first", "second"), all.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAllAsListFailsOnFirstFailure() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<List<String>> all = OpenstudAsyncHelper.allAsList(Arrays.asList(first, second));
+        OpenstudConnectionException failure = new OpenstudConnectionException("down");
+        second.completeExceptionally(failure);
+        assertSame(failure, failure(all));
+        assertFalse(first.isDone());
+    }
+}
@@ -0,0 +1,80 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.cache.CacheOperation;
+import matypist.openstud.driver.core.cache.InMemoryOpenstudCache;
+import matypist.openstud.driver.core.models.ExamDoable;
+import matypist.openstud.driver.core.models.ExamReservation;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OpenstudCacheTest {
+    private static final String EXAMS = "{\"ritorno\":{\"esami\":[{\"codiceInsegnamento\":\"101\",\"cfu\":6,\"descrizione\":\"ANALISI\"}]}}";
+    private static final String RESERVATIONS = "{\"ritorno\":{\"appelli\":[{\"codIdenVerb\":1,\"codAppe\":2,\"numeroPrenotazione\":3,\"descrizione\":\"ANALISI\"}]}}";
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+
+    private Openstud build(OpenstudBuilder builder) {
+        Openstud os = infostud.build(builder.setCache(new InMemoryOpenstudCache()));
+        os.setToken("valid");
+        return os;
+    }
+
+    @Test
+    public void testCachedAnswerServedWithoutRequest() throws Exception {
+        Openstud os = build(infostud.builder());
+        infostud.enqueue(new MockResponse().setBody(EXAMS));
+        List<ExamDoable> exams = os.getExamsDoable();
+        assertEquals(1, exams.size());
+        assertEquals(exams, os.getExamsDoable());
+        assertEquals(exams, os.getExamsDoableAsync().get(5, TimeUnit.SECONDS));
+        assertEquals(1, infostud.getRequestCount());
+        assertEquals(2, os.getCache().getStats().getHits());
+    }
+
+    @Test
+    public void testFailureNotCached() throws Exception {
+        Openstud os = build(infostud.builder());
+        infostud.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        infostud.enqueue(new MockResponse().setBody(EXAMS));
+        try {
+            os.getExamsDoable();
+            fail("The connection failure should be reported");
+        } catch (OpenstudConnectionException ignored) {
+        }
+        assertEquals(1, os.getExamsDoable().size());
+        assertEquals(2, infostud.getRequestCount());
+    }
+
+    @Test
+    public void testReservationChangeInvalidatesActiveReservations() throws Exception {
+        Openstud os = build(infostud.builder());
+        infostud.enqueue(new MockResponse().setBody(RESERVATIONS));
+        infostud.enqueue(new MockResponse().setBody("{\"esito\":{\"flagEsito\":0}}"));
+        infostud.enqueue(new MockResponse().setBody("{\"ritorno\":{\"appelli\":[]}}"));
+        List<ExamReservation> reservations = os.getActiveReservations();
+        assertEquals(reservations, os.getActiveReservations());
+        assertEquals(0, os.deleteReservation(reservations.get(0)));
+        assertTrue(os.getActiveReservations().isEmpty());
+        assertEquals(3, infostud.getRequestCount());
+    }
+
+    @Test
+    public void testExpiredValueServedWhileCircuitOpen() throws Exception {
+        Openstud os = build(infostud.builder().setCacheTtl(CacheOperation.EXAMS_DOABLE, 1));
+        infostud.enqueue(new MockResponse().setBody(EXAMS));
+        List<ExamDoable> exams = os.getExamsDoable();
+        Thread.sleep(5);
+        os.getCircuitBreaker().trip();
+        assertEquals(exams, os.getExamsDoable());
+        assertEquals(exams, os.getExamsDoableAsync().get(5, TimeUnit.SECONDS));
+        assertEquals(1, infostud.getRequestCount());
+    }
+}
@@ -0,0 +1,104 @@
+package matypist.openstud.driver.core;
+
+import matypist.openstud.driver.core.ratelimit.HostRateLimiter;
+import matypist.openstud.driver.core.resilience.CircuitBreaker;
+import matypist.openstud.driver.core.resilience.RetryPolicy;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OpenstudRetryHelperTest {
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+
+    private Openstud build(RetryPolicy policy) {
+        return infostud.build(infostud.builder().setRetryPolicy(policy));
+    }
+
+    private static String readToken(Openstud os) throws OpenstudInvalidResponseException {
+        if (MockInfostud.EXPIRED_TOKEN.equals(os.getToken()))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid").setInvalidTokenType();
+        return os.getToken();
+    }
+
+    @Test
+    public void testExpiredTokenRefreshedWithoutBudget() throws Exception {
+        Openstud os = build(new RetryPolicy().setRetryBudget(0, TimeUnit.MINUTES.toMillis(1)).setBackoff(10000, 10000, 1));
+        infostud.enqueueLogin("renewed", 100);
+        long start = System.nanoTime();
+        assertEquals("renewed", OpenstudRetryHelper.retry(os, true, () -> readToken(os)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(1, infostud.getRequestCount());
+        assertEquals(0, os.getRetryPolicy().getRejectedRetries());
+    }
+
+    @Test
+    public void testExpiredTokenRefreshedWithoutBudgetAsync() throws Exception {
+        Openstud os = build(new RetryPolicy().setRetryBudget(0, TimeUnit.MINUTES.toMillis(1)).setBackoff(10000, 10000, 1));
+        infostud.enqueueLogin("renewed", 100);
+        CompletableFuture<String> future = OpenstudAsyncHelper.retry(os, true, e -> false, () -> {
+            try {
+                return CompletableFuture.completedFuture(readToken(os));
+            } catch (OpenstudInvalidResponseException e) {
+                return OpenstudAsyncHelper.failed(e);
+            }
+        });
+        assertEquals("renewed", future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, infostud.getRequestCount());
+    }
+
+    @Test
+    public void testOnlyOneRenewalPerCall() throws Exception {
+        Openstud os = build(new RetryPolicy().setRetryBudget(0, TimeUnit.MINUTES.toMillis(1)));
+        infostud.enqueueLogin(MockInfostud.EXPIRED_TOKEN, 100);
+        try {
+            OpenstudRetryHelper.retry(os, true, () -> readToken(os));
+            fail("The second invalid token answer should not be retried");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isInvalidToken());
+        }
+        assertEquals(1, infostud.getRequestCount());
+        assertEquals(1, os.getRetryPolicy().getRejectedRetries());
+    }
+
+    @Test
+    public void testServerAnswersCountAsSuccess() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        OpenstudRetryHelper.record(breaker, new OpenstudInvalidResponseException("token").setInvalidTokenType());
+        OpenstudRetryHelper.record(breaker, new OpenstudInvalidResponseException("rate limit").setRateLimitType());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        OpenstudRetryHelper.record(breaker, new OpenstudInvalidResponseException("json").setJSONType());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testLocalFailuresNotCounted() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        OpenstudRetryHelper.record(breaker, new OpenstudConnectionException(new HostRateLimiter.RateLimitTimeoutException("queued too long")));
+        OpenstudRetryHelper.record(breaker, new OpenstudConnectionException(new InterruptedIOException("interrupted")));
+        OpenstudRetryHelper.record(breaker, new OpenstudConnectionException(new InterruptedException()));
+        OpenstudRetryHelper.record(breaker, new CancellationException());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        OpenstudRetryHelper.record(breaker, new OpenstudConnectionException(new SocketTimeoutException("timeout")));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testLocalFailureAbortsProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.trip();
+        assertTrue(breaker.tryStartProbe());
+        OpenstudRetryHelper.record(breaker, new OpenstudConnectionException(new HostRateLimiter.RateLimitTimeoutException("queued too long")));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.tryStartProbe());
+    }
+}
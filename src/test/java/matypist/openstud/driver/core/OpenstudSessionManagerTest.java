@@ -0,0 +1,122 @@
+package matypist.openstud.driver.core;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OpenstudSessionManagerTest {
+    private MockWebServer server;
+    private OpenstudSessionManager manager;
+    private final AtomicInteger passwordRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("{\"result\":{\"tokeniws\":\"token\"},\"id\":null}");
+            }
+        });
+        server.start();
+        String url = server.url("/").toString();
+        manager = new OpenstudSessionManagerBuilder()
+                .setTemplate(new OpenstudBuilder().setEndpoints(url + "api", url + "login", url + "timetable", url + "website"))
+                .setPasswordProvider(id -> {
+                    passwordRequests.incrementAndGet();
+                    return "Password1!";
+                })
+                .setMaxConcurrency(2).setStudentConcurrency(1).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void testBusyStudentDoesNotBlockOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<String>> busy = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            busy.add(manager.submit("1234567", os -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                return os.getToken();
+            }));
+        }
+        // the queued operations of the first student hold no manager thread
+        assertEquals("token", manager.submit("7654321", Openstud::getToken).get(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (CompletableFuture<String> future : busy) assertEquals("token", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPasswordAskedOnlyToLogin() throws Exception {
+        assertEquals("token", manager.execute("1234567", Openstud::getToken));
+        assertEquals("token", manager.execute("1234567", Openstud::getToken));
+        assertEquals("token", manager.submit("1234567", Openstud::getToken).get(5, TimeUnit.SECONDS));
+        assertEquals(1, passwordRequests.get());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testPasswordAskedOnceByConcurrentLogins() throws Exception {
+        OpenstudBuilder builder = new OpenstudBuilder().forceReadyState();
+        builder.passwordSupplier = () -> {
+            passwordRequests.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            return "Password1!";
+        };
+        Openstud os = builder.build();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        List<CompletableFuture<String>> passwords = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                passwords.add(CompletableFuture.supplyAsync(() -> {
+                    ready.countDown();
+                    try {
+                        ready.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    return os.getStudentPassword();
+                }, executor));
+            }
+            for (CompletableFuture<String> password : passwords) assertEquals("Password1!", password.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, passwordRequests.get());
+    }
+
+    @Test
+    public void testTokenAgeKeptAcrossOperations() throws Exception {
+        manager.execute("1234567", Openstud::getToken);
+        Thread.sleep(100);
+        long age = manager.execute("1234567", Openstud::getTokenAge);
+        assertTrue(age >= 100);
+    }
+}
@@ -0,0 +1,127 @@
+package matypist.openstud.driver.core;
+
+import okhttp3.mockwebserver.MockResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OpenstudTokenRefreshTest {
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private Openstud os;
+
+    @Before
+    public void setUp() {
+        os = infostud.build();
+    }
+
+    @Test
+    public void testConcurrentRefreshLogsInOnce() throws Exception {
+        infostud.enqueueLogin("renewed", 200);
+        long generation = os.getTokenGeneration();
+        int threads = 8;
+        CountDownLatch ready = new CountDownLatch(threads);
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    ready.await();
+                    os.refreshToken(generation);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        for (Thread thread : started) thread.join(5000);
+        assertEquals(0, failures.get());
+        assertEquals("renewed", os.getToken());
+        assertEquals(1, infostud.getRequestCount());
+        assertEquals(1, os.getTokenStats().getExpiredTokenHits());
+    }
+
+    @Test
+    public void testStaleGenerationDoesNotLogInAgain() throws Exception {
+        infostud.enqueueLogin("renewed", 200);
+        long generation = os.getTokenGeneration();
+        os.refreshToken(generation);
+        os.refreshToken(generation);
+        assertEquals(1, infostud.getRequestCount());
+        assertTrue(os.getTokenGeneration() > generation);
+    }
+
+    @Test
+    public void testAsyncRefreshSharesLogin() throws Exception {
+        infostud.enqueueLogin("renewed", 200);
+        long generation = os.getTokenGeneration();
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) refreshes.add(OpenstudAsyncHelper.refreshToken(os, generation));
+        for (CompletableFuture<Void> refresh : refreshes) refresh.get(5, TimeUnit.SECONDS);
+        assertEquals("renewed", os.getToken());
+        assertEquals(1, infostud.getRequestCount());
+    }
+
+    @Test
+    public void testOnlyExpiredTokenAnswersCountAsHits() throws Exception {
+        os.setToken("valid");
+        // a malformed answer is retried after a refresh too, but the token did not expire
+        infostud.enqueue(new MockResponse().setBody("<html>maintenance</html>"));
+        infostud.enqueueLogin("renewed", 0);
+        infostud.enqueue(new MockResponse().setBody("{\"ritorno\":{\"esami\":[]}}"));
+        assertTrue(os.getExamsDoable().isEmpty());
+        assertEquals(0, os.getTokenStats().getExpiredTokenHits());
+        infostud.enqueue(new MockResponse().setBody("<html>maintenance</html>"));
+        infostud.enqueueLogin("renewed again", 0);
+        infostud.enqueue(new MockResponse().setBody("{\"ritorno\":{\"esami\":[]}}"));
+        assertTrue(os.getExamsDoableAsync().get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(0, os.getTokenStats().getExpiredTokenHits());
+        infostud.enqueue(new MockResponse().setBody("{\"esito\":{\"flagEsito\":-4}}"));
+        infostud.enqueueLogin("expired and renewed", 0);
+        infostud.enqueue(new MockResponse().setBody("{\"ritorno\":{\"esami\":[]}}"));
+        assertTrue(os.getExamsDoableAsync().get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(1, os.getTokenStats().getExpiredTokenHits());
+        assertEquals(9, infostud.getRequestCount());
+    }
+
+    @Test
+    public void testFailedRenewalIsNotARenewal() throws Exception {
+        Openstud renewing = infostud.builder().setTokenLifetime(400).setTokenRefreshAhead(300).build();
+        infostud.enqueue(new MockResponse().setBody("{\"result\":null,\"error\":{\"code\":\"auth110\"},\"id\":null}"));
+        renewing.setToken("valid");
+        infostud.getServer().takeRequest(5, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (renewing.getTokenStats().getFailedRenewals() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        renewing.shutdown();
+        TokenStats stats = renewing.getTokenStats();
+        assertEquals(1, stats.getFailedRenewals());
+        assertEquals(0, stats.getRenewals());
+        assertEquals(0, stats.getExpiredTokenHits());
+        assertEquals("valid", renewing.getToken());
+    }
+
+    @Test
+    public void testRenewalCountedOnceDone() throws Exception {
+        Openstud renewing = infostud.builder().setTokenLifetime(400).setTokenRefreshAhead(300).build();
+        infostud.enqueueLogin("renewed", 0);
+        renewing.setToken("valid");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!"renewed".equals(renewing.getToken()) && System.nanoTime() < deadline) Thread.sleep(10);
+        renewing.shutdown();
+        TokenStats stats = renewing.getTokenStats();
+        assertEquals(1, stats.getRenewals());
+        assertEquals(0, stats.getFailedRenewals());
+        assertEquals(0, stats.getExpiredTokenHits());
+    }
+}
@@ -0,0 +1,36 @@
+package matypist.openstud.driver.core;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OpenstudTransportTest {
+
+    @Test
+    public void testInstancesDontChangeTheSharedDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(3);
+        OpenstudTransport transport = new OpenstudTransport(new ConnectionPool(), dispatcher);
+        try {
+            Openstud os = new OpenstudBuilder().setTransport(transport).setParallelism(10).forceReadyState().build();
+            assertSame(dispatcher, os.getClient().dispatcher());
+            assertEquals(3, dispatcher.getMaxRequestsPerHost());
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void testPerHostLimitSetWithTheTransport() {
+        OpenstudTransport transport = new OpenstudTransport(8);
+        try {
+            new OpenstudBuilder().setTransport(transport).setParallelism(20).forceReadyState().build();
+            assertEquals(8, transport.getDispatcher().getMaxRequestsPerHost());
+            assertEquals(OpenstudTransport.DEFAULT_MAX_REQUESTS_PER_HOST, new OpenstudTransport().getDispatcher().getMaxRequestsPerHost());
+        } finally {
+            transport.shutdown();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package matypist.openstud.driver.core.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InMemoryOpenstudCacheTest {
+    private static final long TTL = 60000;
+
+    private static CacheKey key(String studentID, CacheOperation operation, Object... arguments) {
+        return new CacheKey(studentID, operation, arguments);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        InMemoryOpenstudCache cache = new InMemoryOpenstudCache(2);
+        cache.put(key("1", CacheOperation.EXAMS_DONE), "done", TTL);
+        cache.put(key("1", CacheOperation.PAID_TAXES), "paid", TTL);
+        assertEquals("done", cache.get(key("1", CacheOperation.EXAMS_DONE)));
+        cache.put(key("1", CacheOperation.UNPAID_TAXES), "unpaid", TTL);
+        assertNull(cache.get(key("1", CacheOperation.PAID_TAXES)));
+        assertEquals("done", cache.get(key("1", CacheOperation.EXAMS_DONE)));
+        assertEquals("unpaid", cache.get(key("1", CacheOperation.UNPAID_TAXES)));
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(2, stats.getSize());
+    }
+
+    @Test
+    public void testExpiredEntryOnlyServedAsStale() throws Exception {
+        InMemoryOpenstudCache cache = new InMemoryOpenstudCache();
+        cache.put(key("1", CacheOperation.EXAMS_DONE), "done", 1);
+        Thread.sleep(5);
+        assertNull(cache.get(key("1", CacheOperation.EXAMS_DONE)));
+        assertEquals("done", cache.getStale(key("1", CacheOperation.EXAMS_DONE)));
+        cache.put(key("1", CacheOperation.PAID_TAXES), "paid", 0);
+        assertNull(cache.getStale(key("1", CacheOperation.PAID_TAXES)));
+    }
+
+    @Test
+    public void testInvalidateMatchesStudentAndOperation() {
+        InMemoryOpenstudCache cache = new InMemoryOpenstudCache();
+        cache.put(key("1", CacheOperation.CAREERS_FOR_CERTIFICATE, "a"), "a", TTL);
+        cache.put(key("1", CacheOperation.CAREERS_FOR_CERTIFICATE, "b"), "b", TTL);
+        cache.put(key("2", CacheOperation.CAREERS_FOR_CERTIFICATE, "a"), "other", TTL);
+        cache.put(key("1", CacheOperation.EXAMS_DONE), "done", TTL);
+        cache.invalidate("1", CacheOperation.CAREERS_FOR_CERTIFICATE);
+        assertNull(cache.get(key("1", CacheOperation.CAREERS_FOR_CERTIFICATE, "a")));
+        assertNull(cache.get(key("1", CacheOperation.CAREERS_FOR_CERTIFICATE, "b")));
+        assertEquals("other", cache.get(key("2", CacheOperation.CAREERS_FOR_CERTIFICATE, "a")));
+        assertEquals("done", cache.get(key("1", CacheOperation.EXAMS_DONE)));
+        cache.invalidateAll("1");
+        assertNull(cache.get(key("1", CacheOperation.EXAMS_DONE)));
+        assertEquals(1, cache.getStats().getSize());
+    }
+}
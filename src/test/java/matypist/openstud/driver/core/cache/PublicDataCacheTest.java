@@ -0,0 +1,86 @@
+package matypist.openstud.driver.core.cache;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.metrics.OpenstudMetrics;
+import matypist.openstud.driver.core.models.Classroom;
+import org.junit.Test;
+import org.threeten.bp.LocalDate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PublicDataCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private CompletableFuture<String> get(PublicDataCache cache, long ttl, CompletableFuture<String> value) {
+        return cache.get(CacheOperation.NEWS, ttl, OpenstudMetrics.NOOP, () -> {
+            loads.incrementAndGet();
+            return value;
+        }, "en");
+    }
+
+    @Test
+    public void testConcurrentRequestsShareLoad() throws Exception {
+        PublicDataCache cache = new PublicDataCache();
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> first = get(cache, 60000, loading);
+        CompletableFuture<String> second = get(cache, 60000, loading);
+        assertFalse(first.isDone());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getCoalescedCount());
+        loading.complete("news");
+        assertEquals("news", first.get(1, TimeUnit.SECONDS));
+        assertEquals("news", second.get(1, TimeUnit.SECONDS));
+        assertEquals("news", get(cache, 60000, CompletableFuture.completedFuture("other")).get(1, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailedAndEmptyLoadsNotCached() throws Exception {
+        PublicDataCache cache = new PublicDataCache();
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("down"));
+        assertTrue(get(cache, 60000, failed).isCompletedExceptionally());
+        assertNull(get(cache, 60000, CompletableFuture.completedFuture(null)).get(1, TimeUnit.SECONDS));
+        assertEquals("news", get(cache, 60000, CompletableFuture.completedFuture("news")).get(1, TimeUnit.SECONDS));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testHotKeyRefreshedAhead() throws Exception {
+        PublicDataCache cache = new PublicDataCache(new InMemoryOpenstudCache(), 0.5, 2);
+        get(cache, 400, CompletableFuture.completedFuture("old")).get(1, TimeUnit.SECONDS);
+        Thread.sleep(250);
+        CompletableFuture<String> reload = new CompletableFuture<>();
+        // the first read past the refresh point is not hot yet, the second one starts the reload
+        assertEquals("old", get(cache, 400, reload).get(1, TimeUnit.SECONDS));
+        assertEquals("old", get(cache, 400, reload).get(1, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getRefreshCount());
+        // the value in use is served while reloading, and the reload is not started twice
+        assertEquals("old", get(cache, 400, reload).get(1, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+        reload.complete("new");
+        assertEquals("new", get(cache, 400, reload).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testColdKeyExpires() throws Exception {
+        PublicDataCache cache = new PublicDataCache(new InMemoryOpenstudCache(), 0.5, 5);
+        get(cache, 100, CompletableFuture.completedFuture("old")).get(1, TimeUnit.SECONDS);
+        Thread.sleep(150);
+        assertEquals("new", get(cache, 100, CompletableFuture.completedFuture("new")).get(1, TimeUnit.SECONDS));
+        assertEquals(0, cache.getRefreshCount());
+    }
+
+    @Test
+    public void testMissingClassroomWithCache() throws Exception {
+        Openstud os = new OpenstudBuilder().setPublicCache(new PublicDataCache()).forceReadyState().build();
+        assertTrue(os.getClassroomTimetable((Classroom) null, LocalDate.now()).isEmpty());
+        assertTrue(os.getClassroomTimetableAsync((Classroom) null, LocalDate.now()).get(1, TimeUnit.SECONDS).isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package matypist.openstud.driver.core.metrics;
+
+import matypist.openstud.driver.core.MockInfostud;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.models.News;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimedHandlerTest {
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+
+    public interface Lookup {
+        CompletableFuture<String> lookup();
+
+        String lookupNow();
+    }
+
+    private static Lookup lookup(CompletableFuture<String> source) {
+        return new Lookup() {
+            @Override
+            public CompletableFuture<String> lookup() {
+                return source;
+            }
+
+            @Override
+            public String lookupNow() {
+                return "now";
+            }
+        };
+    }
+
+    @Test
+    public void testAsyncCallTimedUntilComplete() throws Exception {
+        InMemoryOpenstudMetrics metrics = new InMemoryOpenstudMetrics();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        Lookup timed = TimedHandler.wrap(Lookup.class, lookup(source), metrics);
+        assertEquals("now", timed.lookupNow());
+        CompletableFuture<String> future = timed.lookup();
+        assertFalse(metrics.getOperations().containsKey("Lookup.lookup"));
+        source.complete("later");
+        assertEquals("later", future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, metrics.getOperations().get("Lookup.lookup").getLatency().getCount());
+        assertEquals(0, metrics.getOperations().get("Lookup.lookup").getFailures());
+        assertEquals(1, metrics.getOperations().get("Lookup.lookupNow").getLatency().getCount());
+    }
+
+    @Test
+    public void testCancelReachesTheHandlerFuture() {
+        InMemoryOpenstudMetrics metrics = new InMemoryOpenstudMetrics();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        Lookup timed = TimedHandler.wrap(Lookup.class, lookup(source), metrics);
+        assertTrue(timed.lookup().cancel(true));
+        assertTrue(source.isCancelled());
+        assertEquals(1, metrics.getOperations().get("Lookup.lookup").getFailures());
+    }
+
+    @Test
+    public void testCancelledNewsStopRequestingWithMetrics() throws Exception {
+        // every listing page answers late, the pipeline would request the next ones meanwhile if it was not cancelled
+        infostud.getServer().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("<html><body></body></html>").setHeadersDelay(500, TimeUnit.MILLISECONDS);
+            }
+        });
+        InMemoryOpenstudMetrics metrics = new InMemoryOpenstudMetrics();
+        Openstud os = infostud.builder().setParallelism(2).setMetrics(metrics).build();
+        CompletableFuture<List<News>> news = os.getNewsAsync("en", false, null, null, 10, null);
+        infostud.getServer().takeRequest(5, TimeUnit.SECONDS);
+        infostud.getServer().takeRequest(5, TimeUnit.SECONDS);
+        assertTrue(news.cancel(true));
+        Thread.sleep(1000);
+        assertEquals(2, infostud.getRequestCount());
+        assertEquals(0, os.getClient().dispatcher().runningCallsCount());
+        assertEquals(1, metrics.getOperations().get("NewsHandler.getNewsAsync").getFailures());
+    }
+}
@@ -0,0 +1,399 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudHelper;
+import matypist.openstud.driver.core.models.*;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.format.DateTimeFormatter;
+import org.threeten.bp.format.DateTimeParseException;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * The org.json based decoders the streaming parsers of {@link SapienzaStreamHelper} replaced, kept as they were
+ * (stack traces aside) to check that both paths build the same models.
+ */
+class LegacySapienzaParsers {
+    private final Openstud os;
+
+    LegacySapienzaParsers(Openstud os) {
+        this.os = os;
+    }
+
+    List<ExamDone> parseExamsDone(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
+        response = response.getJSONObject("ritorno");
+        List<ExamDone> list = new LinkedList<>();
+        if (!response.has("esami") || response.isNull("esami")) return list;
+        JSONArray array = response.getJSONArray("esami");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            ExamDone exam = new ExamDone();
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "codiceInsegnamento":
+                        exam.setExamCode(obj.getString("codiceInsegnamento"));
+                        break;
+                    case "cfu":
+                        exam.setCfu(obj.getInt("cfu"));
+                        break;
+                    case "descrizione":
+                        exam.setDescription(obj.getString("descrizione"));
+                        break;
+                    case "ssd":
+                        exam.setSsd(obj.getString("ssd"));
+                        break;
+                    case "data":
+                        if (obj.isNull("data")) break;
+                        String dateBirth = obj.getString("data");
+                        if (dateBirth.isEmpty()) break;
+                        try {
+                            exam.setDate(LocalDate.parse(dateBirth, formatter));
+                        } catch (DateTimeParseException e) {
+                        }
+                        break;
+                    case "certificato":
+                        exam.setCertified(obj.getBoolean("certificato"));
+                        break;
+                    case "superamento":
+                        exam.setPassed(obj.getBoolean("superamento"));
+                        break;
+                    case "annoAcca":
+                        exam.setYear(obj.getInt("annoAcca"));
+                        break;
+                    case "esito":
+                        JSONObject esito = obj.getJSONObject("esito");
+                        if (esito.has("valoreNominale")) exam.setNominalResult(esito.getString("valoreNominale"));
+                        if (esito.has("valoreNonNominale") && !esito.isNull("valoreNonNominale"))
+                            exam.setResult(esito.getInt("valoreNonNominale"));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            list.add(exam);
+        }
+        return list;
+    }
+
+    List<ExamReservation> parseActiveReservations(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
+        response = response.getJSONObject("ritorno");
+        if (!response.has("appelli") || response.isNull("appelli"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. Maybe the server is not working");
+        JSONArray array = response.getJSONArray("appelli");
+        return OpenstudHelper.sortReservationByDate(extractReservations(array), true);
+    }
+
+    List<ExamReservation> parseAvailableReservations(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("ritorno"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
+        response = response.getJSONObject("ritorno");
+        if (!response.has("appelli") || response.isNull("appelli")) return new LinkedList<>();
+        JSONArray array = response.getJSONArray("appelli");
+        return extractReservations(array);
+    }
+
+    List<ExamReservation> extractReservations(JSONArray array) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        List<ExamReservation> list = new LinkedList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            ExamReservation res = new ExamReservation();
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "codIdenVerb":
+                        res.setReportID(obj.getInt("codIdenVerb"));
+                        break;
+                    case "canale":
+                        res.setChannel(obj.getString("canale"));
+                        break;
+                    case "codAppe":
+                        res.setSessionID(obj.getInt("codAppe"));
+                        break;
+                    case "codCorsoStud":
+                        res.setCourseCode(Integer.parseInt(obj.getString("codCorsoStud")));
+                        break;
+                    case "descrizione":
+                        res.setExamSubject(obj.getString("descrizione"));
+                        break;
+                    case "descCorsoStud":
+                        res.setCourseDescription(obj.getString("descCorsoStud"));
+                        break;
+                    case "crediti":
+                        res.setCfu(obj.getInt("crediti"));
+                        break;
+                    case "docente":
+                        res.setTeacher(obj.getString("docente"));
+                        break;
+                    case "annoAcca":
+                        res.setYearCourse(obj.getString("annoAcca"));
+                        break;
+                    case "facolta":
+                        res.setDepartment(obj.getString("facolta"));
+                        break;
+                    case "numeroPrenotazione":
+                        if (obj.isNull("numeroPrenotazione")) break;
+                        res.setReservationNumber(obj.getInt("numeroPrenotazione"));
+                        break;
+                    case "ssd":
+                        if (obj.isNull("ssd")) break;
+                        res.setSsd(obj.getString("ssd"));
+                        break;
+                    case "dataprenotazione":
+                        if (obj.isNull("dataprenotazione")) break;
+                        String reservationDate = obj.getString("dataprenotazione");
+                        if (!(reservationDate == null || reservationDate.isEmpty())) {
+                            try {
+                                res.setReservationDate(LocalDate.parse(reservationDate, formatter));
+                            } catch (DateTimeParseException e) {
+                                os.log(Level.SEVERE, e);
+                            }
+                        }
+                        break;
+                    case "note":
+                        res.setNote(obj.getString("note"));
+                        break;
+                    case "dataAppe":
+                        String examDate = obj.getString("dataAppe");
+                        if (!(examDate == null || examDate.isEmpty())) {
+                            try {
+                                res.setExamDate(LocalDate.parse(examDate, formatter));
+                            } catch (DateTimeParseException e) {
+                                os.log(Level.SEVERE, e);
+                            }
+                        }
+                        break;
+                    case "dataInizioPrenotazione":
+                        if (obj.isNull("dataInizioPrenotazione")) break;
+                        String startDate = obj.getString("dataInizioPrenotazione");
+                        if (!(startDate == null || startDate.isEmpty())) {
+                            try {
+                                res.setStartDate(LocalDate.parse(startDate, formatter));
+                            } catch (DateTimeParseException e) {
+                                os.log(Level.SEVERE, e);
+                            }
+                        }
+                        break;
+                    case "dataFinePrenotazione":
+                        if (obj.isNull("dataFinePrenotazione")) break;
+                        String endDate = obj.getString("dataFinePrenotazione");
+                        if (!(endDate == null || endDate.isEmpty())) {
+                            try {
+                                res.setEndDate(LocalDate.parse(endDate, formatter));
+                            } catch (DateTimeParseException e) {
+                                os.log(Level.SEVERE, e);
+                            }
+                        }
+                        break;
+                    case "SiglaModuloDidattico":
+                        if (!obj.isNull("SiglaModuloDidattico")) res.setModule(obj.getString("SiglaModuloDidattico"));
+                        break;
+                    case "modalitaSvolgimentoList":
+                        if (!obj.isNull("modalitaSvolgimentoList")) res.setAttendingModesList(obj.getJSONArray("modalitaSvolgimentoList"));
+                        break;
+                    case "modalitaSvolgimento":
+                        res.setAttendingMode(obj.getString("modalitaSvolgimento"));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            list.add(res);
+        }
+        return list;
+    }
+
+    List<Tax> parseTaxes(JSONObject response, boolean paid) throws OpenstudInvalidResponseException {
+        List<Tax> list = new LinkedList<>();
+        if (!response.has("risultatoLista"))
+            throw new OpenstudInvalidResponseException("Infostud response is not valid. I guess the token is no longer valid");
+        if (response.isNull("risultatoLista"))
+            return new LinkedList<>();
+        response = response.getJSONObject("risultatoLista");
+        if (!response.has("risultati") || response.isNull("risultati")) return new LinkedList<>();
+        JSONArray array = response.getJSONArray("risultati");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            Tax tax = new Tax();
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "codiceBollettino":
+                        tax.setCode(obj.getString(element));
+                        break;
+                    case "corsoDiStudi":
+                        tax.setCodeCourse(obj.getString(element));
+                        break;
+                    case "descCorsoDiStudi":
+                        tax.setDescriptionCourse(obj.getString(element));
+                        break;
+                    case "impoVers":
+                        try {
+                            String content = obj.getString(element);
+                            if (!content.isEmpty()) tax.setAmount(Double.parseDouble(obj.getString(element)));
+                        } catch (NumberFormatException e) {
+                            os.log(Level.SEVERE, e);
+                        }
+                        break;
+                    case "annoAcca":
+                        tax.setAcademicYear(obj.getInt(element));
+                        break;
+                    case "dataVers":
+                        if (!paid) break;
+                        tax.setPaymentDate(LocalDate.parse(obj.getString(element), formatter));
+                        break;
+                    case "importoBollettino":
+                        if (obj.isNull(element)) break;
+                        try {
+                            double value = Double.parseDouble(obj.getString(element).replace(",", "."));
+                            tax.setAmount(value);
+                        } catch (NumberFormatException e) {
+                            os.log(Level.SEVERE, e);
+                        }
+                        break;
+                    case "scadenza":
+                        if (obj.getString(element).isEmpty()) continue;
+                        tax.setExpirationDate(LocalDate.parse(obj.getString(element), formatter));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            tax.setPaymentDescriptionList(extractPaymentDescriptionList(obj.getJSONArray("causali")));
+            if (paid) tax.setStatus(Tax.TaxStatus.PAID);
+            else tax.setStatus(Tax.TaxStatus.UNPAID);
+            list.add(tax);
+        }
+        return list;
+    }
+
+    List<PaymentDescription> extractPaymentDescriptionList(JSONArray array) {
+        List<PaymentDescription> list = new LinkedList<>();
+        if (array == null) return list;
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject obj = array.getJSONObject(i);
+            PaymentDescription pdes = new PaymentDescription();
+            for (String element : obj.keySet()) {
+                switch (element) {
+                    case "descrizione":
+                        pdes.setDescription(obj.getString("descrizione"));
+                        break;
+                    case "importo":
+                        try {
+                            Double value = Double.parseDouble(obj.getString("importo"));
+                            pdes.setAmount(value);
+                        } catch (NumberFormatException e) {
+                            os.log(Level.SEVERE, e);
+                        }
+                        break;
+                    case "annoAccademicoString":
+                        pdes.setAcademicYear(obj.getString("annoAccademicoString"));
+                        break;
+                    case "impoVers":
+                        try {
+                            Double valueVers = Double.parseDouble(obj.getString("impoVers"));
+                            pdes.setAmountPaid(valueVers);
+                        } catch (NumberFormatException e) {
+                            os.log(Level.SEVERE, e);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            list.add(pdes);
+        }
+        return list;
+    }
+
+    List<Lesson> parseClassroomTimetable(String body) {
+        List<Lesson> ret = new LinkedList<>();
+        JSONArray array = new JSONArray(body);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject object = array.getJSONObject(i);
+            ret.add(extractLesson(object, formatter, 0));
+        }
+        return OpenstudHelper.sortLessonsByStartDate(ret, true);
+    }
+
+    Map<String, List<Lesson>> parseTimetable(String body, String codes) {
+        Map<String, List<Lesson>> ret = new HashMap<>();
+        JSONObject response = new JSONObject(body);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm");
+        for (String examCode : response.keySet()) {
+            if (!codes.contains(examCode)) continue;
+            JSONArray array = response.getJSONArray(examCode);
+            LinkedList<Lesson> lessons = new LinkedList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                lessons.add(extractLesson(object, formatter, -1));
+            }
+            ret.put(examCode, lessons);
+        }
+        return ret;
+    }
+
+    Lesson extractLesson(JSONObject response, DateTimeFormatter formatter, int offset) {
+        Lesson lesson = new Lesson();
+        for (String lessonInfo : response.keySet()) {
+            if (response.isNull(lessonInfo)) continue;
+            switch (lessonInfo) {
+                case "name":
+                    String name = response.getString(lessonInfo);
+                    int startIdx = name.indexOf(" ");
+                    int endIdx = name.indexOf("Docente:");
+                    if (startIdx != -1 && endIdx != -1) {
+                        if (name.endsWith(" ")) {
+                            name = name.substring(0, name.length() - 1);
+                        }
+                        lesson.setName(name.substring(startIdx, endIdx).trim());
+                    } else lesson.setName(name);
+                    int indexTeacher = name.indexOf("Docente:");
+                    if (indexTeacher != -1) lesson.setTeacher(name.substring(indexTeacher + "Docente: ".length()));
+                    break;
+                case "where":
+                    lesson.setWhere(response.getString(lessonInfo));
+                    break;
+                case "start":
+                    LocalDateTime startTime = LocalDateTime.parse(response.getString(lessonInfo), formatter);
+                    startTime = startTime.plusHours(offset);
+                    lesson.setStart(startTime);
+                    break;
+                case "end":
+                    LocalDateTime endTime = LocalDateTime.parse(response.getString(lessonInfo), formatter);
+                    endTime = endTime.plusHours(offset);
+                    lesson.setEnd(endTime);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return lesson;
+    }
+
+    byte[] parsePdf(JSONObject response) throws OpenstudInvalidResponseException {
+        if (!response.has("risultato") || response.isNull("risultato"))
+            throw new OpenstudInvalidResponseException("Infostud answer is not valid, maybe the token is no longer valid");
+        response = response.getJSONObject("risultato");
+        if (!response.has("byte") || response.isNull("byte"))
+            throw new OpenstudInvalidResponseException("Infostud answer is not valid");
+        JSONArray byteArray = response.getJSONArray("byte");
+        byte[] pdf = new byte[byteArray.length()];
+        for (int i = 0; i < byteArray.length(); i++) pdf[i] = (byte) byteArray.getInt(i);
+        os.log(Level.INFO, "Found PDF made of " + pdf.length + " bytes \n");
+        return pdf;
+    }
+}
@@ -0,0 +1,31 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SapienzaAuthenticationHandlerTest {
+    private static final String INVALID_CREDENTIALS = "{\"result\":null,\"error\":{\"code\":\"auth110\"},\"id\":null}";
+
+    @Test
+    public void testProbeAcceptsIDMAnswers() {
+        assertTrue(SapienzaAuthenticationHandler.isIDMProbeHealthy(200, INVALID_CREDENTIALS));
+        assertTrue(SapienzaAuthenticationHandler.isIDMProbeHealthy(401, INVALID_CREDENTIALS));
+        assertTrue(SapienzaAuthenticationHandler.isIDMProbeHealthy(200, "{\"result\":{\"tokeniws\":\"token\"},\"id\":null}"));
+    }
+
+    @Test
+    public void testProbeRejectsForbiddenAnswers() {
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(403, INVALID_CREDENTIALS));
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(200, "<html><head><title>403 Forbidden</title></head></html>"));
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(200, "{\"result\":null,\"error\":\"Forbidden\"}"));
+    }
+
+    @Test
+    public void testProbeRejectsOtherAnswers() {
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(502, INVALID_CREDENTIALS));
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(200, ""));
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(200, "<html>the page you are looking for is currently unavailable</html>"));
+        assertFalse(SapienzaAuthenticationHandler.isIDMProbeHealthy(404, "<html>Not Found</html>"));
+    }
+}
@@ -0,0 +1,144 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.MockInfostud;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.models.Classroom;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SapienzaClassroomHandlerTest {
+    private static final int ROOMS = 6;
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Set<Integer> failing = Collections.synchronizedSet(new HashSet<>());
+    private final Set<Integer> rateLimited = Collections.synchronizedSet(new HashSet<>());
+    private final List<Integer> looked = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        infostud.getServer().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                if (path.startsWith("/timetable/classroom/search")) return new MockResponse().setBody(classrooms());
+                int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                looked.add(id);
+                if (failing.contains(id)) return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                if (rateLimited.contains(id)) return new MockResponse().setBody("maximum request limit reached");
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    // the first rooms answer last, every room must get its own timetable anyway
+                    Thread.sleep(50L * (ROOMS - id));
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return new MockResponse().setBody(lessons(id));
+            }
+        });
+    }
+
+    private static String classrooms() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= ROOMS; i++) {
+            if (i > 1) json.append(',');
+            json.append("{\"roominternalid\":").append(i).append(",\"name\":\"AULA ").append(i).append("\",\"fullname\":\"AULA ")
+                    .append(i).append(" - MARCO POLO\",\"site\":\"MARCO POLO\",\"weight\":").append(i).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String lessons(int id) {
+        LocalDateTime start = LocalDate.now().atTime(9, 0);
+        return "[{\"name\":\"LESSON " + id + "\",\"start\":\"" + start.format(SapienzaParsingContext.TIMETABLE_DATE_TIME)
+                + "\",\"end\":\"" + start.plusHours(2).format(SapienzaParsingContext.TIMETABLE_DATE_TIME) + "\"}]";
+    }
+
+    private Openstud build(int parallelism) {
+        OpenstudBuilder builder = infostud.builder().setParallelism(parallelism).setRetryCounter(1);
+        builder.setClassroomWaitRequest(0);
+        return infostud.build(builder);
+    }
+
+    private static void assertTimetables(List<Classroom> classrooms) {
+        assertEquals(ROOMS, classrooms.size());
+        for (int i = 1; i <= ROOMS; i++) {
+            Classroom classroom = classrooms.get(i - 1);
+            assertEquals(i, classroom.getInternalId());
+            assertEquals(1, classroom.getTodayLessons().size());
+            assertEquals("LESSON " + i, classroom.getTodayLessons().get(0).getName());
+        }
+    }
+
+    @Test
+    public void testTimetablesBoundedAndMatched() throws Exception {
+        Openstud os = build(2);
+        List<Classroom> classrooms = os.getClassRoomAsync("aula", true).get(10, TimeUnit.SECONDS);
+        assertTimetables(classrooms);
+        assertEquals(ROOMS, looked.size());
+        assertTrue("at most 2 timetables in flight, got " + maxInFlight.get(), maxInFlight.get() <= 2);
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void testBlockingSearchMatchesAsync() throws Exception {
+        Openstud os = build(3);
+        assertTimetables(os.getClassRoom("aula", true));
+        assertTrue(maxInFlight.get() <= 3);
+        looked.clear();
+        List<Classroom> classrooms = os.getClassRoom("aula", false);
+        assertEquals(ROOMS, classrooms.size());
+        assertNull(classrooms.get(0).getTodayLessons());
+        assertTrue(looked.isEmpty());
+    }
+
+    @Test
+    public void testFailedTimetableFailsSearch() throws Exception {
+        Openstud os = build(1);
+        failing.add(2);
+        try {
+            os.getClassRoomAsync("aula", true).get(10, TimeUnit.SECONDS);
+            fail("The search should fail with its timetable");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OpenstudConnectionException);
+        }
+        // the timetables not requested yet are dropped, OkHttp may retry the dropped connection on its own
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(looked));
+    }
+
+    @Test
+    public void testRateLimitedTimetableFailsBlockingSearch() throws Exception {
+        Openstud os = build(1);
+        rateLimited.add(3);
+        try {
+            os.getClassRoom("aula", true);
+            fail("The search should fail with its timetable");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isRateLimit());
+        }
+        assertEquals(Arrays.asList(1, 2, 3), looked);
+    }
+}
@@ -0,0 +1,120 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.MockInfostud;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.models.Event;
+import matypist.openstud.driver.core.models.EventType;
+import matypist.openstud.driver.core.models.Student;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SapienzaExamHandlerTest {
+    private static final int EXAMS = 6;
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Set<String> failing = Collections.synchronizedSet(new HashSet<>());
+    private final List<String> looked = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        infostud.getServer().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                if (path.contains("/prenotazioni")) return new MockResponse().setBody(reservations(0, "RESERVED"));
+                if (path.contains("/insegnamentisostenibili")) return new MockResponse().setBody(exams());
+                String module = request.getRequestUrl().queryParameter("criterio");
+                looked.add(module);
+                // a dispatcher answer is applied once the request is read, disconnecting at start would send an empty answer
+                if (failing.contains(module)) return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                int index = Integer.parseInt(module.substring(1));
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    // the first exams answer last, the events must keep the exam order anyway
+                    Thread.sleep(50L * (EXAMS - index));
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return new MockResponse().setBody(reservations(index, "EXAM " + index));
+            }
+        });
+    }
+
+    private static String exams() {
+        StringBuilder json = new StringBuilder("{\"ritorno\":{\"esami\":[");
+        for (int i = 1; i <= EXAMS; i++) {
+            if (i > 1) json.append(',');
+            json.append("{\"codiceInsegnamento\":\"").append(i).append("\",\"codiceModuloDidattico\":\"M").append(i)
+                    .append("\",\"codiceCorsoInsegnamento\":\"C").append(i).append("\",\"cfu\":6,\"descrizione\":\"EXAM ").append(i).append("\"}");
+        }
+        return json.append("]}}").toString();
+    }
+
+    private static String reservations(int reportId, String subject) {
+        return "{\"ritorno\":{\"appelli\":[{\"codIdenVerb\":" + reportId + ",\"codAppe\":1,\"descrizione\":\"" + subject
+                + "\",\"docente\":\"TEACHER\",\"dataAppe\":\"10/01/2030\"}]}}";
+    }
+
+    private Openstud build(int parallelism) {
+        Openstud os = infostud.build(infostud.builder().setParallelism(parallelism));
+        os.setToken("valid");
+        return os;
+    }
+
+    @Test
+    public void testCalendarLookupsBoundedAndOrdered() throws Exception {
+        Openstud os = build(2);
+        List<Event> events = os.getCalendarEventsAsync(new Student()).get(10, TimeUnit.SECONDS);
+        assertEquals(EXAMS + 1, events.size());
+        assertEquals(EventType.RESERVED, events.get(0).getEventType());
+        for (int i = 1; i <= EXAMS; i++) {
+            assertEquals(EventType.DOABLE, events.get(i).getEventType());
+            assertEquals("EXAM " + i, events.get(i).getTitle());
+        }
+        assertEquals(EXAMS, looked.size());
+        assertTrue("at most 2 lookups in flight, got " + maxInFlight.get(), maxInFlight.get() <= 2);
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void testBlockingCalendarMatchesAsync() throws Exception {
+        Openstud os = build(3);
+        List<Event> blocking = os.getCalendarEvents(new Student());
+        assertEquals(os.getCalendarEventsAsync(new Student()).get(10, TimeUnit.SECONDS), blocking);
+        assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void testFailedLookupFailsCalendar() throws Exception {
+        Openstud os = build(1);
+        failing.add("M2");
+        try {
+            os.getCalendarEventsAsync(new Student()).get(10, TimeUnit.SECONDS);
+            fail("The calendar should fail with its lookup");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OpenstudConnectionException);
+        }
+        // the lookups not started yet are dropped, OkHttp may retry the dropped connection on its own
+        assertEquals(new HashSet<>(Arrays.asList("M1", "M2")), new HashSet<>(looked));
+    }
+}
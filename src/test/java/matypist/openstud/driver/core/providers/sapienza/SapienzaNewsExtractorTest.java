@@ -0,0 +1,113 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.models.News;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class SapienzaNewsExtractorTest {
+    private static final Openstud OS = new OpenstudBuilder().forceReadyState().build();
+    private static final String URL = "https://www.uniroma1.it/it/notizia/test";
+    private static final String DATE = "<span class=\"date-display-single\">Luned&igrave;, 04 marzo 2024</span>";
+    private static final String SUMMARY = "<div class=\"field field-name-field-testosommario\"><div class=\"field-item even\">Sommario della notizia.</div></div>";
+    private static final String IMAGE = "<img class=\"img-responsive\" src=\"https://www.uniroma1.it/large.jpg\"/>";
+    private static final String BODY = "<div class=\"article-body\"><p>Testo completo della notizia.</p></div>";
+
+    private static String page(String content) {
+        return "<!DOCTYPE html><html lang=\"it\"><head><title>Notizia</title></head><body>" + content + "</body></html>";
+    }
+
+    /**
+     * Reads a few characters at a time, so the elements are split across reads.
+     */
+    private static Reader trickle(String html) {
+        return new FilterReader(new StringReader(html)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+    }
+
+    private static News details(Document doc, boolean withDescription) {
+        News news = new News();
+        SapienzaNewsHandler.addNewsDetails(OS, news, doc, withDescription, SapienzaParsingContext.newsDate("it"));
+        return news;
+    }
+
+    /**
+     * @return the document built by the extractor, after checking it reads as the whole page
+     */
+    private static Document assertSameAsFullPage(String html, boolean withDescription) throws IOException {
+        News expected = details(Jsoup.parse(html, URL), withDescription);
+        Document doc = SapienzaNewsExtractor.parse(new StringReader(html), URL, withDescription);
+        for (Document parsed : new Document[]{doc, SapienzaNewsExtractor.parse(trickle(html), URL, withDescription)}) {
+            News actual = details(parsed, withDescription);
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getImageUrl(), actual.getImageUrl());
+        }
+        return doc;
+    }
+
+    @Test
+    public void testRegularPage() throws IOException {
+        Document doc = assertSameAsFullPage(page(DATE + SUMMARY + IMAGE + BODY), true);
+        assertNotNull(details(doc, true).getDate());
+        // only the fragments were parsed
+        assertTrue(doc.getElementsByClass("article-body").isEmpty());
+    }
+
+    @Test
+    public void testElementsOutOfOrder() throws IOException {
+        Document doc = assertSameAsFullPage(page(IMAGE + BODY + SUMMARY + DATE), true);
+        assertTrue(doc.getElementsByClass("article-body").isEmpty());
+    }
+
+    @Test
+    public void testImageWithinSummary() throws IOException {
+        String summary = "<div class=\"field field-name-field-testosommario\"><div class=\"field-item even\">Sommario " + IMAGE + "</div></div>";
+        Document doc = assertSameAsFullPage(page(DATE + summary + BODY + "<img class=\"img-responsive\" src=\"https://www.uniroma1.it/other.jpg\"/>"), true);
+        assertEquals(1, doc.getElementsByClass("img-responsive").size());
+    }
+
+    @Test
+    public void testDateWithinSummary() throws IOException {
+        String summary = "<div class=\"field field-name-field-testosommario\"><div class=\"field-item even\">Dal "
+                + "<span class=\"date-display-single\">Marted&igrave;, 05 marzo 2024</span></div></div>";
+        assertSameAsFullPage(page(summary + DATE + IMAGE + BODY), true);
+    }
+
+    @Test
+    public void testMarkersOutsideElements() throws IOException {
+        String noise = "<!-- <span class=\"date-display-single\">old</span> --><script>var c = 'img-responsive';</script>"
+                + "<p>testosommario</p>";
+        assertSameAsFullPage(page(noise + DATE + SUMMARY + IMAGE + BODY), true);
+    }
+
+    @Test
+    public void testMissingElements() throws IOException {
+        assertSameAsFullPage(page(DATE + BODY), true);
+        assertSameAsFullPage(page(SUMMARY + BODY), false);
+        assertSameAsFullPage(page(BODY), true);
+    }
+
+    @Test
+    public void testWithoutDescription() throws IOException {
+        assertSameAsFullPage(page(SUMMARY + IMAGE + DATE + BODY), false);
+    }
+
+    @Test
+    public void testUnclosedElement() throws IOException {
+        assertSameAsFullPage(page(DATE + IMAGE + "<div class=\"field field-name-field-testosommario\"><div class=\"field-item even\">Sommario"), true);
+    }
+}
@@ -0,0 +1,170 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.MockInfostud;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.models.News;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Walks the news listing of a mock website through the pipeline fetching pages and details concurrently.
+ */
+public class SapienzaNewsHandlerTest {
+    private static final int PAGES = 4;
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private final Set<Integer> failing = Collections.synchronizedSet(new HashSet<>());
+    private final Set<Integer> empty = Collections.synchronizedSet(new HashSet<>());
+    private final List<Integer> pagesLooked = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> detailsLooked = Collections.synchronizedList(new ArrayList<>());
+    private volatile long slowFrom = Long.MAX_VALUE;
+    private volatile long detailsDelay;
+
+    @Before
+    public void setUp() {
+        infostud.getServer().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                if (path.startsWith("/website/en/tutte-le-notizie")) {
+                    int page = Integer.parseInt(request.getRequestUrl().queryParameter("page"));
+                    pagesLooked.add(page);
+                    if (failing.contains(page)) return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                    if (page >= slowFrom) return new MockResponse().setBody(listingPage(page)).setHeadersDelay(500, TimeUnit.MILLISECONDS);
+                    // the first pages answer last, the news must keep the listing order anyway
+                    Thread.sleep(30L * (PAGES - page));
+                    return new MockResponse().setBody(listingPage(page));
+                }
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                detailsLooked.add(name);
+                if (detailsDelay > 0) return new MockResponse().setBody(details(name)).setHeadersDelay(detailsDelay, TimeUnit.MILLISECONDS);
+                Thread.sleep(10L * (2 * PAGES - Integer.parseInt(name.substring(1))));
+                return new MockResponse().setBody(details(name));
+            }
+        });
+    }
+
+    private String listingPage(int page) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        if (!empty.contains(page)) {
+            // two news per page
+            for (int i = page * 2; i < page * 2 + 2; i++) {
+                html.append("<div class=\"box-news\"><a href=\"/en/news/n").append(i).append("\"><img title=\"n").append(i)
+                        .append("\" src=\"/small.jpg\"/></a></div>");
+            }
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String details(String name) {
+        return "<html><body><img class=\"img-responsive\" src=\"/" + name + ".jpg\"/></body></html>";
+    }
+
+    private Openstud build(int parallelism) {
+        return infostud.build(infostud.builder().setParallelism(parallelism).setRetryCounter(1));
+    }
+
+    private static List<String> titles(List<News> news) {
+        List<String> ret = new ArrayList<>();
+        for (News item : news) ret.add(item.getTitle());
+        return ret;
+    }
+
+    private static void awaitIdle(Openstud os) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (os.getClient().dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(0, os.getClient().dispatcher().runningCallsCount());
+    }
+
+    @Test
+    public void testNewsKeepListingOrder() throws Exception {
+        Openstud os = build(3);
+        List<News> news = os.getNewsAsync("en", false, null, null, PAGES, null).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("n0", "n1", "n2", "n3", "n4", "n5", "n6", "n7"), titles(news));
+        for (News item : news) assertTrue(item.getImageUrl().endsWith("/" + item.getTitle() + ".jpg"));
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3)), new HashSet<>(pagesLooked));
+        assertEquals(PAGES, pagesLooked.size());
+        assertEquals(titles(news), titles(os.getNews("en", false, null, null, PAGES, null)));
+    }
+
+    @Test
+    public void testLimitStopsPaging() throws Exception {
+        // the pages after the first two are still loading once the limit is reached
+        slowFrom = 2;
+        Openstud os = build(2);
+        List<News> news = os.getNewsAsync("en", false, 3, null, 10, null).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("n0", "n1", "n2"), titles(news));
+        assertEquals(Arrays.asList("n0", "n1", "n2"), new ArrayList<>(new TreeSet<>(detailsLooked)));
+        // a page requested meanwhile is cancelled rather than awaited
+        assertTrue("pages requested " + pagesLooked, new HashSet<>(Arrays.asList(0, 1, 2)).containsAll(pagesLooked));
+        awaitIdle(os);
+    }
+
+    @Test
+    public void testCancelStopsRequests() throws Exception {
+        detailsDelay = 500;
+        Openstud os = build(2);
+        CompletableFuture<List<News>> news = os.getNewsAsync("en", false, null, null, PAGES, null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (detailsLooked.size() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue(news.cancel(true));
+        awaitIdle(os);
+        Thread.sleep(200);
+        // neither the details queued nor the pages not consumed yet are requested after the cancel
+        assertEquals(2, detailsLooked.size());
+        int pages = pagesLooked.size();
+        Thread.sleep(300);
+        assertEquals(pages, pagesLooked.size());
+    }
+
+    @Test
+    public void testFailedListingPageFailsNews() throws Exception {
+        Openstud os = build(1);
+        failing.add(1);
+        try {
+            os.getNewsAsync("en", false, null, null, PAGES, null).get(10, TimeUnit.SECONDS);
+            fail("The news should fail with their listing page");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OpenstudConnectionException);
+        }
+        // the pages after the failed one are not requested, OkHttp may retry the dropped connection on its own
+        assertEquals(new HashSet<>(Arrays.asList(0, 1)), new HashSet<>(pagesLooked));
+        awaitIdle(os);
+    }
+
+    @Test
+    public void testListingWithoutNewsIsInvalidHtml() throws Exception {
+        Openstud os = build(2);
+        empty.addAll(Arrays.asList(0, 1));
+        try {
+            os.getNews("en", false, null, null, 2, null);
+            fail("A listing without news boxes is not a listing");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isHTMLError());
+        }
+        // a single page without news is only the end of the listing
+        empty.clear();
+        empty.add(1);
+        assertEquals(Arrays.asList("n0", "n1"), titles(os.getNews("en", false, null, null, 2, null)));
+    }
+}
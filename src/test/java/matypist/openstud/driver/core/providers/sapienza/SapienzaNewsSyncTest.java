@@ -0,0 +1,101 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.cache.NewsSyncState;
+import matypist.openstud.driver.core.models.News;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SapienzaNewsSyncTest {
+    private final Set<String> failing = Collections.synchronizedSet(new HashSet<>());
+    private volatile List<String> listing = new ArrayList<>();
+    private MockWebServer server;
+    private Openstud os;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.startsWith("/en/tutte-le-notizie")) return new MockResponse().setBody(listingPage(request.getRequestUrl().queryParameter("page")));
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (failing.contains(name)) return new MockResponse().setResponseCode(500);
+                return new MockResponse().setBody("<html><body><img class=\"img-responsive\" src=\"/" + name + ".jpg\"/></body></html>");
+            }
+        });
+        server.start(InetAddress.getByName("127.0.0.1"), 0);
+        String url = "http://127.0.0.1:" + server.getPort();
+        os = new OpenstudBuilder().setEndpoints(url, url, url, url).forceReadyState().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private String listingPage(String page) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        // two news per page
+        int start = Integer.parseInt(page) * 2;
+        for (int i = start; i < Math.min(start + 2, listing.size()); i++) {
+            html.append("<div class=\"box-news\"><a href=\"/en/news/").append(listing.get(i))
+                    .append("\"><img title=\"").append(listing.get(i)).append("\" src=\"/small.jpg\"/></a></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static List<String> titles(List<News> news) {
+        List<String> ret = new ArrayList<>();
+        for (News item : news) ret.add(item.getTitle());
+        return ret;
+    }
+
+    @Test
+    public void testFailedNewsReturnedByNextSync() throws Exception {
+        NewsSyncState state = new NewsSyncState();
+        listing = Arrays.asList("b", "a");
+        failing.add("b");
+        assertEquals(Collections.singletonList("a"), titles(os.getNewsUpdates("en", false, 5, null, state)));
+        assertEquals(Collections.singleton(os.getEndpointWebsite() + "/en/news/b"), state.getPendingNews());
+
+        // the known news "a" comes before the pending one: the sync must not stop there
+        listing = Arrays.asList("c", "a", "b");
+        failing.clear();
+        assertEquals(Arrays.asList("c", "b"), titles(os.getNewsUpdates("en", false, 5, null, state)));
+        assertTrue(state.getPendingNews().isEmpty());
+
+        listing = Arrays.asList("f", "c", "a", "b");
+        assertEquals(Collections.singletonList("f"), titles(os.getNewsUpdates("en", false, 5, null, state)));
+    }
+
+    @Test
+    public void testPendingNewsGivenUpWhenNoLongerListed() throws Exception {
+        NewsSyncState state = new NewsSyncState();
+        listing = Arrays.asList("b", "a");
+        failing.add("b");
+        os.getNewsUpdates("en", false, 2, null, state);
+        assertEquals(1, state.getPendingNews().size());
+
+        listing = Arrays.asList("c", "a");
+        assertEquals(Collections.singletonList("c"), titles(os.getNewsUpdates("en", false, 2, null, state)));
+        assertTrue(state.getPendingNews().isEmpty());
+    }
+}
@@ -0,0 +1,222 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.MockInfostud;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.cache.NewsSyncState;
+import matypist.openstud.driver.core.models.Event;
+import matypist.openstud.driver.core.models.NewsletterError;
+import matypist.openstud.driver.core.models.NewsletterResult;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads the newsletter of a mock website, fetching the detail page of every event it lists.
+ */
+public class SapienzaNewsletterTest {
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Set<String> failing = Collections.synchronizedSet(new HashSet<>());
+    private final Set<String> slow = Collections.synchronizedSet(new HashSet<>());
+    private final List<String> looked = Collections.synchronizedList(new ArrayList<>());
+    private volatile List<String> listing = new ArrayList<>();
+    private volatile boolean newsletterDown;
+
+    @Before
+    public void setUp() {
+        infostud.getServer().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                if (path.equals("/website/it/newsletter")) {
+                    if (newsletterDown) return new MockResponse().setResponseCode(503);
+                    return new MockResponse().setBody(newsletter());
+                }
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                looked.add(name);
+                if (failing.contains(name)) return new MockResponse().setResponseCode(500);
+                if (slow.contains(name)) return new MockResponse().setBody(details(name)).setHeadersDelay(3, TimeUnit.SECONDS);
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    // the first events answer last, the newsletter must keep its order anyway
+                    Thread.sleep(30L * (6 - Integer.parseInt(name.substring(1))));
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return new MockResponse().setBody(details(name));
+            }
+        });
+    }
+
+    private String newsletter() {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (String name : listing) {
+            // an entry without title link can't be fetched
+            if (name.isEmpty()) html.append("<div class=\"event\"><div class=\"views-field-solr-document\">?</div></div>");
+            else html.append("<div class=\"event\"><div class=\"views-field-solr-document\"><a href=\"")
+                    .append(infostud.url("/website/it/eventi/" + name)).append("\">").append(name).append("</a></div></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String details(String name) {
+        String date = LocalDate.of(2030, 1, 7).atTime(9, 0).format(SapienzaParsingContext.NEWSLETTER_DATE_TIME);
+        return "<html><body><div class=\"article-body\">" + name + "</div><div class=\"view-date-and-place\"><div class=\"view-content\">"
+                + "<div class=\"views-row\"><div class=\"views-field-php field-apm-date\"><span class=\"field-content\">" + date + "</span></div>"
+                + "<div class=\"views-field-field-apm-edificio\"><span class=\"field-content\">MARCO POLO</span></div></div>"
+                + "</div></div></body></html>";
+    }
+
+    private Openstud build(OpenstudBuilder builder) {
+        return infostud.build(builder.setRetryCounter(1));
+    }
+
+    private static List<String> titles(List<Event> events) {
+        List<String> ret = new ArrayList<>();
+        for (Event event : events) ret.add(event.getTitle());
+        return ret;
+    }
+
+    private List<String> sync(Openstud os, NewsSyncState state) throws Exception {
+        try {
+            return titles(os.getNewsletterEventUpdatesAsync(state).get(10, TimeUnit.SECONDS));
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Test
+    public void testKnownEventsCountTowardsIncrementalSync() throws Exception {
+        Openstud os = build(infostud.builder().setParallelism(2));
+        NewsSyncState state = new NewsSyncState();
+        listing = Arrays.asList("e1", "e2");
+        assertEquals(Arrays.asList("e1", "e2"), sync(os, state));
+
+        // the only new event fails: the page is still valid, the event is fetched again by the next sync
+        listing = Arrays.asList("e3", "", "e1", "e2");
+        failing.add("e3");
+        looked.clear();
+        assertEquals(Collections.emptyList(), sync(os, state));
+        assertEquals(Collections.singletonList("e3"), looked);
+
+        failing.clear();
+        assertEquals(Collections.singletonList("e3"), sync(os, state));
+        assertEquals(Arrays.asList("e1", "e2", "e3"), titles(state.getKnownEvents()));
+    }
+
+    @Test
+    public void testAllEventsFailedFailsSync() throws Exception {
+        Openstud os = build(infostud.builder().setParallelism(2));
+        listing = Arrays.asList("e1", "", "e2");
+        failing.addAll(Arrays.asList("e1", "e2"));
+        try {
+            sync(os, new NewsSyncState());
+            fail("A newsletter whose events all fail is invalid");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isHTMLError());
+        }
+        try {
+            os.getNewsletterEventUpdates(new NewsSyncState());
+            fail("A newsletter whose events all fail is invalid");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isHTMLError());
+        }
+    }
+
+    @Test
+    public void testEventsKeepNewsletterOrder() throws Exception {
+        Openstud os = build(infostud.builder().setParallelism(2));
+        listing = Arrays.asList("e1", "e2", "e3", "e4", "e5");
+        List<Event> events = os.getNewsletterEventsAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(listing, titles(events));
+        for (Event event : events) {
+            assertEquals(LocalDateTime.of(2030, 1, 7, 9, 0), event.getStart());
+            assertEquals("MARCO POLO", event.getWhere());
+            assertEquals(event.getTitle(), event.getDescription());
+        }
+        assertEquals(5, looked.size());
+        assertTrue("at most 2 detail pages in flight, got " + maxInFlight.get(), maxInFlight.get() <= 2);
+        assertEquals(2, maxInFlight.get());
+        assertEquals(listing, titles(os.getNewsletterEvents()));
+    }
+
+    @Test
+    public void testFailedEventsReported() throws Exception {
+        Openstud os = build(infostud.builder().setParallelism(3));
+        listing = Arrays.asList("e1", "", "e3", "e4");
+        failing.add("e3");
+        NewsletterResult result = os.getNewsletter();
+        assertEquals(Arrays.asList("e1", "e4"), titles(result.getEvents()));
+        assertEquals(4, result.getEntryCount());
+        assertFalse(result.isAllFailed());
+        List<NewsletterError> errors = result.getErrors();
+        assertEquals(2, errors.size());
+        assertEquals(1, errors.get(0).getIndex());
+        assertEquals("missing required a tags", errors.get(0).getReason());
+        assertEquals(2, errors.get(1).getIndex());
+        assertEquals("failed to fetch details page", errors.get(1).getReason());
+        assertTrue(errors.get(1).getCause() instanceof OpenstudConnectionException);
+        assertEquals(Integer.valueOf(1), result.getFailureCounts().get("failed to fetch details page"));
+        // the events that failed are left out of the plain list
+        assertEquals(Arrays.asList("e1", "e4"), titles(os.getNewsletterEvents()));
+    }
+
+    @Test
+    public void testSlowDetailPageTimesOut() throws Exception {
+        Openstud os = build(infostud.builder().setParallelism(2).setDetailPageTimeout(1));
+        listing = Arrays.asList("e1", "e2", "e3");
+        slow.add("e2");
+        long start = System.currentTimeMillis();
+        NewsletterResult result = os.getNewsletterAsync().get(10, TimeUnit.SECONDS);
+        assertTrue("the slow page held the newsletter back", System.currentTimeMillis() - start < 4000);
+        assertEquals(Arrays.asList("e1", "e3"), titles(result.getEvents()));
+        assertEquals(1, result.getErrors().size());
+        assertEquals("e2", result.getErrors().get(0).getTitle());
+        assertEquals("timeout fetching details page", result.getErrors().get(0).getReason());
+        // the page timed out is cancelled rather than left running
+        long deadline = System.currentTimeMillis() + 2000;
+        while (os.getClient().dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(0, os.getClient().dispatcher().runningCallsCount());
+    }
+
+    @Test
+    public void testFailedNewsletterPagePropagates() throws Exception {
+        Openstud os = build(infostud.builder().setParallelism(2));
+        listing = Arrays.asList("e1", "e2");
+        newsletterDown = true;
+        try {
+            os.getNewsletterEventsAsync().get(10, TimeUnit.SECONDS);
+            fail("The events should fail with their newsletter page");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OpenstudConnectionException);
+        }
+        try {
+            os.getNewsletter();
+            fail("The result should fail with its newsletter page");
+        } catch (OpenstudConnectionException ignored) {
+        }
+        assertTrue(looked.isEmpty());
+    }
+}
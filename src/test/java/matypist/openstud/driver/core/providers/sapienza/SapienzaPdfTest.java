@@ -0,0 +1,216 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.MockInfostud;
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.models.Career;
+import matypist.openstud.driver.core.models.CertificateType;
+import matypist.openstud.driver.core.models.ExamReservation;
+import matypist.openstud.driver.core.models.Student;
+import matypist.openstud.driver.core.models.Tax;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okhttp3.ConnectionPool;
+import okhttp3.mockwebserver.MockResponse;
+import okio.Buffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Downloads reservation PDFs, payment slips and certificates from a mock Infostud, decoding them into an array and
+ * streaming them to a caller stream.
+ */
+public class SapienzaPdfTest {
+    // larger than the chunk the decoder writes at once
+    private static final byte[] PDF = pdf(20000);
+    @Rule
+    public final MockInfostud infostud = new MockInfostud();
+    private Openstud os;
+
+    @Before
+    public void setUp() {
+        // a single attempt, so that every failure reaches the caller as it is
+        os = infostud.build(infostud.builder().setRetryCounter(1));
+        os.setToken("valid");
+    }
+
+    private static byte[] pdf(int size) {
+        byte[] pdf = new byte[size];
+        byte[] header = "%PDF-1.4\n".getBytes();
+        for (int i = 0; i < size; i++) pdf[i] = i < header.length ? header[i] : (byte) (i * 31);
+        return pdf;
+    }
+
+    /**
+     * Infostud sends the file as an array of signed bytes.
+     */
+    private static String pdfAnswer(byte[] pdf) {
+        StringBuilder json = new StringBuilder("{\"risultato\":{\"byte\":[");
+        for (int i = 0; i < pdf.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(pdf[i]);
+        }
+        return json.append("]}}").toString();
+    }
+
+    private void enqueueCertificate() {
+        infostud.enqueue(new MockResponse().setBody("{\"risultato\":{\"result\":{\"documentServerResultDTO\":{\"pdf_file_http_path\":\""
+                + infostud.url("/files/certificate.pdf") + "\"}}}}"));
+    }
+
+    private static Tax unpaidTax() {
+        Tax tax = new Tax();
+        tax.setCode("1234");
+        return tax;
+    }
+
+    @Test
+    public void testValidPdfDecoded() throws Exception {
+        infostud.enqueue(new MockResponse().setBody(pdfAnswer(PDF)));
+        assertArrayEquals(PDF, os.getExamReservationPDF(new ExamReservation()));
+        infostud.enqueue(new MockResponse().setBody(pdfAnswer(PDF)));
+        assertArrayEquals(PDF, os.getExamReservationPDFAsync(new ExamReservation()).get(5, TimeUnit.SECONDS));
+        infostud.enqueue(new MockResponse().setBody(pdfAnswer(PDF)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(PDF.length, os.getPaymentSlipPDF(unpaidTax(), out));
+        assertArrayEquals(PDF, out.toByteArray());
+        assertTrue(infostud.getServer().takeRequest().getPath().startsWith("/api/prenotazione/"));
+    }
+
+    @Test
+    public void testEmptyPdfArray() throws Exception {
+        infostud.enqueue(new MockResponse().setBody(pdfAnswer(new byte[0])));
+        assertEquals(0, os.getPaymentSlipPDF(unpaidTax()).length);
+    }
+
+    @Test
+    public void testEmptyOrTruncatedBodyIsJsonError() throws Exception {
+        String truncated = pdfAnswer(PDF).substring(0, 30000);
+        for (String body : new String[]{"", truncated}) {
+            infostud.enqueue(new MockResponse().setBody(body));
+            try {
+                os.getExamReservationPDF(new ExamReservation());
+                fail("The answer is not a PDF");
+            } catch (OpenstudInvalidResponseException e) {
+                assertTrue(e.isJSONError());
+            }
+        }
+        infostud.enqueue(new MockResponse().setBody(truncated));
+        try {
+            os.getExamReservationPDFAsync(new ExamReservation()).get(5, TimeUnit.SECONDS);
+            fail("The answer is not a PDF");
+        } catch (ExecutionException e) {
+            assertTrue(((OpenstudInvalidResponseException) e.getCause()).isJSONError());
+        }
+        // the bytes decoded before the answer broke off already reached the caller
+        infostud.enqueue(new MockResponse().setBody(truncated));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            os.getPaymentSlipPDF(unpaidTax(), out);
+            fail("The answer is not a PDF");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isJSONError());
+        }
+        assertTrue(out.size() > 0);
+    }
+
+    @Test
+    public void testNon200PdfAnswer() throws Exception {
+        infostud.enqueue(new MockResponse().setResponseCode(500).setBody("<html>Internal Server Error</html>"));
+        try {
+            os.getExamReservationPDF(new ExamReservation());
+            fail("An error page is not a PDF");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isJSONError());
+        }
+        infostud.enqueue(new MockResponse().setResponseCode(404).setBody("{\"esito\":{\"flagEsito\":-1}}"));
+        try {
+            os.getExamReservationPDF(new ExamReservation());
+            fail("An answer without risultato is not a PDF");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isInvalidToken());
+        }
+    }
+
+    @Test
+    public void testCertificateDownloaded() throws Exception {
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setBody(new Buffer().write(PDF)));
+        assertArrayEquals(PDF, os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION));
+        assertTrue(infostud.getServer().takeRequest().getPath().startsWith("/api/certificati/corsodilaurea/"));
+        assertEquals("/files/certificate.pdf", infostud.getServer().takeRequest().getPath());
+
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setBody(new Buffer().write(PDF)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(PDF.length, os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION, out));
+        assertArrayEquals(PDF, out.toByteArray());
+
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setBody(new Buffer().write(PDF)));
+        assertArrayEquals(PDF, os.getCertificatePDFAsync(new Student(), new Career(), CertificateType.REGISTRATION).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCertificateWithoutFile() throws Exception {
+        infostud.enqueue(new MockResponse().setBody("{\"risultato\":{\"result\":null}}"));
+        assertNull(os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION));
+        assertEquals(1, infostud.getRequestCount());
+    }
+
+    @Test
+    public void testCertificateEmptyFile() throws Exception {
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse());
+        assertEquals(0, os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION).length);
+    }
+
+    @Test
+    public void testFailedCertificateReleasesConnection() throws Exception {
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setResponseCode(404).setBody("Not Found"));
+        try {
+            os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION);
+            fail("A missing file is not a certificate");
+        } catch (OpenstudConnectionException ignored) {
+        }
+        // a response left open would keep its connection out of the pool
+        ConnectionPool pool = os.getClient().connectionPool();
+        assertEquals(1, pool.connectionCount());
+        assertEquals(1, pool.idleConnectionCount());
+    }
+
+    @Test
+    public void testCertificateNon200IsConnectionError() throws Exception {
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setResponseCode(404).setBody("Not Found"));
+        try {
+            os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION);
+            fail("A missing file is not a certificate");
+        } catch (OpenstudConnectionException ignored) {
+        }
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setResponseCode(500).setBody("Internal Server Error"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            os.getCertificatePDF(new Student(), new Career(), CertificateType.REGISTRATION, out);
+            fail("An error page is not a certificate");
+        } catch (OpenstudConnectionException ignored) {
+        }
+        assertEquals(0, out.size());
+        enqueueCertificate();
+        infostud.enqueue(new MockResponse().setResponseCode(500).setBody("Internal Server Error"));
+        try {
+            os.getCertificatePDFAsync(new Student(), new Career(), CertificateType.REGISTRATION).get(5, TimeUnit.SECONDS);
+            fail("An error page is not a certificate");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OpenstudConnectionException);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package matypist.openstud.driver.core.providers.sapienza;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.OpenstudHelper;
+import matypist.openstud.driver.core.models.ExamDone;
+import matypist.openstud.driver.core.models.ExamReservation;
+import matypist.openstud.driver.core.models.Lesson;
+import matypist.openstud.driver.core.models.Tax;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import okio.Buffer;
+import okio.Okio;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds Infostud and GOMP answers through the streaming parsers and through the org.json decoders they replaced,
+ * expecting the same models.
+ */
+public class SapienzaStreamHelperTest {
+    private static final String TIMETABLE_CODES = "1015880,1015887";
+    private final Openstud os = new OpenstudBuilder().forceReadyState().build();
+    private final LegacySapienzaParsers legacy = new LegacySapienzaParsers(os);
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = SapienzaStreamHelperTest.class.getResourceAsStream("/fixtures/sapienza/" + name)) {
+            assertNotNull("Missing fixture " + name, in);
+            return Okio.buffer(Okio.source(in)).readString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static <T> T stream(String json, SapienzaStreamHelper.ValueReader<T> valueReader) throws IOException, OpenstudInvalidResponseException {
+        return SapienzaStreamHelper.read(new Buffer().writeUtf8(json), valueReader);
+    }
+
+    /**
+     * Compares the string forms, which list every field: reservations compare their attending modes by identity.
+     */
+    private static void assertSameModels(Object expected, Object actual) {
+        assertEquals(String.valueOf(expected), String.valueOf(actual));
+    }
+
+    @Test
+    public void testExamsDoneMatchLegacy() throws Exception {
+        String json = fixture("exams_done.json");
+        List<ExamDone> exams = stream(json, reader -> SapienzaStreamHelper.readExamsDone(os, reader));
+        List<ExamDone> expected = legacy.parseExamsDone(new JSONObject(json));
+        assertEquals(expected, exams);
+        assertSameModels(expected, exams);
+        assertEquals(4, exams.size());
+        assertEquals(28, exams.get(0).getResult());
+        assertEquals("IDO", exams.get(1).getNominalResult());
+        assertNull(exams.get(1).getDate());
+        assertNull(exams.get(2).getDate());
+        assertEquals(0, exams.get(3).getCfu());
+    }
+
+    @Test
+    public void testReservationsMatchLegacy() throws Exception {
+        String json = fixture("reservations.json");
+        List<ExamReservation> active = stream(json, reader -> OpenstudHelper.sortReservationByDate(SapienzaStreamHelper.readReservations(os, reader, true), true));
+        assertSameModels(legacy.parseActiveReservations(new JSONObject(json)), active);
+        List<ExamReservation> available = stream(json, reader -> SapienzaStreamHelper.readReservations(os, reader, false));
+        assertSameModels(legacy.parseAvailableReservations(new JSONObject(json)), available);
+        assertEquals(3, available.size());
+        assertEquals(2, available.get(0).getAttendingModesList().length());
+        assertEquals(-1, available.get(1).getReservationNumber());
+        assertNull(available.get(1).getSsd());
+        assertNull(available.get(1).getStartDate());
+        assertNull(available.get(2).getExamDate());
+    }
+
+    @Test
+    public void testTaxesMatchLegacy() throws Exception {
+        for (boolean paid : new boolean[]{true, false}) {
+            String json = fixture(paid ? "taxes_paid.json" : "taxes_unpaid.json");
+            List<Tax> taxes = stream(json, reader -> SapienzaStreamHelper.readTaxes(os, reader, paid));
+            List<Tax> expected = legacy.parseTaxes(new JSONObject(json), paid);
+            assertEquals(expected, taxes);
+            assertSameModels(expected, taxes);
+            for (int i = 0; i < taxes.size(); i++) assertEquals(expected.get(i).getStatus(), taxes.get(i).getStatus());
+        }
+        List<Tax> paid = stream(fixture("taxes_paid.json"), reader -> SapienzaStreamHelper.readTaxes(os, reader, true));
+        // impoVers comes first in the answer, it still wins over importoBollettino
+        assertEquals(844.43, paid.get(0).getAmount(), 0.001);
+        List<Tax> unpaid = stream(fixture("taxes_unpaid.json"), reader -> SapienzaStreamHelper.readTaxes(os, reader, false));
+        assertEquals(0, unpaid.get(0).getAmount(), 0.001);
+        assertNull(unpaid.get(0).getPaymentDate());
+    }
+
+    @Test
+    public void testTimetablesMatchLegacy() throws Exception {
+        String classroom = fixture("classroom_events.json");
+        List<Lesson> lessons = stream(classroom, reader -> OpenstudHelper.sortLessonsByStartDate(
+                SapienzaStreamHelper.readLessons(reader, SapienzaParsingContext.TIMETABLE_DATE_TIME, 0), true));
+        assertEquals(legacy.parseClassroomTimetable(classroom).toString(), lessons.toString());
+        assertEquals("RIUNIONE", lessons.get(0).getName());
+
+        String timetable = fixture("timetable.json");
+        Map<String, List<Lesson>> courses = stream(timetable, reader -> SapienzaStreamHelper.readTimetable(reader, TIMETABLE_CODES, SapienzaParsingContext.TIMETABLE_DATE_TIME, -1));
+        assertEquals(legacy.parseTimetable(timetable, TIMETABLE_CODES).toString(), courses.toString());
+        assertEquals(2, courses.size());
+        assertEquals("ROSSI MARIO", courses.get("1015880").get(0).getTeacher());
+    }
+
+    @Test
+    public void testMissingListsMatchLegacy() throws Exception {
+        for (String json : new String[]{"{\"ritorno\":{}}", "{\"ritorno\":{\"esami\":null}}"})
+            assertSameModels(legacy.parseExamsDone(new JSONObject(json)), stream(json, reader -> SapienzaStreamHelper.readExamsDone(os, reader)));
+        for (String json : new String[]{"{\"risultatoLista\":null}", "{\"risultatoLista\":{\"risultati\":null}}"})
+            assertSameModels(legacy.parseTaxes(new JSONObject(json), true), stream(json, reader -> SapienzaStreamHelper.readTaxes(os, reader, true)));
+        String json = "{\"ritorno\":{\"appelli\":null}}";
+        assertSameModels(legacy.parseAvailableReservations(new JSONObject(json)), stream(json, reader -> SapienzaStreamHelper.readReservations(os, reader, false)));
+        try {
+            stream(json, reader -> SapienzaStreamHelper.readReservations(os, reader, true));
+            fail("Active reservations require the appelli array");
+        } catch (OpenstudInvalidResponseException e) {
+            assertFalse(e.isInvalidToken());
+        }
+    }
+
+    @Test
+    public void testExpiredTokenAnswerRejected() throws Exception {
+        String json = "{\"esito\":{\"flagEsito\":-4,\"nota\":\"token non valido\"}}";
+        try {
+            legacy.parseExamsDone(new JSONObject(json));
+            fail("The legacy decoder rejects the answer");
+        } catch (OpenstudInvalidResponseException ignored) {
+        }
+        try {
+            stream(json, reader -> SapienzaStreamHelper.readExamsDone(os, reader));
+            fail("The streaming parser rejects the answer");
+        } catch (OpenstudInvalidResponseException e) {
+            assertTrue(e.isInvalidToken());
+        }
+    }
+
+    @Test
+    public void testNullValuesSkippedWhereLegacyFailed() throws Exception {
+        // org.json refused a null where a string or number was expected, the streaming parser leaves the field unset
+        String json = "{\"ritorno\":{\"esami\":[{\"codiceInsegnamento\":\"1015880\",\"ssd\":null,\"cfu\":null,\"esito\":{\"valoreNominale\":null}}]}}";
+        try {
+            legacy.parseExamsDone(new JSONObject(json));
+            fail("The legacy decoder rejects null strings");
+        } catch (JSONException ignored) {
+        }
+        ExamDone exam = stream(json, reader -> SapienzaStreamHelper.readExamsDone(os, reader)).get(0);
+        assertEquals("1015880", exam.getExamCode());
+        assertNull(exam.getSsd());
+        assertEquals(0, exam.getCfu());
+        assertNull(exam.getNominalResult());
+    }
+
+    @Test
+    public void testMalformedJsonIsJsonError() throws Exception {
+        String json = fixture("exams_done.json");
+        String truncated = json.substring(0, json.length() / 2);
+        try {
+            legacy.parseExamsDone(new JSONObject(truncated));
+            fail("The legacy decoder rejects a truncated answer");
+        } catch (JSONException ignored) {
+        }
+        try {
+            stream(truncated, reader -> SapienzaStreamHelper.readExamsDone(os, reader));
+            fail("The streaming parser rejects a truncated answer");
+        } catch (JSONException ignored) {
+        }
+        try {
+            stream("{\"ritorno\":{\"esami\":[{\"cfu\":\"sei\"}]}}", reader -> SapienzaStreamHelper.readExamsDone(os, reader));
+            fail("A string is not a valid cfu");
+        } catch (JSONException ignored) {
+        }
+    }
+}
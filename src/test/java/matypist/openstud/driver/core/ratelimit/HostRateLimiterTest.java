@@ -0,0 +1,112 @@
+package matypist.openstud.driver.core.ratelimit;
+
+import matypist.openstud.driver.core.Openstud;
+import matypist.openstud.driver.core.OpenstudAsyncHelper;
+import matypist.openstud.driver.core.OpenstudBuilder;
+import matypist.openstud.driver.core.OpenstudTransport;
+import matypist.openstud.driver.exceptions.OpenstudConnectionException;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HostRateLimiterTest {
+    private MockWebServer server;
+    private OpenstudTransport transport;
+    private Openstud os;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        transport = new OpenstudTransport();
+        transport.getHostRateLimiter().setLimit(server.getHostName(), 1, 1, 0.5, 1);
+        String url = server.url("/").toString();
+        os = new OpenstudBuilder().setTransport(transport).setEndpoints(url, url, url, url).forceReadyState().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        transport.shutdown();
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/")).build();
+    }
+
+    @Test
+    public void testAsyncCallWaitsOffTheDispatcher() throws Exception {
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+        long start = System.nanoTime();
+        CompletableFuture<String> first = OpenstudAsyncHelper.enqueue(os, request(), response -> response.body().string());
+        CompletableFuture<String> second = OpenstudAsyncHelper.enqueue(os, request(), response -> response.body().string());
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        // the first call is finished by its dispatcher thread right after completing the future
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (os.getClient().dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) Thread.sleep(5);
+        // the second call waits for its permit before being enqueued, no dispatcher thread is parked meanwhile
+        assertEquals(0, os.getClient().dispatcher().runningCallsCount());
+        assertFalse(second.isDone());
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testAsyncCallRejectedWhenQueueIsFull() throws Exception {
+        transport.getHostRateLimiter().setQueueTimeout(0);
+        server.enqueue(new MockResponse().setBody("first"));
+        OpenstudAsyncHelper.enqueue(os, request(), response -> response.body().string()).get(5, TimeUnit.SECONDS);
+        try {
+            OpenstudAsyncHelper.enqueue(os, request(), response -> response.body().string()).get(5, TimeUnit.SECONDS);
+            fail("The call should not be queued");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OpenstudConnectionException);
+            assertTrue(e.getCause().getCause() instanceof HostRateLimiter.RateLimitTimeoutException);
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testBlockingCallWaitsForPermit() throws Exception {
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+        long start = System.nanoTime();
+        os.getClient().newCall(request()).execute().close();
+        os.getClient().newCall(request()).execute().close();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    }
+
+    @Test
+    public void testPacedCallNotDelayed() throws Exception {
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+        long start = System.nanoTime();
+        os.getClient().newCall(request()).execute().close();
+        try (Response response = os.getClient().newCall(HostRateLimiter.paced(request())).execute()) {
+            assertEquals("second", response.body().string());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 900);
+    }
+
+    @Test
+    public void testThrottledAnswerSlowsHostDown() throws Exception {
+        transport.getHostRateLimiter().setLimit(server.getHostName(), 10, 10, 0.5, 10);
+        server.enqueue(new MockResponse().setResponseCode(429));
+        os.getClient().newCall(request()).execute().close();
+        AdaptiveRateLimiter limiter = transport.getHostRateLimiter().getLimiter(server.getHostName());
+        assertEquals(5, limiter.getRate(), 0.001);
+        assertEquals(1, limiter.getThrottleCount());
+    }
+}
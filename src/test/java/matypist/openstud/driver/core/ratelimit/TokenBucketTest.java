@@ -0,0 +1,65 @@
+package matypist.openstud.driver.core.ratelimit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testBurstThenSpacing() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        long first = bucket.reserve();
+        long second = bucket.reserve();
+        assertTrue(first > 0 && first <= 101);
+        assertTrue(second > first && second <= 201);
+        assertEquals(0, bucket.getAvailablePermits());
+    }
+
+    @Test
+    public void testTryReserveRejectsWithoutTakingPermit() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertEquals(0, bucket.tryReserve(0));
+        assertEquals(-1, bucket.tryReserve(100));
+        long wait = bucket.tryReserve(2000);
+        assertTrue(wait > 0 && wait <= 1001);
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        bucket.reserve();
+        bucket.reserve();
+        Thread.sleep(50);
+        assertEquals(2, bucket.getAvailablePermits());
+    }
+
+    @Test
+    public void testUnlimited() {
+        TokenBucket bucket = new TokenBucket(Double.POSITIVE_INFINITY, 1);
+        for (int i = 0; i < 100; i++) assertEquals(0, bucket.reserve());
+        bucket.backOff();
+        assertEquals(0, bucket.tryReserve(0));
+    }
+
+    @Test
+    public void testBackOffWaitsFullRefill() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        bucket.backOff();
+        long wait = bucket.reserve();
+        assertTrue(wait > 500 && wait <= 601);
+    }
+
+    @Test
+    public void testRateChange() {
+        TokenBucket bucket = new TokenBucket(Double.POSITIVE_INFINITY, 1);
+        bucket.setPermitsPerSecond(2);
+        assertEquals(2, bucket.getPermitsPerSecond(), 0.001);
+        assertEquals(0, bucket.reserve());
+        long wait = bucket.reserve();
+        assertTrue(wait > 0 && wait <= 501);
+    }
+}
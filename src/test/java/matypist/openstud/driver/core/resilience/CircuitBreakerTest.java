@@ -0,0 +1,77 @@
+package matypist.openstud.driver.core.resilience;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAtThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertTrue(breaker.isCallPermitted());
+        assertEquals(2, breaker.getFailureCount());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+        assertFalse(breaker.tryStartProbe());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSuccessfulProbeCloses() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure();
+        assertFalse(breaker.isCallPermitted());
+        assertTrue(breaker.tryStartProbe());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // a single probe at a time
+        assertFalse(breaker.tryStartProbe());
+        breaker.recordSuccess();
+        assertTrue(breaker.isCallPermitted());
+    }
+
+    @Test
+    public void testFailedProbeOpensAgain() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(5, 50);
+        breaker.trip();
+        Thread.sleep(60);
+        assertTrue(breaker.tryStartProbe());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryStartProbe());
+        Thread.sleep(60);
+        assertTrue(breaker.tryStartProbe());
+    }
+
+    @Test
+    public void testAbortedProbeLetsNextCallProbe() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        breaker.recordFailure();
+        Thread.sleep(60);
+        assertTrue(breaker.tryStartProbe());
+        breaker.abortProbe();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.tryStartProbe());
+    }
+
+    @Test
+    public void testAbortProbeIgnoredWhenNotProbing() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+        breaker.abortProbe();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.trip();
+        breaker.abortProbe();
+        assertFalse(breaker.tryStartProbe());
+    }
+}
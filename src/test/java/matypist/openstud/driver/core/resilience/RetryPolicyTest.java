@@ -0,0 +1,83 @@
+package matypist.openstud.driver.core.resilience;
+
+import matypist.openstud.driver.exceptions.OpenstudBaseResponseException;
+import matypist.openstud.driver.exceptions.OpenstudInvalidResponseException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testBackoffGrowsUpToMax() {
+        RetryPolicy policy = new RetryPolicy().setBackoff(100, 400, 2).setJitter(0);
+        long start = System.nanoTime();
+        assertEquals(100, policy.nextDelay(1, start));
+        assertEquals(200, policy.nextDelay(2, start));
+        assertEquals(400, policy.nextDelay(3, start));
+        assertEquals(400, policy.nextDelay(10, start));
+    }
+
+    @Test
+    public void testJitterStaysWithinBackoff() {
+        RetryPolicy policy = new RetryPolicy().setBackoff(100, 100, 1).setJitter(0.5).setRetryBudget(1000, 10000);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.nextDelay(1, System.nanoTime());
+            assertTrue(delay >= 50 && delay <= 100);
+        }
+    }
+
+    @Test
+    public void testBudgetExhausted() {
+        RetryPolicy policy = new RetryPolicy().setBackoff(0, 0, 1).setRetryBudget(2, TimeUnit.MINUTES.toMillis(1));
+        long start = System.nanoTime();
+        assertEquals(0, policy.nextDelay(1, start));
+        assertEquals(0, policy.nextDelay(1, start));
+        assertEquals(-1, policy.nextDelay(1, start));
+        assertEquals(1, policy.getRejectedRetries());
+    }
+
+    @Test
+    public void testBudgetRefilledAfterWindow() throws InterruptedException {
+        RetryPolicy policy = new RetryPolicy().setBackoff(0, 0, 1).setRetryBudget(1, 50);
+        assertEquals(0, policy.nextDelay(1, System.nanoTime()));
+        assertEquals(-1, policy.nextDelay(1, System.nanoTime()));
+        Thread.sleep(60);
+        assertEquals(0, policy.nextDelay(1, System.nanoTime()));
+    }
+
+    @Test
+    public void testDeadlineCrossed() {
+        RetryPolicy policy = new RetryPolicy().setBackoff(500, 500, 1).setJitter(0).setDeadline(1000);
+        assertEquals(500, policy.nextDelay(1, System.nanoTime()));
+        long started = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(600);
+        assertEquals(-1, policy.nextDelay(1, started));
+        // a retry denied by the deadline doesn't consume the budget
+        assertEquals(0, policy.getRejectedRetries());
+    }
+
+    @Test
+    public void testCopyHasItsOwnBudget() {
+        RetryPolicy policy = new RetryPolicy().setBackoff(0, 0, 1).setRetryBudget(1, TimeUnit.MINUTES.toMillis(1))
+                .setRetryable(OpenstudBaseResponseException.Type.MAINTENANCE, true);
+        assertEquals(0, policy.nextDelay(1, System.nanoTime()));
+        assertEquals(-1, policy.nextDelay(1, System.nanoTime()));
+        RetryPolicy copy = policy.copy();
+        assertEquals(0, copy.nextDelay(1, System.nanoTime()));
+        assertEquals(-1, copy.nextDelay(1, System.nanoTime()));
+        assertTrue(copy.isRetryable(new OpenstudInvalidResponseException("maintenance").setMaintenanceType()));
+    }
+
+    @Test
+    public void testRetryableTypes() {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.isRetryable(new OpenstudInvalidResponseException("generic")));
+        assertTrue(policy.isRetryable(new OpenstudInvalidResponseException("token").setInvalidTokenType()));
+        assertFalse(policy.isRetryable(new OpenstudInvalidResponseException("maintenance").setMaintenanceType()));
+        assertFalse(policy.isRetryable(new OpenstudInvalidResponseException("rate limit").setRateLimitType()));
+        policy.setRetryable(OpenstudBaseResponseException.Type.GENERIC, false);
+        assertFalse(policy.isRetryable(new OpenstudInvalidResponseException("generic")));
+    }
+}